@@ -2,8 +2,10 @@ package com.xiojuandawt.blood4life;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
+@EnableScheduling
 public class Blood4lifeApplication {
 
   public static void main(String[] args) {
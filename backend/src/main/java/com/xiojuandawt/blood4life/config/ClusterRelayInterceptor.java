@@ -0,0 +1,42 @@
+package com.xiojuandawt.blood4life.config;
+
+import com.xiojuandawt.blood4life.services.BloodDonorWebSocketService;
+import com.xiojuandawt.blood4life.services.ClusterEventBus;
+import com.xiojuandawt.blood4life.services.StompBatchPublisher;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.ChannelInterceptor;
+
+// Broker channel interceptor that hands every server-side publish (topics and
+// not yet resolved "/user/..." destinations) to the cluster event bus.
+// Messages relayed from peers and user destinations already resolved to a
+// local session are not forwarded again. Batch frames are not forwarded
+// either: each node builds its own from the single events. Nor is the total
+// of donors, which every node keeps and broadcasts on its own.
+public class ClusterRelayInterceptor implements ChannelInterceptor {
+
+  private final ClusterEventBus clusterEventBus;
+
+  public ClusterRelayInterceptor(ClusterEventBus clusterEventBus) {
+    this.clusterEventBus = clusterEventBus;
+  }
+
+  @Override
+  public Message<?> preSend(Message<?> message, MessageChannel channel) {
+    SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.wrap(message);
+    String destination = accessor.getDestination();
+
+    if (SimpMessageType.MESSAGE.equals(accessor.getMessageType())
+        && destination != null
+        && (destination.startsWith("/topic/") || destination.startsWith("/user/"))
+        && !destination.endsWith(StompBatchPublisher.BATCH_SUFFIX)
+        && !destination.equals(BloodDonorWebSocketService.TOTAL_BLOOD_DONORS_TOPIC)
+        && accessor.getHeader(ClusterEventBus.RELAYED_HEADER) == null
+        && accessor.getHeader(SimpMessageHeaderAccessor.ORIGINAL_DESTINATION) == null) {
+      clusterEventBus.publish(message);
+    }
+    return message;
+  }
+}
@@ -0,0 +1,76 @@
+package com.xiojuandawt.blood4life.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.resource.jdbc.spi.PhysicalConnectionHandlingMode;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.flyway.FlywayDataSource;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+
+// Read replica routing, only active when replica.datasource.url is set;
+// otherwise Spring Boot's single spring.datasource pool is used as before.
+// Connections of @Transactional(readOnly = true) methods come from the
+// replica, everything else (writes, Flyway, plain JDBC outside read-only
+// transactions) from the primary; see ReadReplicaDataSource.
+@Configuration
+@ConditionalOnProperty(name = "replica.datasource.url")
+public class DataSourceConfig {
+
+  @Bean
+  @FlywayDataSource
+  @ConfigurationProperties("spring.datasource.hikari")
+  public HikariDataSource primaryDataSource(DataSourceProperties properties) {
+    return properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+  }
+
+  @Bean
+  public ReadReplicaDataSource readReplicaDataSource(
+      @Qualifier("primaryDataSource") DataSource primary,
+      @Value("${replica.datasource.url}") String url,
+      @Value("${replica.datasource.username:${spring.datasource.username}}") String username,
+      @Value("${replica.datasource.password:${spring.datasource.password}}") String password,
+      @Value("${replica.datasource.maximum-pool-size:10}") int maximumPoolSize,
+      @Value("${replica.datasource.connection-timeout-ms:2000}") long connectionTimeoutMs,
+      @Value("${replica.retry-after-ms:30000}") long retryAfterMs) {
+    HikariDataSource replica = new HikariDataSource();
+    replica.setPoolName("replica");
+    replica.setJdbcUrl(url);
+    replica.setUsername(username);
+    replica.setPassword(password);
+    replica.setMaximumPoolSize(maximumPoolSize);
+    // A replica that is down falls back to the primary quickly...
+    replica.setConnectionTimeout(connectionTimeoutMs);
+    // ...and doesn't prevent the application from starting
+    replica.setInitializationFailTimeout(-1);
+    replica.setReadOnly(true);
+    return new ReadReplicaDataSource(primary, replica, retryAfterMs);
+  }
+
+  @Bean
+  @Primary
+  public DataSource dataSource(ReadReplicaDataSource readReplica) {
+    // The physical connection is fetched at the first statement, when the
+    // transaction's read-only flag is known
+    return new LazyConnectionDataSourceProxy(readReplica);
+  }
+
+  // Hibernate keeps a connection until the end of the request by default
+  // (open session in view), so a read-only transaction followed by a write in
+  // the same request would write through the replica connection. Released
+  // after every transaction, each one gets its own connection.
+  @Bean
+  public HibernatePropertiesCustomizer replicaConnectionHandling() {
+    return properties -> properties.put(AvailableSettings.CONNECTION_HANDLING,
+        PhysicalConnectionHandlingMode.DELAYED_ACQUISITION_AND_RELEASE_AFTER_TRANSACTION);
+  }
+}
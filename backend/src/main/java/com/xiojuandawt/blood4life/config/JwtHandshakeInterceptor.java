@@ -0,0 +1,49 @@
+package com.xiojuandawt.blood4life.config;
+
+import jakarta.servlet.http.Cookie;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.http.server.ServletServerHttpRequest;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.server.HandshakeInterceptor;
+
+import java.util.Map;
+
+// Copies the "jwt" cookie of the HTTP handshake into the WebSocket session
+// attributes, so the STOMP CONNECT frame can be authenticated even when the
+// browser cannot read the (httpOnly) cookie to send it as a header
+@Component
+public class JwtHandshakeInterceptor implements HandshakeInterceptor {
+
+  public static final String JWT_ATTRIBUTE = "jwt";
+
+  @Override
+  public boolean beforeHandshake(
+      ServerHttpRequest request,
+      ServerHttpResponse response,
+      WebSocketHandler wsHandler,
+      Map<String, Object> attributes) {
+
+    if (request instanceof ServletServerHttpRequest servletRequest) {
+      Cookie[] cookies = servletRequest.getServletRequest().getCookies();
+      if (cookies != null) {
+        for (Cookie cookie : cookies) {
+          if ("jwt".equals(cookie.getName())) {
+            attributes.put(JWT_ATTRIBUTE, cookie.getValue());
+            break;
+          }
+        }
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public void afterHandshake(
+      ServerHttpRequest request,
+      ServerHttpResponse response,
+      WebSocketHandler wsHandler,
+      Exception exception) {
+  }
+}
@@ -0,0 +1,117 @@
+package com.xiojuandawt.blood4life.config;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.datasource.AbstractDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.io.Closeable;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+// Picks the database of each connection: the replica inside read-only
+// transactions, the primary for everything else. Read-only transactions still
+// use the primary when the current request has to read its own writes or the
+// replica failed recently. A replica that refuses a connection is skipped for
+// the retry period instead of failing every read in the meantime.
+// Wrapped in a LazyConnectionDataSourceProxy (DataSourceConfig), so the choice
+// is made at the first statement, once the transaction flags are set.
+public class ReadReplicaDataSource extends AbstractDataSource implements Closeable {
+
+  private static final Logger log = LoggerFactory.getLogger(ReadReplicaDataSource.class);
+
+  // Set for the requests that must see the latest writes
+  private static final ThreadLocal<Boolean> STICKY = new ThreadLocal<>();
+
+  private final DataSource primary;
+  private final DataSource replica;
+  private final long retryAfterMs;
+
+  // Until when reads skip the replica, 0 while it is healthy
+  private volatile long downUntil;
+
+  private final LongAdder replicaReads = new LongAdder();
+  private final LongAdder stickyReads = new LongAdder();
+  private final LongAdder fallbackReads = new LongAdder();
+  private final LongAdder failures = new LongAdder();
+
+  public ReadReplicaDataSource(DataSource primary, DataSource replica, long retryAfterMs) {
+    this.primary = primary;
+    this.replica = replica;
+    this.retryAfterMs = retryAfterMs;
+  }
+
+  public static void stickToPrimary() {
+    STICKY.set(Boolean.TRUE);
+  }
+
+  public static void clearSticky() {
+    STICKY.remove();
+  }
+
+  public static boolean isSticky() {
+    return STICKY.get() != null;
+  }
+
+  @Override
+  public Connection getConnection() throws SQLException {
+    if (!TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+      return primary.getConnection();
+    }
+    if (isSticky()) {
+      stickyReads.increment();
+      return primary.getConnection();
+    }
+    long until = downUntil;
+    if (until != 0 && System.currentTimeMillis() < until) {
+      fallbackReads.increment();
+      return primary.getConnection();
+    }
+    try {
+      Connection connection = replica.getConnection();
+      if (until != 0) {
+        downUntil = 0;
+        log.info("Read replica available again");
+      }
+      replicaReads.increment();
+      return connection;
+    } catch (SQLException e) {
+      downUntil = System.currentTimeMillis() + retryAfterMs;
+      failures.increment();
+      fallbackReads.increment();
+      log.warn("Read replica unavailable, reading from the primary for {} ms: {}", retryAfterMs, e.getMessage());
+      return primary.getConnection();
+    }
+  }
+
+  @Override
+  public Connection getConnection(String username, String password) throws SQLException {
+    throw new SQLException("Read replica connections use the configured credentials");
+  }
+
+  public Map<String, Object> getStats() {
+    Map<String, Object> stats = new LinkedHashMap<>();
+    long until = downUntil;
+    stats.put("replicaAvailable", until == 0 || System.currentTimeMillis() >= until);
+    stats.put("replicaReads", replicaReads.sum());
+    // Read-only connections served by the primary to read the request's own writes
+    stats.put("stickyReads", stickyReads.sum());
+    // Read-only connections served by the primary while the replica was down
+    stats.put("fallbackReads", fallbackReads.sum());
+    stats.put("replicaFailures", failures.sum());
+    return stats;
+  }
+
+  // Closes the replica pool; the primary is a bean of its own
+  @Override
+  public void close() throws IOException {
+    if (replica instanceof Closeable closeable) {
+      closeable.close();
+    }
+  }
+}
@@ -0,0 +1,82 @@
+package com.xiojuandawt.blood4life.config;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.Cookie;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseCookie;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.util.Set;
+
+// Read-your-writes for clients of the read replica: a request that may write
+// reads from the primary, and so do the requests of the same client for a few
+// seconds afterwards, while the replica catches up. The "primary-until"
+// cookie carries that deadline so it holds whichever node serves the client.
+// Runs before the security filters so their lookups are routed the same way.
+@Component
+@ConditionalOnProperty(name = "replica.datasource.url")
+@Order(Ordered.HIGHEST_PRECEDENCE)
+public class ReadReplicaStickinessFilter extends OncePerRequestFilter {
+
+  static final String COOKIE = "primary-until";
+
+  private static final Set<String> WRITE_METHODS = Set.of("POST", "PUT", "PATCH", "DELETE");
+
+  @Value("${replica.sticky-seconds:5}")
+  private int stickySeconds;
+
+  @Override
+  protected void doFilterInternal(
+      HttpServletRequest request,
+      HttpServletResponse response,
+      FilterChain chain) throws ServletException, IOException {
+
+    long now = System.currentTimeMillis();
+    boolean writes = WRITE_METHODS.contains(request.getMethod());
+    if (writes && stickySeconds > 0) {
+      // Added before the response is committed
+      ResponseCookie cookie = ResponseCookie.from(COOKIE, Long.toString(now + stickySeconds * 1000L))
+          .httpOnly(true)
+          .secure(false)
+          .path("/")
+          .maxAge(stickySeconds)
+          .sameSite("Lax")
+          .build();
+      response.addHeader(HttpHeaders.SET_COOKIE, cookie.toString());
+    }
+
+    if (writes || this.primaryUntil(request) > now) {
+      ReadReplicaDataSource.stickToPrimary();
+    }
+    try {
+      chain.doFilter(request, response);
+    } finally {
+      ReadReplicaDataSource.clearSticky();
+    }
+  }
+
+  private long primaryUntil(HttpServletRequest request) {
+    if (request.getCookies() == null) {
+      return 0;
+    }
+    for (Cookie cookie : request.getCookies()) {
+      if (COOKIE.equals(cookie.getName())) {
+        try {
+          return Long.parseLong(cookie.getValue());
+        } catch (NumberFormatException e) {
+          return 0;
+        }
+      }
+    }
+    return 0;
+  }
+}
@@ -0,0 +1,23 @@
+package com.xiojuandawt.blood4life.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+
+// Pool for the @Scheduled jobs (resyncs, reloads, cleanups, cluster relay
+// polling...). Without a bean named taskScheduler they would run on the STOMP
+// broker's heartbeat scheduler, so a slow job delays heartbeats.
+@Configuration
+public class SchedulingConfig {
+
+  @Bean
+  public ThreadPoolTaskScheduler taskScheduler(@Value("${scheduling.pool-size:4}") int poolSize) {
+    ThreadPoolTaskScheduler scheduler = new ThreadPoolTaskScheduler();
+    scheduler.setPoolSize(poolSize);
+    scheduler.setThreadNamePrefix("scheduling-");
+    scheduler.setWaitForTasksToCompleteOnShutdown(true);
+    scheduler.setAwaitTerminationSeconds(10);
+    return scheduler;
+  }
+}
@@ -0,0 +1,124 @@
+package com.xiojuandawt.blood4life.config;
+
+import com.xiojuandawt.blood4life.services.JwtService;
+import io.jsonwebtoken.Claims;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessagingException;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.MessageHeaderAccessor;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.security.Principal;
+import java.util.Map;
+
+// Authenticates the STOMP CONNECT frame with the same JWT used by the REST API.
+// The resulting principal name identifies the user ("bloodDonor:5", "hospital:2",
+// ...) and is what convertAndSendToUser() resolves to the user's own sessions.
+// SUBSCRIBE frames to scoped topics are checked against that principal:
+// /topic/admin/** is admin-only and /topic/hospital/{id}/** belongs to that
+// hospital (admins may watch any hospital).
+@Component
+public class WebSocketAuthInterceptor implements ChannelInterceptor {
+
+  private static final String ADMIN_TOPIC_PREFIX = "/topic/admin/";
+  private static final String HOSPITAL_TOPIC_PREFIX = "/topic/hospital/";
+
+  private static final Map<String, String> ROLES = Map.of(
+      "bloodDonor", "ROLE_BLOODDONOR",
+      "hospital", "ROLE_HOSPITAL",
+      "admin", "ROLE_ADMIN");
+
+  @Autowired
+  private JwtService jwtService;
+
+  public static String userName(String userType, Integer id) {
+    return userType + ":" + id;
+  }
+
+  @Override
+  public Message<?> preSend(Message<?> message, MessageChannel channel) {
+    StompHeaderAccessor accessor = MessageHeaderAccessor.getAccessor(message, StompHeaderAccessor.class);
+    if (accessor == null) {
+      return message;
+    }
+    if (StompCommand.SUBSCRIBE.equals(accessor.getCommand())) {
+      if (!this.canSubscribe(accessor.getUser(), accessor.getDestination())) {
+        throw new MessagingException(message, "Forbidden");
+      }
+      return message;
+    }
+    if (!StompCommand.CONNECT.equals(accessor.getCommand())) {
+      return message;
+    }
+
+    UsernamePasswordAuthenticationToken user = this.authenticate(this.resolveToken(accessor));
+    if (user == null) {
+      // Rejected: Spring answers the client with a STOMP ERROR frame
+      throw new MessagingException(message, "Unauthorized");
+    }
+    accessor.setUser(user);
+    return message;
+  }
+
+  private boolean canSubscribe(Principal user, String destination) {
+    if (destination == null) {
+      return true;
+    }
+    String name = user != null ? user.getName() : null;
+    boolean admin = name != null && name.startsWith("admin:");
+
+    if (destination.startsWith(ADMIN_TOPIC_PREFIX)) {
+      return admin;
+    }
+    if (destination.startsWith(HOSPITAL_TOPIC_PREFIX)) {
+      String rest = destination.substring(HOSPITAL_TOPIC_PREFIX.length());
+      int slash = rest.indexOf('/');
+      String hospitalId = slash >= 0 ? rest.substring(0, slash) : rest;
+      return admin || ("hospital:" + hospitalId).equals(name);
+    }
+    return true;
+  }
+
+  private String resolveToken(StompHeaderAccessor accessor) {
+    // Prefer an explicit "Authorization: Bearer ..." header in the CONNECT frame
+    String authHeader = accessor.getFirstNativeHeader("Authorization");
+    if (authHeader != null && authHeader.startsWith("Bearer ")) {
+      return authHeader.substring(7);
+    }
+
+    // Otherwise fall back to the cookie captured during the handshake
+    Map<String, Object> attributes = accessor.getSessionAttributes();
+    if (attributes != null && attributes.get(JwtHandshakeInterceptor.JWT_ATTRIBUTE) instanceof String token) {
+      return token;
+    }
+    return null;
+  }
+
+  private UsernamePasswordAuthenticationToken authenticate(String token) {
+    if (token == null || token.isBlank()) {
+      return null;
+    }
+    try {
+      // extractPayload verifies the signature and rejects expired tokens
+      Claims payload = jwtService.extractPayload(token);
+      Integer userId = payload.get("id", Integer.class);
+      String userType = payload.get("type", String.class);
+      String role = userType != null ? ROLES.get(userType) : null;
+
+      if (userId == null || role == null) {
+        return null;
+      }
+      return new UsernamePasswordAuthenticationToken(
+          userName(userType, userId), null, List.of(new SimpleGrantedAuthority(role)));
+    } catch (Exception e) {
+      return null;
+    }
+  }
+}
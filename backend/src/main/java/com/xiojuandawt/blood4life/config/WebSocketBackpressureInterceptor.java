@@ -0,0 +1,84 @@
+package com.xiojuandawt.blood4life.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHandler;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.support.ExecutorChannelInterceptor;
+import org.springframework.stereotype.Component;
+import org.springframework.util.AntPathMatcher;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Drop-oldest policy for stats-type topics on the client outbound channel.
+// Each frame for one of those destinations replaces the previous one still
+// queued for the same subscription, so a session that falls behind only gets
+// the latest value instead of piling up stale snapshots in heap.
+@Component
+public class WebSocketBackpressureInterceptor implements ExecutorChannelInterceptor {
+
+  private final AntPathMatcher pathMatcher = new AntPathMatcher();
+
+  @Value("#{'${websocket.conflate.destinations:/topic/total-bloodDonors,/topic/hospital/*/stats}'.split(',')}")
+  private List<String> conflatedDestinations;
+
+  // Latest queued frame by session + subscription
+  private final Map<String, Message<?>> latest = new ConcurrentHashMap<>();
+
+  private final AtomicLong droppedFrames = new AtomicLong();
+
+  @Override
+  public Message<?> preSend(Message<?> message, MessageChannel channel) {
+    String key = this.conflationKey(message);
+    if (key != null) {
+      latest.put(key, message);
+    }
+    return message;
+  }
+
+  @Override
+  public Message<?> beforeHandle(Message<?> message, MessageChannel channel, MessageHandler handler) {
+    String key = this.conflationKey(message);
+    if (key == null) {
+      return message;
+    }
+
+    boolean[] current = new boolean[1];
+    latest.computeIfPresent(key, (k, queued) -> {
+      current[0] = queued == message;
+      return current[0] ? null : queued;
+    });
+    if (!current[0]) {
+      // A newer frame for the same subscription is already queued
+      droppedFrames.incrementAndGet();
+      return null;
+    }
+    return message;
+  }
+
+  public long getDroppedFrames() {
+    return droppedFrames.get();
+  }
+
+  public int getPendingConflatedFrames() {
+    return latest.size();
+  }
+
+  private String conflationKey(Message<?> message) {
+    SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.wrap(message);
+    String destination = accessor.getDestination();
+    if (destination == null || accessor.getSessionId() == null) {
+      return null;
+    }
+    for (String pattern : conflatedDestinations) {
+      if (pathMatcher.match(pattern.trim(), destination)) {
+        return accessor.getSessionId() + ":" + accessor.getSubscriptionId();
+      }
+    }
+    return null;
+  }
+}
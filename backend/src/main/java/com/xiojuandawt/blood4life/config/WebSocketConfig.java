@@ -1,23 +1,120 @@
 package com.xiojuandawt.blood4life.config;
 
+import com.xiojuandawt.blood4life.services.ClusterEventBus;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.messaging.simp.config.ChannelRegistration;
 import org.springframework.messaging.simp.config.MessageBrokerRegistry;
+import org.springframework.scheduling.TaskScheduler;
 import org.springframework.web.socket.config.annotation.EnableWebSocketMessageBroker;
 import org.springframework.web.socket.config.annotation.StompEndpointRegistry;
 import org.springframework.web.socket.config.annotation.WebSocketMessageBrokerConfigurer;
+import org.springframework.web.socket.config.annotation.WebSocketTransportRegistration;
 
 @Configuration
 @EnableWebSocketMessageBroker
 public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
 
+    @Autowired
+    private JwtHandshakeInterceptor jwtHandshakeInterceptor;
+
+    @Autowired
+    private WebSocketAuthInterceptor webSocketAuthInterceptor;
+
+    @Autowired
+    private WebSocketBackpressureInterceptor webSocketBackpressureInterceptor;
+
+    // Only present when cluster.event-bus.type is set (multi-node deployments)
+    @Autowired
+    private ObjectProvider<ClusterEventBus> clusterEventBus;
+
+    // Lazy: the broker scheduler is itself created by this configuration
+    @Lazy
+    @Autowired
+    @Qualifier("messageBrokerTaskScheduler")
+    private TaskScheduler messageBrokerTaskScheduler;
+
+    @Value("${websocket.inbound.core-pool-size:4}")
+    private int inboundCorePoolSize;
+
+    @Value("${websocket.inbound.max-pool-size:16}")
+    private int inboundMaxPoolSize;
+
+    @Value("${websocket.inbound.queue-capacity:1000}")
+    private int inboundQueueCapacity;
+
+    @Value("${websocket.outbound.core-pool-size:4}")
+    private int outboundCorePoolSize;
+
+    @Value("${websocket.outbound.max-pool-size:16}")
+    private int outboundMaxPoolSize;
+
+    @Value("${websocket.outbound.queue-capacity:5000}")
+    private int outboundQueueCapacity;
+
+    @Value("${websocket.transport.send-time-limit-ms:10000}")
+    private int sendTimeLimitMs;
+
+    @Value("${websocket.transport.send-buffer-size-limit-bytes:524288}")
+    private int sendBufferSizeLimitBytes;
+
+    @Value("${websocket.transport.message-size-limit-bytes:65536}")
+    private int messageSizeLimitBytes;
+
+    @Value("${websocket.heartbeat-ms:10000}")
+    private long heartbeatMs;
+
     @Override
     public void configureMessageBroker(MessageBrokerRegistry config) {
         // Enable a simple in-memory message broker to send messages to clients
-        // subscribed to "/topic"
-        config.enableSimpleBroker("/topic");
+        // subscribed to "/topic" (broadcast) and "/queue" (per-user destinations)
+        config.enableSimpleBroker("/topic", "/queue")
+                // Server and client heartbeats, so dead connections get closed
+                .setHeartbeatValue(new long[]{heartbeatMs, heartbeatMs})
+                .setTaskScheduler(messageBrokerTaskScheduler);
         // Messages from clients will be routed to @MessageMapping methods with "/app"
         // prefix
         config.setApplicationDestinationPrefixes("/app");
+        // "/user/queue/..." subscriptions are resolved to the sessions of the
+        // authenticated STOMP principal (see WebSocketAuthInterceptor)
+        config.setUserDestinationPrefix("/user");
+        // The simple broker only reaches clients of this JVM: relay every
+        // publish to the other nodes through the cluster event bus
+        clusterEventBus.ifAvailable(bus -> config.configureBrokerChannel()
+                .interceptors(new ClusterRelayInterceptor(bus)));
+    }
+
+    @Override
+    public void configureClientInboundChannel(ChannelRegistration registration) {
+        registration.taskExecutor()
+                .corePoolSize(inboundCorePoolSize)
+                .maxPoolSize(inboundMaxPoolSize)
+                .queueCapacity(inboundQueueCapacity);
+        // Validate the JWT on STOMP CONNECT
+        registration.interceptors(webSocketAuthInterceptor);
+    }
+
+    @Override
+    public void configureClientOutboundChannel(ChannelRegistration registration) {
+        registration.taskExecutor()
+                .corePoolSize(outboundCorePoolSize)
+                .maxPoolSize(outboundMaxPoolSize)
+                .queueCapacity(outboundQueueCapacity);
+        // Keep only the latest queued frame for stats-type topics
+        registration.interceptors(webSocketBackpressureInterceptor);
+    }
+
+    @Override
+    public void configureWebSocketTransport(WebSocketTransportRegistration registration) {
+        // A session that cannot drain its buffer within these limits is closed
+        // (slow-consumer eviction) instead of buffering without bound
+        registration.setSendTimeLimit(sendTimeLimitMs)
+                .setSendBufferSizeLimit(sendBufferSizeLimitBytes)
+                .setMessageSizeLimit(messageSizeLimitBytes);
     }
 
     @Override
@@ -26,6 +123,7 @@ public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
         // Enable SockJS fallback for browsers that don't support WebSocket
         registry.addEndpoint("/ws")
                 .setAllowedOriginPatterns("*") // Allow all origins for development
+                .addInterceptors(jwtHandshakeInterceptor)
                 .withSockJS();
     }
 }
@@ -5,22 +5,36 @@ import com.xiojuandawt.blood4life.dto.HospitalDTO;
 import com.xiojuandawt.blood4life.dto.AppointmentDTO;
 import com.xiojuandawt.blood4life.dto.CampaignDTO;
 import com.xiojuandawt.blood4life.entities.*;
+import com.xiojuandawt.blood4life.exception.ConcurrentUpdateException;
+import com.xiojuandawt.blood4life.exception.ResourceNotFoundException;
 import com.xiojuandawt.blood4life.repositories.*;
+import com.xiojuandawt.blood4life.services.AppointmentChangeService;
+import com.xiojuandawt.blood4life.services.AppointmentPatchService;
+import com.xiojuandawt.blood4life.services.BloodDonorImportService;
 import com.xiojuandawt.blood4life.services.BloodDonorService;
 import com.xiojuandawt.blood4life.services.HospitalService;
 import com.xiojuandawt.blood4life.services.CampaignService;
+import com.xiojuandawt.blood4life.services.DonationRollupService;
+import com.xiojuandawt.blood4life.services.HospitalWebSocketService;
+import com.xiojuandawt.blood4life.services.ResourceVersionService;
+import com.xiojuandawt.blood4life.services.StompBatchPublisher;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.ResponseEntity;
 import org.springframework.http.HttpStatus;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.time.LocalTime;
 import java.util.ArrayList;
 
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 @RestController
@@ -36,6 +50,9 @@ public class AdminController {
   @Autowired
   private CampaignService campaignService;
 
+  @Autowired
+  private AppointmentPatchService appointmentPatchService;
+
   @Autowired
   private AppointmentRepository appointmentRepository;
 
@@ -55,7 +72,22 @@ public class AdminController {
   private PasswordEncoder passwordEncoder;
 
   @Autowired
-  private SimpMessagingTemplate messagingTemplate;
+  private StompBatchPublisher stompBatchPublisher;
+
+  @Autowired
+  private HospitalWebSocketService hospitalWebSocketService;
+
+  @Autowired
+  private AppointmentChangeService appointmentChangeService;
+
+  @Autowired
+  private DonationRollupService donationRollupService;
+
+  @Autowired
+  private ResourceVersionService resourceVersionService;
+
+  @Autowired
+  private BloodDonorImportService bloodDonorImportService;
 
   @GetMapping("/me")
   public ResponseEntity<com.xiojuandawt.blood4life.dto.AdminDTO> obtainMe(
@@ -109,9 +141,52 @@ public class AdminController {
     return ResponseEntity.ok(meDTO);
   }
 
+  // Keyset-paginated donors: q is a prefix of name, email or DNI; pass the
+  // returned nextCursor as ?cursor= for the next page
+  @GetMapping("/blood-donors/page")
+  public ResponseEntity<?> getBloodDonorPage(
+      @RequestParam(required = false) String bloodType,
+      @RequestParam(required = false) String gender,
+      @RequestParam(required = false) String q,
+      @RequestParam(defaultValue = "id") String sort,
+      @RequestParam(defaultValue = "asc") String direction,
+      @RequestParam(required = false) String cursor,
+      @RequestParam(defaultValue = "50") int limit) {
+    try {
+      return ResponseEntity.ok(bloodDonorService.findPage(bloodType, gender, q, sort,
+          "desc".equalsIgnoreCase(direction), cursor, limit));
+    } catch (IllegalArgumentException e) {
+      Map<String, String> body = new HashMap<>();
+      body.put("error", e.getMessage());
+      return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(body);
+    }
+  }
+
   @GetMapping("/blood-donors")
-  public ResponseEntity<List<BloodDonorDTO>> getAllBloodDonors() {
-    return ResponseEntity.ok(bloodDonorService.findAll());
+  public ResponseEntity<List<BloodDonorDTO>> getAllBloodDonors(
+      @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+    String etag = resourceVersionService.etag("admin-blood-donors", ResourceVersionService.Resource.BLOOD_DONORS);
+    return resourceVersionService.conditional(ifNoneMatch, etag, () -> bloodDonorService.findAll());
+  }
+
+  // Bulk registration from a CSV sent as the request body (Content-Type
+  // text/csv), header: dni,firstName,lastName,gender,bloodType,email,password
+  // and optionally phoneNumber,dateOfBirth (yyyy-MM-dd)
+  @PostMapping(value = "/blood-donors/import", consumes = "text/csv")
+  public ResponseEntity<?> importBloodDonors(InputStream csv) {
+    Map<String, String> body = new HashMap<>();
+    try {
+      return ResponseEntity.ok(bloodDonorImportService.importCsv(csv));
+    } catch (IllegalStateException e) {
+      body.put("error", e.getMessage());
+      return ResponseEntity.status(HttpStatus.CONFLICT).body(body);
+    } catch (IllegalArgumentException e) {
+      body.put("error", e.getMessage());
+      return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(body);
+    } catch (IOException e) {
+      body.put("error", "Error reading the CSV file");
+      return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(body);
+    }
   }
 
   @PutMapping("/blood-donors/{id}")
@@ -119,14 +194,39 @@ public class AdminController {
       @RequestBody BloodDonor bloodDonorDetails) {
     // The service update method expects the entity and the id
     try {
-      BloodDonorDTO updatedDonor = bloodDonorService.update(bloodDonorDetails, id);
-      messagingTemplate.convertAndSend("/topic/blood-donors", updatedDonor);
+      BloodDonorDTO updatedDonor = bloodDonorService.update(bloodDonorDetails, id, bloodDonorDetails.getVersion());
+      stompBatchPublisher.publish("/topic/blood-donors", updatedDonor);
       return ResponseEntity.ok(updatedDonor);
+    } catch (ConcurrentUpdateException e) {
+      // Current state, so the admin can merge and retry
+      return bloodDonorService.findAllById(List.of(id)).stream().findFirst()
+          .map(current -> ResponseEntity.status(HttpStatus.CONFLICT).body(current))
+          .orElse(ResponseEntity.notFound().build());
     } catch (Exception e) {
       return ResponseEntity.notFound().build();
     }
   }
 
+  // Only the fields in the body are written, e.g. {"phoneNumber": "...", "version": 3}
+  @PatchMapping("/blood-donors/{id}")
+  public ResponseEntity<?> patchBloodDonor(@PathVariable Integer id, @RequestBody Map<String, Object> fields) {
+    Map<String, String> body = new HashMap<>();
+    try {
+      BloodDonorDTO updatedDonor = bloodDonorService.patch(id, fields);
+      stompBatchPublisher.publish("/topic/blood-donors", updatedDonor);
+      return ResponseEntity.ok(updatedDonor);
+    } catch (ConcurrentUpdateException e) {
+      return bloodDonorService.findAllById(List.of(id)).stream().findFirst()
+          .<ResponseEntity<?>>map(current -> ResponseEntity.status(HttpStatus.CONFLICT).body(current))
+          .orElse(ResponseEntity.notFound().build());
+    } catch (ResourceNotFoundException e) {
+      return ResponseEntity.notFound().build();
+    } catch (IllegalArgumentException e) {
+      body.put("error", e.getMessage());
+      return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(body);
+    }
+  }
+
   @DeleteMapping("/blood-donors/{id}")
   public ResponseEntity<Void> deleteBloodDonor(@PathVariable Integer id) {
     try {
@@ -137,9 +237,30 @@ public class AdminController {
     }
   }
 
+  // Keyset-paginated hospitals: q is a prefix of name, CIF or email
+  @GetMapping("/hospitals/page")
+  public ResponseEntity<?> getHospitalPage(
+      @RequestParam(required = false) String postalCode,
+      @RequestParam(required = false) String q,
+      @RequestParam(defaultValue = "id") String sort,
+      @RequestParam(defaultValue = "asc") String direction,
+      @RequestParam(required = false) String cursor,
+      @RequestParam(defaultValue = "50") int limit) {
+    try {
+      return ResponseEntity.ok(hospitalService.findPage(postalCode, q, sort,
+          "desc".equalsIgnoreCase(direction), cursor, limit));
+    } catch (IllegalArgumentException e) {
+      Map<String, String> body = new HashMap<>();
+      body.put("error", e.getMessage());
+      return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(body);
+    }
+  }
+
   @GetMapping("/hospitals")
-  public ResponseEntity<List<HospitalDTO>> getAllHospitals() {
-    return ResponseEntity.ok(hospitalService.findAll());
+  public ResponseEntity<List<HospitalDTO>> getAllHospitals(
+      @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+    String etag = resourceVersionService.etag("admin-hospitals", ResourceVersionService.Resource.HOSPITALS);
+    return resourceVersionService.conditional(ifNoneMatch, etag, () -> hospitalService.findAll());
   }
 
   @PutMapping("/hospitals/{id}")
@@ -148,14 +269,37 @@ public class AdminController {
     // on the entity.
     hospitalDetails.setId(id);
     try {
-      HospitalDTO updatedHospital = hospitalService.update(hospitalDetails);
-      messagingTemplate.convertAndSend("/topic/hospitals", updatedHospital);
+      HospitalDTO updatedHospital = hospitalService.update(hospitalDetails, hospitalDetails.getVersion());
+      stompBatchPublisher.publish("/topic/hospitals", updatedHospital);
       return ResponseEntity.ok(updatedHospital);
+    } catch (ConcurrentUpdateException e) {
+      return hospitalService.findAllById(List.of(id)).stream().findFirst()
+          .map(current -> ResponseEntity.status(HttpStatus.CONFLICT).body(current))
+          .orElse(ResponseEntity.notFound().build());
     } catch (Exception e) {
       return ResponseEntity.notFound().build();
     }
   }
 
+  @PatchMapping("/hospitals/{id}")
+  public ResponseEntity<?> patchHospital(@PathVariable Integer id, @RequestBody Map<String, Object> fields) {
+    Map<String, String> body = new HashMap<>();
+    try {
+      HospitalDTO updatedHospital = hospitalService.patch(id, fields);
+      stompBatchPublisher.publish("/topic/hospitals", updatedHospital);
+      return ResponseEntity.ok(updatedHospital);
+    } catch (ConcurrentUpdateException e) {
+      return hospitalService.findAllById(List.of(id)).stream().findFirst()
+          .<ResponseEntity<?>>map(current -> ResponseEntity.status(HttpStatus.CONFLICT).body(current))
+          .orElse(ResponseEntity.notFound().build());
+    } catch (ResourceNotFoundException e) {
+      return ResponseEntity.notFound().build();
+    } catch (IllegalArgumentException e) {
+      body.put("error", e.getMessage());
+      return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(body);
+    }
+  }
+
   @DeleteMapping("/hospitals/{id}")
   public ResponseEntity<Void> deleteHospital(@PathVariable Integer id) {
     try {
@@ -169,25 +313,31 @@ public class AdminController {
   // --- Appointments (Enrollments) ---
 
   @GetMapping("/appointments")
-  public ResponseEntity<List<AppointmentDTO>> getAllAppointments() {
+  public ResponseEntity<List<AppointmentDTO>> getAllAppointments(
+      @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+    // The DTOs carry donor and campaign details too
+    String etag = resourceVersionService.etag("admin-appointments", ResourceVersionService.Resource.APPOINTMENTS,
+        ResourceVersionService.Resource.BLOOD_DONORS, ResourceVersionService.Resource.CAMPAIGNS);
     try {
-      List<Appointment> appointments = appointmentRepository.findAll();
-      List<AppointmentDTO> dtoList = new ArrayList<>();
-
-      for (Appointment app : appointments) {
-        try {
-          dtoList.add(convertAppointmentToDTO(app));
-        } catch (Exception e) {
-          System.err.println("Error converting appointment ID " + app.getId() + ": " + e.getMessage());
-          e.printStackTrace();
-          // Continue with next appointment instead of failing completely
+      return resourceVersionService.conditional(ifNoneMatch, etag, () -> {
+        List<Appointment> appointments = appointmentRepository.findAll();
+        List<AppointmentDTO> dtoList = new ArrayList<>();
+
+        for (Appointment app : appointments) {
+          try {
+            dtoList.add(convertAppointmentToDTO(app));
+          } catch (Exception e) {
+            System.err.println("Error converting appointment ID " + app.getId() + ": " + e.getMessage());
+            e.printStackTrace();
+            // Continue with next appointment instead of failing completely
+          }
         }
-      }
-      return ResponseEntity.ok(dtoList);
+        return dtoList;
+      });
     } catch (Exception e) {
       System.err.println("Error fetching appointments: " + e.getMessage());
       e.printStackTrace();
-      // Return empty list instead of 500 error
+      // Return empty list instead of 500 error (untagged, so it is never revalidated)
       return ResponseEntity.ok(new ArrayList<>());
     }
   }
@@ -197,8 +347,9 @@ public class AdminController {
     Appointment app = new Appointment();
     updateAppointmentFromDTO(app, dto);
     Appointment saved = appointmentRepository.save(app);
+    appointmentChangeService.appointmentSaved(null, saved);
     AppointmentDTO result = convertAppointmentToDTO(saved);
-    messagingTemplate.convertAndSend("/topic/appointments", result);
+    hospitalWebSocketService.notifyAppointmentUpdate(hospitalIdOf(saved), result);
     return ResponseEntity.ok(result);
   }
 
@@ -206,19 +357,62 @@ public class AdminController {
   public ResponseEntity<AppointmentDTO> updateAppointment(@PathVariable Integer id, @RequestBody AppointmentDTO dto) {
     return appointmentRepository.findById(id)
         .map(app -> {
+          // Edited from an outdated copy: send back the current one
+          if (dto.getVersion() != null && !dto.getVersion().equals(app.getVersion())) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(convertAppointmentToDTO(app));
+          }
+          DonationRollupService.Cell before = appointmentChangeService.before(app);
           updateAppointmentFromDTO(app, dto);
-          Appointment updated = appointmentRepository.save(app);
+          Appointment updated;
+          try {
+            updated = appointmentRepository.saveAndFlush(app);
+          } catch (ObjectOptimisticLockingFailureException e) {
+            // Changed between the read and the write
+            return appointmentRepository.findById(id)
+                .map(current -> ResponseEntity.status(HttpStatus.CONFLICT).body(convertAppointmentToDTO(current)))
+                .orElse(ResponseEntity.notFound().build());
+          }
+          appointmentChangeService.appointmentSaved(before, updated);
           AppointmentDTO result = convertAppointmentToDTO(updated);
-          messagingTemplate.convertAndSend("/topic/appointments", result);
+          hospitalWebSocketService.notifyAppointmentUpdate(hospitalIdOf(updated), result);
           return ResponseEntity.ok(result);
         })
         .orElse(ResponseEntity.notFound().build());
   }
 
+  @PatchMapping("/appointments/{id}")
+  public ResponseEntity<?> patchAppointment(@PathVariable Integer id, @RequestBody Map<String, Object> fields) {
+    Map<String, String> body = new HashMap<>();
+    try {
+      Appointment updated = appointmentPatchService.patch(id, fields);
+      AppointmentDTO result = convertAppointmentToDTO(updated);
+      hospitalWebSocketService.notifyAppointmentUpdate(hospitalIdOf(updated), result);
+      return ResponseEntity.ok(result);
+    } catch (ConcurrentUpdateException e) {
+      return appointmentRepository.findById(id)
+          .<ResponseEntity<?>>map(current -> ResponseEntity.status(HttpStatus.CONFLICT)
+              .body(convertAppointmentToDTO(current)))
+          .orElse(ResponseEntity.notFound().build());
+    } catch (ResourceNotFoundException e) {
+      return ResponseEntity.notFound().build();
+    } catch (IllegalArgumentException e) {
+      body.put("error", e.getMessage());
+      return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(body);
+    }
+  }
+
+  private Integer hospitalIdOf(Appointment app) {
+    Campaign campaign = app.getCampaign();
+    return campaign != null && campaign.getHospital() != null ? campaign.getHospital().getId() : null;
+  }
+
   @DeleteMapping("/appointments/{id}")
   public ResponseEntity<Void> deleteAppointment(@PathVariable Integer id) {
-    if (appointmentRepository.existsById(id)) {
+    Optional<Appointment> existing = appointmentRepository.findById(id);
+    if (existing.isPresent()) {
+      DonationRollupService.Cell before = appointmentChangeService.before(existing.get());
       appointmentRepository.deleteById(id);
+      appointmentChangeService.appointmentDeleted(before, id);
       // Opcional: Notificar eliminaciÃ³n (requerirÃ­a un formato de mensaje que el
       // front entienda para borrar)
       return ResponseEntity.noContent().build();
@@ -226,6 +420,18 @@ public class AdminController {
     return ResponseEntity.notFound().build();
   }
 
+  // Rebuilds the daily donation rollup from scratch in the background
+  @PostMapping("/rollups/rebuild")
+  public ResponseEntity<Map<String, String>> rebuildRollups() {
+    Map<String, String> body = new HashMap<>();
+    if (!donationRollupService.startBackfill(true)) {
+      body.put("error", "A rollup rebuild is already running");
+      return ResponseEntity.status(HttpStatus.CONFLICT).body(body);
+    }
+    body.put("status", "started");
+    return ResponseEntity.accepted().body(body);
+  }
+
   @GetMapping("/appointment-statuses")
   public ResponseEntity<List<AppointmentStatus>> getAllAppointmentStatuses() {
     return ResponseEntity.ok(appointmentStatusRepository.findAll());
@@ -252,6 +458,7 @@ public class AdminController {
     dto.setHospitalComment(app.getHospitalComment());
     dto.setDateAppointment(app.getDateAppointment());
     dto.setHourAppointment(app.getHourAppointment());
+    dto.setVersion(app.getVersion());
 
     // Basic donor info for display - Validación de null
     if (app.getBloodDonor() != null) {
@@ -294,8 +501,12 @@ public class AdminController {
   // --- Campaigns ---
 
   @GetMapping("/campaigns")
-  public ResponseEntity<List<CampaignDTO>> getAllCampaigns() {
-    return ResponseEntity.ok(campaignService.findAll());
+  public ResponseEntity<List<CampaignDTO>> getAllCampaigns(
+      @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+    // The DTOs carry the hospital name and the enrolled donor count too
+    String etag = resourceVersionService.etag("admin-campaigns", ResourceVersionService.Resource.CAMPAIGNS,
+        ResourceVersionService.Resource.HOSPITALS, ResourceVersionService.Resource.APPOINTMENTS);
+    return resourceVersionService.conditional(ifNoneMatch, etag, () -> campaignService.findAll());
   }
 
   @PutMapping("/campaigns/{id}")
@@ -306,14 +517,38 @@ public class AdminController {
       // Or just a direct repo save if it's basic fields.
       // Re-using campaignService.updateCampaign which expects bloodTypes list.
       // Let's assume for now admin edits basic fields.
-      CampaignDTO updated = campaignService.updateCampaign(id, campaignDetails, null);
-      messagingTemplate.convertAndSend("/topic/campaigns", updated);
+      CampaignDTO updated = campaignService.updateCampaign(id, campaignDetails, null, campaignDetails.getVersion());
+      stompBatchPublisher.publish("/topic/campaigns", updated);
       return ResponseEntity.ok(updated);
+    } catch (ConcurrentUpdateException e) {
+      return campaignService.findById(id)
+          .map(current -> ResponseEntity.status(HttpStatus.CONFLICT).body(campaignService.parseEntityToDTO(current)))
+          .orElse(ResponseEntity.notFound().build());
     } catch (Exception e) {
       return ResponseEntity.notFound().build();
     }
   }
 
+  @PatchMapping("/campaigns/{id}")
+  public ResponseEntity<?> patchCampaign(@PathVariable Integer id, @RequestBody Map<String, Object> fields) {
+    Map<String, String> body = new HashMap<>();
+    try {
+      CampaignDTO updated = campaignService.patchCampaign(id, fields);
+      stompBatchPublisher.publish("/topic/campaigns", updated);
+      return ResponseEntity.ok(updated);
+    } catch (ConcurrentUpdateException e) {
+      return campaignService.findById(id)
+          .<ResponseEntity<?>>map(current -> ResponseEntity.status(HttpStatus.CONFLICT)
+              .body(campaignService.parseEntityToDTO(current)))
+          .orElse(ResponseEntity.notFound().build());
+    } catch (ResourceNotFoundException e) {
+      return ResponseEntity.notFound().build();
+    } catch (IllegalArgumentException e) {
+      body.put("error", e.getMessage());
+      return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(body);
+    }
+  }
+
   @DeleteMapping("/campaigns/{id}")
   public ResponseEntity<Void> deleteCampaign(@PathVariable Integer id) {
     try {
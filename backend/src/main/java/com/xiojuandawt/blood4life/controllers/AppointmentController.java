@@ -3,13 +3,22 @@ package com.xiojuandawt.blood4life.controllers;
 import com.xiojuandawt.blood4life.dto.AppointmentDTO;
 import com.xiojuandawt.blood4life.entities.Appointment;
 import com.xiojuandawt.blood4life.repositories.*;
+import com.xiojuandawt.blood4life.exception.ConcurrentUpdateException;
+import com.xiojuandawt.blood4life.exception.ResourceNotFoundException;
+import com.xiojuandawt.blood4life.services.AppointmentChangeService;
+import com.xiojuandawt.blood4life.services.AppointmentPatchService;
+import com.xiojuandawt.blood4life.services.DonationRollupService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 @RestController
@@ -29,6 +38,15 @@ public class AppointmentController {
   @Autowired
   private BloodDonorRepository bloodDonorRepository;
 
+  @Autowired
+  private DonationRollupService donationRollupService;
+
+  @Autowired
+  private AppointmentChangeService appointmentChangeService;
+
+  @Autowired
+  private AppointmentPatchService appointmentPatchService;
+
   @GetMapping("/all")
   public List<AppointmentDTO> getAllAppointments() {
     List<Appointment> appointments = appointmentRepository.findAll();
@@ -43,6 +61,7 @@ public class AppointmentController {
       dto.setHospitalComment(appointment.getHospitalComment());
       dto.setDateAppointment(appointment.getDateAppointment());
       dto.setHourAppointment(appointment.getHourAppointment());
+      dto.setVersion(appointment.getVersion());
 
       dtoList.add(dto);
     }
@@ -71,6 +90,7 @@ public class AppointmentController {
     dto.setHospitalComment(appointment.getHospitalComment());
     dto.setDateAppointment(appointment.getDateAppointment());
     dto.setHourAppointment(appointment.getHourAppointment());
+    dto.setVersion(appointment.getVersion());
 
     return ResponseEntity.ok(dto);
   }
@@ -109,6 +129,7 @@ public class AppointmentController {
     }
 
     Appointment saved = appointmentRepository.save(appointment);
+    appointmentChangeService.appointmentSaved(null, saved);
 
     // --- Convert entity -> DTO ---
     AppointmentDTO result = new AppointmentDTO();
@@ -120,6 +141,7 @@ public class AppointmentController {
     result.setHospitalComment(saved.getHospitalComment());
     result.setDateAppointment(saved.getDateAppointment());
     result.setHourAppointment(saved.getHourAppointment());
+    result.setVersion(saved.getVersion());
 
     // Fill donor info
     com.xiojuandawt.blood4life.entities.BloodDonor donor = saved.getBloodDonor();
@@ -159,7 +181,9 @@ public class AppointmentController {
     }
 
     // Notificar vía WebSocket
-    hospitalWebSocketService.notifyAppointmentUpdate(result);
+    hospitalWebSocketService.notifyAppointmentUpdate(saved.getCampaign().getHospital() != null
+        ? saved.getCampaign().getHospital().getId()
+        : null, result);
 
     return ResponseEntity.ok(result);
   }
@@ -177,6 +201,13 @@ public class AppointmentController {
 
     Appointment appointment = optional.get();
 
+    // Edited from an outdated copy: send back the current one
+    if (dto.getVersion() != null && !dto.getVersion().equals(appointment.getVersion())) {
+      return this.conflict(id);
+    }
+
+    DonationRollupService.Cell before = appointmentChangeService.before(appointment);
+
     // Update fields
     appointment.setAppointmentStatus(
         appointmentStatusRepository.findById(dto.getAppointmentStatus().getId())
@@ -193,7 +224,14 @@ public class AppointmentController {
     appointment.setHospitalComment(dto.getHospitalComment());
     appointment.setDateAppointment(dto.getDateAppointment());
 
-    Appointment updated = appointmentRepository.save(appointment);
+    Appointment updated;
+    try {
+      updated = appointmentRepository.saveAndFlush(appointment);
+    } catch (ObjectOptimisticLockingFailureException e) {
+      // Changed between the read and the write
+      return this.conflict(id);
+    }
+    appointmentChangeService.appointmentSaved(before, updated);
 
     // Convert entity -> DTO
     AppointmentDTO result = new AppointmentDTO();
@@ -205,22 +243,51 @@ public class AppointmentController {
     result.setHospitalComment(updated.getHospitalComment());
     result.setDateAppointment(updated.getDateAppointment());
     result.setHourAppointment(updated.getHourAppointment());
+    result.setVersion(updated.getVersion());
 
     // Notificar vía WebSocket
-    hospitalWebSocketService.notifyAppointmentUpdate(result);
+    hospitalWebSocketService.notifyAppointmentUpdate(updated.getCampaign().getHospital() != null
+        ? updated.getCampaign().getHospital().getId()
+        : null, result);
 
     return ResponseEntity.ok(result);
   }
 
+  // Only the fields in the JSON body are written, e.g. {"appointmentStatusId": 2}
+  @PatchMapping("/update/{id}")
+  public ResponseEntity<?> patchAppointment(
+      @PathVariable Integer id,
+      @RequestBody Map<String, Object> fields) {
+    Map<String, String> body = new HashMap<>();
+    try {
+      Appointment updated = appointmentPatchService.patch(id, fields);
+      AppointmentDTO result = this.getAppointmentById(id).getBody();
+      hospitalWebSocketService.notifyAppointmentUpdate(updated.getCampaign().getHospital() != null
+          ? updated.getCampaign().getHospital().getId()
+          : null, result);
+      return ResponseEntity.ok(result);
+    } catch (ConcurrentUpdateException e) {
+      return this.conflict(id);
+    } catch (ResourceNotFoundException e) {
+      return ResponseEntity.notFound().build();
+    } catch (IllegalArgumentException e) {
+      body.put("error", e.getMessage());
+      return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(body);
+    }
+  }
+
   @DeleteMapping("delete/{id}")
   public ResponseEntity<Void> deleteAppointment(
       @PathVariable Integer id) {
 
-    if (!appointmentRepository.existsById(id)) {
+    Optional<Appointment> optional = appointmentRepository.findById(id);
+    if (optional.isEmpty()) {
       return ResponseEntity.notFound().build();
     }
+    DonationRollupService.Cell before = appointmentChangeService.before(optional.get());
 
     appointmentRepository.deleteById(id);
+    appointmentChangeService.appointmentDeleted(before, id);
 
     return ResponseEntity.noContent().build();
   }
@@ -241,6 +308,7 @@ public class AppointmentController {
       dto.setHospitalComment(appointment.getHospitalComment());
       dto.setDateAppointment(appointment.getDateAppointment());
       dto.setHourAppointment(appointment.getHourAppointment());
+      dto.setVersion(appointment.getVersion());
 
       dtoList.add(dto);
     }
@@ -255,10 +323,10 @@ public class AppointmentController {
     java.time.LocalDate monthStart = now.withDayOfMonth(1);
     java.time.LocalDate nextMonthStart = monthStart.plusMonths(1);
 
-    Long count = appointmentRepository.countCompletedDonationsThisMonth(
-        hospitalId, monthStart, nextMonthStart);
+    // Read from the daily rollup instead of scanning appointments
+    long count = donationRollupService.countCompletedDonations(hospitalId, monthStart, nextMonthStart);
 
-    return ResponseEntity.ok(count != null ? count : 0L);
+    return ResponseEntity.ok(count);
   }
 
   @GetMapping("/hospital/{hospitalId}/today")
@@ -279,6 +347,7 @@ public class AppointmentController {
       dto.setHospitalComment(appointment.getHospitalComment());
       dto.setDateAppointment(appointment.getDateAppointment());
       dto.setHourAppointment(appointment.getHourAppointment());
+      dto.setVersion(appointment.getVersion());
 
       // Create BloodDonorDTO
       com.xiojuandawt.blood4life.entities.BloodDonor donor = appointment.getBloodDonor();
@@ -328,6 +397,7 @@ public class AppointmentController {
     dto.setHospitalComment(appointment.getHospitalComment());
     dto.setDateAppointment(appointment.getDateAppointment());
     dto.setHourAppointment(appointment.getHourAppointment());
+    dto.setVersion(appointment.getVersion());
 
     // Fill donor details
     if (appointment.getBloodDonor() != null) {
@@ -351,4 +421,13 @@ public class AppointmentController {
 
     return ResponseEntity.ok(dto);
   }
+
+  // Current state on a conflict, or 404 when the appointment was deleted meanwhile
+  private ResponseEntity<AppointmentDTO> conflict(Integer id) {
+    ResponseEntity<AppointmentDTO> current = this.getAppointmentById(id);
+    if (current.getBody() == null) {
+      return current;
+    }
+    return ResponseEntity.status(HttpStatus.CONFLICT).body(current.getBody());
+  }
 }
\ No newline at end of file
@@ -6,18 +6,21 @@ import com.xiojuandawt.blood4life.entities.BloodDonor;
 import com.xiojuandawt.blood4life.entities.BloodType;
 import com.xiojuandawt.blood4life.entities.Hospital;
 import com.xiojuandawt.blood4life.entities.Image;
+import com.xiojuandawt.blood4life.exception.InvalidImageException;
 import com.xiojuandawt.blood4life.services.BloodDonorService;
 import com.xiojuandawt.blood4life.services.HospitalService;
 import com.xiojuandawt.blood4life.services.ImageService;
 import com.xiojuandawt.blood4life.services.JwtService;
+import com.xiojuandawt.blood4life.services.RegistrationFilterService;
+import com.xiojuandawt.blood4life.services.StompBatchPublisher;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseCookie;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.crypto.password.PasswordEncoder;
-import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 
@@ -50,7 +53,10 @@ public class AuthController {
   private com.xiojuandawt.blood4life.services.LdapService ldapService;
 
   @Autowired
-  private SimpMessagingTemplate messagingTemplate;
+  private StompBatchPublisher stompBatchPublisher;
+
+  @Autowired
+  private RegistrationFilterService registrationFilterService;
 
   @PostMapping("/bloodDonor/register")
   public ResponseEntity<?> registerBloodDonor(
@@ -66,17 +72,20 @@ public class AuthController {
       @RequestParam(value = "image", required = false) MultipartFile imageFile) {
 
     try {
-      if (bloodDonorService.findByEmail(email).isPresent()) {
+      // The filters answer for new values without querying; the unique
+      // indexes catch whatever slips past them
+      if (registrationFilterService.exists(RegistrationFilterService.Key.DONOR_EMAIL, email,
+          value -> bloodDonorService.findByEmail(value).isPresent())) {
         return errorResponse("Email already registered", HttpStatus.CONFLICT);
       }
+      if (registrationFilterService.exists(RegistrationFilterService.Key.DONOR_DNI, dni,
+          bloodDonorService::existsByDni)) {
+        return errorResponse("DNI already registered", HttpStatus.CONFLICT);
+      }
 
       Image imageEntity = null;
       if (imageFile != null && !imageFile.isEmpty()) {
-        String extension = Optional.ofNullable(imageFile.getOriginalFilename())
-            .map(f -> f.contains(".") ? f.substring(f.lastIndexOf(".")) : "")
-            .orElse("");
-        String imageFileName = UUID.randomUUID().toString() + extension;
-        imageEntity = imageService.saveImage(imageFile, imageFileName);
+        imageEntity = imageService.saveImage(imageFile);
       }
 
       BloodType bloodType = bloodDonorService.findBloodTypeById(bloodTypeId)
@@ -109,10 +118,15 @@ public class AuthController {
       responseDTO.setImageName(imageEntity != null ? imageEntity.getName() : null);
 
       // Enviar notificación WebSocket para actualización en tiempo real
-      messagingTemplate.convertAndSend("/topic/blood-donors", responseDTO);
+      stompBatchPublisher.publish("/topic/blood-donors", responseDTO);
 
       return ResponseEntity.status(HttpStatus.CREATED).body(responseDTO);
 
+    } catch (DataIntegrityViolationException e) {
+      // Registered at the same time, or through another instance
+      return errorResponse("Email or DNI already registered", HttpStatus.CONFLICT);
+    } catch (InvalidImageException e) {
+      return errorResponse(e.getMessage(), HttpStatus.BAD_REQUEST);
     } catch (Exception e) {
       return errorResponse(e.getMessage(), HttpStatus.INTERNAL_SERVER_ERROR);
     }
@@ -170,17 +184,18 @@ public class AuthController {
       @RequestParam(value = "image", required = false) MultipartFile imageFile) {
 
     try {
-      if (hospitalService.findHospitalByEmail(email).isPresent()) {
+      if (registrationFilterService.exists(RegistrationFilterService.Key.HOSPITAL_EMAIL, email,
+          value -> hospitalService.findHospitalByEmail(value).isPresent())) {
         return errorResponse("Email already registered", HttpStatus.CONFLICT);
       }
+      if (registrationFilterService.exists(RegistrationFilterService.Key.HOSPITAL_CIF, cif,
+          hospitalService::existsByCif)) {
+        return errorResponse("CIF already registered", HttpStatus.CONFLICT);
+      }
 
       Image imageEntity = null;
       if (imageFile != null && !imageFile.isEmpty()) {
-        String extension = Optional.ofNullable(imageFile.getOriginalFilename())
-            .map(f -> f.contains(".") ? f.substring(f.lastIndexOf(".")) : "")
-            .orElse("");
-        String imageFileName = UUID.randomUUID().toString() + extension;
-        imageEntity = imageService.saveImage(imageFile, imageFileName);
+        imageEntity = imageService.saveImage(imageFile);
       }
 
       Hospital hospital = new Hospital();
@@ -205,10 +220,14 @@ public class AuthController {
       responseDTO.setImageName(imageEntity != null ? imageEntity.getName() : null);
 
       // Enviar notificación WebSocket para actualización en tiempo real
-      messagingTemplate.convertAndSend("/topic/hospitals", responseDTO);
+      stompBatchPublisher.publish("/topic/hospitals", responseDTO);
 
       return ResponseEntity.status(HttpStatus.CREATED).body(responseDTO);
 
+    } catch (DataIntegrityViolationException e) {
+      return errorResponse("Email or CIF already registered", HttpStatus.CONFLICT);
+    } catch (InvalidImageException e) {
+      return errorResponse(e.getMessage(), HttpStatus.BAD_REQUEST);
     } catch (Exception e) {
       return errorResponse(e.getMessage(), HttpStatus.INTERNAL_SERVER_ERROR);
     }
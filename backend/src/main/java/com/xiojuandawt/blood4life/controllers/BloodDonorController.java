@@ -3,8 +3,11 @@ package com.xiojuandawt.blood4life.controllers;
 import com.xiojuandawt.blood4life.dto.BloodDonorDTO;
 import com.xiojuandawt.blood4life.entities.BloodDonor;
 import com.xiojuandawt.blood4life.entities.BloodType;
+import com.xiojuandawt.blood4life.exception.ConcurrentUpdateException;
+import com.xiojuandawt.blood4life.exception.InvalidImageException;
 import com.xiojuandawt.blood4life.exception.ResourceNotFoundException;
 import com.xiojuandawt.blood4life.services.BloodDonorService;
+import com.xiojuandawt.blood4life.services.StompBatchPublisher;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
@@ -68,6 +71,27 @@ public class BloodDonorController {
         .status(HttpStatus.OK).body(meDTO);
   }
 
+  // Keyset-paginated donors: q is a prefix of name, email or DNI; pass the
+  // returned nextCursor as ?cursor= for the next page
+  @GetMapping("/page")
+  public ResponseEntity<?> bloodDonorPage(
+      @RequestParam(required = false) String bloodType,
+      @RequestParam(required = false) String gender,
+      @RequestParam(required = false) String q,
+      @RequestParam(defaultValue = "id") String sort,
+      @RequestParam(defaultValue = "asc") String direction,
+      @RequestParam(required = false) String cursor,
+      @RequestParam(defaultValue = "50") int limit) {
+    try {
+      return ResponseEntity.ok(bloodDonorService.findPage(bloodType, gender, q, sort,
+          "desc".equalsIgnoreCase(direction), cursor, limit));
+    } catch (IllegalArgumentException e) {
+      Map<String, String> body = new HashMap<>();
+      body.put("error", e.getMessage());
+      return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(body);
+    }
+  }
+
   @GetMapping
   public ResponseEntity<List<BloodDonorDTO>> bloodDonorList() {
     List<BloodDonorDTO> bloodDonorList = this.bloodDonorService.findAll();
@@ -77,7 +101,7 @@ public class BloodDonorController {
   }
 
   @Autowired
-  private org.springframework.messaging.simp.SimpMessagingTemplate messagingTemplate;
+  private StompBatchPublisher stompBatchPublisher;
 
   @PutMapping("/{id}")
   public ResponseEntity<?> updateBloodDonor(
@@ -90,7 +114,8 @@ public class BloodDonorController {
       @RequestParam("email") String email,
       @RequestParam(value = "phoneNumber", required = false) String phoneNumber,
       @RequestParam(value = "dateOfBirth", required = false) @org.springframework.format.annotation.DateTimeFormat(pattern = "yyyy-MM-dd") java.util.Date dateOfBirth,
-      @RequestParam(value = "image", required = false) org.springframework.web.multipart.MultipartFile imageFile) {
+      @RequestParam(value = "image", required = false) org.springframework.web.multipart.MultipartFile imageFile,
+      @RequestParam(value = "version", required = false) Long version) {
     try {
       BloodDonor bloodDonorInDatabase = this.bloodDonorService.findByIdWithRole(id)
           .orElseThrow(() -> new ResourceNotFoundException());
@@ -111,29 +136,36 @@ public class BloodDonorController {
 
       // Handle image update if provided
       if (imageFile != null && !imageFile.isEmpty()) {
-        String extension = java.util.Optional.ofNullable(imageFile.getOriginalFilename())
-            .map(f -> f.contains(".") ? f.substring(f.lastIndexOf(".")) : "")
-            .orElse("");
-        String imageFileName = java.util.UUID.randomUUID().toString() + extension;
-        com.xiojuandawt.blood4life.entities.Image imageEntity = imageService.saveImage(imageFile, imageFileName);
+        com.xiojuandawt.blood4life.entities.Image imageEntity = imageService.saveImage(imageFile);
         bloodDonorInDatabase.setImage(imageEntity);
       }
 
       // Save updated donor
-      BloodDonorDTO updatedDTO = this.bloodDonorService.update(bloodDonorInDatabase, id);
+      BloodDonorDTO updatedDTO = this.bloodDonorService.update(bloodDonorInDatabase, id, version);
 
       // Notify WebSocket subscribers about the update
-      messagingTemplate.convertAndSend("/topic/blood-donors", updatedDTO);
+      stompBatchPublisher.publish("/topic/blood-donors", updatedDTO);
 
       return ResponseEntity
           .status(HttpStatus.OK)
           .body(updatedDTO);
+    } catch (ConcurrentUpdateException e) {
+      // Current state, so the client can merge and retry; gone if it was deleted meanwhile
+      return this.bloodDonorService.findAllById(List.of(id)).stream().findFirst()
+          .<ResponseEntity<?>>map(current -> ResponseEntity.status(HttpStatus.CONFLICT).body(current))
+          .orElse(ResponseEntity.notFound().build());
     } catch (ResourceNotFoundException e) {
       Map<String, String> body = new HashMap<>();
       body.put("error", "El donante con id " + id + " no existe");
       return ResponseEntity
           .status(HttpStatus.NOT_FOUND)
           .body(body);
+    } catch (InvalidImageException e) {
+      Map<String, String> body = new HashMap<>();
+      body.put("error", e.getMessage());
+      return ResponseEntity
+          .status(HttpStatus.BAD_REQUEST)
+          .body(body);
     } catch (Exception e) {
       Map<String, String> body = new HashMap<>();
       body.put("error", "Error al actualizar: " + e.getMessage());
@@ -143,6 +175,35 @@ public class BloodDonorController {
     }
   }
 
+  // Partial update of the donor's own profile: only the fields in the JSON
+  // body are written, e.g. {"phoneNumber": "...", "version": 3}
+  @PatchMapping("/{id}")
+  public ResponseEntity<?> patchBloodDonor(
+      @PathVariable Integer id,
+      @RequestBody Map<String, Object> fields,
+      Authentication authentication) {
+    Map<String, String> body = new HashMap<>();
+    if (!(authentication.getPrincipal() instanceof BloodDonor donor) || !donor.getId().equals(id)) {
+      body.put("error", "Solo puedes editar tu propio perfil");
+      return ResponseEntity.status(HttpStatus.FORBIDDEN).body(body);
+    }
+    try {
+      BloodDonorDTO updatedDTO = this.bloodDonorService.patch(id, fields);
+      stompBatchPublisher.publish("/topic/blood-donors", updatedDTO);
+      return ResponseEntity.ok(updatedDTO);
+    } catch (ConcurrentUpdateException e) {
+      return this.bloodDonorService.findAllById(List.of(id)).stream().findFirst()
+          .<ResponseEntity<?>>map(current -> ResponseEntity.status(HttpStatus.CONFLICT).body(current))
+          .orElse(ResponseEntity.notFound().build());
+    } catch (ResourceNotFoundException e) {
+      body.put("error", "El donante con id " + id + " no existe");
+      return ResponseEntity.status(HttpStatus.NOT_FOUND).body(body);
+    } catch (IllegalArgumentException e) {
+      body.put("error", e.getMessage());
+      return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(body);
+    }
+  }
+
   @PostMapping("/change-password")
   public ResponseEntity<?> changePassword(
       @RequestParam("currentPassword") String currentPassword,
@@ -222,7 +283,7 @@ public class BloodDonorController {
       BloodDonor donorInDb = bloodDonorService.findByIdWithRole(donor.getId())
           .orElseThrow(() -> new ResourceNotFoundException());
       donorInDb.setPassword(passwordEncoder.encode(newPassword));
-      bloodDonorService.update(donorInDb, donor.getId());
+      bloodDonorService.update(donorInDb, donor.getId(), null);
 
       Map<String, String> body = new HashMap<>();
       body.put("message", "Contraseña actualizada correctamente");
@@ -1,6 +1,6 @@
 package com.xiojuandawt.blood4life.controllers;
 
-import com.xiojuandawt.blood4life.repositories.BloodDonorRepository;
+import com.xiojuandawt.blood4life.services.BloodDonorCounterService;
 import com.xiojuandawt.blood4life.services.BloodDonorWebSocketService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -15,21 +15,21 @@ public class BloodDonorWebSocketController {
   private static final Logger log = LoggerFactory.getLogger(BloodDonorWebSocketController.class);
 
   @Autowired
-  private BloodDonorRepository bloodDonorRepository;
+  private BloodDonorCounterService bloodDonorCounterService;
 
   @Autowired
   private BloodDonorWebSocketService bloodDonorWebSocketService;
 
   @MessageMapping("/getTotalDonors")
-  @SendTo("/topic/total-bloodDonors")
+  @SendTo(BloodDonorWebSocketService.TOTAL_BLOOD_DONORS_TOPIC)
   public long getTotalDonors() {
-    long totalDonors = bloodDonorRepository.count();
+    long totalDonors = bloodDonorCounterService.getTotal();
     log.info("Solicitud WebSocket de total de donantes. Devolviendo: {}", totalDonors);
     return totalDonors;
   }
 
   public void broadcastTotalDonors() {
-    long totalDonors = bloodDonorRepository.count();
+    long totalDonors = bloodDonorCounterService.getTotal();
     log.info("Transmitiendo total de donantes a todos los suscriptores: {}", totalDonors);
     bloodDonorWebSocketService.sentTotalBloodDonors(totalDonors);
   }
@@ -3,11 +3,14 @@ package com.xiojuandawt.blood4life.controllers;
 import com.xiojuandawt.blood4life.dto.CampaignDTO;
 import com.xiojuandawt.blood4life.entities.Campaign;
 import com.xiojuandawt.blood4life.entities.Hospital;
+import com.xiojuandawt.blood4life.exception.ConcurrentUpdateException;
 import com.xiojuandawt.blood4life.services.CampaignService;
+import com.xiojuandawt.blood4life.services.ResourceVersionService;
+import com.xiojuandawt.blood4life.services.StompBatchPublisher;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
-import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
 
@@ -16,6 +19,7 @@ import java.time.ZonedDateTime;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 
 @RestController
 @RequestMapping("/api/hospital/campaign")
@@ -25,7 +29,7 @@ public class CampaignController {
   private CampaignService campaignService;
 
   @Autowired
-  private SimpMessagingTemplate messagingTemplate;
+  private StompBatchPublisher stompBatchPublisher;
 
   @Autowired
   private com.xiojuandawt.blood4life.repositories.HospitalRepository hospitalRepository;
@@ -36,10 +40,16 @@ public class CampaignController {
   @Autowired
   private com.xiojuandawt.blood4life.services.NotificationService notificationService;
 
+  @Autowired
+  private ResourceVersionService resourceVersionService;
+
   @GetMapping("/all")
-  public ResponseEntity<List<CampaignDTO>> getAllCampaigns() {
-    List<CampaignDTO> campaigns = campaignService.findAll();
-    return ResponseEntity.ok(campaigns);
+  public ResponseEntity<List<CampaignDTO>> getAllCampaigns(
+      @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+    // The DTOs carry the hospital name and the enrolled donor count too
+    String etag = resourceVersionService.etag("campaigns", ResourceVersionService.Resource.CAMPAIGNS,
+        ResourceVersionService.Resource.HOSPITALS, ResourceVersionService.Resource.APPOINTMENTS);
+    return resourceVersionService.conditional(ifNoneMatch, etag, () -> campaignService.findAll());
   }
 
   @PostMapping("/create")
@@ -155,7 +165,7 @@ public class CampaignController {
       Map<String, Object> wsMessage = new HashMap<>();
       wsMessage.put("type", "CAMPAIGN_CREATED");
       wsMessage.put("campaign", createdCampaign);
-      messagingTemplate.convertAndSend("/topic/campaigns", wsMessage);
+      stompBatchPublisher.publish("/topic/campaigns", wsMessage);
 
       return ResponseEntity
           .status(HttpStatus.CREATED)
@@ -216,6 +226,7 @@ public class CampaignController {
       @RequestParam("location") String location,
       @RequestParam("requiredDonorQuantity") Integer requiredDonorQuantity,
       @RequestParam("requiredBloodTypes") List<String> requiredBloodTypes,
+      @RequestParam(value = "version", required = false) Long version,
       Authentication authentication) {
 
     try {
@@ -276,16 +287,22 @@ public class CampaignController {
       updatedCampaign.setRequiredDonorQuantity(requiredDonorQuantity);
 
       // Update campaign with blood types
-      CampaignDTO updated = campaignService.updateCampaign(id, updatedCampaign, requiredBloodTypes);
+      CampaignDTO updated = campaignService.updateCampaign(id, updatedCampaign, requiredBloodTypes, version);
 
       // Send WebSocket notification
       Map<String, Object> wsMessage = new HashMap<>();
       wsMessage.put("type", "CAMPAIGN_UPDATED");
       wsMessage.put("campaign", updated);
-      messagingTemplate.convertAndSend("/topic/campaigns", wsMessage);
+      stompBatchPublisher.publish("/topic/campaigns", wsMessage);
 
       return ResponseEntity.ok(updated);
 
+    } catch (ConcurrentUpdateException e) {
+      // Current state, so the client can merge and retry
+      return campaignService.findById(id)
+          .<ResponseEntity<?>>map(campaign -> ResponseEntity.status(HttpStatus.CONFLICT)
+              .body(campaignService.parseEntityToDTO(campaign)))
+          .orElse(ResponseEntity.notFound().build());
     } catch (ClassCastException e) {
       Map<String, String> body = new HashMap<>();
       body.put("error", "Usuario no autorizado");
@@ -301,6 +318,44 @@ public class CampaignController {
     }
   }
 
+  // Only the fields in the JSON body are written, e.g. {"location": "...", "version": 3}
+  @PatchMapping("/{id}")
+  public ResponseEntity<?> patchCampaign(
+      @PathVariable Integer id,
+      @RequestBody Map<String, Object> fields,
+      Authentication authentication) {
+    Map<String, String> body = new HashMap<>();
+    Hospital hospital = (Hospital) authentication.getPrincipal();
+    Optional<Campaign> existingCampaign = campaignService.findById(id);
+    if (existingCampaign.isEmpty()) {
+      body.put("error", "Campaña no encontrada");
+      return ResponseEntity.status(HttpStatus.NOT_FOUND).body(body);
+    }
+    if (existingCampaign.get().getHospital().getId() != hospital.getId()) {
+      body.put("error", "No tienes permisos para editar esta campaña");
+      return ResponseEntity.status(HttpStatus.FORBIDDEN).body(body);
+    }
+
+    try {
+      CampaignDTO updated = campaignService.patchCampaign(id, fields);
+
+      Map<String, Object> wsMessage = new HashMap<>();
+      wsMessage.put("type", "CAMPAIGN_UPDATED");
+      wsMessage.put("campaign", updated);
+      stompBatchPublisher.publish("/topic/campaigns", wsMessage);
+
+      return ResponseEntity.ok(updated);
+    } catch (ConcurrentUpdateException e) {
+      return campaignService.findById(id)
+          .<ResponseEntity<?>>map(campaign -> ResponseEntity.status(HttpStatus.CONFLICT)
+              .body(campaignService.parseEntityToDTO(campaign)))
+          .orElse(ResponseEntity.notFound().build());
+    } catch (IllegalArgumentException e) {
+      body.put("error", e.getMessage());
+      return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(body);
+    }
+  }
+
   @DeleteMapping("/{id}")
   public ResponseEntity<?> deleteCampaign(
       @PathVariable Integer id,
@@ -331,7 +386,7 @@ public class CampaignController {
           "type", "CAMPAIGN_DELETED",
           "campaignId", id,
           "timestamp", ZonedDateTime.now().toString());
-      messagingTemplate.convertAndSend("/topic/campaigns", wsMessage);
+      stompBatchPublisher.publish("/topic/campaigns", wsMessage);
 
       Map<String, String> body = new HashMap<>();
       body.put("status", "OK");
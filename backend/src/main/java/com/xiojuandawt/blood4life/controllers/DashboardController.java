@@ -2,7 +2,8 @@ package com.xiojuandawt.blood4life.controllers;
 
 import com.xiojuandawt.blood4life.entities.BloodDonor;
 import com.xiojuandawt.blood4life.entities.Hospital;
-import com.xiojuandawt.blood4life.repositories.BloodDonorRepository;
+import com.xiojuandawt.blood4life.dto.DashboardStatsDTO;
+import com.xiojuandawt.blood4life.services.DashboardStatsService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.lang.Nullable;
 import org.springframework.security.core.Authentication;
@@ -11,15 +12,12 @@ import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 
-import java.util.ArrayList;
-import java.util.List;
-
 @Controller
 @RequestMapping("/dashboard")
 public class DashboardController {
 
   @Autowired
-  private BloodDonorRepository bloodDonorRepository;
+  private DashboardStatsService dashboardStatsService;
 
   @GetMapping
   public String getDashboard(Model model, @Nullable Authentication authentication) {
@@ -43,35 +41,17 @@ public class DashboardController {
     }
 
     // Get statistics (same for both user types for now)
-    List<Object[]> bloodTypeStats = bloodDonorRepository.countDonorsByBloodType();
-    List<Object[]> genderStats = bloodDonorRepository.countDonorsByGender();
+    DashboardStatsDTO stats = dashboardStatsService.getSnapshot();
 
     // Add attributes to model
     model.addAttribute("userType", userType);
     model.addAttribute("userName", userName);
-    model.addAttribute("bloodTypeLabels", getLabels(bloodTypeStats));
-    model.addAttribute("bloodTypeCounts", getCounts(bloodTypeStats));
-    model.addAttribute("genderLabels", getLabels(genderStats));
-    model.addAttribute("genderCounts", getCounts(genderStats));
+    model.addAttribute("bloodTypeLabels", stats.getBloodTypeLabels());
+    model.addAttribute("bloodTypeCounts", stats.getBloodTypeCounts());
+    model.addAttribute("genderLabels", stats.getGenderLabels());
+    model.addAttribute("genderCounts", stats.getGenderCounts());
 
     // Return the same template for both user types (mixed template)
     return "bloodDonorDashboard";
   }
-
-  private List<String> getLabels(List<Object[]> stats) {
-    List<String> labels = new ArrayList<>();
-    for (Object[] row : stats) {
-      labels.add((String) row[0]);
-    }
-    return labels;
-  }
-
-  private List<Long> getCounts(List<Object[]> stats) {
-    List<Long> counts = new ArrayList<>();
-    for (Object[] row : stats) {
-      counts.add((Long) row[1]);
-    }
-    return counts;
-  }
-
 }
@@ -1,18 +1,31 @@
 package com.xiojuandawt.blood4life.controllers;
 
-import com.xiojuandawt.blood4life.repositories.BloodDonorRepository;
-import com.xiojuandawt.blood4life.repositories.HospitalRepository;
+import com.xiojuandawt.blood4life.dto.DashboardStatsDTO;
+import com.xiojuandawt.blood4life.entities.Admin;
+import com.xiojuandawt.blood4life.entities.Hospital;
+import com.xiojuandawt.blood4life.services.AnalyticsCubeService;
+import com.xiojuandawt.blood4life.services.DashboardStatsService;
+import com.xiojuandawt.blood4life.services.DonationRollupService;
+import com.xiojuandawt.blood4life.services.ResourceVersionService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.CrossOrigin;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.EnumMap;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
 
 @RestController
 @RequestMapping("/api/dashboard")
@@ -20,55 +33,56 @@ import java.util.stream.Collectors;
 public class DashboardGraphicController {
 
   @Autowired
-  private BloodDonorRepository bloodDonorRepository;
+  private DashboardStatsService dashboardStatsService;
 
   @Autowired
-  private com.xiojuandawt.blood4life.repositories.CampaignRepository campaignRepository;
+  private AnalyticsCubeService analyticsCubeService;
 
   @Autowired
-  private HospitalRepository hospitalRepository;
+  private DonationRollupService donationRollupService;
+
+  @Autowired
+  private ResourceVersionService resourceVersionService;
 
   @GetMapping("/stats")
   public ResponseEntity<Map<String, Object>> getDashboardStats(
-      org.springframework.security.core.Authentication authentication) {
-    // Fetch stats
-    List<Object[]> bloodTypeStats = bloodDonorRepository.countDonorsByBloodType();
-    List<Object[]> genderStats = bloodDonorRepository.countDonorsByGender();
-
-    // Prepare data for JSON response
-    // Blood Type Data
-    List<String> bloodTypeLabels = bloodTypeStats.stream()
-        .map(obj -> (String) obj[0])
-        .collect(Collectors.toList());
-    List<Long> bloodTypeCounts = bloodTypeStats.stream()
-        .map(obj -> (Long) obj[1])
-        .collect(Collectors.toList());
-
-    // Gender Data
-    List<String> genderLabels = genderStats.stream()
-        .map(obj -> (String) obj[0])
-        .collect(Collectors.toList());
-    List<Long> genderCounts = genderStats.stream()
-        .map(obj -> (Long) obj[1])
-        .collect(Collectors.toList());
+      org.springframework.security.core.Authentication authentication,
+      @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+    Integer hospitalId = null;
+    if (authentication != null
+        && authentication.getPrincipal() instanceof com.xiojuandawt.blood4life.entities.Hospital) {
+      hospitalId = ((com.xiojuandawt.blood4life.entities.Hospital) authentication.getPrincipal()).getId();
+    }
+
+    // "Mis Campañas" depends on the caller, so the hospital is part of the tag
+    String etag = resourceVersionService.etag("stats-" + (hospitalId != null ? hospitalId : "all"),
+        ResourceVersionService.Resource.BLOOD_DONORS, ResourceVersionService.Resource.HOSPITALS,
+        ResourceVersionService.Resource.CAMPAIGNS);
+    Integer myHospitalId = hospitalId;
+    return resourceVersionService.conditional(ifNoneMatch, etag, () -> this.buildStats(myHospitalId));
+  }
+
+  private Map<String, Object> buildStats(Integer hospitalId) {
+    // Aggregates are kept in memory by DashboardStatsService
+    DashboardStatsDTO stats = dashboardStatsService.getSnapshot();
 
     // Build response
     Map<String, Object> response = new HashMap<>();
 
     Map<String, Object> bloodTypeData = new HashMap<>();
-    bloodTypeData.put("labels", bloodTypeLabels);
-    bloodTypeData.put("counts", bloodTypeCounts);
+    bloodTypeData.put("labels", stats.getBloodTypeLabels());
+    bloodTypeData.put("counts", stats.getBloodTypeCounts());
 
     Map<String, Object> genderData = new HashMap<>();
-    genderData.put("labels", genderLabels);
-    genderData.put("counts", genderCounts);
+    genderData.put("labels", stats.getGenderLabels());
+    genderData.put("counts", stats.getGenderCounts());
 
     response.put("bloodType", bloodTypeData);
     response.put("gender", genderData);
 
     // Total Users Data
-    long totalDonors = bloodDonorRepository.count();
-    long totalHospitals = hospitalRepository.count();
+    long totalDonors = stats.getTotalDonors();
+    long totalHospitals = stats.getTotalHospitals();
 
     Map<String, Object> totalUsersData = new HashMap<>();
     totalUsersData.put("labels", List.of("Donantes", "Hospitales"));
@@ -77,14 +91,11 @@ public class DashboardGraphicController {
     response.put("totalUsers", totalUsersData);
 
     // Campaigns Data
-    long totalCampaigns = campaignRepository.count();
+    long totalCampaigns = stats.getTotalCampaigns();
     long myCampaigns = 0;
 
-    if (authentication != null
-        && authentication.getPrincipal() instanceof com.xiojuandawt.blood4life.entities.Hospital) {
-      com.xiojuandawt.blood4life.entities.Hospital hospital = (com.xiojuandawt.blood4life.entities.Hospital) authentication
-          .getPrincipal();
-      myCampaigns = campaignRepository.countByHospital(hospital);
+    if (hospitalId != null) {
+      myCampaigns = dashboardStatsService.countCampaignsByHospital(hospitalId);
     }
 
     Map<String, Object> campaignsData = new HashMap<>();
@@ -94,17 +105,108 @@ public class DashboardGraphicController {
     response.put("campaigns", campaignsData);
 
     // Breakdown Data (Gender + BloodType)
-    List<Object[]> breakdownStats = bloodDonorRepository.countDonorsByGenderAndBloodType();
-    List<Map<String, Object>> breakdownList = new java.util.ArrayList<>();
-    for (Object[] row : breakdownStats) {
-      Map<String, Object> item = new HashMap<>();
-      item.put("gender", row[0]);
-      item.put("bloodType", row[1]);
-      item.put("count", row[2]);
-      breakdownList.add(item);
+    response.put("breakdown", stats.getBreakdown());
+
+    return response;
+  }
+
+  // Slices of the appointment cube, e.g.
+  // /api/dashboard/cube?groupBy=month,bloodType&hospital=2&status=COMPLETED
+  // Dimensions: month (yyyy-MM), hospital, campaign, bloodType, gender, status.
+  // Hospitals only see their own appointments; admins see every hospital.
+  @GetMapping("/cube")
+  public ResponseEntity<?> getCube(
+      @RequestParam(required = false) String groupBy,
+      @RequestParam Map<String, String> params,
+      Authentication authentication) {
+
+    Object principal = authentication != null ? authentication.getPrincipal() : null;
+    if (!(principal instanceof Hospital) && !(principal instanceof Admin)) {
+      return this.forbidden();
+    }
+
+    List<AnalyticsCubeService.Dimension> dimensions = new ArrayList<>();
+    Map<AnalyticsCubeService.Dimension, String> filters = new EnumMap<>(AnalyticsCubeService.Dimension.class);
+    try {
+      if (groupBy != null && !groupBy.isBlank()) {
+        for (String name : groupBy.split(",")) {
+          AnalyticsCubeService.Dimension dimension = AnalyticsCubeService.Dimension.fromParam(name);
+          if (!dimensions.contains(dimension)) {
+            dimensions.add(dimension);
+          }
+        }
+      }
+      for (AnalyticsCubeService.Dimension dimension : AnalyticsCubeService.Dimension.values()) {
+        String value = params.get(dimension.getParam());
+        if (value != null && !value.isBlank()) {
+          filters.put(dimension, value);
+        }
+      }
+      if (principal instanceof Hospital hospital) {
+        filters.put(AnalyticsCubeService.Dimension.HOSPITAL, String.valueOf(hospital.getId()));
+      }
+
+      long start = System.nanoTime();
+      List<Map<String, Object>> rows = analyticsCubeService.query(dimensions, filters);
+      long tookMicros = (System.nanoTime() - start) / 1000;
+
+      Map<String, Object> response = new LinkedHashMap<>();
+      response.put("groupBy", dimensions.stream().map(AnalyticsCubeService.Dimension::getParam).toList());
+      response.put("rows", rows);
+      response.put("facts", analyticsCubeService.getFactCount());
+      response.put("tookMicros", tookMicros);
+      return ResponseEntity.ok(response);
+    } catch (IllegalArgumentException e) {
+      Map<String, String> body = new HashMap<>();
+      body.put("error", e.getMessage());
+      return ResponseEntity.badRequest().body(body);
+    }
+  }
+
+  // Completed, cancelled and scheduled appointments over the last N months
+  // (or days with granularity=day), read from the daily rollup table.
+  // Hospitals only see their own data; admins may filter by hospital.
+  @GetMapping("/timeseries")
+  public ResponseEntity<?> getTimeSeries(
+      @RequestParam(defaultValue = "12") int months,
+      @RequestParam(defaultValue = "month") String granularity,
+      @RequestParam(required = false) Integer hospital,
+      @RequestParam(required = false) Integer campaign,
+      @RequestParam(required = false) String bloodType,
+      Authentication authentication) {
+
+    Object principal = authentication != null ? authentication.getPrincipal() : null;
+    if (!(principal instanceof Hospital) && !(principal instanceof Admin)) {
+      return this.forbidden();
+    }
+    if (!donationRollupService.isReady()) {
+      Map<String, String> body = new HashMap<>();
+      body.put("error", "Donation statistics are still being prepared, try again later");
+      return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).header("Retry-After", "60").body(body);
+    }
+    if (months < 1 || months > 120) {
+      Map<String, String> body = new HashMap<>();
+      body.put("error", "months must be between 1 and 120");
+      return ResponseEntity.badRequest().body(body);
+    }
+
+    boolean daily = "day".equalsIgnoreCase(granularity);
+    LocalDate currentMonth = LocalDate.now().withDayOfMonth(1);
+    LocalDate from = currentMonth.minusMonths(months - 1L);
+    LocalDate to = currentMonth.plusMonths(1);
+    if (principal instanceof Hospital own) {
+      hospital = own.getId();
     }
-    response.put("breakdown", breakdownList);
 
+    Map<String, Object> response = new LinkedHashMap<>();
+    response.put("granularity", daily ? "day" : "month");
+    response.put("series", donationRollupService.timeSeries(from, to, daily, hospital, campaign, bloodType));
     return ResponseEntity.ok(response);
   }
+
+  private ResponseEntity<Map<String, String>> forbidden() {
+    Map<String, String> body = new HashMap<>();
+    body.put("error", "Only hospitals and admins can query donation analytics");
+    return ResponseEntity.status(HttpStatus.FORBIDDEN).body(body);
+  }
 }
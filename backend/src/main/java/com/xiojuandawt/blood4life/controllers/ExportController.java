@@ -0,0 +1,67 @@
+package com.xiojuandawt.blood4life.controllers;
+
+import com.xiojuandawt.blood4life.services.ExportService;
+import jakarta.servlet.http.HttpServletResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
+@RestController
+@RequestMapping("/api/admin/export")
+public class ExportController {
+
+  private static final Logger log = LoggerFactory.getLogger(ExportController.class);
+
+  @Autowired
+  private ExportService exportService;
+
+  // Streams the whole table as a download: /api/admin/export/blood-donors,
+  // /appointments or /campaigns, ?format=csv|ndjson, ?gzip=true to compress
+  @GetMapping("/{entity}")
+  public ResponseEntity<?> export(
+      @PathVariable String entity,
+      @RequestParam(defaultValue = "csv") String format,
+      @RequestParam(defaultValue = "false") boolean gzip,
+      HttpServletResponse response) {
+    Map<String, String> body = new HashMap<>();
+    Optional<ExportService.Export> export = ExportService.Export.fromPath(entity);
+    if (export.isEmpty()) {
+      body.put("error", "Unknown export: " + entity);
+      return ResponseEntity.status(HttpStatus.NOT_FOUND).body(body);
+    }
+    Optional<ExportService.Format> exportFormat = ExportService.Format.fromParam(format);
+    if (exportFormat.isEmpty()) {
+      body.put("error", "Unsupported format: " + format);
+      return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(body);
+    }
+
+    String fileName = export.get().getPath() + "." + exportFormat.get().getExtension() + (gzip ? ".gz" : "");
+    response.setContentType(gzip ? "application/gzip" : exportFormat.get().getContentType() + ";charset=UTF-8");
+    response.setHeader(HttpHeaders.CONTENT_DISPOSITION,
+        ContentDisposition.attachment().filename(fileName).build().toString());
+    response.setHeader(HttpHeaders.CACHE_CONTROL, "no-store");
+
+    // Written straight to the response on this thread, no async dispatch
+    try {
+      exportService.write(export.get(), exportFormat.get(), gzip, response.getOutputStream());
+      response.flushBuffer();
+    } catch (IOException e) {
+      log.info("Export of {} aborted by the client: {}", entity, e.getMessage());
+    }
+    return null;
+  }
+}
@@ -2,10 +2,15 @@ package com.xiojuandawt.blood4life.controllers;
 
 import com.xiojuandawt.blood4life.dto.HospitalDTO;
 import com.xiojuandawt.blood4life.entities.Hospital;
+import com.xiojuandawt.blood4life.exception.ConcurrentUpdateException;
+import com.xiojuandawt.blood4life.exception.InvalidImageException;
 import com.xiojuandawt.blood4life.exception.ResourceNotFoundException;
 import com.xiojuandawt.blood4life.services.HospitalService;
+import com.xiojuandawt.blood4life.services.ResourceVersionService;
+import com.xiojuandawt.blood4life.services.StompBatchPublisher;
 import jakarta.validation.Valid;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
@@ -21,6 +26,12 @@ public class HospitalController {
   @Autowired
   private HospitalService hospitalService;
 
+  @Autowired
+  private ResourceVersionService resourceVersionService;
+
+  @Autowired
+  private StompBatchPublisher stompBatchPublisher;
+
   @Autowired
   private com.xiojuandawt.blood4life.services.ImageService imageService;
 
@@ -76,10 +87,31 @@ public class HospitalController {
     return ResponseEntity.ok(meDTO);
   }
 
+  // Keyset-paginated hospitals: q is a prefix of name, CIF or email; pass
+  // the returned nextCursor as ?cursor= for the next page
+  @GetMapping("/page")
+  public ResponseEntity<?> getHospitalPage(
+      @RequestParam(required = false) String postalCode,
+      @RequestParam(required = false) String q,
+      @RequestParam(defaultValue = "id") String sort,
+      @RequestParam(defaultValue = "asc") String direction,
+      @RequestParam(required = false) String cursor,
+      @RequestParam(defaultValue = "50") int limit) {
+    try {
+      return ResponseEntity.ok(hospitalService.findPage(postalCode, q, sort,
+          "desc".equalsIgnoreCase(direction), cursor, limit));
+    } catch (IllegalArgumentException e) {
+      Map<String, String> body = new HashMap<>();
+      body.put("error", e.getMessage());
+      return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(body);
+    }
+  }
+
   @GetMapping
-  public ResponseEntity<List<HospitalDTO>> getAllHospitals() {
-    List<HospitalDTO> hospitalDTOList = hospitalService.findAll();
-    return ResponseEntity.ok(hospitalDTOList);
+  public ResponseEntity<List<HospitalDTO>> getAllHospitals(
+      @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+    String etag = resourceVersionService.etag("hospitals", ResourceVersionService.Resource.HOSPITALS);
+    return resourceVersionService.conditional(ifNoneMatch, etag, () -> hospitalService.findAll());
   }
 
   // ----------------- ADD NEW -----------------
@@ -99,7 +131,8 @@ public class HospitalController {
       @RequestParam("postalCode") String postalCode,
       @RequestParam("email") String email,
       @RequestParam("phoneNumber") String phoneNumber,
-      @RequestParam(value = "image", required = false) org.springframework.web.multipart.MultipartFile imageFile) {
+      @RequestParam(value = "image", required = false) org.springframework.web.multipart.MultipartFile imageFile,
+      @RequestParam(value = "version", required = false) Long version) {
     try {
       System.out.println("===== DEBUG updateHospital =====");
       System.out.println("ID: " + id);
@@ -124,21 +157,26 @@ public class HospitalController {
 
       // Handle image update if provided
       if (imageFile != null && !imageFile.isEmpty()) {
-        String extension = java.util.Optional.ofNullable(imageFile.getOriginalFilename())
-            .map(f -> f.contains(".") ? f.substring(f.lastIndexOf(".")) : "")
-            .orElse("");
-        String imageFileName = java.util.UUID.randomUUID().toString() + extension;
-        com.xiojuandawt.blood4life.entities.Image imageEntity = imageService.saveImage(imageFile, imageFileName);
+        com.xiojuandawt.blood4life.entities.Image imageEntity = imageService.saveImage(imageFile);
         hospitalInDatabase.setImage(imageEntity);
       }
 
-      HospitalDTO hospitalDTO = hospitalService.update(hospitalInDatabase);
+      HospitalDTO hospitalDTO = hospitalService.update(hospitalInDatabase, version);
       return ResponseEntity.ok(hospitalDTO);
 
+    } catch (ConcurrentUpdateException e) {
+      // Current state, so the client can merge and retry; gone if it was deleted meanwhile
+      return hospitalService.findAllById(List.of(id)).stream().findFirst()
+          .<ResponseEntity<?>>map(current -> ResponseEntity.status(HttpStatus.CONFLICT).body(current))
+          .orElse(ResponseEntity.notFound().build());
     } catch (ResourceNotFoundException e) {
       Map<String, String> body = new HashMap<>();
       body.put("error", e.getMessage());
       return ResponseEntity.status(HttpStatus.NOT_FOUND).body(body);
+    } catch (InvalidImageException e) {
+      Map<String, String> body = new HashMap<>();
+      body.put("error", e.getMessage());
+      return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(body);
     } catch (Exception e) {
       Map<String, String> body = new HashMap<>();
       body.put("error", "Error al actualizar: " + e.getMessage());
@@ -146,6 +184,34 @@ public class HospitalController {
     }
   }
 
+  // ----------------- PARTIAL UPDATE -----------------
+  // Only the fields in the JSON body are written, on the authenticated hospital
+  @PatchMapping
+  public ResponseEntity<?> patchHospital(
+      @RequestBody Map<String, Object> fields,
+      org.springframework.security.core.Authentication authentication) {
+    Map<String, String> body = new HashMap<>();
+    if (!(authentication.getPrincipal() instanceof Hospital hospital)) {
+      body.put("error", "Usuario no es un hospital");
+      return ResponseEntity.status(HttpStatus.FORBIDDEN).body(body);
+    }
+    try {
+      HospitalDTO updated = hospitalService.patch(hospital.getId(), fields);
+      stompBatchPublisher.publish("/topic/hospitals", updated);
+      return ResponseEntity.ok(updated);
+    } catch (ConcurrentUpdateException e) {
+      return hospitalService.findAllById(List.of(hospital.getId())).stream().findFirst()
+          .<ResponseEntity<?>>map(current -> ResponseEntity.status(HttpStatus.CONFLICT).body(current))
+          .orElse(ResponseEntity.notFound().build());
+    } catch (ResourceNotFoundException e) {
+      body.put("error", e.getMessage());
+      return ResponseEntity.status(HttpStatus.NOT_FOUND).body(body);
+    } catch (IllegalArgumentException e) {
+      body.put("error", e.getMessage());
+      return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(body);
+    }
+  }
+
   // ----------------- CHANGE PASSWORD -----------------
   @PostMapping("/change-password")
   public ResponseEntity<?> changePassword(
@@ -226,7 +292,7 @@ public class HospitalController {
       Hospital hospitalInDb = hospitalService.findById(hospital.getId())
           .orElseThrow(() -> new ResourceNotFoundException("Hospital not found"));
       hospitalInDb.setPassword(passwordEncoder.encode(newPassword));
-      hospitalService.update(hospitalInDb);
+      hospitalService.update(hospitalInDb, null);
 
       Map<String, String> body = new HashMap<>();
       body.put("message", "Contraseña actualizada correctamente");
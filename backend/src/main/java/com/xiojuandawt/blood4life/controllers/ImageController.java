@@ -1,38 +1,68 @@
 package com.xiojuandawt.blood4life.controllers;
 
+import com.xiojuandawt.blood4life.exception.InvalidImageException;
 import com.xiojuandawt.blood4life.services.ImageService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.Resource;
+import org.springframework.http.CacheControl;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 import java.io.IOException;
+import java.time.Duration;
 
 @RestController
 @RequestMapping("/images")
 public class ImageController {
 
+    // Images are stored under the hash of their content and never rewritten,
+    // so a given URL always has the same content
+    private static final CacheControl IMMUTABLE = CacheControl.maxAge(Duration.ofDays(365))
+            .cachePublic()
+            .immutable();
+
     @Autowired
     private ImageService imageService;
 
+    // Returning the Resource lets Spring stream the file with Content-Length,
+    // answer Range requests with 206 and answer If-None-Match /
+    // If-Modified-Since with 304 from the headers below
+    // ?size=64|256|1024 serves the downscaled JPEG variant of the image; a
+    // variant asked for by name takes no ?size
     @GetMapping("/{filename:.+}")
-    public ResponseEntity<byte[]> getImage(@PathVariable String filename) {
+    public ResponseEntity<Resource> getImage(
+            @PathVariable String filename,
+            @RequestParam(required = false) Integer size) {
         try {
-            byte[] imageBytes = imageService.getImage(filename);
+            Resource image = size != null
+                    ? imageService.getImage(filename, size)
+                    : imageService.getImage(filename);
+            String servedName = image.getFilename();
 
             // Determine media type based on file extension
             String mediaType = MediaType.IMAGE_JPEG_VALUE;
-            if (filename.endsWith(".png")) {
+            if (servedName.endsWith(".png")) {
                 mediaType = MediaType.IMAGE_PNG_VALUE;
-            } else if (filename.endsWith(".gif")) {
+            } else if (servedName.endsWith(".gif")) {
                 mediaType = MediaType.IMAGE_GIF_VALUE;
-            } else if (filename.endsWith(".webp")) {
+            } else if (servedName.endsWith(".webp")) {
                 mediaType = "image/webp";
             }
 
+            // The original standing in for a variant not generated yet must
+            // not be cached for good under the ?size URL
+            boolean pendingVariant = size != null && servedName.equals(filename);
+
+            long lastModified = image.lastModified();
             return ResponseEntity.ok()
                     .contentType(org.springframework.http.MediaType.parseMediaType(mediaType))
-                    .body(imageBytes);
+                    .cacheControl(pendingVariant ? CacheControl.noCache() : IMMUTABLE)
+                    .eTag("\"" + servedName + "-" + image.contentLength() + "-" + lastModified + "\"")
+                    .lastModified(lastModified)
+                    .body(image);
+        } catch (InvalidImageException e) {
+            return ResponseEntity.badRequest().build();
         } catch (IOException e) {
             return ResponseEntity.notFound().build();
         }
@@ -0,0 +1,116 @@
+package com.xiojuandawt.blood4life.controllers;
+
+import com.xiojuandawt.blood4life.config.ReadReplicaDataSource;
+import com.xiojuandawt.blood4life.config.WebSocketBackpressureInterceptor;
+import com.xiojuandawt.blood4life.services.ImageCache;
+import com.xiojuandawt.blood4life.services.ImageVariantService;
+import com.xiojuandawt.blood4life.services.RegistrationFilterService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.http.ResponseEntity;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.socket.config.WebSocketMessageBrokerStats;
+import org.springframework.web.socket.messaging.SubProtocolWebSocketHandler;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/admin/metrics")
+public class MetricsController {
+
+  @Autowired
+  private WebSocketMessageBrokerStats webSocketMessageBrokerStats;
+
+  @Autowired
+  private WebSocketBackpressureInterceptor webSocketBackpressureInterceptor;
+
+  @Autowired
+  @Qualifier("clientInboundChannelExecutor")
+  private ThreadPoolTaskExecutor clientInboundChannelExecutor;
+
+  @Autowired
+  @Qualifier("clientOutboundChannelExecutor")
+  private ThreadPoolTaskExecutor clientOutboundChannelExecutor;
+
+  @Autowired
+  private ImageCache imageCache;
+
+  @Autowired
+  private ImageVariantService imageVariantService;
+
+  @Autowired
+  private RegistrationFilterService registrationFilterService;
+
+  // Only present when a read replica is configured
+  @Autowired(required = false)
+  private ReadReplicaDataSource readReplicaDataSource;
+
+  @GetMapping("/websocket")
+  public ResponseEntity<Map<String, Object>> getWebSocketMetrics() {
+    Map<String, Object> body = new LinkedHashMap<>();
+
+    SubProtocolWebSocketHandler.Stats sessions = webSocketMessageBrokerStats.getWebSocketSessionStats();
+    Map<String, Object> sessionMetrics = new LinkedHashMap<>();
+    if (sessions != null) {
+      sessionMetrics.put("total", sessions.getTotalSessions());
+      sessionMetrics.put("webSocket", sessions.getWebSocketSessions());
+      sessionMetrics.put("httpStreaming", sessions.getHttpStreamingSessions());
+      sessionMetrics.put("httpPolling", sessions.getHttpPollingSessions());
+      // Closed because they exceeded the send time or buffer size limit
+      sessionMetrics.put("slowConsumersEvicted", sessions.getLimitExceededSessions());
+      sessionMetrics.put("noMessagesReceived", sessions.getNoMessagesReceivedSessions());
+      sessionMetrics.put("transportErrors", sessions.getTransportErrorSessions());
+    }
+    body.put("sessions", sessionMetrics);
+
+    body.put("inboundChannel", this.executorMetrics(clientInboundChannelExecutor));
+    body.put("outboundChannel", this.executorMetrics(clientOutboundChannelExecutor));
+
+    Map<String, Object> conflation = new LinkedHashMap<>();
+    conflation.put("droppedFrames", webSocketBackpressureInterceptor.getDroppedFrames());
+    conflation.put("pendingFrames", webSocketBackpressureInterceptor.getPendingConflatedFrames());
+    body.put("conflation", conflation);
+
+    return ResponseEntity.ok(body);
+  }
+
+  @GetMapping("/images")
+  public ResponseEntity<Map<String, Object>> getImageMetrics() {
+    Map<String, Object> body = new LinkedHashMap<>();
+    body.put("cache", imageCache.getStats());
+    body.put("variantQueueDepth", imageVariantService.getQueueSize());
+    return ResponseEntity.ok(body);
+  }
+
+  // Per filter: registrations answered without a lookup, and how often a
+  // new value was not ruled out (falsePositiveRate)
+  @GetMapping("/registration-filter")
+  public ResponseEntity<Map<String, Object>> getRegistrationFilterMetrics() {
+    return ResponseEntity.ok(registrationFilterService.getStats());
+  }
+
+  // Where read-only connections went: replica, primary for read-your-writes,
+  // or primary because the replica was down
+  @GetMapping("/replica")
+  public ResponseEntity<Map<String, Object>> getReplicaMetrics() {
+    Map<String, Object> body = new LinkedHashMap<>();
+    body.put("enabled", readReplicaDataSource != null);
+    if (readReplicaDataSource != null) {
+      body.putAll(readReplicaDataSource.getStats());
+    }
+    return ResponseEntity.ok(body);
+  }
+
+  private Map<String, Object> executorMetrics(ThreadPoolTaskExecutor executor) {
+    Map<String, Object> metrics = new LinkedHashMap<>();
+    metrics.put("poolSize", executor.getPoolSize());
+    metrics.put("activeThreads", executor.getActiveCount());
+    metrics.put("queueDepth", executor.getQueueSize());
+    metrics.put("completedTasks", executor.getThreadPoolExecutor().getCompletedTaskCount());
+    return metrics;
+  }
+}
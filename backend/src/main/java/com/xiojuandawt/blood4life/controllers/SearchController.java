@@ -0,0 +1,65 @@
+package com.xiojuandawt.blood4life.controllers;
+
+import com.xiojuandawt.blood4life.entities.Admin;
+import com.xiojuandawt.blood4life.entities.Hospital;
+import com.xiojuandawt.blood4life.services.SearchIndexService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.Authentication;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/search")
+public class SearchController {
+
+  private static final int MAX_LIMIT = 50;
+
+  @Autowired
+  private SearchIndexService searchIndexService;
+
+  // Typeahead over the in-memory index, e.g. /api/search/typeahead?q=juan%20pe
+  // type: bloodDonor, hospital or both when omitted. Donors are only
+  // searchable by hospitals and admins.
+  @GetMapping("/typeahead")
+  public ResponseEntity<?> typeahead(
+      @RequestParam String q,
+      @RequestParam(required = false) String type,
+      @RequestParam(defaultValue = "10") int limit,
+      Authentication authentication) {
+
+    Object principal = authentication != null ? authentication.getPrincipal() : null;
+    boolean canSearchDonors = principal instanceof Hospital || principal instanceof Admin;
+    int max = Math.max(1, Math.min(limit, MAX_LIMIT));
+
+    boolean donors = type == null || type.equals(SearchIndexService.Kind.BLOOD_DONOR.getType());
+    boolean hospitals = type == null || type.equals(SearchIndexService.Kind.HOSPITAL.getType());
+    if (!donors && !hospitals) {
+      Map<String, String> body = new HashMap<>();
+      body.put("error", "Unknown type: " + type);
+      return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(body);
+    }
+    if (donors && type != null && !canSearchDonors) {
+      Map<String, String> body = new HashMap<>();
+      body.put("error", "Only hospitals and admins can search donors");
+      return ResponseEntity.status(HttpStatus.FORBIDDEN).body(body);
+    }
+
+    List<Map<String, Object>> results = new ArrayList<>();
+    if (donors && canSearchDonors) {
+      results.addAll(searchIndexService.typeahead(SearchIndexService.Kind.BLOOD_DONOR, q, max));
+    }
+    if (hospitals && results.size() < max) {
+      results.addAll(searchIndexService.typeahead(SearchIndexService.Kind.HOSPITAL, q, max - results.size()));
+    }
+    return ResponseEntity.ok(results);
+  }
+}
@@ -0,0 +1,73 @@
+package com.xiojuandawt.blood4life.controllers;
+
+import com.xiojuandawt.blood4life.entities.Admin;
+import com.xiojuandawt.blood4life.exception.SyncTokenExpiredException;
+import com.xiojuandawt.blood4life.services.SyncService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.Authentication;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+@RestController
+@RequestMapping("/api/sync")
+public class SyncController {
+
+  @Autowired
+  private SyncService syncService;
+
+  // Without since, returns the token to start syncing from after loading the
+  // full lists. With since, returns what changed after it (410 when the token
+  // is too old and the lists must be reloaded). types=bloodDonor,hospital,...
+  // restricts the entity types; donors are only synced for admins
+  @GetMapping
+  public ResponseEntity<?> sync(
+      @RequestParam(required = false) Long since,
+      @RequestParam(required = false) List<String> types,
+      Authentication authentication) {
+    Map<String, String> body = new HashMap<>();
+    if (since == null) {
+      body.put("token", syncService.currentToken());
+      return ResponseEntity.ok(body);
+    }
+    if (since < 0) {
+      body.put("error", "Invalid sync token");
+      return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(body);
+    }
+
+    Set<SyncService.Entity> entities = authentication.getPrincipal() instanceof Admin
+        ? EnumSet.allOf(SyncService.Entity.class)
+        : EnumSet.of(SyncService.Entity.HOSPITAL, SyncService.Entity.CAMPAIGN);
+    if (types != null && !types.isEmpty()) {
+      Set<SyncService.Entity> requested = EnumSet.noneOf(SyncService.Entity.class);
+      for (String type : types) {
+        SyncService.Entity entity = SyncService.Entity.fromType(type.trim()).orElse(null);
+        if (entity == null) {
+          body.put("error", "Unknown type: " + type);
+          return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(body);
+        }
+        requested.add(entity);
+      }
+      entities.retainAll(requested);
+      if (entities.isEmpty()) {
+        return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+      }
+    }
+
+    try {
+      return ResponseEntity.ok(syncService.changesSince(since, entities));
+    } catch (SyncTokenExpiredException e) {
+      body.put("error", e.getMessage());
+      return ResponseEntity.status(HttpStatus.GONE).body(body);
+    }
+  }
+}
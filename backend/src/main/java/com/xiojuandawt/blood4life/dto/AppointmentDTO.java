@@ -22,6 +22,7 @@ public class AppointmentDTO {
   private BloodDonorDTO bloodDonor;
   private Long donorCompletedAppointments;
   private String campaignName;
+  private Long version;
 
   public AppointmentDTO() {
   }
@@ -115,4 +116,12 @@ public class AppointmentDTO {
   public void setCampaignName(String campaignName) {
     this.campaignName = campaignName;
   }
+
+  public Long getVersion() {
+    return version;
+  }
+
+  public void setVersion(Long version) {
+    this.version = version;
+  }
 }
@@ -17,6 +17,7 @@ public class BloodDonorDTO {
   private String phoneNumber;
   private Date dateOfBirth;
   private String imageName;
+  private Long version;
 
   public BloodDonorDTO() {
   }
@@ -113,4 +114,12 @@ public class BloodDonorDTO {
   public void setImageName(String imageName) {
     this.imageName = imageName;
   }
+
+  public Long getVersion() {
+    return version;
+  }
+
+  public void setVersion(Long version) {
+    this.version = version;
+  }
 }
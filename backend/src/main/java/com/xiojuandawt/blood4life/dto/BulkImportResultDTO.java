@@ -0,0 +1,54 @@
+package com.xiojuandawt.blood4life.dto;
+
+import java.util.List;
+
+// Outcome of a bulk import: how many rows were inserted or rejected, and why
+// each rejected row failed (line numbers count the header as line 1). The
+// report keeps the first errors only; errorsTruncated says some were left out.
+public class BulkImportResultDTO {
+  private final int imported;
+  private final int failed;
+  private final List<RowError> errors;
+  private final boolean errorsTruncated;
+
+  public BulkImportResultDTO(int imported, int failed, List<RowError> errors, boolean errorsTruncated) {
+    this.imported = imported;
+    this.failed = failed;
+    this.errors = errors;
+    this.errorsTruncated = errorsTruncated;
+  }
+
+  public int getImported() {
+    return imported;
+  }
+
+  public int getFailed() {
+    return failed;
+  }
+
+  public List<RowError> getErrors() {
+    return errors;
+  }
+
+  public boolean isErrorsTruncated() {
+    return errorsTruncated;
+  }
+
+  public static class RowError {
+    private final long line;
+    private final String error;
+
+    public RowError(long line, String error) {
+      this.line = line;
+      this.error = error;
+    }
+
+    public long getLine() {
+      return line;
+    }
+
+    public String getError() {
+      return error;
+    }
+  }
+}
@@ -14,6 +14,7 @@ public class CampaignDTO {
     private Integer requiredDonorQuantity;
     private String requiredBloodType;
     private Integer currentDonorCount;
+    private Long version;
 
     // ...
 
@@ -122,4 +123,12 @@ public class CampaignDTO {
     public void setRequiredBloodType(String requiredBloodType) {
         this.requiredBloodType = requiredBloodType;
     }
+
+    public Long getVersion() {
+        return version;
+    }
+
+    public void setVersion(Long version) {
+        this.version = version;
+    }
 }
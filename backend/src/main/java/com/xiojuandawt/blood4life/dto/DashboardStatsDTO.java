@@ -0,0 +1,62 @@
+package com.xiojuandawt.blood4life.dto;
+
+import java.util.List;
+import java.util.Map;
+
+// Immutable snapshot of the dashboard aggregates, shared by every request
+// until the underlying data changes
+public class DashboardStatsDTO {
+  private final List<String> bloodTypeLabels;
+  private final List<Long> bloodTypeCounts;
+  private final List<String> genderLabels;
+  private final List<Long> genderCounts;
+  private final List<Map<String, Object>> breakdown;
+  private final long totalDonors;
+  private final long totalHospitals;
+  private final long totalCampaigns;
+
+  public DashboardStatsDTO(List<String> bloodTypeLabels, List<Long> bloodTypeCounts,
+      List<String> genderLabels, List<Long> genderCounts, List<Map<String, Object>> breakdown,
+      long totalDonors, long totalHospitals, long totalCampaigns) {
+    this.bloodTypeLabels = bloodTypeLabels;
+    this.bloodTypeCounts = bloodTypeCounts;
+    this.genderLabels = genderLabels;
+    this.genderCounts = genderCounts;
+    this.breakdown = breakdown;
+    this.totalDonors = totalDonors;
+    this.totalHospitals = totalHospitals;
+    this.totalCampaigns = totalCampaigns;
+  }
+
+  public List<String> getBloodTypeLabels() {
+    return bloodTypeLabels;
+  }
+
+  public List<Long> getBloodTypeCounts() {
+    return bloodTypeCounts;
+  }
+
+  public List<String> getGenderLabels() {
+    return genderLabels;
+  }
+
+  public List<Long> getGenderCounts() {
+    return genderCounts;
+  }
+
+  public List<Map<String, Object>> getBreakdown() {
+    return breakdown;
+  }
+
+  public long getTotalDonors() {
+    return totalDonors;
+  }
+
+  public long getTotalHospitals() {
+    return totalHospitals;
+  }
+
+  public long getTotalCampaigns() {
+    return totalCampaigns;
+  }
+}
@@ -10,6 +10,7 @@ public class HospitalDTO {
   private String email;
   private String phoneNumber;
   private String imageName; // nuevo campo para la imagen
+  private Long version;
 
   public HospitalDTO() {
   }
@@ -103,4 +104,12 @@ public class HospitalDTO {
   public void setImageName(String imageName) {
     this.imageName = imageName;
   }
+
+  public Long getVersion() {
+    return version;
+  }
+
+  public void setVersion(Long version) {
+    this.version = version;
+  }
 }
@@ -0,0 +1,29 @@
+package com.xiojuandawt.blood4life.dto;
+
+import java.util.List;
+
+// One page of a keyset-paginated listing. nextCursor is passed back as
+// ?cursor= to get the following page and is null on the last one.
+public class KeysetPageDTO<T> {
+  private final List<T> items;
+  private final String nextCursor;
+  private final long total;
+
+  public KeysetPageDTO(List<T> items, String nextCursor, long total) {
+    this.items = items;
+    this.nextCursor = nextCursor;
+    this.total = total;
+  }
+
+  public List<T> getItems() {
+    return items;
+  }
+
+  public String getNextCursor() {
+    return nextCursor;
+  }
+
+  public long getTotal() {
+    return total;
+  }
+}
@@ -0,0 +1,50 @@
+package com.xiojuandawt.blood4life.dto;
+
+import java.util.List;
+import java.util.Map;
+
+// Changes since a sync token, grouped by entity type: the current state of
+// every inserted or updated row and the ids of the deleted ones. token is
+// passed back as ?since= next time; hasMore means another call is needed
+// right away to catch up.
+public class SyncDTO {
+  private final String token;
+  private final boolean hasMore;
+  private final Map<String, EntityChanges> changes;
+
+  public SyncDTO(String token, boolean hasMore, Map<String, EntityChanges> changes) {
+    this.token = token;
+    this.hasMore = hasMore;
+    this.changes = changes;
+  }
+
+  public String getToken() {
+    return token;
+  }
+
+  public boolean isHasMore() {
+    return hasMore;
+  }
+
+  public Map<String, EntityChanges> getChanges() {
+    return changes;
+  }
+
+  public static class EntityChanges {
+    private final List<?> upserted;
+    private final List<Integer> deleted;
+
+    public EntityChanges(List<?> upserted, List<Integer> deleted) {
+      this.upserted = upserted;
+      this.deleted = deleted;
+    }
+
+    public List<?> getUpserted() {
+      return upserted;
+    }
+
+    public List<Integer> getDeleted() {
+      return deleted;
+    }
+  }
+}
@@ -8,8 +8,11 @@ import jakarta.persistence.Id;
 import jakarta.persistence.JoinColumn;
 import jakarta.persistence.ManyToOne;
 import jakarta.persistence.Table;
+import jakarta.persistence.Version;
+import org.hibernate.annotations.DynamicUpdate;
 
 @Entity
+@DynamicUpdate
 @Table(name = "appointment")
 public class Appointment {
     @Id
@@ -43,6 +46,10 @@ public class Appointment {
     @jakarta.persistence.Column(name = "hour_appointment")
     private java.time.LocalTime hourAppointment;
 
+    // Incremented on every update; a write based on an older version fails
+    @Version
+    private Long version;
+
     public Appointment() {
     }
 
@@ -113,6 +120,14 @@ public class Appointment {
         this.hourAppointment = hourAppointment;
     }
 
+    public Long getVersion() {
+        return version;
+    }
+
+    public void setVersion(Long version) {
+        this.version = version;
+    }
+
     @Override
     public String toString() {
         return "Appointment [id=" + id + ", appointmentStatus=" + appointmentStatus +
@@ -1,10 +1,12 @@
 package com.xiojuandawt.blood4life.entities;
 
 import jakarta.persistence.*;
+import org.hibernate.annotations.DynamicUpdate;
 
 import java.util.Date;
 
 @Entity
+@DynamicUpdate
 @Table(name = "blood_donor")
 public class BloodDonor {
 
@@ -30,6 +32,10 @@ public class BloodDonor {
   @JoinColumn(name = "image_id", nullable = true)
   private Image image;
 
+  // Incremented on every update; a write based on an older version fails
+  @Version
+  private Long version;
+
   public BloodDonor() {
   }
 
@@ -150,6 +156,14 @@ public class BloodDonor {
     this.image = image;
   }
 
+  public Long getVersion() {
+    return version;
+  }
+
+  public void setVersion(Long version) {
+    this.version = version;
+  }
+
   @Override
   public String toString() {
     return "BloodDonor{" +
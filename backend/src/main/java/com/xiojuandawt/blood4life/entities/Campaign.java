@@ -1,11 +1,13 @@
 package com.xiojuandawt.blood4life.entities;
 
 import jakarta.persistence.*;
+import org.hibernate.annotations.DynamicUpdate;
 
 import java.time.LocalDate;
 import java.util.List;
 
 @Entity
+@DynamicUpdate
 @Table(name = "campaign")
 public class Campaign {
 
@@ -42,6 +44,10 @@ public class Campaign {
   @JoinTable(name = "blood_type_campaign", joinColumns = @JoinColumn(name = "campaign"), inverseJoinColumns = @JoinColumn(name = "blood_type"))
   private List<BloodType> bloodTypes;
 
+  // Incremented on every update; a write based on an older version fails
+  @Version
+  private Long version;
+
   public Campaign() {
   }
 
@@ -149,4 +155,12 @@ public class Campaign {
   public void setBloodTypes(List<BloodType> bloodTypes) {
     this.bloodTypes = bloodTypes;
   }
+
+  public Long getVersion() {
+    return version;
+  }
+
+  public void setVersion(Long version) {
+    this.version = version;
+  }
 }
@@ -1,8 +1,10 @@
 package com.xiojuandawt.blood4life.entities;
 
 import jakarta.persistence.*;
+import org.hibernate.annotations.DynamicUpdate;
 
 @Entity
+@DynamicUpdate
 @Table(name = "hospital")
 public class Hospital {
 
@@ -22,6 +24,10 @@ public class Hospital {
   @JoinColumn(name = "image_id", nullable = true)
   private Image image;
 
+  // Incremented on every update; a write based on an older version fails
+  @Version
+  private Long version;
+
   public Hospital() {
   }
 
@@ -124,6 +130,14 @@ public class Hospital {
     this.password = password;
   }
 
+  public Long getVersion() {
+    return version;
+  }
+
+  public void setVersion(Long version) {
+    this.version = version;
+  }
+
   @Override
   public String toString() {
     return "Hospital{" +
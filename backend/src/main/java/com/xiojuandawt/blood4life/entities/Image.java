@@ -2,6 +2,8 @@ package com.xiojuandawt.blood4life.entities;
 
 import jakarta.persistence.*;
 
+import java.time.LocalDateTime;
+
 @Entity
 public class Image {
 
@@ -12,6 +14,24 @@ public class Image {
   @Column(name = "file_name")
   private String name;
 
+  // Longest sides of the generated JPEG variants, e.g. "64,256,1024"
+  @Column(name = "variant_sizes")
+  private String variantSizes;
+
+  // SHA-256 of the content; files are stored as "{hash}.{ext}", so identical
+  // uploads share one row and one file (null for older UUID-named images)
+  @Column(name = "content_hash")
+  private String contentHash;
+
+  // Donors and hospitals using the image, recounted by ImageGarbageCollector
+  @Column(name = "ref_count", insertable = false, updatable = false)
+  private Integer refCount;
+
+  // Last upload of this content, so the collector spares images that are
+  // about to be attached
+  @Column(name = "last_used_at")
+  private LocalDateTime lastUsedAt;
+
   public Image() {}
 
   public Image(String name) {
@@ -34,4 +54,32 @@ public class Image {
   public void setName(String name) {
     this.name = name;
   }
+
+  public String getVariantSizes() {
+    return variantSizes;
+  }
+
+  public void setVariantSizes(String variantSizes) {
+    this.variantSizes = variantSizes;
+  }
+
+  public String getContentHash() {
+    return contentHash;
+  }
+
+  public void setContentHash(String contentHash) {
+    this.contentHash = contentHash;
+  }
+
+  public Integer getRefCount() {
+    return refCount;
+  }
+
+  public LocalDateTime getLastUsedAt() {
+    return lastUsedAt;
+  }
+
+  public void setLastUsedAt(LocalDateTime lastUsedAt) {
+    this.lastUsedAt = lastUsedAt;
+  }
 }
\ No newline at end of file
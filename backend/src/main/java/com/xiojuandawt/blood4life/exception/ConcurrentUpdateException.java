@@ -0,0 +1,27 @@
+package com.xiojuandawt.blood4life.exception;
+
+// Thrown when an update was based on an outdated version of the row
+public class ConcurrentUpdateException extends RuntimeException {
+
+  public ConcurrentUpdateException(String message) {
+    super(message);
+  }
+
+  // A client that sends no version gets last-write-wins
+  public static void check(Long expectedVersion, Long currentVersion) {
+    if (expectedVersion != null && !expectedVersion.equals(currentVersion)) {
+      throw new ConcurrentUpdateException("The resource was modified by someone else");
+    }
+  }
+
+  // The version a full update is based on: the client's, else the one the
+  // caller read the entity at. Only an entity built without a version gets
+  // the current one, i.e. last-write-wins.
+  public static Long readVersion(Long expectedVersion, Long entityVersion, Long currentVersion) {
+    if (expectedVersion != null) {
+      return expectedVersion;
+    }
+    return entityVersion != null ? entityVersion : currentVersion;
+  }
+
+}
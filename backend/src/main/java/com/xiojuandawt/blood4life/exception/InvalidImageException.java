@@ -0,0 +1,9 @@
+package com.xiojuandawt.blood4life.exception;
+
+public class InvalidImageException extends RuntimeException {
+
+  public InvalidImageException(String message) {
+    super(message);
+  }
+
+}
@@ -0,0 +1,9 @@
+package com.xiojuandawt.blood4life.exception;
+
+public class SyncTokenExpiredException extends RuntimeException {
+
+  public SyncTokenExpiredException(String message) {
+    super(message);
+  }
+
+}
@@ -20,14 +20,6 @@ public interface AppointmentRepository extends JpaRepository<Appointment, Intege
         // Find appointments by blood donor ID ordered by date descending
         List<Appointment> findByBloodDonorIdOrderByDateAppointmentDesc(Integer bloodDonorId);
 
-        // Count completed donations for a hospital in current month
-        @Query("SELECT COUNT(a) FROM Appointment a WHERE a.campaign.hospital.id = :hospitalId " +
-                        "AND a.appointmentStatus.id = 2 " +
-                        "AND a.dateAppointment >= :monthStart AND a.dateAppointment < :nextMonthStart")
-        Long countCompletedDonationsThisMonth(@Param("hospitalId") Integer hospitalId,
-                        @Param("monthStart") LocalDate monthStart,
-                        @Param("nextMonthStart") LocalDate nextMonthStart);
-
         List<Appointment> findByCampaignHospitalIdAndDateAppointment(Integer hospitalId, LocalDate dateAppointment);
 
         Long countByBloodDonorIdAndAppointmentStatusId(Integer bloodDonorId, Integer statusId);
@@ -42,4 +34,10 @@ public interface AppointmentRepository extends JpaRepository<Appointment, Intege
                         @Param("date") LocalDate date,
                         @Param("time") java.time.LocalTime time,
                         Pageable pageable);
+
+        // Flat rows for the analytics cube: appointment id, date, campaign id,
+        // hospital id, donor id, donor gender, donor blood type and status id
+        @Query("SELECT a.id, a.dateAppointment, c.id, c.hospital.id, d.id, d.gender, bt.type, a.appointmentStatus.id "
+                        + "FROM Appointment a JOIN a.campaign c LEFT JOIN a.bloodDonor d LEFT JOIN d.bloodType bt")
+        List<Object[]> findCubeFacts();
 }
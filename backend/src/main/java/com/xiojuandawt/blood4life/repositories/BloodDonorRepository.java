@@ -2,28 +2,31 @@ package com.xiojuandawt.blood4life.repositories;
 
 import com.xiojuandawt.blood4life.entities.BloodDonor;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
 import java.util.Optional;
 
 @Repository
-public interface BloodDonorRepository extends JpaRepository<BloodDonor, Integer> {
+public interface BloodDonorRepository extends JpaRepository<BloodDonor, Integer>,
+    JpaSpecificationExecutor<BloodDonor> {
   Optional<BloodDonor> findByEmail(String email);
 
-  Optional<BloodDonor> findById(Integer id);
-
-  @Query("SELECT b.bloodType.type, COUNT(b) FROM BloodDonor b GROUP BY b.bloodType.type")
-  java.util.List<Object[]> countDonorsByBloodType();
+  boolean existsByDni(String dni);
 
-  @Query("SELECT b.gender, COUNT(b) FROM BloodDonor b WHERE b.gender IN ('Masculino', 'Femenino', 'Prefiero no decirlo') GROUP BY b.gender")
-  java.util.List<Object[]> countDonorsByGender();
+  Optional<BloodDonor> findById(Integer id);
 
   @org.springframework.transaction.annotation.Transactional
   void deleteByGender(String gender);
 
   java.util.List<BloodDonor> findByBloodTypeIsNull();
 
-  @Query("SELECT b.gender, b.bloodType.type, COUNT(b) FROM BloodDonor b WHERE b.gender IN ('Masculino', 'Femenino', 'Prefiero no decirlo') GROUP BY b.gender, b.bloodType.type")
-  java.util.List<Object[]> countDonorsByGenderAndBloodType();
+  // id, gender and blood type of every donor, to seed the dashboard statistics
+  @Query("SELECT b.id, b.gender, bt.type FROM BloodDonor b LEFT JOIN b.bloodType bt")
+  java.util.List<Object[]> findDonorStatsFacts();
+
+  // Searchable fields of every donor, to seed the typeahead index
+  @Query("SELECT b.id, b.dni, b.firstName, b.lastName, b.email FROM BloodDonor b")
+  java.util.List<Object[]> findSearchFacts();
 }
@@ -2,14 +2,15 @@ package com.xiojuandawt.blood4life.repositories;
 
 import com.xiojuandawt.blood4life.entities.Campaign;
 import com.xiojuandawt.blood4life.entities.Hospital;
-import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.stereotype.Repository;
 
 import java.util.List;
 import java.util.Optional;
 
 @Repository
-public interface CampaignRepository extends CrudRepository<Campaign, Integer> {
+public interface CampaignRepository extends JpaRepository<Campaign, Integer> {
     Optional<Campaign> findById(Integer id);
 
     List<Campaign> findByHospitalId(Integer hospitalId);
@@ -17,4 +18,8 @@ public interface CampaignRepository extends CrudRepository<Campaign, Integer> {
     long countByHospital(Hospital hospital);
 
     List<Campaign> findAll();
+
+    // id and hospital id of every campaign, to seed the dashboard statistics
+    @Query("SELECT c.id, c.hospital.id FROM Campaign c")
+    List<Object[]> findCampaignHospitalIds();
 }
@@ -2,13 +2,26 @@ package com.xiojuandawt.blood4life.repositories;
 
 import com.xiojuandawt.blood4life.entities.Hospital;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
+import java.util.List;
 import java.util.Optional;
 
 @Repository
-public interface HospitalRepository extends JpaRepository<Hospital, Integer> {
+public interface HospitalRepository extends JpaRepository<Hospital, Integer>,
+    JpaSpecificationExecutor<Hospital> {
   Optional<Hospital> findHospitalById(int id);
 
   Optional<Hospital> findHospitalByEmail(String email);
+
+  boolean existsByCif(String cif);
+
+  @Query("SELECT h.id FROM Hospital h")
+  List<Integer> findAllIds();
+
+  // Searchable fields of every hospital, to seed the typeahead index
+  @Query("SELECT h.id, h.name, h.cif, h.postalCode FROM Hospital h")
+  List<Object[]> findSearchFacts();
 }
@@ -4,6 +4,12 @@ import com.xiojuandawt.blood4life.entities.Image;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.stereotype.Repository;
 
+import java.util.Optional;
+
 @Repository
 public interface ImageRepository extends JpaRepository<Image, Integer> {
+
+  Optional<Image> findFirstByName(String name);
+
+  Optional<Image> findFirstByContentHash(String contentHash);
 }
\ No newline at end of file
@@ -0,0 +1,26 @@
+package com.xiojuandawt.blood4life.services;
+
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+// Defers in-memory changes (caches, indexes, counters) until the surrounding
+// transaction commits, so a rollback leaves them untouched. Outside a
+// transaction the change is applied right away.
+final class AfterCommit {
+
+  private AfterCommit() {
+  }
+
+  static void run(Runnable change) {
+    if (TransactionSynchronizationManager.isSynchronizationActive()) {
+      TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+        @Override
+        public void afterCommit() {
+          change.run();
+        }
+      });
+    } else {
+      change.run();
+    }
+  }
+}
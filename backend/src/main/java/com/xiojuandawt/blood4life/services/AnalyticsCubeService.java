@@ -0,0 +1,636 @@
+package com.xiojuandawt.blood4life.services;
+
+import com.xiojuandawt.blood4life.entities.Appointment;
+import com.xiojuandawt.blood4life.entities.AppointmentStatus;
+import com.xiojuandawt.blood4life.entities.BloodDonor;
+import com.xiojuandawt.blood4life.repositories.AppointmentRepository;
+import com.xiojuandawt.blood4life.repositories.AppointmentStatusRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// In-memory analytics cube over appointments. Every appointment is a fact
+// stored in primitive columns (month, campaign, donor, status); hospitals come
+// from the campaign dictionary and blood type / gender from the donor
+// dictionary, so a donor update is reflected in all of its facts at once.
+//
+// Queries scan the columns, filter on any dimension and group by a subset of
+// them (roll-up with fewer dimensions, drill-down with more) without touching
+// the database. Group keys are packed into a single long (mixed radix, months
+// counted from the earliest one); a grouping whose radices overflow a long is
+// keyed by its list of codes instead.
+@Service
+public class AnalyticsCubeService {
+
+  private static final Logger log = LoggerFactory.getLogger(AnalyticsCubeService.class);
+
+  private static final String COMPLETED_STATUS = "COMPLETED";
+
+  public enum Dimension {
+    MONTH("month"),
+    HOSPITAL("hospital"),
+    CAMPAIGN("campaign"),
+    BLOOD_TYPE("bloodType"),
+    GENDER("gender"),
+    STATUS("status");
+
+    private final String param;
+
+    Dimension(String param) {
+      this.param = param;
+    }
+
+    public String getParam() {
+      return param;
+    }
+
+    public static Dimension fromParam(String param) {
+      for (Dimension dimension : values()) {
+        if (dimension.param.equalsIgnoreCase(param.trim())) {
+          return dimension;
+        }
+      }
+      throw new IllegalArgumentException("Unknown dimension: " + param);
+    }
+  }
+
+  @Autowired
+  private AppointmentRepository appointmentRepository;
+
+  @Autowired
+  private AppointmentStatusRepository appointmentStatusRepository;
+
+  @Autowired
+  private ResourceVersionService resourceVersionService;
+
+  private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+  private Cube cube = new Cube();
+
+  private final ReloadBuffer changesDuringReload = new ReloadBuffer();
+
+  @EventListener(ApplicationReadyEvent.class)
+  public void seed() {
+    this.reload();
+  }
+
+  // Rebuilds the cube from the database, which also compacts deleted facts
+  @Scheduled(
+      initialDelayString = "${analytics.cube.reconcile-interval-ms:900000}",
+      fixedDelayString = "${analytics.cube.reconcile-interval-ms:900000}")
+  public void reconcile() {
+    this.reload();
+  }
+
+  public void appointmentSaved(Appointment appointment) {
+    Integer id = appointment.getId();
+    LocalDate date = appointment.getDateAppointment();
+    Integer campaignId = appointment.getCampaign() != null ? appointment.getCampaign().getId() : null;
+    Integer hospitalId = appointment.getCampaign() != null && appointment.getCampaign().getHospital() != null
+        ? appointment.getCampaign().getHospital().getId()
+        : null;
+    BloodDonor donor = appointment.getBloodDonor();
+    Integer statusId = appointment.getAppointmentStatus() != null ? appointment.getAppointmentStatus().getId() : null;
+    if (id == null || campaignId == null) {
+      return;
+    }
+
+    String gender = donor != null ? donor.getGender() : null;
+    String bloodType = donor != null && donor.getBloodType() != null ? donor.getBloodType().getType() : null;
+    Integer donorId = donor != null ? donor.getId() : null;
+
+    AfterCommit.run(() -> {
+      lock.writeLock().lock();
+      try {
+        changesDuringReload.apply(
+            () -> cube.upsertFact(id, date, campaignId, hospitalId, donorId, gender, bloodType, statusId));
+      } finally {
+        lock.writeLock().unlock();
+      }
+    });
+  }
+
+  public void appointmentDeleted(Integer id) {
+    AfterCommit.run(() -> {
+      lock.writeLock().lock();
+      try {
+        changesDuringReload.apply(() -> cube.deleteFact(id));
+      } finally {
+        lock.writeLock().unlock();
+      }
+    });
+  }
+
+  public void donorSaved(BloodDonor donor) {
+    Integer id = donor.getId();
+    String gender = donor.getGender();
+    String bloodType = donor.getBloodType() != null ? donor.getBloodType().getType() : null;
+    AfterCommit.run(() -> {
+      lock.writeLock().lock();
+      try {
+        changesDuringReload.apply(() -> cube.updateDonor(id, gender, bloodType));
+      } finally {
+        lock.writeLock().unlock();
+      }
+    });
+  }
+
+  /**
+   * Aggregates the facts matching every filter, grouped by the given dimensions.
+   *
+   * @param groupBy dimensions of the result rows (empty for a grand total)
+   * @param filters equality filters; values use the same format as the rows
+   * @return one row per group with count, completed and completionRate
+   */
+  public List<Map<String, Object>> query(List<Dimension> groupBy, Map<Dimension, String> filters) {
+    lock.readLock().lock();
+    try {
+      return cube.query(groupBy, filters);
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  public int getFactCount() {
+    lock.readLock().lock();
+    try {
+      return cube.liveFacts;
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  // Changes committed while the facts are read are applied again to the new cube
+  private void reload() {
+    try {
+      changesDuringReload.start();
+      Cube fresh = new Cube();
+      for (AppointmentStatus status : appointmentStatusRepository.findAll()) {
+        fresh.statusNames.put(status.getId(), status.getStatusName());
+        if (COMPLETED_STATUS.equalsIgnoreCase(status.getStatusName())) {
+          fresh.completedStatusId = status.getId();
+        }
+      }
+      for (Object[] row : appointmentRepository.findCubeFacts()) {
+        fresh.upsertFact((Integer) row[0], (LocalDate) row[1], (Integer) row[2], (Integer) row[3],
+            (Integer) row[4], (String) row[5], (String) row[6], (Integer) row[7]);
+      }
+
+      boolean drifted;
+      lock.writeLock().lock();
+      try {
+        // Before the replay, so a replayed change can only cause an extra bump
+        drifted = !cube.sameFacts(fresh);
+        cube = fresh;
+        changesDuringReload.replay();
+      } finally {
+        lock.writeLock().unlock();
+      }
+      if (drifted) {
+        // Appointments changed outside this node; cached listings are stale too
+        resourceVersionService.bump(ResourceVersionService.Resource.APPOINTMENTS);
+      }
+      log.info("Analytics cube loaded with {} appointments", fresh.liveFacts);
+    } catch (Exception e) {
+      changesDuringReload.discard();
+      log.error("Error loading analytics cube: {}", e.getMessage());
+    }
+  }
+
+  // Not thread-safe: guarded by the service lock
+  private static class Cube {
+    private static final int INITIAL_CAPACITY = 1024;
+
+    // Fact columns; factMonth is year * 12 + month (0 when unknown) and
+    // factStatus is -1 for deleted facts
+    private int size;
+    private int liveFacts;
+    private int[] factMonth = new int[INITIAL_CAPACITY];
+    private int[] factCampaign = new int[INITIAL_CAPACITY];
+    private int[] factDonor = new int[INITIAL_CAPACITY];
+    private int[] factStatus = new int[INITIAL_CAPACITY];
+    private final Map<Integer, Integer> slotByAppointment = new HashMap<>();
+
+    // Dimension dictionaries; every code is index + 1, 0 meaning "unknown"
+    private final Dictionary<Integer> hospitals = new Dictionary<>();
+    private final Dictionary<Integer> campaigns = new Dictionary<>();
+    private int[] campaignHospital = new int[INITIAL_CAPACITY];
+    private final Dictionary<Integer> donors = new Dictionary<>();
+    private int[] donorBloodType = new int[INITIAL_CAPACITY];
+    private int[] donorGender = new int[INITIAL_CAPACITY];
+    private final Dictionary<String> bloodTypes = new Dictionary<>();
+    private final Dictionary<String> genders = new Dictionary<>();
+    private final Map<Integer, String> statusNames = new HashMap<>();
+    private Integer completedStatusId;
+    private int minMonth;
+    private int maxMonth;
+    private int maxStatus;
+
+    private void upsertFact(Integer appointmentId, LocalDate date, Integer campaignId, Integer hospitalId,
+        Integer donorId, String gender, String bloodType, Integer statusId) {
+      int campaign = campaigns.code(campaignId);
+      if (campaign >= campaignHospital.length) {
+        campaignHospital = Arrays.copyOf(campaignHospital, campaignHospital.length * 2);
+      }
+      if (hospitalId != null) {
+        campaignHospital[campaign] = hospitals.code(hospitalId);
+      }
+
+      int donor = 0;
+      if (donorId != null) {
+        donor = this.updateDonor(donorId, gender, bloodType);
+      }
+
+      int month = date != null ? date.getYear() * 12 + date.getMonthValue() : 0;
+      int status = statusId != null ? statusId : 0;
+      if (month != 0 && (minMonth == 0 || month < minMonth)) {
+        minMonth = month;
+      }
+      maxMonth = Math.max(maxMonth, month);
+      maxStatus = Math.max(maxStatus, status);
+
+      Integer slot = slotByAppointment.get(appointmentId);
+      if (slot == null) {
+        if (size == factMonth.length) {
+          int capacity = size * 2;
+          factMonth = Arrays.copyOf(factMonth, capacity);
+          factCampaign = Arrays.copyOf(factCampaign, capacity);
+          factDonor = Arrays.copyOf(factDonor, capacity);
+          factStatus = Arrays.copyOf(factStatus, capacity);
+        }
+        slot = size++;
+        slotByAppointment.put(appointmentId, slot);
+        liveFacts++;
+      }
+      factMonth[slot] = month;
+      factCampaign[slot] = campaign;
+      factDonor[slot] = donor;
+      factStatus[slot] = status;
+    }
+
+    private void deleteFact(Integer appointmentId) {
+      Integer slot = slotByAppointment.remove(appointmentId);
+      if (slot != null) {
+        factStatus[slot] = -1;
+        liveFacts--;
+      }
+    }
+
+    // Same appointments with the same dimension values; codes are compared
+    // through the dictionaries, which differ between cubes
+    private boolean sameFacts(Cube other) {
+      if (liveFacts != other.liveFacts) {
+        return false;
+      }
+      for (Map.Entry<Integer, Integer> fact : slotByAppointment.entrySet()) {
+        Integer otherSlot = other.slotByAppointment.get(fact.getKey());
+        if (otherSlot == null || !this.describe(fact.getValue()).equals(other.describe(otherSlot))) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    private List<Object> describe(int slot) {
+      int campaign = factCampaign[slot];
+      int donor = factDonor[slot];
+      return Arrays.asList(
+          factMonth[slot],
+          factStatus[slot],
+          campaigns.value(campaign),
+          campaignHospital[campaign] != 0 ? hospitals.value(campaignHospital[campaign]) : null,
+          donor != 0 ? donors.value(donor) : null,
+          donorBloodType[donor] != 0 ? bloodTypes.value(donorBloodType[donor]) : null,
+          donorGender[donor] != 0 ? genders.value(donorGender[donor]) : null);
+    }
+
+    private int updateDonor(Integer donorId, String gender, String bloodType) {
+      int donor = donors.code(donorId);
+      if (donor >= donorBloodType.length) {
+        donorBloodType = Arrays.copyOf(donorBloodType, donorBloodType.length * 2);
+        donorGender = Arrays.copyOf(donorGender, donorGender.length * 2);
+      }
+      donorBloodType[donor] = bloodType != null ? bloodTypes.code(bloodType) : 0;
+      donorGender[donor] = gender != null ? genders.code(gender) : 0;
+      return donor;
+    }
+
+    private List<Map<String, Object>> query(List<Dimension> groupBy, Map<Dimension, String> filters) {
+      // Filter values translated to codes; a value never seen matches nothing
+      Map<Dimension, Integer> wanted = new EnumMap<>(Dimension.class);
+      for (Map.Entry<Dimension, String> filter : filters.entrySet()) {
+        Integer code = this.parseCode(filter.getKey(), filter.getValue());
+        if (code == null) {
+          return new ArrayList<>();
+        }
+        wanted.put(filter.getKey(), code);
+      }
+      int month = wanted.getOrDefault(Dimension.MONTH, -1);
+      int hospital = wanted.getOrDefault(Dimension.HOSPITAL, -1);
+      int campaign = wanted.getOrDefault(Dimension.CAMPAIGN, -1);
+      int bloodType = wanted.getOrDefault(Dimension.BLOOD_TYPE, -1);
+      int gender = wanted.getOrDefault(Dimension.GENDER, -1);
+      int status = wanted.getOrDefault(Dimension.STATUS, -1);
+
+      Dimension[] dimensions = groupBy.toArray(new Dimension[0]);
+      long[] radix = new long[dimensions.length];
+      for (int d = 0; d < dimensions.length; d++) {
+        radix[d] = this.radix(dimensions[d]);
+      }
+      boolean packed = fitsInLong(radix);
+      int completed = completedStatusId != null ? completedStatusId : -1;
+      int[] codes = new int[Dimension.values().length];
+
+      GroupCounts groups = new GroupCounts();
+      Map<List<Integer>, long[]> compositeGroups = new HashMap<>();
+      for (int i = 0; i < size; i++) {
+        int factStatusCode = factStatus[i];
+        if (factStatusCode < 0) {
+          continue;
+        }
+        int factCampaignCode = factCampaign[i];
+        int factDonorCode = factDonor[i];
+        codes[Dimension.MONTH.ordinal()] = this.monthCode(factMonth[i]);
+        codes[Dimension.HOSPITAL.ordinal()] = campaignHospital[factCampaignCode];
+        codes[Dimension.CAMPAIGN.ordinal()] = factCampaignCode;
+        codes[Dimension.BLOOD_TYPE.ordinal()] = donorBloodType[factDonorCode];
+        codes[Dimension.GENDER.ordinal()] = donorGender[factDonorCode];
+        codes[Dimension.STATUS.ordinal()] = factStatusCode;
+
+        if ((month >= 0 && codes[Dimension.MONTH.ordinal()] != month)
+            || (hospital >= 0 && codes[Dimension.HOSPITAL.ordinal()] != hospital)
+            || (campaign >= 0 && factCampaignCode != campaign)
+            || (bloodType >= 0 && codes[Dimension.BLOOD_TYPE.ordinal()] != bloodType)
+            || (gender >= 0 && codes[Dimension.GENDER.ordinal()] != gender)
+            || (status >= 0 && factStatusCode != status)) {
+          continue;
+        }
+
+        if (packed) {
+          long key = 0;
+          for (int d = 0; d < dimensions.length; d++) {
+            key = key * radix[d] + codes[dimensions[d].ordinal()];
+          }
+          groups.add(key, factStatusCode == completed);
+        } else {
+          Integer[] key = new Integer[dimensions.length];
+          for (int d = 0; d < dimensions.length; d++) {
+            key[d] = codes[dimensions[d].ordinal()];
+          }
+          long[] counts = compositeGroups.computeIfAbsent(Arrays.asList(key), k -> new long[2]);
+          counts[0]++;
+          if (factStatusCode == completed) {
+            counts[1]++;
+          }
+        }
+      }
+
+      return packed
+          ? this.toRows(dimensions, radix, groups)
+          : this.toRows(dimensions, compositeGroups);
+    }
+
+    private List<Map<String, Object>> toRows(Dimension[] dimensions, long[] radix, GroupCounts groups) {
+      long[][] entries = groups.entries();
+      Arrays.sort(entries, (a, b) -> Long.compare(a[0], b[0]));
+
+      List<Map<String, Object>> rows = new ArrayList<>(entries.length);
+      for (long[] entry : entries) {
+        long key = entry[0];
+        int[] codes = new int[dimensions.length];
+        for (int d = dimensions.length - 1; d >= 0; d--) {
+          codes[d] = (int) (key % radix[d]);
+          key /= radix[d];
+        }
+        rows.add(this.row(dimensions, codes, entry[1], entry[2]));
+      }
+      return rows;
+    }
+
+    // Same order as the packed keys: by the codes, first dimension first
+    private List<Map<String, Object>> toRows(Dimension[] dimensions, Map<List<Integer>, long[]> groups) {
+      List<Map.Entry<List<Integer>, long[]>> entries = new ArrayList<>(groups.entrySet());
+      entries.sort((a, b) -> {
+        for (int d = 0; d < dimensions.length; d++) {
+          int compared = Integer.compare(a.getKey().get(d), b.getKey().get(d));
+          if (compared != 0) {
+            return compared;
+          }
+        }
+        return 0;
+      });
+
+      List<Map<String, Object>> rows = new ArrayList<>(entries.size());
+      for (Map.Entry<List<Integer>, long[]> entry : entries) {
+        int[] codes = entry.getKey().stream().mapToInt(Integer::intValue).toArray();
+        rows.add(this.row(dimensions, codes, entry.getValue()[0], entry.getValue()[1]));
+      }
+      return rows;
+    }
+
+    private Map<String, Object> row(Dimension[] dimensions, int[] codes, long count, long completed) {
+      Map<String, Object> row = new LinkedHashMap<>();
+      for (int d = 0; d < dimensions.length; d++) {
+        row.put(dimensions[d].getParam(), this.label(dimensions[d], codes[d]));
+      }
+      row.put("count", count);
+      row.put("completed", completed);
+      row.put("completionRate", count > 0 ? Math.round(completed * 10000.0 / count) / 10000.0 : 0.0);
+      return row;
+    }
+
+    // Whether every key of the grouping fits in a long
+    private static boolean fitsInLong(long[] radix) {
+      long product = 1;
+      for (long r : radix) {
+        if (product > Long.MAX_VALUE / r) {
+          return false;
+        }
+        product *= r;
+      }
+      return true;
+    }
+
+    // Month codes count from the earliest month seen, so the month radix is
+    // the span of the data rather than the year
+    private int monthCode(int month) {
+      return month != 0 ? month - minMonth + 1 : 0;
+    }
+
+    private long radix(Dimension dimension) {
+      switch (dimension) {
+        case MONTH:
+          return maxMonth != 0 ? maxMonth - minMonth + 2L : 1L;
+        case HOSPITAL:
+          return hospitals.size() + 1L;
+        case CAMPAIGN:
+          return campaigns.size() + 1L;
+        case BLOOD_TYPE:
+          return bloodTypes.size() + 1L;
+        case GENDER:
+          return genders.size() + 1L;
+        default:
+          return maxStatus + 1L;
+      }
+    }
+
+    private Object label(Dimension dimension, int code) {
+      if (code == 0) {
+        return null;
+      }
+      switch (dimension) {
+        case MONTH:
+          int month = minMonth + code - 2;
+          return YearMonth.of(month / 12, month % 12 + 1).toString();
+        case HOSPITAL:
+          return hospitals.value(code);
+        case CAMPAIGN:
+          return campaigns.value(code);
+        case BLOOD_TYPE:
+          return bloodTypes.value(code);
+        case GENDER:
+          return genders.value(code);
+        default:
+          return statusNames.getOrDefault(code, String.valueOf(code));
+      }
+    }
+
+    private Integer parseCode(Dimension dimension, String value) {
+      try {
+        switch (dimension) {
+          case MONTH:
+            YearMonth yearMonth = YearMonth.parse(value);
+            int month = yearMonth.getYear() * 12 + yearMonth.getMonthValue();
+            return month >= minMonth && month <= maxMonth ? this.monthCode(month) : null;
+          case HOSPITAL:
+            return hospitals.find(Integer.valueOf(value));
+          case CAMPAIGN:
+            return campaigns.find(Integer.valueOf(value));
+          case BLOOD_TYPE:
+            return bloodTypes.find(value);
+          case GENDER:
+            return genders.find(value);
+          default:
+            for (Map.Entry<Integer, String> status : statusNames.entrySet()) {
+              if (status.getValue().equalsIgnoreCase(value) || status.getKey().toString().equals(value)) {
+                return status.getKey();
+              }
+            }
+            return null;
+        }
+      } catch (RuntimeException e) {
+        throw new IllegalArgumentException("Invalid value for " + dimension.getParam() + ": " + value);
+      }
+    }
+  }
+
+  // Value <-> code (index + 1) mapping of a dimension
+  private static class Dictionary<T> {
+    private final Map<T, Integer> codes = new HashMap<>();
+    private final List<T> values = new ArrayList<>();
+
+    private int code(T value) {
+      Integer code = codes.get(value);
+      if (code == null) {
+        values.add(value);
+        code = values.size();
+        codes.put(value, code);
+      }
+      return code;
+    }
+
+    private Integer find(T value) {
+      return codes.get(value);
+    }
+
+    private T value(int code) {
+      return values.get(code - 1);
+    }
+
+    private int size() {
+      return values.size();
+    }
+  }
+
+  // Open-addressing long -> (count, completed) map, so the scan does not box
+  private static class GroupCounts {
+    private long[] keys = new long[64];
+    private long[] counts = new long[64];
+    private long[] completed = new long[64];
+    private boolean[] used = new boolean[64];
+    private int size;
+
+    private void add(long key, boolean isCompleted) {
+      if (size * 2 >= keys.length) {
+        this.grow();
+      }
+      int slot = this.slot(key, keys, used);
+      if (!used[slot]) {
+        used[slot] = true;
+        keys[slot] = key;
+        size++;
+      }
+      counts[slot]++;
+      if (isCompleted) {
+        completed[slot]++;
+      }
+    }
+
+    private long[][] entries() {
+      long[][] entries = new long[size][];
+      int e = 0;
+      for (int i = 0; i < keys.length; i++) {
+        if (used[i]) {
+          entries[e++] = new long[]{keys[i], counts[i], completed[i]};
+        }
+      }
+      return entries;
+    }
+
+    private int slot(long key, long[] table, boolean[] occupied) {
+      int mask = table.length - 1;
+      int slot = Long.hashCode(key * 0x9E3779B97F4A7C15L) & mask;
+      while (occupied[slot] && table[slot] != key) {
+        slot = (slot + 1) & mask;
+      }
+      return slot;
+    }
+
+    private void grow() {
+      long[] oldKeys = keys;
+      long[] oldCounts = counts;
+      long[] oldCompleted = completed;
+      boolean[] oldUsed = used;
+      int capacity = oldKeys.length * 2;
+      keys = new long[capacity];
+      counts = new long[capacity];
+      completed = new long[capacity];
+      used = new boolean[capacity];
+      for (int i = 0; i < oldKeys.length; i++) {
+        if (oldUsed[i]) {
+          int slot = this.slot(oldKeys[i], keys, used);
+          used[slot] = true;
+          keys[slot] = oldKeys[i];
+          counts[slot] = oldCounts[i];
+          completed[slot] = oldCompleted[i];
+        }
+      }
+    }
+  }
+}
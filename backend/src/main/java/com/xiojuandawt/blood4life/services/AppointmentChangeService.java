@@ -0,0 +1,39 @@
+package com.xiojuandawt.blood4life.services;
+
+import com.xiojuandawt.blood4life.entities.Appointment;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+// Keeps the in-memory views of appointments (analytics cube, donation rollup
+// and list versions) in step with every appointment write. Write paths take
+// the rollup cell before changing an appointment and report the result once
+// it is saved or deleted.
+@Service
+public class AppointmentChangeService {
+
+  @Autowired
+  private AnalyticsCubeService analyticsCubeService;
+
+  @Autowired
+  private DonationRollupService donationRollupService;
+
+  @Autowired
+  private ResourceVersionService resourceVersionService;
+
+  // Where the appointment counts before the write (null for a new one)
+  public DonationRollupService.Cell before(Appointment appointment) {
+    return donationRollupService.cellOf(appointment);
+  }
+
+  public void appointmentSaved(DonationRollupService.Cell before, Appointment saved) {
+    analyticsCubeService.appointmentSaved(saved);
+    donationRollupService.appointmentChanged(before, donationRollupService.cellOf(saved));
+    resourceVersionService.bump(ResourceVersionService.Resource.APPOINTMENTS);
+  }
+
+  public void appointmentDeleted(DonationRollupService.Cell before, Integer id) {
+    analyticsCubeService.appointmentDeleted(id);
+    donationRollupService.appointmentChanged(before, null);
+    resourceVersionService.bump(ResourceVersionService.Resource.APPOINTMENTS);
+  }
+}
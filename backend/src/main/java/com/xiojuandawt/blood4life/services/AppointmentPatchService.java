@@ -0,0 +1,78 @@
+package com.xiojuandawt.blood4life.services;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.xiojuandawt.blood4life.entities.Appointment;
+import com.xiojuandawt.blood4life.exception.ConcurrentUpdateException;
+import com.xiojuandawt.blood4life.exception.ResourceNotFoundException;
+import com.xiojuandawt.blood4life.repositories.AppointmentRepository;
+import com.xiojuandawt.blood4life.repositories.AppointmentStatusRepository;
+import com.xiojuandawt.blood4life.repositories.BloodDonorRepository;
+import com.xiojuandawt.blood4life.repositories.CampaignRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.Map;
+import java.util.Set;
+
+// Partial updates of appointments, shared by the admin and hospital PATCH
+// endpoints; the full updates stay in the controllers
+@Service
+public class AppointmentPatchService {
+
+  private static final Set<String> PATCHABLE = Set.of("appointmentStatusId", "campaignId", "bloodDonorId",
+      "hospitalComment", "dateAppointment", "hourAppointment");
+
+  @Autowired
+  private AppointmentRepository appointmentRepository;
+
+  @Autowired
+  private AppointmentStatusRepository appointmentStatusRepository;
+
+  @Autowired
+  private CampaignRepository campaignRepository;
+
+  @Autowired
+  private BloodDonorRepository bloodDonorRepository;
+
+  @Autowired
+  private AppointmentChangeService appointmentChangeService;
+
+  @Autowired
+  private ObjectMapper objectMapper;
+
+  @Transactional
+  public Appointment patch(Integer id, Map<String, Object> fields) {
+    PatchFields patch = new PatchFields(fields, PATCHABLE, objectMapper);
+    Appointment appointment = appointmentRepository.findById(id)
+        .orElseThrow(() -> new ResourceNotFoundException("Appointment not found with id " + id));
+    ConcurrentUpdateException.check(patch.version(), appointment.getVersion());
+    DonationRollupService.Cell before = appointmentChangeService.before(appointment);
+
+    patch.apply("appointmentStatusId", Integer.class, statusId -> appointment.setAppointmentStatus(
+        appointmentStatusRepository.findById(statusId)
+            .orElseThrow(() -> new IllegalArgumentException("Status not found"))));
+    patch.apply("campaignId", Integer.class, campaignId -> appointment.setCampaign(
+        campaignRepository.findById(campaignId)
+            .orElseThrow(() -> new IllegalArgumentException("Campaign not found"))));
+    patch.apply("bloodDonorId", Integer.class, bloodDonorId -> appointment.setBloodDonor(
+        bloodDonorRepository.findById(bloodDonorId)
+            .orElseThrow(() -> new IllegalArgumentException("Blood donor not found"))));
+    patch.applyNullable("hospitalComment", String.class, appointment::setHospitalComment);
+    patch.apply("dateAppointment", LocalDate.class, appointment::setDateAppointment);
+    patch.apply("hourAppointment", LocalTime.class, appointment::setHourAppointment);
+
+    Appointment updated;
+    try {
+      // Flushed here so a concurrent update surfaces inside this method
+      updated = appointmentRepository.saveAndFlush(appointment);
+    } catch (ObjectOptimisticLockingFailureException e) {
+      throw new ConcurrentUpdateException("The appointment was modified by someone else");
+    }
+    appointmentChangeService.appointmentSaved(before, updated);
+    return updated;
+  }
+}
@@ -0,0 +1,94 @@
+package com.xiojuandawt.blood4life.services;
+
+import com.xiojuandawt.blood4life.repositories.BloodDonorRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Keeps the total number of blood donors in memory so registrations and
+// deletions don't each run a COUNT(*) and a broadcast. The count is seeded
+// once at startup, adjusted on create/delete and pushed to
+// /topic/total-bloodDonors at most once per broadcast interval.
+// The topic is not relayed between nodes: clients always see the total of
+// the node they are connected to, which picks up donors registered on other
+// nodes at its next resync.
+@Service
+public class BloodDonorCounterService {
+
+  private static final Logger log = LoggerFactory.getLogger(BloodDonorCounterService.class);
+
+  @Autowired
+  private BloodDonorRepository bloodDonorRepository;
+
+  @Autowired
+  private BloodDonorWebSocketService bloodDonorWebSocketService;
+
+  @Autowired
+  private ResourceVersionService resourceVersionService;
+
+  private final AtomicLong totalBloodDonors = new AtomicLong();
+
+  // Set when the total changed since the last broadcast
+  private final AtomicBoolean dirty = new AtomicBoolean();
+
+  @EventListener(ApplicationReadyEvent.class)
+  public void seed() {
+    totalBloodDonors.set(bloodDonorRepository.count());
+    log.info("Total blood donors seeded: {}", totalBloodDonors.get());
+  }
+
+  public long getTotal() {
+    return totalBloodDonors.get();
+  }
+
+  public void increment() {
+    totalBloodDonors.incrementAndGet();
+    dirty.set(true);
+  }
+
+  public void decrement() {
+    totalBloodDonors.decrementAndGet();
+    dirty.set(true);
+  }
+
+  // Donors inserted in bulk, outside the donor service
+  public void add(long count) {
+    totalBloodDonors.addAndGet(count);
+    dirty.set(true);
+  }
+
+  // Coalesces every change since the previous run into a single broadcast
+  @Scheduled(fixedDelayString = "${websocket.total-donors.broadcast-interval-ms:1000}")
+  public void flush() {
+    if (dirty.getAndSet(false)) {
+      bloodDonorWebSocketService.sentTotalBloodDonors(totalBloodDonors.get());
+    }
+  }
+
+  // Corrects drift from rows written outside this service (SQL scripts, other nodes...)
+  @Scheduled(
+      initialDelayString = "${websocket.total-donors.resync-interval-ms:300000}",
+      fixedDelayString = "${websocket.total-donors.resync-interval-ms:300000}")
+  public void resync() {
+    long before = totalBloodDonors.get();
+    long counted = bloodDonorRepository.count();
+    // Increments and decrements made while the COUNT ran are kept on top of it
+    long current;
+    do {
+      current = totalBloodDonors.get();
+    } while (!totalBloodDonors.compareAndSet(current, counted + (current - before)));
+    if (before != counted) {
+      log.warn("Total blood donors drifted ({} in memory, {} in database), corrected", before, counted);
+      dirty.set(true);
+      // Donors were written outside this node; cached listings are stale too
+      resourceVersionService.bump(ResourceVersionService.Resource.BLOOD_DONORS);
+    }
+  }
+}
@@ -0,0 +1,469 @@
+package com.xiojuandawt.blood4life.services;
+
+import com.xiojuandawt.blood4life.dto.BulkImportResultDTO;
+import com.xiojuandawt.blood4life.entities.BloodType;
+import com.xiojuandawt.blood4life.repositories.BloodTypeRepository;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.sql.Date;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+
+// Bulk registration of blood donors from a CSV (one donor per line, header
+// with the column names). Rows are validated as they are read, and every
+// chunk has its passwords hashed in parallel on a bounded pool and is
+// inserted with a single JDBC batch, instead of one BCrypt, INSERT, COUNT(*)
+// and broadcast per donor. The in-memory counters and indexes are refreshed
+// and a single event is broadcast once the whole file has been processed.
+@Service
+public class BloodDonorImportService {
+
+  private static final Logger log = LoggerFactory.getLogger(BloodDonorImportService.class);
+
+  public static final String IMPORTS_TOPIC = "/topic/admin/blood-donor-imports";
+
+  private static final String INSERT_SQL = """
+      INSERT INTO blood_donor (dni, first_name, last_name, gender, blood_type_id, email, phone_number, date_of_birth, password)
+      VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)
+      """;
+
+  private static final List<String> REQUIRED_COLUMNS =
+      List.of("dni", "firstName", "lastName", "gender", "bloodType", "email", "password");
+
+  private static final Pattern EMAIL = Pattern.compile("^[^@\\s]+@[^@\\s]+\\.[^@\\s]+$");
+
+  @Autowired
+  private JdbcTemplate jdbcTemplate;
+
+  @Autowired
+  private NamedParameterJdbcTemplate namedParameterJdbcTemplate;
+
+  @Autowired
+  private PlatformTransactionManager transactionManager;
+
+  @Autowired
+  private BloodTypeRepository bloodTypeRepository;
+
+  @Autowired
+  private PasswordEncoder passwordEncoder;
+
+  @Autowired
+  private BloodDonorCounterService bloodDonorCounterService;
+
+  @Autowired
+  private DashboardStatsService dashboardStatsService;
+
+  @Autowired
+  private SearchIndexService searchIndexService;
+
+  @Autowired
+  private RegistrationFilterService registrationFilterService;
+
+  @Autowired
+  private ResourceVersionService resourceVersionService;
+
+  @Autowired
+  private StompBatchPublisher stompBatchPublisher;
+
+  // Rows per INSERT batch (and per round of parallel hashing)
+  @Value("${import.blood-donors.batch-size:1000}")
+  private int batchSize;
+
+  @Value("${import.blood-donors.max-reported-errors:1000}")
+  private int maxReportedErrors;
+
+  private final ThreadPoolExecutor hashExecutor;
+
+  // Imports run one at a time
+  private final AtomicBoolean running = new AtomicBoolean();
+
+  public BloodDonorImportService(
+      @Value("${import.blood-donors.hash-threads:0}") int hashThreads,
+      @Value("${import.blood-donors.queue-capacity:1000}") int queueCapacity) {
+    int threads = hashThreads > 0 ? hashThreads : Runtime.getRuntime().availableProcessors();
+    AtomicInteger counter = new AtomicInteger();
+    // A full queue makes the reading thread hash too instead of queueing without bound
+    this.hashExecutor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+        new ArrayBlockingQueue<>(queueCapacity), runnable -> {
+          Thread thread = new Thread(runnable, "donor-import-" + counter.incrementAndGet());
+          thread.setDaemon(true);
+          return thread;
+        }, new ThreadPoolExecutor.CallerRunsPolicy());
+    this.hashExecutor.allowCoreThreadTimeOut(true);
+  }
+
+  // Throws IllegalStateException when another import is running and
+  // IllegalArgumentException when the header is missing required columns
+  public BulkImportResultDTO importCsv(InputStream input) throws IOException {
+    if (!running.compareAndSet(false, true)) {
+      throw new IllegalStateException("A blood donor import is already running");
+    }
+    try {
+      return this.run(input);
+    } finally {
+      running.set(false);
+    }
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    hashExecutor.shutdownNow();
+  }
+
+  private BulkImportResultDTO run(InputStream input) throws IOException {
+    long start = System.currentTimeMillis();
+    Map<String, Integer> bloodTypes = this.loadBloodTypes();
+    Report report = new Report(maxReportedErrors);
+    Set<String> seenDnis = new HashSet<>();
+    Set<String> seenEmails = new HashSet<>();
+
+    try (BufferedReader reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8))) {
+      String headerLine = reader.readLine();
+      if (headerLine == null) {
+        throw new IllegalArgumentException("The CSV file is empty");
+      }
+      if (headerLine.startsWith("\uFEFF")) {
+        headerLine = headerLine.substring(1);
+      }
+      Map<String, Integer> columns = this.columns(parseLine(headerLine));
+
+      List<Row> chunk = new ArrayList<>(batchSize);
+      long lineNumber = 1;
+      String line;
+      while ((line = reader.readLine()) != null) {
+        lineNumber++;
+        if (line.isBlank()) {
+          continue;
+        }
+        try {
+          Row row = this.parseRow(lineNumber, parseLine(line), columns, bloodTypes);
+          if (seenDnis.contains(row.dniKey())) {
+            throw new IllegalArgumentException("Duplicate DNI in the file");
+          }
+          if (seenEmails.contains(row.emailKey())) {
+            throw new IllegalArgumentException("Duplicate email in the file");
+          }
+          seenDnis.add(row.dniKey());
+          seenEmails.add(row.emailKey());
+          chunk.add(row);
+        } catch (IllegalArgumentException e) {
+          report.reject(lineNumber, e.getMessage());
+        }
+
+        if (chunk.size() >= batchSize) {
+          this.insertChunk(chunk, report);
+          chunk.clear();
+        }
+      }
+      if (!chunk.isEmpty()) {
+        this.insertChunk(chunk, report);
+      }
+    } finally {
+      // Rows of the batches committed before a failure are in the database too
+      if (report.imported > 0) {
+        this.refresh(report.imported);
+      }
+    }
+
+    BulkImportResultDTO result = report.toResult();
+    Map<String, Object> event = new LinkedHashMap<>();
+    event.put("imported", result.getImported());
+    event.put("failed", result.getFailed());
+    stompBatchPublisher.publish(IMPORTS_TOPIC, event);
+    log.info("Blood donor import: {} imported, {} rejected in {} ms",
+        result.getImported(), result.getFailed(), System.currentTimeMillis() - start);
+    return result;
+  }
+
+  // Blood types by name ("A+") and by id, read once per import
+  private Map<String, Integer> loadBloodTypes() {
+    Map<String, Integer> bloodTypes = new HashMap<>();
+    for (BloodType bloodType : bloodTypeRepository.findAll()) {
+      bloodTypes.put(bloodType.getType().trim().toUpperCase(Locale.ROOT), bloodType.getId());
+      bloodTypes.put(String.valueOf(bloodType.getId()), bloodType.getId());
+    }
+    return bloodTypes;
+  }
+
+  private Map<String, Integer> columns(List<String> header) {
+    Map<String, Integer> columns = new HashMap<>();
+    for (int i = 0; i < header.size(); i++) {
+      columns.put(header.get(i).trim().toLowerCase(Locale.ROOT), i);
+    }
+    List<String> missing = REQUIRED_COLUMNS.stream()
+        .filter(column -> !columns.containsKey(column.toLowerCase(Locale.ROOT)))
+        .toList();
+    if (!missing.isEmpty()) {
+      throw new IllegalArgumentException("Missing CSV columns: " + String.join(", ", missing));
+    }
+    return columns;
+  }
+
+  private Row parseRow(long lineNumber, List<String> fields, Map<String, Integer> columns,
+      Map<String, Integer> bloodTypes) {
+    Row row = new Row(lineNumber);
+    row.dni = required(fields, columns, "dni", 20);
+    row.firstName = required(fields, columns, "firstName", 50);
+    row.lastName = required(fields, columns, "lastName", 50);
+    row.gender = required(fields, columns, "gender", 50);
+    row.email = required(fields, columns, "email", 100);
+    row.password = required(fields, columns, "password", Integer.MAX_VALUE);
+    row.phoneNumber = optional(fields, columns, "phoneNumber", 15);
+
+    if (!EMAIL.matcher(row.email).matches()) {
+      throw new IllegalArgumentException("Invalid email");
+    }
+
+    String bloodType = required(fields, columns, "bloodType", Integer.MAX_VALUE);
+    row.bloodTypeId = bloodTypes.get(bloodType.toUpperCase(Locale.ROOT));
+    if (row.bloodTypeId == null) {
+      throw new IllegalArgumentException("Unknown blood type: " + bloodType);
+    }
+
+    String dateOfBirth = optional(fields, columns, "dateOfBirth", Integer.MAX_VALUE);
+    if (dateOfBirth != null) {
+      try {
+        LocalDate date = LocalDate.parse(dateOfBirth);
+        if (date.isAfter(LocalDate.now())) {
+          throw new IllegalArgumentException("dateOfBirth is in the future");
+        }
+        row.dateOfBirth = Date.valueOf(date);
+      } catch (DateTimeParseException e) {
+        throw new IllegalArgumentException("Invalid dateOfBirth, expected yyyy-MM-dd");
+      }
+    }
+    return row;
+  }
+
+  private static String required(List<String> fields, Map<String, Integer> columns, String column, int maxLength) {
+    String value = optional(fields, columns, column, maxLength);
+    if (value == null) {
+      throw new IllegalArgumentException(column + " is required");
+    }
+    return value;
+  }
+
+  private static String optional(List<String> fields, Map<String, Integer> columns, String column, int maxLength) {
+    Integer index = columns.get(column.toLowerCase(Locale.ROOT));
+    if (index == null || index >= fields.size()) {
+      return null;
+    }
+    String value = fields.get(index).trim();
+    if (value.isEmpty()) {
+      return null;
+    }
+    if (value.length() > maxLength) {
+      throw new IllegalArgumentException(column + " is longer than " + maxLength + " characters");
+    }
+    return value;
+  }
+
+  private void insertChunk(List<Row> chunk, Report report) {
+    List<Row> rows = this.withoutRegistered(chunk, report);
+    if (rows.isEmpty()) {
+      return;
+    }
+    this.hashPasswords(rows);
+
+    List<Object[]> batch = new ArrayList<>(rows.size());
+    for (Row row : rows) {
+      batch.add(row.insertArgs());
+    }
+    try {
+      new TransactionTemplate(transactionManager)
+          .executeWithoutResult(status -> jdbcTemplate.batchUpdate(INSERT_SQL, batch));
+      report.imported += rows.size();
+      rows.forEach(row -> registrationFilterService.donorSaved(row.email, row.dni));
+    } catch (DataAccessException e) {
+      // Someone registered one of these donors meanwhile: the batch was rolled
+      // back, so retry row by row to find out which rows fail
+      log.warn("Import batch failed ({}), retrying {} rows one by one", e.getMessage(), rows.size());
+      for (Row row : rows) {
+        try {
+          jdbcTemplate.update(INSERT_SQL, row.insertArgs());
+          report.imported++;
+          registrationFilterService.donorSaved(row.email, row.dni);
+        } catch (DuplicateKeyException duplicate) {
+          report.reject(row.line, "DNI or email already registered");
+        } catch (DataAccessException failure) {
+          report.reject(row.line, "Could not be inserted");
+        }
+      }
+    }
+  }
+
+  // Drops (and reports) the rows whose DNI or email is already in the database,
+  // checked with one query per chunk
+  private List<Row> withoutRegistered(List<Row> chunk, Report report) {
+    MapSqlParameterSource params = new MapSqlParameterSource()
+        .addValue("dnis", chunk.stream().map(row -> row.dni).toList())
+        .addValue("emails", chunk.stream().map(row -> row.email).toList());
+    Set<String> registeredDnis = new HashSet<>();
+    Set<String> registeredEmails = new HashSet<>();
+    namedParameterJdbcTemplate.query(
+        "SELECT dni, email FROM blood_donor WHERE dni IN (:dnis) OR email IN (:emails)", params, rs -> {
+          registeredDnis.add(rs.getString("dni").toUpperCase(Locale.ROOT));
+          String email = rs.getString("email");
+          if (email != null) {
+            registeredEmails.add(email.toLowerCase(Locale.ROOT));
+          }
+        });
+
+    List<Row> rows = new ArrayList<>(chunk.size());
+    for (Row row : chunk) {
+      if (registeredDnis.contains(row.dniKey())) {
+        report.reject(row.line, "DNI already registered");
+      } else if (registeredEmails.contains(row.emailKey())) {
+        report.reject(row.line, "Email already registered");
+      } else {
+        rows.add(row);
+      }
+    }
+    return rows;
+  }
+
+  private void hashPasswords(List<Row> rows) {
+    List<Future<String>> hashes = new ArrayList<>(rows.size());
+    for (Row row : rows) {
+      String password = row.password;
+      hashes.add(hashExecutor.submit(() -> passwordEncoder.encode(password)));
+    }
+    try {
+      for (int i = 0; i < rows.size(); i++) {
+        rows.get(i).password = hashes.get(i).get();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      hashes.forEach(hash -> hash.cancel(true));
+      throw new RuntimeException("Import interrupted", e);
+    } catch (ExecutionException e) {
+      throw new RuntimeException("Error hashing passwords", e.getCause());
+    }
+  }
+
+  // The rows went in through JDBC, not the donor service, so its hooks never
+  // ran: the in-memory state is brought up to date once for the whole import.
+  // The registration filters already got each row as its chunk was inserted.
+  private void refresh(int imported) {
+    bloodDonorCounterService.add(imported);
+    dashboardStatsService.reconcile();
+    searchIndexService.reconcile();
+    resourceVersionService.bump(ResourceVersionService.Resource.BLOOD_DONORS);
+  }
+
+  // RFC 4180 fields within one line: commas, quoted fields and "" escapes
+  private static List<String> parseLine(String line) {
+    List<String> fields = new ArrayList<>();
+    StringBuilder field = new StringBuilder();
+    boolean quoted = false;
+    for (int i = 0; i < line.length(); i++) {
+      char c = line.charAt(i);
+      if (quoted) {
+        if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+          field.append('"');
+          i++;
+        } else if (c == '"') {
+          quoted = false;
+        } else {
+          field.append(c);
+        }
+      } else if (c == '"') {
+        quoted = true;
+      } else if (c == ',') {
+        fields.add(field.toString());
+        field.setLength(0);
+      } else {
+        field.append(c);
+      }
+    }
+    fields.add(field.toString());
+    return fields;
+  }
+
+  private static class Row {
+    private final long line;
+    private String dni;
+    private String firstName;
+    private String lastName;
+    private String gender;
+    private Integer bloodTypeId;
+    private String email;
+    private String phoneNumber;
+    private Date dateOfBirth;
+    // Plain text until the chunk is hashed
+    private String password;
+
+    private Row(long line) {
+      this.line = line;
+    }
+
+    // Both columns compare case-insensitively in MySQL
+    private String dniKey() {
+      return dni.toUpperCase(Locale.ROOT);
+    }
+
+    private String emailKey() {
+      return email.toLowerCase(Locale.ROOT);
+    }
+
+    private Object[] insertArgs() {
+      return new Object[] { dni, firstName, lastName, gender, bloodTypeId, email, phoneNumber, dateOfBirth, password };
+    }
+  }
+
+  private static class Report {
+    private final int maxErrors;
+    private final List<BulkImportResultDTO.RowError> errors = new ArrayList<>();
+    private int imported;
+    private int failed;
+
+    private Report(int maxErrors) {
+      this.maxErrors = maxErrors;
+    }
+
+    private void reject(long line, String error) {
+      failed++;
+      if (errors.size() < maxErrors) {
+        errors.add(new BulkImportResultDTO.RowError(line, error));
+      }
+    }
+
+    private BulkImportResultDTO toResult() {
+      return new BulkImportResultDTO(imported, failed, errors, failed > errors.size());
+    }
+  }
+}
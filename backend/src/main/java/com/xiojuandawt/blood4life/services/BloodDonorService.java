@@ -1,24 +1,38 @@
 package com.xiojuandawt.blood4life.services;
 
 import com.xiojuandawt.blood4life.dto.BloodDonorDTO;
+import com.xiojuandawt.blood4life.dto.KeysetPageDTO;
 import com.xiojuandawt.blood4life.entities.BloodDonor;
 import com.xiojuandawt.blood4life.entities.BloodType;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 public interface BloodDonorService {
 
   List<BloodDonorDTO> findAll();
 
+  List<BloodDonorDTO> findAllById(Collection<Integer> ids);
+
+  KeysetPageDTO<BloodDonorDTO> findPage(String bloodType, String gender, String text,
+      String sort, boolean descending, String cursor, int limit);
+
   BloodDonorDTO createNew(BloodDonor bloodDonor);
 
-  BloodDonorDTO update(BloodDonor bloodDonor, Integer id);
+  // expectedVersion is the version the client edited (null to skip the check)
+  BloodDonorDTO update(BloodDonor bloodDonor, Integer id, Long expectedVersion);
+
+  // Applies only the fields present in the body (see PatchFields)
+  BloodDonorDTO patch(Integer id, Map<String, Object> fields);
 
   void delete(int id);
 
   Optional<BloodDonor> findByEmail(String email);
 
+  boolean existsByDni(String dni);
+
   Optional<BloodDonor> findByIdWithRole(Integer id);
 
   Optional<BloodType> findBloodTypeById(Integer bloodTypeId);
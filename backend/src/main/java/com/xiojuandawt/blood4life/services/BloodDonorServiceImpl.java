@@ -1,21 +1,46 @@
 package com.xiojuandawt.blood4life.services;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.xiojuandawt.blood4life.dto.BloodDonorDTO;
+import com.xiojuandawt.blood4life.dto.KeysetPageDTO;
 import com.xiojuandawt.blood4life.entities.BloodDonor;
 import com.xiojuandawt.blood4life.entities.BloodType;
+import com.xiojuandawt.blood4life.exception.ConcurrentUpdateException;
 import com.xiojuandawt.blood4life.exception.ResourceNotFoundException;
 import com.xiojuandawt.blood4life.repositories.BloodDonorRepository;
 import com.xiojuandawt.blood4life.repositories.BloodTypeRepository;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.function.Function;
 
 @Service
 public class BloodDonorServiceImpl implements BloodDonorService {
 
+  // Sortable columns of the paginated listing and how to read them back
+  private static final Map<String, Function<BloodDonor, String>> SORT_KEYS = Map.of(
+      "id", donor -> null,
+      "lastName", BloodDonor::getLastName,
+      "firstName", BloodDonor::getFirstName,
+      "email", BloodDonor::getEmail,
+      "dni", BloodDonor::getDni);
+
+  // Fields a PATCH may change; the password has its own endpoint
+  private static final Set<String> PATCHABLE = Set.of("dni", "firstName", "lastName", "gender",
+      "bloodTypeId", "email", "phoneNumber", "dateOfBirth");
+
+  private final KeysetPages.Totals totals = new KeysetPages.Totals();
+
   @Autowired
   private BloodDonorRepository bloodDonorRepository;
 
@@ -23,9 +48,31 @@ public class BloodDonorServiceImpl implements BloodDonorService {
   private BloodTypeRepository bloodTypeRepository;
 
   @Autowired
-  private BloodDonorWebSocketService bloodDonorWebSocketService;
+  private BloodDonorCounterService bloodDonorCounterService;
+
+  @Autowired
+  private DashboardStatsService dashboardStatsService;
+
+  @Autowired
+  private AnalyticsCubeService analyticsCubeService;
+
+  @Autowired
+  private ResourceVersionService resourceVersionService;
+
+  @Autowired
+  private DonationRollupService donationRollupService;
+
+  @Autowired
+  private SearchIndexService searchIndexService;
+
+  @Autowired
+  private RegistrationFilterService registrationFilterService;
+
+  @Autowired
+  private ObjectMapper objectMapper;
 
   @Override
+  @Transactional(readOnly = true)
   public List<BloodDonorDTO> findAll() {
     List<BloodDonor> bloodDonorList = (List<BloodDonor>) this.bloodDonorRepository.findAll();
     List<BloodDonorDTO> bloodDonorDTOList = new ArrayList<>();
@@ -39,42 +86,141 @@ public class BloodDonorServiceImpl implements BloodDonorService {
     return bloodDonorDTOList;
   }
 
+  @Override
+  @Transactional(readOnly = true)
+  public List<BloodDonorDTO> findAllById(Collection<Integer> ids) {
+    List<BloodDonorDTO> dtoList = new ArrayList<>();
+    for (BloodDonor bloodDonor : bloodDonorRepository.findAllById(ids)) {
+      dtoList.add(this.parseEntityToDto(bloodDonor));
+    }
+    return dtoList;
+  }
+
+  @Override
+  @Transactional(readOnly = true)
+  public KeysetPageDTO<BloodDonorDTO> findPage(String bloodType, String gender, String text,
+      String sort, boolean descending, String cursor, int limit) {
+    Specification<BloodDonor> byBloodType = bloodType == null || bloodType.isBlank() ? null
+        : (root, query, cb) -> cb.equal(root.get("bloodType").get("type"), bloodType);
+    Specification<BloodDonor> filters = Specification.allOf(
+        byBloodType,
+        KeysetPages.equal("gender", gender),
+        KeysetPages.prefix(text, "firstName", "lastName", "email", "dni"));
+
+    // Not cached while the replica may still lag behind the last write
+    String totalKey = resourceVersionService.isSettled()
+        ? resourceVersionService.version(ResourceVersionService.Resource.BLOOD_DONORS)
+            + "|" + bloodType + "|" + gender + "|" + text
+        : null;
+
+    return KeysetPages.page(bloodDonorRepository, filters, sort, descending, cursor, limit,
+        SORT_KEYS, BloodDonor::getId, totalKey, totals, this::parseEntityToDto);
+  }
+
   @Override
   public BloodDonorDTO createNew(BloodDonor bloodDonor) {
     BloodDonor newBloodDonor = this.bloodDonorRepository.save(bloodDonor);
 
-    // Broadcast nuevo total por WebSocket
-    long totalBloodDonors = bloodDonorRepository.count();
-    bloodDonorWebSocketService.sentTotalBloodDonors(totalBloodDonors);
+    // El nuevo total se difunde por WebSocket de forma agrupada
+    bloodDonorCounterService.increment();
+    dashboardStatsService.donorSaved(newBloodDonor);
+    analyticsCubeService.donorSaved(newBloodDonor);
+    searchIndexService.donorSaved(newBloodDonor);
+    registrationFilterService.donorSaved(newBloodDonor);
+    resourceVersionService.bump(ResourceVersionService.Resource.BLOOD_DONORS);
 
     BloodDonorDTO newBloodDonorDTO = this.parseEntityToDto(newBloodDonor);
 
     return newBloodDonorDTO;
   }
 
+  // Rolled back on a conflict, which also discards the caller's unsaved changes
   @Override
-  public BloodDonorDTO update(BloodDonor bloodDonor, Integer id) {
+  @Transactional
+  public BloodDonorDTO update(BloodDonor bloodDonor, Integer id, Long expectedVersion) {
     Optional<BloodDonor> bloodDonorInDatabase = this.bloodDonorRepository.findById(id);
 
     if (bloodDonorInDatabase.isEmpty()) {
       throw new ResourceNotFoundException();
     }
 
+    // Never refreshed from the database: a write committed after the caller
+    // read the row is a conflict, not something to overwrite
+    Long readVersion = ConcurrentUpdateException.readVersion(expectedVersion, bloodDonor.getVersion(),
+        bloodDonorInDatabase.get().getVersion());
+    ConcurrentUpdateException.check(readVersion, bloodDonorInDatabase.get().getVersion());
     bloodDonor.setId(id);
     bloodDonor.setPassword(bloodDonorInDatabase.orElseThrow().getPassword());
-    BloodDonor updatedBloodDonor = this.bloodDonorRepository.save(bloodDonor);
+    bloodDonor.setVersion(readVersion);
+    return this.saveUpdated(bloodDonor, bloodTypeOf(bloodDonorInDatabase.get()));
+  }
+
+  @Override
+  @Transactional
+  public BloodDonorDTO patch(Integer id, Map<String, Object> fields) {
+    PatchFields patch = new PatchFields(fields, PATCHABLE, objectMapper);
+    BloodDonor bloodDonor = this.bloodDonorRepository.findById(id)
+        .orElseThrow(() -> new ResourceNotFoundException());
+    ConcurrentUpdateException.check(patch.version(), bloodDonor.getVersion());
+    String previousBloodType = bloodTypeOf(bloodDonor);
+
+    patch.apply("dni", String.class, bloodDonor::setDni);
+    patch.apply("firstName", String.class, bloodDonor::setFirstName);
+    patch.apply("lastName", String.class, bloodDonor::setLastName);
+    patch.apply("gender", String.class, bloodDonor::setGender);
+    patch.apply("bloodTypeId", Integer.class, bloodTypeId -> bloodDonor.setBloodType(
+        bloodTypeRepository.findById(bloodTypeId)
+            .orElseThrow(() -> new IllegalArgumentException("Invalid blood type ID"))));
+    patch.apply("email", String.class, bloodDonor::setEmail);
+    patch.applyNullable("phoneNumber", String.class, bloodDonor::setPhoneNumber);
+    patch.applyNullable("dateOfBirth", Date.class, bloodDonor::setDateOfBirth);
+
+    return this.saveUpdated(bloodDonor, previousBloodType);
+  }
+
+  private BloodDonorDTO saveUpdated(BloodDonor bloodDonor, String previousBloodType) {
+    BloodDonor updatedBloodDonor;
+    try {
+      // Flushed here so a concurrent update surfaces inside this method
+      updatedBloodDonor = this.bloodDonorRepository.saveAndFlush(bloodDonor);
+    } catch (ObjectOptimisticLockingFailureException e) {
+      throw new ConcurrentUpdateException("The blood donor was modified by someone else");
+    }
+    dashboardStatsService.donorSaved(updatedBloodDonor);
+    analyticsCubeService.donorSaved(updatedBloodDonor);
+    searchIndexService.donorSaved(updatedBloodDonor);
+    registrationFilterService.donorSaved(updatedBloodDonor);
+    // Rollup rows are keyed by blood type: the donor's appointments move along
+    donationRollupService.donorBloodTypeChanged(updatedBloodDonor.getId(), previousBloodType,
+        bloodTypeOf(updatedBloodDonor));
+    resourceVersionService.bump(ResourceVersionService.Resource.BLOOD_DONORS);
     BloodDonorDTO updatedBloodDonorDTO = this.parseEntityToDto(updatedBloodDonor);
 
     return updatedBloodDonorDTO;
   }
 
+  private static String bloodTypeOf(BloodDonor bloodDonor) {
+    return bloodDonor.getBloodType() != null ? bloodDonor.getBloodType().getType() : null;
+  }
+
   @Override
   public void delete(int id) {
+    // deleteById ignores unknown ids, so only count rows that really existed
+    if (!this.bloodDonorRepository.existsById(id)) {
+      return;
+    }
     this.bloodDonorRepository.deleteById(id);
 
-    // Broadcast nuevo total por WebSocket
-    long totalBloodDonors = bloodDonorRepository.count();
-    bloodDonorWebSocketService.sentTotalBloodDonors(totalBloodDonors);
+    // El nuevo total se difunde por WebSocket de forma agrupada
+    bloodDonorCounterService.decrement();
+    dashboardStatsService.donorDeleted(id);
+    searchIndexService.donorDeleted(id);
+    resourceVersionService.bump(ResourceVersionService.Resource.BLOOD_DONORS);
+  }
+
+  @Override
+  public boolean existsByDni(String dni) {
+    return bloodDonorRepository.existsByDni(dni);
   }
 
   public Optional<BloodDonor> findByEmail(String email) {
@@ -92,6 +238,7 @@ public class BloodDonorServiceImpl implements BloodDonorService {
     bloodDonorDTO.setPhoneNumber(bloodDonor.getPhoneNumber());
     bloodDonorDTO.setDateOfBirth(bloodDonor.getDateOfBirth());
     bloodDonorDTO.setBloodType(bloodDonor.getBloodType());
+    bloodDonorDTO.setVersion(bloodDonor.getVersion());
 
     return bloodDonorDTO;
   }
@@ -11,11 +11,16 @@ public class BloodDonorWebSocketService {
 
   private static final Logger log = LoggerFactory.getLogger(BloodDonorWebSocketService.class);
 
+  // Each node sends its own total to its own subscribers only (see
+  // ClusterRelayInterceptor): relayed totals of different nodes would make
+  // the number jump between values
+  public static final String TOTAL_BLOOD_DONORS_TOPIC = "/topic/total-bloodDonors";
+
   @Autowired
   private SimpMessagingTemplate messagingTemplate;
 
   public void sentTotalBloodDonors(long totalBloodDonors) {
     log.info("Broadcasting total blood donors to all subscribers: {}", totalBloodDonors);
-    messagingTemplate.convertAndSend("/topic/total-bloodDonors", totalBloodDonors);
+    messagingTemplate.convertAndSend(TOTAL_BLOOD_DONORS_TOPIC, totalBloodDonors);
   }
 }
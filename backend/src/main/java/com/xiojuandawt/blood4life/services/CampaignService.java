@@ -4,6 +4,7 @@ import com.xiojuandawt.blood4life.dto.CampaignDTO;
 import com.xiojuandawt.blood4life.entities.Campaign;
 
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 public interface CampaignService {
@@ -17,7 +18,11 @@ public interface CampaignService {
 
     CampaignDTO parseEntityToDTO(Campaign campaign);
 
-    CampaignDTO updateCampaign(Integer id, Campaign campaign, List<String> bloodTypeStrings);
+    // expectedVersion is the version the client edited (null to skip the check)
+    CampaignDTO updateCampaign(Integer id, Campaign campaign, List<String> bloodTypeStrings, Long expectedVersion);
+
+    // Applies only the fields present in the body (see PatchFields)
+    CampaignDTO patchCampaign(Integer id, Map<String, Object> fields);
 
     void deleteCampaign(Integer id);
 }
@@ -1,21 +1,34 @@
 package com.xiojuandawt.blood4life.services;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.xiojuandawt.blood4life.dto.CampaignDTO;
 import com.xiojuandawt.blood4life.entities.BloodType;
 import com.xiojuandawt.blood4life.entities.Campaign;
+import com.xiojuandawt.blood4life.exception.ConcurrentUpdateException;
+import com.xiojuandawt.blood4life.exception.ResourceNotFoundException;
 import com.xiojuandawt.blood4life.repositories.BloodTypeRepository;
 import com.xiojuandawt.blood4life.repositories.CampaignRepository;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 @Service
 public class CampaignServiceImpl implements CampaignService {
 
+    // Fields a PATCH may change; requiredBloodTypes is a list of types like "A+"
+    private static final Set<String> PATCHABLE = Set.of("name", "description", "startDate", "endDate",
+            "location", "requiredDonorQuantity", "requiredBloodTypes");
+
     @Autowired
     private CampaignRepository campaignRepository;
 
@@ -25,26 +38,23 @@ public class CampaignServiceImpl implements CampaignService {
     @Autowired
     private BloodTypeRepository bloodTypeRepository;
 
-    @Override
-    public CampaignDTO createCampaign(Campaign campaign, List<String> bloodTypeStrings) {
-        // Set the requiredBloodType string (comma-separated)
-        campaign.setRequiredBloodType(String.join(",", bloodTypeStrings));
+    @Autowired
+    private DashboardStatsService dashboardStatsService;
 
-        // Find and set BloodType entities for ManyToMany relationship
-        List<BloodType> bloodTypes = new ArrayList<>();
-        List<BloodType> allBloodTypes = bloodTypeRepository.findAll();
+    @Autowired
+    private ResourceVersionService resourceVersionService;
 
-        for (String bloodTypeStr : bloodTypeStrings) {
-            allBloodTypes.stream()
-                    .filter(bt -> bt.getType().equalsIgnoreCase(bloodTypeStr.trim()))
-                    .findFirst()
-                    .ifPresent(bloodTypes::add);
-        }
+    @Autowired
+    private ObjectMapper objectMapper;
 
-        campaign.setBloodTypes(bloodTypes);
+    @Override
+    public CampaignDTO createCampaign(Campaign campaign, List<String> bloodTypeStrings) {
+        applyBloodTypes(campaign, bloodTypeStrings);
 
         // Save campaign
         Campaign savedCampaign = campaignRepository.save(campaign);
+        dashboardStatsService.campaignSaved(savedCampaign.getId(), savedCampaign.getHospital().getId());
+        resourceVersionService.bump(ResourceVersionService.Resource.CAMPAIGNS);
 
         return parseEntityToDTO(savedCampaign);
     }
@@ -55,6 +65,7 @@ public class CampaignServiceImpl implements CampaignService {
     }
 
     @Override
+    @Transactional(readOnly = true)
     public List<CampaignDTO> findByHospitalId(Integer hospitalId) {
         List<Campaign> campaigns = campaignRepository.findByHospitalId(hospitalId);
         return campaigns.stream()
@@ -63,6 +74,7 @@ public class CampaignServiceImpl implements CampaignService {
     }
 
     @Override
+    @Transactional(readOnly = true)
     public List<CampaignDTO> findAll() {
         List<Campaign> campaigns = campaignRepository.findAll();
         return campaigns.stream()
@@ -90,6 +102,7 @@ public class CampaignServiceImpl implements CampaignService {
         } else {
             dto.setCurrentDonorCount(0);
         }
+        dto.setVersion(campaign.getVersion());
 
         return dto;
     }
@@ -99,10 +112,13 @@ public class CampaignServiceImpl implements CampaignService {
     }
 
     @Override
-    public CampaignDTO updateCampaign(Integer id, Campaign updatedCampaign, List<String> bloodTypeStrings) {
+    @Transactional
+    public CampaignDTO updateCampaign(Integer id, Campaign updatedCampaign, List<String> bloodTypeStrings,
+            Long expectedVersion) {
         // Find existing campaign
         Campaign existingCampaign = campaignRepository.findById(id)
                 .orElseThrow(() -> new RuntimeException("Campaign not found with id: " + id));
+        ConcurrentUpdateException.check(expectedVersion, existingCampaign.getVersion());
 
         // Update fields
         existingCampaign.setName(updatedCampaign.getName());
@@ -112,8 +128,52 @@ public class CampaignServiceImpl implements CampaignService {
         existingCampaign.setLocation(updatedCampaign.getLocation());
         existingCampaign.setRequiredDonorQuantity(updatedCampaign.getRequiredDonorQuantity());
 
-        // Update blood types
-        existingCampaign.setRequiredBloodType(String.join(",", bloodTypeStrings));
+        // Update blood types (kept as they are when none are given)
+        if (bloodTypeStrings != null) {
+            applyBloodTypes(existingCampaign, bloodTypeStrings);
+        }
+
+        return saveUpdated(existingCampaign);
+    }
+
+    @Override
+    @Transactional
+    public CampaignDTO patchCampaign(Integer id, Map<String, Object> fields) {
+        PatchFields patch = new PatchFields(fields, PATCHABLE, objectMapper);
+        Campaign campaign = campaignRepository.findById(id)
+                .orElseThrow(() -> new ResourceNotFoundException("Campaign not found with id: " + id));
+        ConcurrentUpdateException.check(patch.version(), campaign.getVersion());
+
+        patch.apply("name", String.class, campaign::setName);
+        patch.applyNullable("description", String.class, campaign::setDescription);
+        patch.apply("startDate", LocalDate.class, campaign::setStartDate);
+        patch.apply("endDate", LocalDate.class, campaign::setEndDate);
+        patch.applyNullable("location", String.class, campaign::setLocation);
+        patch.apply("requiredDonorQuantity", Integer.class, campaign::setRequiredDonorQuantity);
+        if (patch.has("requiredBloodTypes")) {
+            String[] bloodTypeStrings = patch.convert("requiredBloodTypes", String[].class);
+            if (bloodTypeStrings == null || bloodTypeStrings.length == 0) {
+                throw new IllegalArgumentException("Debe seleccionar al menos un tipo de sangre");
+            }
+            applyBloodTypes(campaign, Arrays.asList(bloodTypeStrings));
+        }
+
+        // Same rules as the full update, checked on the resulting campaign
+        if (campaign.getEndDate() != null && campaign.getStartDate() != null
+                && campaign.getEndDate().isBefore(campaign.getStartDate())) {
+            throw new IllegalArgumentException("La fecha de fin debe ser posterior o igual a la fecha de inicio");
+        }
+        if (campaign.getRequiredDonorQuantity() <= 0) {
+            throw new IllegalArgumentException("La cantidad de donantes debe ser mayor a 0");
+        }
+
+        return saveUpdated(campaign);
+    }
+
+    // Sets the requiredBloodType string (comma-separated) and the BloodType
+    // entities of the ManyToMany relationship
+    private void applyBloodTypes(Campaign campaign, List<String> bloodTypeStrings) {
+        campaign.setRequiredBloodType(String.join(",", bloodTypeStrings));
 
         List<BloodType> bloodTypes = new ArrayList<>();
         List<BloodType> allBloodTypes = bloodTypeRepository.findAll();
@@ -125,10 +185,18 @@ public class CampaignServiceImpl implements CampaignService {
                     .ifPresent(bloodTypes::add);
         }
 
-        existingCampaign.setBloodTypes(bloodTypes);
+        campaign.setBloodTypes(bloodTypes);
+    }
 
-        // Save updated campaign
-        Campaign savedCampaign = campaignRepository.save(existingCampaign);
+    private CampaignDTO saveUpdated(Campaign existingCampaign) {
+        // Save updated campaign, flushed here so a concurrent update surfaces inside this method
+        Campaign savedCampaign;
+        try {
+            savedCampaign = campaignRepository.saveAndFlush(existingCampaign);
+        } catch (ObjectOptimisticLockingFailureException e) {
+            throw new ConcurrentUpdateException("The campaign was modified by someone else");
+        }
+        resourceVersionService.bump(ResourceVersionService.Resource.CAMPAIGNS);
 
         return parseEntityToDTO(savedCampaign);
     }
@@ -142,5 +210,8 @@ public class CampaignServiceImpl implements CampaignService {
 
         // Delete campaign
         campaignRepository.deleteById(id);
+        dashboardStatsService.campaignDeleted(id);
+        resourceVersionService.bump(ResourceVersionService.Resource.CAMPAIGNS,
+                ResourceVersionService.Resource.APPOINTMENTS);
     }
 }
@@ -0,0 +1,13 @@
+package com.xiojuandawt.blood4life.services;
+
+import org.springframework.messaging.Message;
+
+// Forwards the broadcasts published on this node's broker channel to the
+// other backend nodes, which deliver them to their own STOMP clients.
+public interface ClusterEventBus {
+
+  // Set on messages received from a peer, so they are not forwarded again
+  String RELAYED_HEADER = "clusterRelayed";
+
+  void publish(Message<?> message);
+}
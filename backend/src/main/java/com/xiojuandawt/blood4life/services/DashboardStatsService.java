@@ -0,0 +1,297 @@
+package com.xiojuandawt.blood4life.services;
+
+import com.xiojuandawt.blood4life.dto.DashboardStatsDTO;
+import com.xiojuandawt.blood4life.entities.BloodDonor;
+import com.xiojuandawt.blood4life.repositories.BloodDonorRepository;
+import com.xiojuandawt.blood4life.repositories.CampaignRepository;
+import com.xiojuandawt.blood4life.repositories.HospitalRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+
+// In-memory dashboard statistics (donors by blood type and gender, totals and
+// campaigns per hospital). Seeded once from the database, kept up to date by
+// the donor, hospital and campaign services and periodically reconciled.
+// Readers get a cached immutable snapshot, rebuilt only after a change.
+// A reconcile that finds drift bumps the versions behind the stats ETag.
+@Service
+public class DashboardStatsService {
+
+  private static final Logger log = LoggerFactory.getLogger(DashboardStatsService.class);
+
+  // Same genders as the GROUP BY queries in BloodDonorRepository
+  private static final Set<String> CHART_GENDERS = Set.of("Masculino", "Femenino", "Prefiero no decirlo");
+
+  @Autowired
+  private BloodDonorRepository bloodDonorRepository;
+
+  @Autowired
+  private HospitalRepository hospitalRepository;
+
+  @Autowired
+  private CampaignRepository campaignRepository;
+
+  @Autowired
+  private ResourceVersionService resourceVersionService;
+
+  // Gender and blood type of each donor, to undo its contribution on update/delete
+  private Map<Integer, DonorFacts> donors = new HashMap<>();
+  private Map<String, Long> byBloodType = new TreeMap<>();
+  private Map<String, Long> byGender = new TreeMap<>();
+  private Map<String, Map<String, Long>> byGenderAndBloodType = new TreeMap<>();
+  private Set<Integer> hospitalIds = new HashSet<>();
+  private Map<Integer, Integer> campaignHospital = new HashMap<>();
+  private Map<Integer, Long> campaignsByHospital = new HashMap<>();
+
+  private volatile DashboardStatsDTO snapshot;
+
+  private final ReloadBuffer changesDuringReload = new ReloadBuffer();
+
+  @EventListener(ApplicationReadyEvent.class)
+  public void seed() {
+    this.reload();
+  }
+
+  @Scheduled(
+      initialDelayString = "${dashboard.stats.reconcile-interval-ms:600000}",
+      fixedDelayString = "${dashboard.stats.reconcile-interval-ms:600000}")
+  public void reconcile() {
+    this.reload();
+  }
+
+  public DashboardStatsDTO getSnapshot() {
+    DashboardStatsDTO current = snapshot;
+    if (current == null) {
+      synchronized (this) {
+        if (snapshot == null) {
+          snapshot = this.buildSnapshot();
+        }
+        current = snapshot;
+      }
+    }
+    return current;
+  }
+
+  public synchronized long countCampaignsByHospital(Integer hospitalId) {
+    return campaignsByHospital.getOrDefault(hospitalId, 0L);
+  }
+
+  public void donorSaved(BloodDonor donor) {
+    Integer id = donor.getId();
+    DonorFacts facts = new DonorFacts(donor.getGender(),
+        donor.getBloodType() != null ? donor.getBloodType().getType() : null);
+    AfterCommit.run(() -> {
+      synchronized (this) {
+        changesDuringReload.apply(() -> {
+          this.removeDonor(donors.remove(id));
+          donors.put(id, facts);
+          this.addDonor(facts, 1);
+        });
+        snapshot = null;
+      }
+    });
+  }
+
+  public void donorDeleted(Integer id) {
+    AfterCommit.run(() -> {
+      synchronized (this) {
+        changesDuringReload.apply(() -> this.removeDonor(donors.remove(id)));
+        snapshot = null;
+      }
+    });
+  }
+
+  public void hospitalSaved(Integer id) {
+    AfterCommit.run(() -> {
+      synchronized (this) {
+        changesDuringReload.apply(() -> hospitalIds.add(id));
+        snapshot = null;
+      }
+    });
+  }
+
+  public void hospitalDeleted(Integer id) {
+    AfterCommit.run(() -> {
+      synchronized (this) {
+        changesDuringReload.apply(() -> hospitalIds.remove(id));
+        snapshot = null;
+      }
+    });
+  }
+
+  public void campaignSaved(Integer id, Integer hospitalId) {
+    AfterCommit.run(() -> {
+      synchronized (this) {
+        changesDuringReload.apply(() -> {
+          Integer previous = campaignHospital.put(id, hospitalId);
+          if (previous != null) {
+            this.adjust(campaignsByHospital, previous, -1);
+          }
+          this.adjust(campaignsByHospital, hospitalId, 1);
+        });
+        snapshot = null;
+      }
+    });
+  }
+
+  public void campaignDeleted(Integer id) {
+    AfterCommit.run(() -> {
+      synchronized (this) {
+        changesDuringReload.apply(() -> {
+          Integer hospitalId = campaignHospital.remove(id);
+          if (hospitalId != null) {
+            this.adjust(campaignsByHospital, hospitalId, -1);
+          }
+        });
+        snapshot = null;
+      }
+    });
+  }
+
+  // Changes committed while the queries run are applied again afterwards
+  private void reload() {
+    try {
+      changesDuringReload.start();
+      List<Object[]> donorRows = bloodDonorRepository.findDonorStatsFacts();
+      List<Integer> hospitals = hospitalRepository.findAllIds();
+      List<Object[]> campaignRows = campaignRepository.findCampaignHospitalIds();
+
+      List<ResourceVersionService.Resource> drifted = new ArrayList<>();
+      synchronized (this) {
+        Map<Integer, DonorFacts> previousDonors = donors;
+        Set<Integer> previousHospitalIds = hospitalIds;
+        Map<Integer, Integer> previousCampaignHospital = campaignHospital;
+
+        donors = new HashMap<>();
+        byBloodType = new TreeMap<>();
+        byGender = new TreeMap<>();
+        byGenderAndBloodType = new TreeMap<>();
+        for (Object[] row : donorRows) {
+          DonorFacts facts = new DonorFacts((String) row[1], (String) row[2]);
+          donors.put((Integer) row[0], facts);
+          this.addDonor(facts, 1);
+        }
+
+        hospitalIds = new HashSet<>(hospitals);
+
+        campaignHospital = new HashMap<>();
+        campaignsByHospital = new HashMap<>();
+        for (Object[] row : campaignRows) {
+          campaignHospital.put((Integer) row[0], (Integer) row[1]);
+          this.adjust(campaignsByHospital, (Integer) row[1], 1);
+        }
+
+        // Compared before the replay: a change replayed here may make this
+        // bump a version once too often, never miss one
+        if (!donors.equals(previousDonors)) {
+          drifted.add(ResourceVersionService.Resource.BLOOD_DONORS);
+        }
+        if (!hospitalIds.equals(previousHospitalIds)) {
+          drifted.add(ResourceVersionService.Resource.HOSPITALS);
+        }
+        if (!campaignHospital.equals(previousCampaignHospital)) {
+          drifted.add(ResourceVersionService.Resource.CAMPAIGNS);
+        }
+        changesDuringReload.replay();
+        snapshot = null;
+      }
+      if (!drifted.isEmpty()) {
+        resourceVersionService.bump(drifted.toArray(new ResourceVersionService.Resource[0]));
+      }
+      log.info("Dashboard stats loaded: {} donors, {} hospitals, {} campaigns",
+          donorRows.size(), hospitals.size(), campaignRows.size());
+    } catch (Exception e) {
+      changesDuringReload.discard();
+      log.error("Error loading dashboard stats: {}", e.getMessage());
+    }
+  }
+
+  private void addDonor(DonorFacts facts, int delta) {
+    if (facts == null) {
+      return;
+    }
+    // Donors without blood type are left out, as the inner join of the queries did
+    if (facts.bloodType != null) {
+      this.adjust(byBloodType, facts.bloodType, delta);
+    }
+    if (facts.gender != null && CHART_GENDERS.contains(facts.gender)) {
+      this.adjust(byGender, facts.gender, delta);
+      if (facts.bloodType != null) {
+        this.adjust(byGenderAndBloodType.computeIfAbsent(facts.gender, g -> new TreeMap<>()), facts.bloodType, delta);
+      }
+    }
+  }
+
+  private void removeDonor(DonorFacts facts) {
+    this.addDonor(facts, -1);
+  }
+
+  private <K> void adjust(Map<K, Long> counts, K key, long delta) {
+    long value = counts.getOrDefault(key, 0L) + delta;
+    if (value > 0) {
+      counts.put(key, value);
+    } else {
+      counts.remove(key);
+    }
+  }
+
+  private DashboardStatsDTO buildSnapshot() {
+    List<Map<String, Object>> breakdown = new ArrayList<>();
+    for (Map.Entry<String, Map<String, Long>> gender : byGenderAndBloodType.entrySet()) {
+      for (Map.Entry<String, Long> bloodType : gender.getValue().entrySet()) {
+        Map<String, Object> item = new HashMap<>();
+        item.put("gender", gender.getKey());
+        item.put("bloodType", bloodType.getKey());
+        item.put("count", bloodType.getValue());
+        breakdown.add(Collections.unmodifiableMap(item));
+      }
+    }
+
+    return new DashboardStatsDTO(
+        List.copyOf(byBloodType.keySet()),
+        List.copyOf(byBloodType.values()),
+        List.copyOf(byGender.keySet()),
+        List.copyOf(byGender.values()),
+        Collections.unmodifiableList(breakdown),
+        donors.size(),
+        hospitalIds.size(),
+        campaignHospital.size());
+  }
+
+  private static class DonorFacts {
+    private final String gender;
+    private final String bloodType;
+
+    private DonorFacts(String gender, String bloodType) {
+      this.gender = gender;
+      this.bloodType = bloodType;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof DonorFacts other)) {
+        return false;
+      }
+      return Objects.equals(gender, other.gender) && Objects.equals(bloodType, other.bloodType);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(gender, bloodType);
+    }
+  }
+}
@@ -0,0 +1,493 @@
+package com.xiojuandawt.blood4life.services;
+
+import com.xiojuandawt.blood4life.entities.Appointment;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.DefaultTransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Maintains donation_daily_rollup: appointments counted per day, hospital,
+// campaign and donor blood type as completed, cancelled or scheduled.
+// Appointment writes adjust the affected rows incrementally, and a
+// restartable job rebuilds the table month by month (the backfill); until it
+// has finished once, readers fall back to counting appointments. A month
+// is rebuilt again when appointments of that month changed while it was
+// being rebuilt. A donor whose blood type changes has the rows of all of
+// their appointments moved to the new type.
+@Service
+public class DonationRollupService {
+
+  private static final Logger log = LoggerFactory.getLogger(DonationRollupService.class);
+
+  private static final String JOB_NAME = "donation_daily_rollup";
+
+  // Category of each appointment status, by status_name
+  private static final String COMPLETED_STATUS = "COMPLETED";
+  private static final String CANCELLED_STATUS = "CANCELLED";
+  private static final List<String> SCHEDULED_STATUSES = List.of("PENDING", "CONFIRMED");
+
+  private static final int COMPLETED = 0;
+  private static final int CANCELLED = 1;
+  private static final int SCHEDULED = 2;
+
+  private static final int MAX_REBUILD_ATTEMPTS = 5;
+
+  @Autowired
+  private JdbcTemplate jdbcTemplate;
+
+  @Autowired
+  private TransactionTemplate transactionTemplate;
+
+  @Autowired
+  @Qualifier("taskScheduler")
+  private ThreadPoolTaskScheduler taskScheduler;
+
+  private final Map<Integer, Integer> categoryByStatusId = new ConcurrentHashMap<>();
+
+  private final AtomicBoolean ready = new AtomicBoolean();
+
+  private final AtomicBoolean running = new AtomicBoolean();
+
+  // Live changes per month (first day): started so far, and started but not
+  // yet applied to the rollup
+  private final Map<LocalDate, AtomicLong> changesStarted = new ConcurrentHashMap<>();
+  private final Map<LocalDate, AtomicInteger> changesPending = new ConcurrentHashMap<>();
+
+  // Rollup row an appointment is counted in
+  public static class Cell {
+    private final LocalDate day;
+    private final int hospitalId;
+    private final int campaignId;
+    private final String bloodType;
+    private final Integer statusId;
+
+    private Cell(LocalDate day, int hospitalId, int campaignId, String bloodType, Integer statusId) {
+      this.day = day;
+      this.hospitalId = hospitalId;
+      this.campaignId = campaignId;
+      this.bloodType = bloodType;
+      this.statusId = statusId;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof Cell cell)) {
+        return false;
+      }
+      return hospitalId == cell.hospitalId && campaignId == cell.campaignId && day.equals(cell.day)
+          && bloodType.equals(cell.bloodType) && Objects.equals(statusId, cell.statusId);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(day, hospitalId, campaignId, bloodType, statusId);
+    }
+  }
+
+  @EventListener(ApplicationReadyEvent.class)
+  public void start() {
+    this.startBackfill(false);
+  }
+
+  public boolean isReady() {
+    return ready.get();
+  }
+
+  /**
+   * Captures the rollup row of an appointment. Call it before modifying the
+   * entity so the old row can be decremented.
+   *
+   * @return the cell, or null when the appointment is not counted (no date)
+   */
+  public Cell cellOf(Appointment appointment) {
+    if (appointment == null || appointment.getDateAppointment() == null || appointment.getCampaign() == null
+        || appointment.getCampaign().getHospital() == null) {
+      return null;
+    }
+    String bloodType = appointment.getBloodDonor() != null && appointment.getBloodDonor().getBloodType() != null
+        ? appointment.getBloodDonor().getBloodType().getType()
+        : "";
+    Integer statusId = appointment.getAppointmentStatus() != null ? appointment.getAppointmentStatus().getId() : null;
+    return new Cell(appointment.getDateAppointment(), appointment.getCampaign().getHospital().getId(),
+        appointment.getCampaign().getId(), bloodType, statusId);
+  }
+
+  /**
+   * Moves one appointment from the "before" row to the "after" row (either
+   * may be null). Inside a transaction the rows are only adjusted once it
+   * commits, so a rolled back write leaves the rollup untouched.
+   */
+  public void appointmentChanged(Cell before, Cell after) {
+    if (Objects.equals(before, after)) {
+      return;
+    }
+    List<LocalDate> months = new ArrayList<>(2);
+    for (Cell cell : new Cell[]{before, after}) {
+      if (cell != null && !months.contains(cell.day.withDayOfMonth(1))) {
+        months.add(cell.day.withDayOfMonth(1));
+      }
+    }
+    this.afterCommit(months, () -> {
+      this.adjust(before, -1);
+      this.adjust(after, 1);
+    });
+  }
+
+  /**
+   * Moves every appointment of a donor from the rows of the old blood type
+   * to the rows of the new one. Call it inside the transaction that changes
+   * the donor; the rows are only moved once it commits.
+   */
+  public void donorBloodTypeChanged(Integer donorId, String before, String after) {
+    String from = before != null ? before : "";
+    String to = after != null ? after : "";
+    if (donorId == null || from.equals(to)) {
+      return;
+    }
+    List<LocalDate> months = new ArrayList<>();
+    for (LocalDate day : jdbcTemplate.queryForList(
+        "SELECT DISTINCT date_appointment FROM appointment WHERE blood_donor_id = ? AND date_appointment IS NOT NULL",
+        LocalDate.class, donorId)) {
+      if (!months.contains(day.withDayOfMonth(1))) {
+        months.add(day.withDayOfMonth(1));
+      }
+    }
+    if (months.isEmpty()) {
+      return;
+    }
+    this.afterCommit(months, () -> {
+      this.moveDonor(donorId, from, -1);
+      this.moveDonor(donorId, to, 1);
+    });
+  }
+
+  @Transactional(readOnly = true)
+  public long countCompletedDonations(Integer hospitalId, LocalDate from, LocalDate to) {
+    Long count;
+    if (ready.get()) {
+      count = jdbcTemplate.queryForObject(
+          "SELECT COALESCE(SUM(completed_count), 0) FROM donation_daily_rollup "
+              + "WHERE hospital_id = ? AND day >= ? AND day < ?",
+          Long.class, hospitalId, Date.valueOf(from), Date.valueOf(to));
+    } else {
+      count = jdbcTemplate.queryForObject(
+          "SELECT COUNT(*) FROM appointment a JOIN campaign c ON c.id = a.campaign_id "
+              + "JOIN appointment_status s ON s.id = a.appointment_status_id "
+              + "WHERE c.hospital_id = ? AND s.status_name = ? AND a.date_appointment >= ? AND a.date_appointment < ?",
+          Long.class, hospitalId, COMPLETED_STATUS, Date.valueOf(from), Date.valueOf(to));
+    }
+    return count != null ? count : 0L;
+  }
+
+  /**
+   * Completed, cancelled and scheduled appointments per month (yyyy-MM) or
+   * day (yyyy-MM-dd) between two dates, read from the rollup. Periods
+   * without appointments are returned with zero counts.
+   */
+  @Transactional(readOnly = true)
+  public List<Map<String, Object>> timeSeries(LocalDate from, LocalDate to, boolean daily,
+      Integer hospitalId, Integer campaignId, String bloodType) {
+    StringBuilder sql = new StringBuilder("SELECT DATE_FORMAT(day, ?) AS period, SUM(completed_count), "
+        + "SUM(cancelled_count), SUM(scheduled_count) FROM donation_daily_rollup WHERE day >= ? AND day < ?");
+    List<Object> params = new ArrayList<>(List.of(daily ? "%Y-%m-%d" : "%Y-%m", Date.valueOf(from), Date.valueOf(to)));
+    if (hospitalId != null) {
+      sql.append(" AND hospital_id = ?");
+      params.add(hospitalId);
+    }
+    if (campaignId != null) {
+      sql.append(" AND campaign_id = ?");
+      params.add(campaignId);
+    }
+    if (bloodType != null) {
+      sql.append(" AND blood_type = ?");
+      params.add(bloodType);
+    }
+    sql.append(" GROUP BY period");
+
+    Map<String, long[]> totals = new LinkedHashMap<>();
+    jdbcTemplate.query(sql.toString(), rs -> {
+      totals.put(rs.getString(1), new long[]{rs.getLong(2), rs.getLong(3), rs.getLong(4)});
+    }, params.toArray());
+
+    List<Map<String, Object>> series = new ArrayList<>();
+    for (LocalDate period = from; period.isBefore(to); period = daily ? period.plusDays(1) : period.plusMonths(1)) {
+      String label = daily ? period.toString() : period.toString().substring(0, 7);
+      long[] counts = totals.getOrDefault(label, new long[3]);
+      Map<String, Object> point = new LinkedHashMap<>();
+      point.put("period", label);
+      point.put("completed", counts[COMPLETED]);
+      point.put("cancelled", counts[CANCELLED]);
+      point.put("scheduled", counts[SCHEDULED]);
+      series.add(point);
+    }
+    return series;
+  }
+
+  /**
+   * Starts the backfill in the background unless it is already running.
+   *
+   * @param restart rebuild every month again instead of resuming
+   * @return false if a backfill was already running
+   */
+  public boolean startBackfill(boolean restart) {
+    if (!running.compareAndSet(false, true)) {
+      return false;
+    }
+    try {
+      taskScheduler.execute(() -> {
+        try {
+          this.backfill(restart);
+        } catch (Exception e) {
+          log.error("Donation rollup backfill stopped, it will resume on the next start: {}", e.getMessage());
+        } finally {
+          running.set(false);
+        }
+      });
+    } catch (RuntimeException e) {
+      running.set(false);
+      throw e;
+    }
+    return true;
+  }
+
+  private void backfill(boolean restart) {
+    LocalDate firstMonth = jdbcTemplate.queryForObject(
+        "SELECT MIN(date_appointment) FROM appointment", LocalDate.class);
+    firstMonth = firstMonth != null ? firstMonth.withDayOfMonth(1) : LocalDate.now().withDayOfMonth(1);
+
+    List<Map<String, Object>> state = jdbcTemplate.queryForList(
+        "SELECT next_month, done FROM rollup_backfill_state WHERE job_name = ?", JOB_NAME);
+    LocalDate month;
+    if (state.isEmpty()) {
+      jdbcTemplate.update("INSERT INTO rollup_backfill_state (job_name, next_month, done) VALUES (?, ?, false)",
+          JOB_NAME, Date.valueOf(firstMonth));
+      month = firstMonth;
+    } else if (restart) {
+      ready.set(false);
+      jdbcTemplate.update("UPDATE rollup_backfill_state SET next_month = ?, done = false WHERE job_name = ?",
+          Date.valueOf(firstMonth), JOB_NAME);
+      month = firstMonth;
+    } else if (Boolean.TRUE.equals(state.get(0).get("done"))) {
+      ready.set(true);
+      return;
+    } else {
+      Object next = state.get(0).get("next_month");
+      if (next instanceof Date date) {
+        month = date.toLocalDate();
+      } else if (next instanceof LocalDate date) {
+        month = date;
+      } else {
+        month = firstMonth;
+      }
+    }
+
+    LocalDate lastAppointment = jdbcTemplate.queryForObject(
+        "SELECT MAX(date_appointment) FROM appointment", LocalDate.class);
+    LocalDate lastMonth = lastAppointment != null && lastAppointment.isAfter(LocalDate.now())
+        ? lastAppointment.withDayOfMonth(1)
+        : LocalDate.now().withDayOfMonth(1);
+
+    log.info("Donation rollup backfill from {} to {}", month, lastMonth);
+    while (!month.isAfter(lastMonth)) {
+      this.rebuildMonth(month);
+      month = month.plusMonths(1);
+      jdbcTemplate.update("UPDATE rollup_backfill_state SET next_month = ? WHERE job_name = ?",
+          Date.valueOf(month), JOB_NAME);
+    }
+
+    jdbcTemplate.update("UPDATE rollup_backfill_state SET done = true WHERE job_name = ?", JOB_NAME);
+    ready.set(true);
+    log.info("Donation rollup backfill finished");
+  }
+
+  // A live change whose appointment the rebuild already read, but whose
+  // upsert lands after it, would be counted twice: the month is rebuilt once
+  // pending changes are applied, and again if new ones started meanwhile
+  private void rebuildMonth(LocalDate start) {
+    LocalDate end = start.plusMonths(1);
+    for (int attempt = 1; ; attempt++) {
+      long started = this.changesStarted(start);
+      this.awaitPendingChanges(start);
+      transactionTemplate.executeWithoutResult(status -> {
+        jdbcTemplate.update("DELETE FROM donation_daily_rollup WHERE day >= ? AND day < ?",
+            Date.valueOf(start), Date.valueOf(end));
+        jdbcTemplate.update(
+            "INSERT INTO donation_daily_rollup "
+                + "(day, hospital_id, campaign_id, blood_type, completed_count, cancelled_count, scheduled_count) "
+                + "SELECT a.date_appointment, c.hospital_id, a.campaign_id, COALESCE(bt.type, ''), "
+                + "SUM(s.status_name = ?), SUM(s.status_name = ?), SUM(s.status_name IN (?, ?)) "
+                + "FROM appointment a "
+                + "JOIN campaign c ON c.id = a.campaign_id "
+                + "JOIN appointment_status s ON s.id = a.appointment_status_id "
+                + "LEFT JOIN blood_donor d ON d.id = a.blood_donor_id "
+                + "LEFT JOIN blood_type bt ON bt.id = d.blood_type_id "
+                + "WHERE a.date_appointment >= ? AND a.date_appointment < ? "
+                + "GROUP BY a.date_appointment, c.hospital_id, a.campaign_id, COALESCE(bt.type, '')",
+            COMPLETED_STATUS, CANCELLED_STATUS, SCHEDULED_STATUSES.get(0), SCHEDULED_STATUSES.get(1),
+            Date.valueOf(start), Date.valueOf(end));
+      });
+      if (this.changesStarted(start) == started) {
+        return;
+      }
+      if (attempt == MAX_REBUILD_ATTEMPTS) {
+        log.warn("Appointments of {} kept changing during the rollup backfill, the month may be off until "
+            + "the next rebuild", start.toString().substring(0, 7));
+        return;
+      }
+    }
+  }
+
+  // Registers a live change of the given months before its write commits,
+  // and applies it once it has
+  private void afterCommit(List<LocalDate> months, Runnable change) {
+    this.start(months);
+    if (TransactionSynchronizationManager.isSynchronizationActive()) {
+      TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+        @Override
+        public void afterCommit() {
+          DonationRollupService.this.apply(change);
+        }
+
+        @Override
+        public void afterCompletion(int status) {
+          DonationRollupService.this.finish(months);
+        }
+      });
+    } else {
+      try {
+        this.apply(change);
+      } finally {
+        this.finish(months);
+      }
+    }
+  }
+
+  private void start(List<LocalDate> months) {
+    for (LocalDate month : months) {
+      changesPending.computeIfAbsent(month, m -> new AtomicInteger()).incrementAndGet();
+      changesStarted.computeIfAbsent(month, m -> new AtomicLong()).incrementAndGet();
+    }
+  }
+
+  private void finish(List<LocalDate> months) {
+    for (LocalDate month : months) {
+      changesPending.get(month).decrementAndGet();
+    }
+  }
+
+  private long changesStarted(LocalDate month) {
+    AtomicLong started = changesStarted.get(month);
+    return started != null ? started.get() : 0L;
+  }
+
+  private void awaitPendingChanges(LocalDate month) {
+    AtomicInteger pending = changesPending.get(month);
+    while (pending != null && pending.get() > 0) {
+      try {
+        Thread.sleep(50);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IllegalStateException("Interrupted while waiting for rollup changes", e);
+      }
+    }
+  }
+
+  // Every row of a change in its own transaction: after a commit the
+  // connection of the finished transaction may still be bound to the thread
+  private void apply(Runnable change) {
+    try {
+      TransactionTemplate requiresNew = new TransactionTemplate(transactionTemplate.getTransactionManager(),
+          new DefaultTransactionDefinition(TransactionDefinition.PROPAGATION_REQUIRES_NEW));
+      requiresNew.executeWithoutResult(status -> change.run());
+    } catch (Exception e) {
+      // The next rebuild repairs the rollup
+      log.error("Error updating donation rollup: {}", e.getMessage());
+    }
+  }
+
+  private void adjust(Cell cell, int delta) {
+    if (cell == null) {
+      return;
+    }
+    int category = this.categoryOf(cell.statusId);
+    if (category < 0) {
+      return;
+    }
+    int[] counts = new int[3];
+    counts[category] = delta;
+    jdbcTemplate.update(
+        "INSERT INTO donation_daily_rollup "
+            + "(day, hospital_id, campaign_id, blood_type, completed_count, cancelled_count, scheduled_count) "
+            + "VALUES (?, ?, ?, ?, ?, ?, ?) ON DUPLICATE KEY UPDATE "
+            + "completed_count = completed_count + VALUES(completed_count), "
+            + "cancelled_count = cancelled_count + VALUES(cancelled_count), "
+            + "scheduled_count = scheduled_count + VALUES(scheduled_count)",
+        Date.valueOf(cell.day), cell.hospitalId, cell.campaignId, cell.bloodType,
+        counts[COMPLETED], counts[CANCELLED], counts[SCHEDULED]);
+  }
+
+  // Adds (sign 1) or removes (sign -1) the donor's appointments to or from
+  // the rows of a blood type, one statement for all of their days
+  private void moveDonor(Integer donorId, String bloodType, int sign) {
+    jdbcTemplate.update(
+        "INSERT INTO donation_daily_rollup "
+            + "(day, hospital_id, campaign_id, blood_type, completed_count, cancelled_count, scheduled_count) "
+            + "SELECT a.date_appointment, c.hospital_id, a.campaign_id, ?, "
+            + "? * SUM(s.status_name = ?), ? * SUM(s.status_name = ?), ? * SUM(s.status_name IN (?, ?)) "
+            + "FROM appointment a "
+            + "JOIN campaign c ON c.id = a.campaign_id "
+            + "JOIN appointment_status s ON s.id = a.appointment_status_id "
+            + "WHERE a.blood_donor_id = ? AND a.date_appointment IS NOT NULL "
+            + "GROUP BY a.date_appointment, c.hospital_id, a.campaign_id "
+            + "ON DUPLICATE KEY UPDATE "
+            + "completed_count = completed_count + VALUES(completed_count), "
+            + "cancelled_count = cancelled_count + VALUES(cancelled_count), "
+            + "scheduled_count = scheduled_count + VALUES(scheduled_count)",
+        bloodType, sign, COMPLETED_STATUS, sign, CANCELLED_STATUS, sign,
+        SCHEDULED_STATUSES.get(0), SCHEDULED_STATUSES.get(1), donorId);
+  }
+
+  private int categoryOf(Integer statusId) {
+    if (statusId == null) {
+      return -1;
+    }
+    return categoryByStatusId.computeIfAbsent(statusId, id -> {
+      List<String> names = jdbcTemplate.queryForList(
+          "SELECT status_name FROM appointment_status WHERE id = ?", String.class, id);
+      String name = names.isEmpty() ? "" : names.get(0);
+      if (COMPLETED_STATUS.equalsIgnoreCase(name)) {
+        return COMPLETED;
+      }
+      if (CANCELLED_STATUS.equalsIgnoreCase(name)) {
+        return CANCELLED;
+      }
+      return SCHEDULED_STATUSES.contains(name.toUpperCase()) ? SCHEDULED : -1;
+    });
+  }
+}
@@ -0,0 +1,238 @@
+package com.xiojuandawt.blood4life.services;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ResultSetExtractor;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.sql.DataSource;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.zip.GZIPOutputStream;
+
+// Full-table exports for admins, written row by row from a forward-only,
+// read-only JDBC cursor straight to the response, so memory use doesn't
+// depend on the size of the table. Passwords are never exported.
+@Service
+public class ExportService {
+
+  public enum Export {
+    BLOOD_DONORS("blood-donors", """
+        SELECT d.id, d.dni, d.first_name, d.last_name, d.gender, bt.type AS blood_type,
+               d.email, d.phone_number, d.date_of_birth
+        FROM blood_donor d
+        LEFT JOIN blood_type bt ON bt.id = d.blood_type_id
+        ORDER BY d.id
+        """),
+    APPOINTMENTS("appointments", """
+        SELECT a.id, a.date_appointment, a.hour_appointment, s.status_name AS status,
+               a.campaign_id, c.hospital_id, a.blood_donor_id, a.hospital_comment
+        FROM appointment a
+        JOIN appointment_status s ON s.id = a.appointment_status_id
+        JOIN campaign c ON c.id = a.campaign_id
+        ORDER BY a.id
+        """),
+    CAMPAIGNS("campaigns", """
+        SELECT c.id, c.hospital_id, c.name, c.description, c.start_date, c.end_date, c.location,
+               c.required_donor_quantity, c.required_blood_type
+        FROM campaign c
+        ORDER BY c.id
+        """);
+
+    private final String path;
+    private final String sql;
+
+    Export(String path, String sql) {
+      this.path = path;
+      this.sql = sql;
+    }
+
+    public String getPath() {
+      return path;
+    }
+
+    public static Optional<Export> fromPath(String path) {
+      return Arrays.stream(values()).filter(export -> export.path.equals(path)).findFirst();
+    }
+  }
+
+  public enum Format {
+    CSV("csv", "text/csv"), NDJSON("ndjson", "application/x-ndjson");
+
+    private final String extension;
+    private final String contentType;
+
+    Format(String extension, String contentType) {
+      this.extension = extension;
+      this.contentType = contentType;
+    }
+
+    public String getExtension() {
+      return extension;
+    }
+
+    public String getContentType() {
+      return contentType;
+    }
+
+    public static Optional<Format> fromParam(String param) {
+      return Arrays.stream(values()).filter(format -> format.extension.equalsIgnoreCase(param)).findFirst();
+    }
+  }
+
+  @Autowired
+  private ObjectMapper objectMapper;
+
+  private final JdbcTemplate jdbcTemplate;
+
+  // Integer.MIN_VALUE makes MySQL Connector/J stream the rows one at a time
+  // instead of reading the whole result into memory first
+  public ExportService(DataSource dataSource, @Value("${export.fetch-size:-2147483648}") int fetchSize) {
+    this.jdbcTemplate = new JdbcTemplate(dataSource);
+    this.jdbcTemplate.setFetchSize(fetchSize);
+  }
+
+  // Throws IOException when the client disconnects mid-export
+  @Transactional(readOnly = true)
+  public void write(Export export, Format format, boolean gzip, OutputStream output) throws IOException {
+    OutputStream target = gzip ? new GZIPOutputStream(output, 8192) : output;
+    Writer writer = new BufferedWriter(new OutputStreamWriter(target, StandardCharsets.UTF_8), 8192);
+    RowWriter rows = format == Format.CSV ? new CsvRowWriter(writer) : new NdjsonRowWriter(writer);
+    try {
+      jdbcTemplate.query(export.sql, (ResultSetExtractor<Void>) rs -> {
+        try {
+          ResultSetMetaData metaData = rs.getMetaData();
+          rows.start(metaData);
+          while (rs.next()) {
+            rows.write(rs, metaData);
+          }
+          return null;
+        } catch (IOException e) {
+          // Client gone: stop reading the cursor
+          throw new UncheckedIOException(e);
+        }
+      });
+    } catch (UncheckedIOException e) {
+      throw e.getCause();
+    }
+    writer.flush();
+    if (gzip) {
+      ((GZIPOutputStream) target).finish();
+    }
+  }
+
+  // Dates and times as ISO-8601 text, everything else as the driver returns it
+  private static Object value(ResultSet rs, int column) throws SQLException {
+    Object value = rs.getObject(column);
+    if (value instanceof Timestamp timestamp) {
+      return timestamp.toLocalDateTime().toString();
+    }
+    if (value instanceof java.sql.Date date) {
+      return date.toLocalDate().toString();
+    }
+    if (value instanceof Time time) {
+      return time.toLocalTime().toString();
+    }
+    return value;
+  }
+
+  private interface RowWriter {
+    void start(ResultSetMetaData metaData) throws SQLException, IOException;
+
+    void write(ResultSet rs, ResultSetMetaData metaData) throws SQLException, IOException;
+  }
+
+  private static class CsvRowWriter implements RowWriter {
+    private final Writer writer;
+
+    private CsvRowWriter(Writer writer) {
+      this.writer = writer;
+    }
+
+    @Override
+    public void start(ResultSetMetaData metaData) throws SQLException, IOException {
+      for (int i = 1; i <= metaData.getColumnCount(); i++) {
+        if (i > 1) {
+          writer.write(',');
+        }
+        writer.write(metaData.getColumnLabel(i));
+      }
+      writer.write("\r\n");
+    }
+
+    @Override
+    public void write(ResultSet rs, ResultSetMetaData metaData) throws SQLException, IOException {
+      for (int i = 1; i <= metaData.getColumnCount(); i++) {
+        if (i > 1) {
+          writer.write(',');
+        }
+        Object value = value(rs, i);
+        if (value != null) {
+          writer.write(escape(value));
+        }
+      }
+      writer.write("\r\n");
+    }
+
+    private static String escape(Object value) {
+      String text = value.toString();
+      // Text starting like a formula is not evaluated when opened in a spreadsheet
+      if (value instanceof String && !text.isEmpty() && "=+-@".indexOf(text.charAt(0)) >= 0) {
+        text = "'" + text;
+      }
+      if (text.indexOf(',') >= 0 || text.indexOf('"') >= 0 || text.indexOf('\n') >= 0 || text.indexOf('\r') >= 0) {
+        return '"' + text.replace("\"", "\"\"") + '"';
+      }
+      return text;
+    }
+  }
+
+  private class NdjsonRowWriter implements RowWriter {
+    private final Writer writer;
+    private final JsonGenerator generator;
+
+    private NdjsonRowWriter(Writer writer) throws IOException {
+      this.writer = writer;
+      this.generator = objectMapper.getFactory().createGenerator(writer);
+      // The writer is flushed and closed by write(), not by the generator
+      this.generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+      this.generator.disable(JsonGenerator.Feature.FLUSH_PASSED_TO_STREAM);
+      // One object per line, separated by the newline written after each
+      this.generator.setRootValueSeparator(null);
+    }
+
+    @Override
+    public void start(ResultSetMetaData metaData) {
+      // NDJSON has no header
+    }
+
+    @Override
+    public void write(ResultSet rs, ResultSetMetaData metaData) throws SQLException, IOException {
+      generator.writeStartObject();
+      for (int i = 1; i <= metaData.getColumnCount(); i++) {
+        generator.writeFieldName(metaData.getColumnLabel(i));
+        generator.writeObject(value(rs, i));
+      }
+      generator.writeEndObject();
+      generator.flush();
+      writer.write('\n');
+    }
+
+  }
+}
@@ -1,20 +1,32 @@
 package com.xiojuandawt.blood4life.services;
 
 import com.xiojuandawt.blood4life.dto.HospitalDTO;
+import com.xiojuandawt.blood4life.dto.KeysetPageDTO;
 import com.xiojuandawt.blood4life.entities.Hospital;
 import jakarta.validation.Valid;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 public interface HospitalService {
 
   List<HospitalDTO> findAll();
 
+  List<HospitalDTO> findAllById(Collection<Integer> ids);
+
+  KeysetPageDTO<HospitalDTO> findPage(String postalCode, String text,
+      String sort, boolean descending, String cursor, int limit);
+
   HospitalDTO createNew(Hospital hospital);
 
-  HospitalDTO update(Hospital hospital);
+  // expectedVersion is the version the client edited (null to skip the check)
+  HospitalDTO update(Hospital hospital, Long expectedVersion);
+
+  // Applies only the fields present in the body (see PatchFields)
+  HospitalDTO patch(Integer id, Map<String, Object> fields);
 
   void delete(int id);
 
@@ -22,5 +34,7 @@ public interface HospitalService {
 
   Optional<Hospital> findHospitalByEmail(String email);
 
+  boolean existsByCif(String cif);
+
   ImageService getImageService();
 }
@@ -1,31 +1,70 @@
 package com.xiojuandawt.blood4life.services;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.xiojuandawt.blood4life.dto.HospitalDTO;
+import com.xiojuandawt.blood4life.dto.KeysetPageDTO;
 import com.xiojuandawt.blood4life.entities.Hospital;
+import com.xiojuandawt.blood4life.exception.ConcurrentUpdateException;
 import com.xiojuandawt.blood4life.exception.ResourceNotFoundException;
 import com.xiojuandawt.blood4life.repositories.HospitalRepository;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.function.Function;
 
 @Service
 public class HospitalServiceImpl implements HospitalService {
 
+  // Sortable columns of the paginated listing and how to read them back
+  private static final Map<String, Function<Hospital, String>> SORT_KEYS = Map.of(
+      "id", hospital -> null,
+      "name", Hospital::getName,
+      "postalCode", Hospital::getPostalCode,
+      "email", Hospital::getEmail,
+      "cif", Hospital::getCif);
+
+  // Fields a PATCH may change; the password has its own endpoint
+  private static final Set<String> PATCHABLE = Set.of("cif", "name", "address", "postalCode",
+      "email", "phoneNumber");
+
+  private final KeysetPages.Totals totals = new KeysetPages.Totals();
+
   @Autowired
   private HospitalRepository hospitalRepository;
 
   @Autowired
   private ImageService imageService;
 
+  @Autowired
+  private DashboardStatsService dashboardStatsService;
+
+  @Autowired
+  private ResourceVersionService resourceVersionService;
+
+  @Autowired
+  private SearchIndexService searchIndexService;
+
+  @Autowired
+  private RegistrationFilterService registrationFilterService;
+
+  @Autowired
+  private ObjectMapper objectMapper;
+
   public ImageService getImageService() {
     return imageService;
   }
 
   @Override
+  @Transactional(readOnly = true)
   public List<HospitalDTO> findAll() {
     List<Hospital> hospitalList = (List<Hospital>) hospitalRepository.findAll();
     List<HospitalDTO> dtoList = new ArrayList<>();
@@ -35,20 +74,90 @@ public class HospitalServiceImpl implements HospitalService {
     return dtoList;
   }
 
+  @Override
+  @Transactional(readOnly = true)
+  public List<HospitalDTO> findAllById(Collection<Integer> ids) {
+    List<HospitalDTO> dtoList = new ArrayList<>();
+    for (Hospital hospital : hospitalRepository.findAllById(ids)) {
+      dtoList.add(parseEntityToDTO(hospital));
+    }
+    return dtoList;
+  }
+
+  @Override
+  @Transactional(readOnly = true)
+  public KeysetPageDTO<HospitalDTO> findPage(String postalCode, String text,
+      String sort, boolean descending, String cursor, int limit) {
+    Specification<Hospital> filters = Specification.allOf(
+        KeysetPages.prefix(postalCode, "postalCode"),
+        KeysetPages.prefix(text, "name", "cif", "email"));
+
+    // Not cached while the replica may still lag behind the last write
+    String totalKey = resourceVersionService.isSettled()
+        ? resourceVersionService.version(ResourceVersionService.Resource.HOSPITALS)
+            + "|" + postalCode + "|" + text
+        : null;
+
+    return KeysetPages.page(hospitalRepository, filters, sort, descending, cursor, limit,
+        SORT_KEYS, Hospital::getId, totalKey, totals, this::parseEntityToDTO);
+  }
+
   @Override
   @Transactional
   public HospitalDTO createNew(Hospital hospital) {
     Hospital saved = hospitalRepository.save(hospital);
+    dashboardStatsService.hospitalSaved(saved.getId());
+    searchIndexService.hospitalSaved(saved);
+    registrationFilterService.hospitalSaved(saved);
+    resourceVersionService.bump(ResourceVersionService.Resource.HOSPITALS);
     return parseEntityToDTO(saved);
   }
 
   @Override
   @Transactional
-  public HospitalDTO update(Hospital hospital) {
-    if (hospitalRepository.findById(hospital.getId()).isEmpty()) {
-      throw new ResourceNotFoundException("Hospital not found with id " + hospital.getId());
+  public HospitalDTO update(Hospital hospital, Long expectedVersion) {
+    Hospital inDatabase = hospitalRepository.findById(hospital.getId())
+        .orElseThrow(() -> new ResourceNotFoundException("Hospital not found with id " + hospital.getId()));
+    // Never refreshed from the database: a write committed after the caller
+    // read the row is a conflict, not something to overwrite
+    Long readVersion = ConcurrentUpdateException.readVersion(expectedVersion, hospital.getVersion(),
+        inDatabase.getVersion());
+    ConcurrentUpdateException.check(readVersion, inDatabase.getVersion());
+    hospital.setVersion(readVersion);
+    return this.saveUpdated(hospital);
+  }
+
+  @Override
+  @Transactional
+  public HospitalDTO patch(Integer id, Map<String, Object> fields) {
+    PatchFields patch = new PatchFields(fields, PATCHABLE, objectMapper);
+    Hospital hospital = hospitalRepository.findById(id)
+        .orElseThrow(() -> new ResourceNotFoundException("Hospital not found with id " + id));
+    ConcurrentUpdateException.check(patch.version(), hospital.getVersion());
+
+    patch.apply("cif", String.class, hospital::setCif);
+    patch.apply("name", String.class, hospital::setName);
+    patch.apply("address", String.class, hospital::setAddress);
+    patch.apply("postalCode", String.class, hospital::setPostalCode);
+    patch.apply("email", String.class, hospital::setEmail);
+    patch.apply("phoneNumber", String.class, hospital::setPhoneNumber);
+
+    return this.saveUpdated(hospital);
+  }
+
+  private HospitalDTO saveUpdated(Hospital hospital) {
+    Hospital updated;
+    try {
+      // Flushed here so a concurrent update surfaces inside this method
+      updated = hospitalRepository.saveAndFlush(hospital);
+    } catch (ObjectOptimisticLockingFailureException e) {
+      throw new ConcurrentUpdateException("The hospital was modified by someone else");
     }
-    Hospital updated = hospitalRepository.save(hospital);
+    searchIndexService.hospitalSaved(updated);
+    registrationFilterService.hospitalSaved(updated);
+    // Campaign lists carry the hospital name
+    resourceVersionService.bump(ResourceVersionService.Resource.HOSPITALS,
+        ResourceVersionService.Resource.CAMPAIGNS);
     return parseEntityToDTO(updated);
   }
 
@@ -59,6 +168,11 @@ public class HospitalServiceImpl implements HospitalService {
       throw new ResourceNotFoundException("Hospital not found with id " + id);
     }
     hospitalRepository.deleteById(id);
+    dashboardStatsService.hospitalDeleted(id);
+    searchIndexService.hospitalDeleted(id);
+    // Their campaigns and appointments go with them
+    resourceVersionService.bump(ResourceVersionService.Resource.HOSPITALS,
+        ResourceVersionService.Resource.CAMPAIGNS, ResourceVersionService.Resource.APPOINTMENTS);
   }
 
   @Override
@@ -66,6 +180,11 @@ public class HospitalServiceImpl implements HospitalService {
     return hospitalRepository.findById(id);
   }
 
+  @Override
+  public boolean existsByCif(String cif) {
+    return hospitalRepository.existsByCif(cif);
+  }
+
   @Override
   public Optional<Hospital> findHospitalByEmail(String email) {
     return hospitalRepository.findHospitalByEmail(email);
@@ -80,6 +199,7 @@ public class HospitalServiceImpl implements HospitalService {
     dto.setPostalCode(hospital.getPostalCode());
     dto.setEmail(hospital.getEmail());
     dto.setPhoneNumber(hospital.getPhoneNumber());
+    dto.setVersion(hospital.getVersion());
     if (hospital.getImage() != null) {
       dto.setImageName(hospital.getImage().getName());
     }
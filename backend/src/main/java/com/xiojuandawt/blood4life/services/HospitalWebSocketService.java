@@ -3,34 +3,71 @@ package com.xiojuandawt.blood4life.services;
 import com.xiojuandawt.blood4life.dto.AppointmentDTO;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.stereotype.Service;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+import org.springframework.web.socket.messaging.SessionSubscribeEvent;
+import org.springframework.web.socket.messaging.SessionUnsubscribeEvent;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 @Service
 public class HospitalWebSocketService {
 
     private static final Logger log = LoggerFactory.getLogger(HospitalWebSocketService.class);
 
+    public static final String ADMIN_APPOINTMENTS_TOPIC = "/topic/admin/appointments";
+
     @Autowired
     private SimpMessagingTemplate messagingTemplate;
 
+    @Autowired
+    private StompBatchPublisher stompBatchPublisher;
+
+    // Only present when cluster.event-bus.type is set (multi-node deployments)
+    @Autowired
+    private ObjectProvider<ClusterEventBus> clusterEventBus;
+
+    @Value("${websocket.appointments.admin-firehose.enabled:true}")
+    private boolean adminFirehoseEnabled;
+
+    // Subscription ids to the admin firehose, by WebSocket session id (this
+    // node's sessions only)
+    private final Map<String, Set<String>> firehoseSubscriptions = new ConcurrentHashMap<>();
+
     /**
-     * Notifica a todos los suscriptores (hospitales) sobre una nueva cita o
-     * actualización.
-     * Idealmente debería ser a un tópico específico del hospital, pero mantenemos
-     * compatibilidad por ahora.
-     * 
+     * Notifica una nueva cita o actualización solo al hospital dueño de la
+     * campaña, en /topic/hospital/{hospitalId}/appointments.
+     * Los administradores reciben todas las citas en /topic/admin/appointments,
+     * pero solo se publica ahí mientras haya alguno suscrito (opt-in). En un
+     * clúster se publica siempre: los suscritos pueden estar en otro nodo.
+     *
+     * @param hospitalId     ID del hospital de la campaña
      * @param appointmentDTO La cita actualizada
      */
-    public void notifyAppointmentUpdate(AppointmentDTO appointmentDTO) {
-        log.info("Broadcasting appointment update to /topic/appointments: ID {}", appointmentDTO.getId());
-        messagingTemplate.convertAndSend("/topic/appointments", appointmentDTO);
+    public void notifyAppointmentUpdate(Integer hospitalId, AppointmentDTO appointmentDTO) {
+        if (hospitalId != null) {
+            String destination = "/topic/hospital/" + hospitalId + "/appointments";
+            log.info("Sending appointment update to {}: ID {}", destination, appointmentDTO.getId());
+            stompBatchPublisher.publish(destination, appointmentDTO);
+        }
+
+        if (adminFirehoseEnabled
+                && (!firehoseSubscriptions.isEmpty() || clusterEventBus.getIfAvailable() != null)) {
+            stompBatchPublisher.publish(ADMIN_APPOINTMENTS_TOPIC, appointmentDTO);
+        }
     }
 
     /**
      * Notifica actualizaciones estadísticas del dashboard
-     * 
+     *
      * @param hospitalId ID del hospital
      * @param stats      Objeto de estadísticas
      */
@@ -39,4 +76,29 @@ public class HospitalWebSocketService {
         log.info("Sending stats update to {}", destination);
         messagingTemplate.convertAndSend(destination, stats);
     }
+
+    @EventListener
+    public void onSubscribe(SessionSubscribeEvent event) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.wrap(event.getMessage());
+        if (ADMIN_APPOINTMENTS_TOPIC.equals(accessor.getDestination())
+                || (ADMIN_APPOINTMENTS_TOPIC + StompBatchPublisher.BATCH_SUFFIX).equals(accessor.getDestination())) {
+            firehoseSubscriptions
+                    .computeIfAbsent(accessor.getSessionId(), id -> ConcurrentHashMap.newKeySet())
+                    .add(accessor.getSubscriptionId());
+        }
+    }
+
+    @EventListener
+    public void onUnsubscribe(SessionUnsubscribeEvent event) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.wrap(event.getMessage());
+        firehoseSubscriptions.computeIfPresent(accessor.getSessionId(), (sessionId, subscriptionIds) -> {
+            subscriptionIds.remove(accessor.getSubscriptionId());
+            return subscriptionIds.isEmpty() ? null : subscriptionIds;
+        });
+    }
+
+    @EventListener
+    public void onDisconnect(SessionDisconnectEvent event) {
+        firehoseSubscriptions.remove(event.getSessionId());
+    }
 }
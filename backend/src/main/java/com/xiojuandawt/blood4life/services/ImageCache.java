@@ -0,0 +1,204 @@
+package com.xiojuandawt.blood4life.services;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.AbstractResource;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Optional LRU cache of the most requested images (hospital logos, popular
+// avatars). The bytes live in direct ByteBuffers, outside the GC heap, within
+// a fixed byte budget. An entry is reused only while the file keeps the size
+// and modification time it was loaded with, so a replaced file is reloaded.
+@Service
+public class ImageCache {
+
+  @Value("${image.cache.enabled:false}")
+  private boolean enabled;
+
+  @Value("${image.cache.max-bytes:33554432}")
+  private long maxBytes;
+
+  // Larger images are always streamed from disk
+  @Value("${image.cache.max-entry-bytes:1048576}")
+  private long maxEntryBytes;
+
+  // Access order: the eldest entry is the least recently used
+  private final LinkedHashMap<Path, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+  private long usedBytes;
+  private long hits;
+  private long misses;
+  private long evictions;
+
+  // Cached copy of the file, loaded on a miss; null when the cache is
+  // disabled or the file is too large to be cached
+  public Resource get(Path path) throws IOException {
+    if (!enabled) {
+      return null;
+    }
+    BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+    long lastModified = attributes.lastModifiedTime().toMillis();
+    if (attributes.size() > maxEntryBytes || attributes.size() > maxBytes) {
+      return null;
+    }
+
+    synchronized (this) {
+      Entry entry = entries.get(path);
+      if (entry != null && entry.lastModified == lastModified && entry.buffer.remaining() == attributes.size()) {
+        hits++;
+        return new CachedImageResource(path.getFileName().toString(), entry);
+      }
+      this.remove(path);
+      misses++;
+    }
+
+    ByteBuffer buffer = ByteBuffer.allocateDirect((int) attributes.size());
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      while (buffer.hasRemaining() && channel.read(buffer) != -1) {
+        // read until full or end of file
+      }
+    }
+    buffer.flip();
+    Entry loaded = new Entry(buffer.asReadOnlyBuffer(), lastModified);
+
+    synchronized (this) {
+      this.remove(path);
+      entries.put(path, loaded);
+      usedBytes += loaded.buffer.capacity();
+      Iterator<Map.Entry<Path, Entry>> eldest = entries.entrySet().iterator();
+      while (usedBytes > maxBytes && eldest.hasNext()) {
+        usedBytes -= eldest.next().getValue().buffer.capacity();
+        eldest.remove();
+        evictions++;
+      }
+    }
+    return new CachedImageResource(path.getFileName().toString(), loaded);
+  }
+
+  public synchronized void invalidate(Path path) {
+    this.remove(path);
+  }
+
+  public synchronized Map<String, Object> getStats() {
+    Map<String, Object> stats = new LinkedHashMap<>();
+    stats.put("enabled", enabled);
+    stats.put("entries", entries.size());
+    stats.put("usedBytes", usedBytes);
+    stats.put("maxBytes", maxBytes);
+    stats.put("hits", hits);
+    stats.put("misses", misses);
+    stats.put("evictions", evictions);
+    stats.put("hitRatio", hits + misses > 0 ? (double) hits / (hits + misses) : 0.0);
+    return stats;
+  }
+
+  // Direct memory is released once the dropped buffer is garbage collected
+  private void remove(Path path) {
+    Entry removed = entries.remove(path);
+    if (removed != null) {
+      usedBytes -= removed.buffer.capacity();
+    }
+  }
+
+  private static class Entry {
+    private final ByteBuffer buffer;
+    private final long lastModified;
+
+    private Entry(ByteBuffer buffer, long lastModified) {
+      this.buffer = buffer;
+      this.lastModified = lastModified;
+    }
+  }
+
+  // Served like the file itself (length, last modified, ranges), each
+  // reader getting its own view of the shared buffer
+  public static class CachedImageResource extends AbstractResource {
+    private final String filename;
+    private final Entry entry;
+
+    private CachedImageResource(String filename, Entry entry) {
+      this.filename = filename;
+      this.entry = entry;
+    }
+
+    @Override
+    public String getFilename() {
+      return filename;
+    }
+
+    @Override
+    public String getDescription() {
+      return "cached image [" + filename + "]";
+    }
+
+    @Override
+    public boolean exists() {
+      return true;
+    }
+
+    @Override
+    public long contentLength() {
+      return entry.buffer.remaining();
+    }
+
+    @Override
+    public long lastModified() {
+      return entry.lastModified;
+    }
+
+    @Override
+    public InputStream getInputStream() {
+      return new ByteBufferInputStream(entry.buffer.duplicate());
+    }
+  }
+
+  private static class ByteBufferInputStream extends InputStream {
+    private final ByteBuffer buffer;
+
+    private ByteBufferInputStream(ByteBuffer buffer) {
+      this.buffer = buffer;
+    }
+
+    @Override
+    public int read() {
+      return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+    }
+
+    @Override
+    public int read(byte[] bytes, int offset, int length) {
+      if (length == 0) {
+        return 0;
+      }
+      if (!buffer.hasRemaining()) {
+        return -1;
+      }
+      int count = Math.min(length, buffer.remaining());
+      buffer.get(bytes, offset, count);
+      return count;
+    }
+
+    // Range requests skip straight to their offset
+    @Override
+    public long skip(long n) {
+      int count = (int) Math.max(0, Math.min(n, buffer.remaining()));
+      buffer.position(buffer.position() + count);
+      return count;
+    }
+
+    @Override
+    public int available() {
+      return buffer.remaining();
+    }
+  }
+}
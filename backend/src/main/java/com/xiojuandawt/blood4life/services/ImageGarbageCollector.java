@@ -0,0 +1,123 @@
+package com.xiojuandawt.blood4life.services;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// Bounds the growth of uploads/: recounts the donors and hospitals using
+// each image, deletes the image rows nobody uses any more and then every
+// file (originals, variants, abandoned temp files) without a row.
+// Anything touched within the grace period is left alone, so an image that
+// was just uploaded but not attached yet survives.
+@Service
+public class ImageGarbageCollector {
+
+  private static final Logger log = LoggerFactory.getLogger(ImageGarbageCollector.class);
+
+  @Autowired
+  private JdbcTemplate jdbcTemplate;
+
+  @Autowired
+  private ImageService imageService;
+
+  @Autowired
+  private ImageCache imageCache;
+
+  @Value("${image.gc.grace-minutes:60}")
+  private long graceMinutes;
+
+  @Scheduled(
+      initialDelayString = "${image.gc.interval-ms:3600000}",
+      fixedDelayString = "${image.gc.interval-ms:3600000}")
+  public void collect() {
+    try {
+      Instant cutoff = Instant.now().minus(graceMinutes, ChronoUnit.MINUTES);
+      this.recountReferences();
+      int rows = this.deleteUnreferencedRows(cutoff);
+      int files = this.deleteOrphanFiles(cutoff);
+      if (rows > 0 || files > 0) {
+        log.info("Image GC: {} unreferenced images and {} orphan files deleted", rows, files);
+      }
+    } catch (Exception e) {
+      log.error("Error collecting images: {}", e.getMessage());
+    }
+  }
+
+  private void recountReferences() {
+    jdbcTemplate.update("""
+        UPDATE image i
+        SET ref_count = (SELECT COUNT(*) FROM blood_donor d WHERE d.image_id = i.id)
+                      + (SELECT COUNT(*) FROM hospital h WHERE h.image_id = i.id)
+        """);
+  }
+
+  private int deleteUnreferencedRows(Instant cutoff) {
+    List<Integer> candidates = jdbcTemplate.queryForList(
+        "SELECT id FROM image WHERE ref_count = 0 AND last_used_at < ?",
+        Integer.class, Timestamp.from(cutoff));
+
+    int deleted = 0;
+    for (Integer id : candidates) {
+      // Checked again in the DELETE itself: the image may have been attached
+      // or re-uploaded since the recount
+      deleted += jdbcTemplate.update("""
+          DELETE FROM image
+          WHERE id = ? AND last_used_at < ?
+            AND NOT EXISTS (SELECT 1 FROM blood_donor d WHERE d.image_id = image.id)
+            AND NOT EXISTS (SELECT 1 FROM hospital h WHERE h.image_id = image.id)
+          """, id, Timestamp.from(cutoff));
+    }
+    return deleted;
+  }
+
+  private int deleteOrphanFiles(Instant cutoff) throws IOException {
+    Path root = imageService.getUploadRoot();
+    if (!Files.isDirectory(root)) {
+      return 0;
+    }
+
+    // Base names (without extension) of the images that still have a row
+    Set<String> live = new HashSet<>();
+    for (Map<String, Object> row : jdbcTemplate.queryForList("SELECT file_name FROM image")) {
+      live.add(this.baseName((String) row.get("file_name")));
+    }
+
+    int deleted = 0;
+    try (DirectoryStream<Path> files = Files.newDirectoryStream(root)) {
+      for (Path file : files) {
+        if (!Files.isRegularFile(file) || Files.getLastModifiedTime(file).toInstant().isAfter(cutoff)) {
+          continue;
+        }
+        String base = this.baseName(file.getFileName().toString());
+        // Variants are named "{base}_{size}.jpg"
+        String owner = base.replaceFirst("_\\d+$", "");
+        if (!live.contains(base) && !live.contains(owner) && Files.deleteIfExists(file)) {
+          imageCache.invalidate(file);
+          deleted++;
+        }
+      }
+    }
+    return deleted;
+  }
+
+  private String baseName(String fileName) {
+    int dot = fileName.lastIndexOf('.');
+    return dot > 0 ? fileName.substring(0, dot) : fileName;
+  }
+}
@@ -1,15 +1,29 @@
 package com.xiojuandawt.blood4life.services;
 
 import com.xiojuandawt.blood4life.entities.Image;
+import com.xiojuandawt.blood4life.exception.InvalidImageException;
 import com.xiojuandawt.blood4life.repositories.ImageRepository;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDateTime;
+import java.util.HexFormat;
+import java.util.Optional;
 
 @Service
 public class ImageService {
@@ -17,20 +31,171 @@ public class ImageService {
   @Autowired
   private ImageRepository imageRepository;
 
+  @Autowired
+  private ImageVariantService imageVariantService;
+
+  @Autowired
+  private ImageCache imageCache;
+
   private final String uploadDir = "uploads/";
 
-  public Image saveImage(MultipartFile multipartFile, String fileName) throws IOException {
+  @Value("${image.upload.max-bytes:10485760}")
+  private long maxBytes;
+
+  // Stores the upload under the SHA-256 of its content, computed while the
+  // stream is copied to disk. Content uploaded before reuses its row and file.
+  // The upload is never held in memory: it goes from the multipart stream to
+  // a temp file in uploads/ and is then moved into place atomically.
+  public Image saveImage(MultipartFile multipartFile) throws IOException {
+    Path root = this.getUploadRoot();
+    Files.createDirectories(root);
+    Path temp = Files.createTempFile(root, "upload", ".tmp");
+    try {
+      MessageDigest digest = this.sha256();
+      String extension;
+      try (InputStream in = multipartFile.getInputStream();
+          OutputStream out = Files.newOutputStream(temp)) {
+        extension = this.copyImage(in, out, digest);
+      }
+      String hash = HexFormat.of().formatHex(digest.digest());
+
+      Optional<Image> existing = imageRepository.findFirstByContentHash(hash);
+      if (existing.isPresent()) {
+        Image image = existing.get();
+        // Restore the file if it went missing
+        Path filepath = root.resolve(image.getName());
+        if (!Files.exists(filepath)) {
+          Files.move(temp, filepath, StandardCopyOption.ATOMIC_MOVE);
+        }
+        image.setLastUsedAt(LocalDateTime.now());
+        return imageRepository.save(image);
+      }
 
-    Path filepath = Paths.get(uploadDir + fileName);
-    Files.createDirectories(filepath.getParent());
-    Files.write(filepath, multipartFile.getBytes());
+      String fileName = hash + extension;
+      Path filepath = root.resolve(fileName);
+      if (!Files.exists(filepath)) {
+        Files.move(temp, filepath, StandardCopyOption.ATOMIC_MOVE);
+      }
+
+      Image image = new Image(fileName);
+      image.setContentHash(hash);
+      image.setLastUsedAt(LocalDateTime.now());
+      Image saved;
+      try {
+        saved = imageRepository.save(image);
+      } catch (DataIntegrityViolationException e) {
+        // The same content was uploaded concurrently
+        return imageRepository.findFirstByContentHash(hash).orElseThrow(() -> e);
+      }
+      // Avatar-sized variants are produced in the background
+      imageVariantService.generateAsync(filepath);
+      return saved;
+    } finally {
+      Files.deleteIfExists(temp);
+    }
+  }
+
+  public Path getUploadRoot() {
+    return Paths.get(uploadDir).toAbsolutePath().normalize();
+  }
+
+  // The file is streamed by the caller from disk, or from the off-heap
+  // ImageCache when it is enabled
+  public Resource getImage(String filename) throws IOException {
+    return this.load(this.resolve(filename));
+  }
+
+  // Variant fitting the requested size, or the original while the variants
+  // are not generated yet (the returned file name tells which one it is)
+  public Resource getImage(String filename, int size) throws IOException {
+    if (imageVariantService.isVariantName(filename)) {
+      throw new InvalidImageException("Variants have no variants of their own");
+    }
+    Path original = this.resolve(filename);
+    Path variant = original.resolveSibling(imageVariantService.variantName(filename, size));
+    if (Files.isRegularFile(variant)) {
+      return this.load(variant);
+    }
+    imageVariantService.generateAsync(original);
+    return this.load(original);
+  }
+
+  private Resource load(Path path) throws IOException {
+    Resource cached = imageCache.get(path);
+    return cached != null ? cached : new FileSystemResource(path);
+  }
+
+  private Path resolve(String filename) throws IOException {
+    Path root = this.getUploadRoot();
+    Path path = root.resolve(filename).normalize();
+    // Reject names like "../application.properties" that escape the upload dir
+    if (!path.startsWith(root) || !Files.isRegularFile(path)) {
+      throw new NoSuchFileException(filename);
+    }
+    return path;
+  }
+
+  // Copies in fixed-size chunks, hashing and counting on the way, so an
+  // oversized or non-image upload is rejected as soon as it shows. Returns
+  // the extension matching the sniffed type.
+  private String copyImage(InputStream in, OutputStream out, MessageDigest digest) throws IOException {
+    byte[] header = in.readNBytes(12);
+    String extension = this.sniffExtension(header);
+    if (extension == null) {
+      throw new InvalidImageException("Unsupported image format (JPEG, PNG, GIF or WebP expected)");
+    }
+    digest.update(header);
+    out.write(header);
+
+    long total = header.length;
+    byte[] buffer = new byte[8192];
+    int read;
+    while ((read = in.read(buffer)) != -1) {
+      total += read;
+      if (total > maxBytes) {
+        throw new InvalidImageException("Image exceeds the maximum size of " + maxBytes + " bytes");
+      }
+      digest.update(buffer, 0, read);
+      out.write(buffer, 0, read);
+    }
+    return extension;
+  }
+
+  // Magic bytes of the formats ImageController serves; the client's file
+  // name and Content-Type are not trusted
+  private String sniffExtension(byte[] header) {
+    if (this.startsWith(header, 0, 0xFF, 0xD8, 0xFF)) {
+      return ".jpg";
+    }
+    if (this.startsWith(header, 0, 0x89, 'P', 'N', 'G', 0x0D, 0x0A, 0x1A, 0x0A)) {
+      return ".png";
+    }
+    if (this.startsWith(header, 0, 'G', 'I', 'F', '8')) {
+      return ".gif";
+    }
+    if (this.startsWith(header, 0, 'R', 'I', 'F', 'F') && this.startsWith(header, 8, 'W', 'E', 'B', 'P')) {
+      return ".webp";
+    }
+    return null;
+  }
 
-    Image image = new Image(fileName);
-    return imageRepository.save(image);
+  private boolean startsWith(byte[] data, int offset, int... expected) {
+    if (data.length < offset + expected.length) {
+      return false;
+    }
+    for (int i = 0; i < expected.length; i++) {
+      if ((data[offset + i] & 0xFF) != expected[i]) {
+        return false;
+      }
+    }
+    return true;
   }
 
-  public byte[] getImage(String filename) throws IOException {
-    Path path = Paths.get(uploadDir + filename);
-    return Files.readAllBytes(path);
+  private MessageDigest sha256() {
+    try {
+      return MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
   }
 }
@@ -0,0 +1,252 @@
+package com.xiojuandawt.blood4life.services;
+
+import com.xiojuandawt.blood4life.repositories.ImageRepository;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+// Downscaled JPEG variants of the uploaded images ("{base}_{size}.jpg" next
+// to the original), so avatars don't download the full-resolution upload.
+// Variants are produced on a small bounded pool after the upload, never on
+// the request thread; until they exist the original is served instead.
+// Images declaring more pixels than the cap are never decoded: a small
+// compressed file can expand to a bitmap larger than the heap.
+@Service
+public class ImageVariantService {
+
+  private static final Logger log = LoggerFactory.getLogger(ImageVariantService.class);
+
+  private static final Pattern VARIANT_NAME = Pattern.compile(".+_(\\d+)\\.jpg");
+
+  @Autowired
+  private ImageRepository imageRepository;
+
+  // Longest side of each variant, in pixels
+  @Value("${image.variants.sizes:64,256,1024}")
+  private int[] sizes;
+
+  @Value("${image.variants.jpeg-quality:0.8}")
+  private float jpegQuality;
+
+  // Width x height above which no variants are generated
+  @Value("${image.variants.max-pixels:40000000}")
+  private long maxPixels;
+
+  private final ThreadPoolExecutor executor;
+
+  // Images queued or being processed, and images ImageIO cannot decode (e.g.
+  // webp) or that exceed the pixel cap, so repeated requests don't enqueue
+  // them again
+  private final Set<String> pending = ConcurrentHashMap.newKeySet();
+  private final Set<String> unsupported = ConcurrentHashMap.newKeySet();
+
+  public ImageVariantService(
+      @Value("${image.variants.threads:2}") int threads,
+      @Value("${image.variants.queue-capacity:100}") int queueCapacity) {
+    AtomicInteger counter = new AtomicInteger();
+    this.executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+        new ArrayBlockingQueue<>(queueCapacity), runnable -> {
+          Thread thread = new Thread(runnable, "image-variants-" + counter.incrementAndGet());
+          thread.setDaemon(true);
+          return thread;
+        });
+    this.executor.allowCoreThreadTimeOut(true);
+  }
+
+  // Name of the variant that serves a request for the given size: the
+  // smallest one at least that large, or the largest one
+  public String variantName(String fileName, int size) {
+    int[] sorted = Arrays.stream(sizes).sorted().toArray();
+    int chosen = sorted[sorted.length - 1];
+    for (int candidate : sorted) {
+      if (candidate >= size) {
+        chosen = candidate;
+        break;
+      }
+    }
+    int dot = fileName.lastIndexOf('.');
+    String base = dot > 0 ? fileName.substring(0, dot) : fileName;
+    return base + "_" + chosen + ".jpg";
+  }
+
+  // Whether the name is one of the variants ("{base}_{size}.jpg"), which
+  // have no variants of their own
+  public boolean isVariantName(String fileName) {
+    Matcher matcher = VARIANT_NAME.matcher(fileName);
+    if (!matcher.matches()) {
+      return false;
+    }
+    String size = matcher.group(1);
+    return Arrays.stream(sizes).anyMatch(candidate -> String.valueOf(candidate).equals(size));
+  }
+
+  // Queues the variants of an image stored at the given path; called after
+  // upload, and for images uploaded before variants existed on first request
+  public void generateAsync(Path original) {
+    String fileName = original.getFileName().toString();
+    if (this.isVariantName(fileName) || unsupported.contains(fileName) || !pending.add(fileName)) {
+      return;
+    }
+    // Waits for the image row to be committed before a worker looks it up
+    AfterCommit.run(() -> {
+      try {
+        executor.execute(() -> {
+          try {
+            this.generate(original);
+          } finally {
+            pending.remove(fileName);
+          }
+        });
+      } catch (RejectedExecutionException e) {
+        // Queue full: the original keeps being served and the next request retries
+        pending.remove(fileName);
+        log.warn("Image variant queue full, skipping {}", fileName);
+      }
+    });
+  }
+
+  public int getQueueSize() {
+    return executor.getQueue().size();
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    executor.shutdownNow();
+  }
+
+  private void generate(Path original) {
+    String fileName = original.getFileName().toString();
+    try {
+      BufferedImage source = this.read(original);
+      if (source == null) {
+        unsupported.add(fileName);
+        return;
+      }
+
+      for (int size : sizes) {
+        Path target = original.resolveSibling(this.variantName(fileName, size));
+        if (!Files.exists(target)) {
+          this.writeJpeg(this.scale(source, size), target);
+        }
+      }
+
+      String recorded = Arrays.stream(sizes).sorted().mapToObj(String::valueOf).collect(Collectors.joining(","));
+      imageRepository.findFirstByName(fileName).ifPresent(image -> {
+        image.setVariantSizes(recorded);
+        imageRepository.save(image);
+      });
+    } catch (Exception e) {
+      log.error("Error generating variants of {}: {}", fileName, e.getMessage());
+    }
+  }
+
+  // Decodes the image once its header shows it is within the pixel cap;
+  // null when it is not or no reader supports it
+  private BufferedImage read(Path original) throws IOException {
+    String fileName = original.getFileName().toString();
+    try (ImageInputStream input = ImageIO.createImageInputStream(original.toFile())) {
+      Iterator<ImageReader> readers = input != null ? ImageIO.getImageReaders(input) : null;
+      if (readers == null || !readers.hasNext()) {
+        log.info("No image reader for {}, variants skipped", fileName);
+        return null;
+      }
+      ImageReader reader = readers.next();
+      try {
+        reader.setInput(input, true, true);
+        int width = reader.getWidth(0);
+        int height = reader.getHeight(0);
+        if ((long) width * height > maxPixels) {
+          log.warn("{} is {}x{} pixels, over the cap of {}; variants skipped", fileName, width, height, maxPixels);
+          return null;
+        }
+        return reader.read(0);
+      } finally {
+        reader.dispose();
+      }
+    }
+  }
+
+  // Fits the image in a size x size box (never upscaling), halving in steps
+  // so large downscales don't alias
+  private BufferedImage scale(BufferedImage source, int size) {
+    int longest = Math.max(source.getWidth(), source.getHeight());
+    double ratio = Math.min(1.0, (double) size / longest);
+    int targetWidth = Math.max(1, (int) Math.round(source.getWidth() * ratio));
+    int targetHeight = Math.max(1, (int) Math.round(source.getHeight() * ratio));
+
+    BufferedImage current = source;
+    int width = source.getWidth();
+    int height = source.getHeight();
+    boolean first = true;
+    do {
+      width = Math.max(targetWidth, width / 2);
+      height = Math.max(targetHeight, height / 2);
+      BufferedImage step = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+      Graphics2D graphics = step.createGraphics();
+      // JPEG has no alpha: transparent pixels become white
+      if (first) {
+        graphics.setColor(Color.WHITE);
+        graphics.fillRect(0, 0, width, height);
+        first = false;
+      }
+      graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+      graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+      graphics.drawImage(current, 0, 0, width, height, null);
+      graphics.dispose();
+      current = step;
+    } while (width != targetWidth || height != targetHeight);
+    return current;
+  }
+
+  // Written to a temporary file and moved into place, so a request never
+  // sees a half-written variant
+  private void writeJpeg(BufferedImage image, Path target) throws IOException {
+    Path temp = Files.createTempFile(target.getParent(), "variant", ".tmp");
+    try {
+      ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+      ImageWriteParam param = writer.getDefaultWriteParam();
+      param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+      param.setCompressionQuality(jpegQuality);
+      try (ImageOutputStream output = ImageIO.createImageOutputStream(temp.toFile())) {
+        writer.setOutput(output);
+        writer.write(null, new IIOImage(image, null, null), param);
+      } finally {
+        writer.dispose();
+      }
+      Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    } finally {
+      Files.deleteIfExists(temp);
+    }
+  }
+}
@@ -0,0 +1,258 @@
+package com.xiojuandawt.blood4life.services;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.util.MimeType;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+// Cluster event bus backed by the cluster_event table: every node inserts the
+// messages it publishes and polls the rows written by its peers in id order.
+//
+// Auto-increment ids may become visible out of order when two nodes insert at
+// the same time, so ids skipped by a poll are re-checked for a short while
+// before being given up as rolled back.
+@Service
+@ConditionalOnProperty(name = "cluster.event-bus.type", havingValue = "jdbc")
+public class JdbcClusterEventBus implements ClusterEventBus {
+
+  private static final Logger log = LoggerFactory.getLogger(JdbcClusterEventBus.class);
+
+  // Larger jumps come from auto-increment settings, not from concurrent inserts
+  private static final long MAX_TRACKED_GAP = 1000;
+
+  private static final TypeReference<Map<String, List<String>>> HEADERS_TYPE = new TypeReference<>() {
+  };
+
+  @Autowired
+  private JdbcTemplate jdbcTemplate;
+
+  @Autowired
+  private ObjectMapper objectMapper;
+
+  // Lazy: the broker channel is created by the WebSocket configuration, which
+  // in turn depends on this bus
+  @Lazy
+  @Autowired
+  @Qualifier("brokerChannel")
+  private MessageChannel brokerChannel;
+
+  // Lazy for the same reason: it sends through the broker channel
+  @Lazy
+  @Autowired
+  private StompBatchPublisher stompBatchPublisher;
+
+  @Value("${cluster.node-id:}")
+  private String nodeId;
+
+  @Value("${cluster.event-bus.poll-batch-size:500}")
+  private int pollBatchSize;
+
+  @Value("${cluster.event-bus.gap-timeout-ms:5000}")
+  private long gapTimeoutMs;
+
+  @Value("${cluster.event-bus.retention-minutes:10}")
+  private int retentionMinutes;
+
+  @Value("${cluster.event-bus.publish-queue-capacity:10000}")
+  private int publishQueueCapacity;
+
+  private ThreadPoolExecutor publishExecutor;
+
+  private long lastSeenId;
+
+  // Skipped ids still expected to appear, with the time they were first missed
+  private final Map<Long, Long> gaps = new HashMap<>();
+
+  @PostConstruct
+  public void init() {
+    if (nodeId == null || nodeId.isBlank()) {
+      nodeId = UUID.randomUUID().toString();
+    }
+    // Inserts run outside the publisher's transaction, so the event is visible
+    // to peers right away and a slow database never blocks the request thread
+    publishExecutor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+        new ArrayBlockingQueue<>(publishQueueCapacity), runnable -> {
+          Thread thread = new Thread(runnable, "cluster-event-publisher");
+          thread.setDaemon(true);
+          return thread;
+        }, (runnable, executor) -> log.warn("Cluster event queue full, event not forwarded to peers"));
+
+    // Only events published from now on are relayed
+    Long maxId = jdbcTemplate.queryForObject("SELECT COALESCE(MAX(id), 0) FROM cluster_event", Long.class);
+    lastSeenId = maxId != null ? maxId : 0;
+    log.info("Cluster event bus started as node {} from event {}", nodeId, lastSeenId);
+  }
+
+  @Override
+  public void publish(Message<?> message) {
+    SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.wrap(message);
+    String destination = accessor.getDestination();
+    byte[] payload = this.toBytes(message.getPayload());
+    if (destination == null || payload == null) {
+      return;
+    }
+    MimeType contentType = accessor.getContentType();
+    Map<String, List<String>> nativeHeaders = accessor.toNativeHeaderMap();
+
+    publishExecutor.execute(() -> {
+      try {
+        jdbcTemplate.update(
+            "INSERT INTO cluster_event (node_id, destination, content_type, headers, payload) VALUES (?, ?, ?, ?, ?)",
+            nodeId,
+            destination,
+            contentType != null ? contentType.toString() : null,
+            nativeHeaders.isEmpty() ? null : objectMapper.writeValueAsString(nativeHeaders),
+            payload);
+      } catch (Exception e) {
+        log.error("Error forwarding event for {} to peers: {}", destination, e.getMessage());
+      }
+    });
+  }
+
+  @Scheduled(fixedDelayString = "${cluster.event-bus.poll-interval-ms:200}")
+  public synchronized void poll() {
+    try {
+      this.recheckGaps();
+
+      List<Map<String, Object>> rows = jdbcTemplate.queryForList(
+          "SELECT id, node_id, destination, content_type, headers, payload FROM cluster_event"
+              + " WHERE id > ? ORDER BY id LIMIT ?",
+          lastSeenId, pollBatchSize);
+
+      long now = System.currentTimeMillis();
+      for (Map<String, Object> row : rows) {
+        long id = ((Number) row.get("id")).longValue();
+        if (id - lastSeenId <= MAX_TRACKED_GAP) {
+          for (long missing = lastSeenId + 1; missing < id; missing++) {
+            gaps.put(missing, now);
+          }
+        }
+        lastSeenId = id;
+        this.deliver(row);
+      }
+    } catch (Exception e) {
+      log.error("Error polling cluster events: {}", e.getMessage());
+    }
+  }
+
+  @Scheduled(fixedDelayString = "${cluster.event-bus.cleanup-interval-ms:60000}")
+  public void cleanup() {
+    try {
+      int deleted = jdbcTemplate.update(
+          "DELETE FROM cluster_event WHERE created_at < NOW(3) - INTERVAL ? MINUTE LIMIT 10000",
+          retentionMinutes);
+      if (deleted > 0) {
+        log.info("Deleted {} expired cluster events", deleted);
+      }
+    } catch (Exception e) {
+      log.error("Error deleting expired cluster events: {}", e.getMessage());
+    }
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    publishExecutor.shutdown();
+  }
+
+  private void recheckGaps() {
+    if (gaps.isEmpty()) {
+      return;
+    }
+    long now = System.currentTimeMillis();
+    gaps.values().removeIf(missedAt -> now - missedAt > gapTimeoutMs);
+    if (gaps.isEmpty()) {
+      return;
+    }
+
+    String ids = gaps.keySet().stream().map(String::valueOf).collect(Collectors.joining(","));
+    List<Map<String, Object>> rows = jdbcTemplate.queryForList(
+        "SELECT id, node_id, destination, content_type, headers, payload FROM cluster_event"
+            + " WHERE id IN (" + ids + ") ORDER BY id");
+    for (Map<String, Object> row : rows) {
+      gaps.remove(((Number) row.get("id")).longValue());
+      this.deliver(row);
+    }
+  }
+
+  private void deliver(Map<String, Object> row) {
+    if (nodeId.equals(row.get("node_id"))) {
+      // Already delivered locally when it was published
+      return;
+    }
+
+    SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+    accessor.setDestination((String) row.get("destination"));
+    String contentType = (String) row.get("content_type");
+    if (contentType != null) {
+      accessor.setContentType(MimeType.valueOf(contentType));
+    }
+    for (Map.Entry<String, List<String>> header : this.readHeaders((String) row.get("headers")).entrySet()) {
+      for (String value : header.getValue()) {
+        accessor.addNativeHeader(header.getKey(), value);
+      }
+    }
+    accessor.setHeader(RELAYED_HEADER, Boolean.TRUE);
+
+    byte[] payload = (byte[]) row.get("payload");
+    brokerChannel.send(MessageBuilder.createMessage(payload, accessor.getMessageHeaders()));
+
+    // Batch frames are not relayed, so local batch subscribers get the peer's
+    // events through this node's batches
+    String destination = accessor.getDestination();
+    if (stompBatchPublisher.isBatching(destination)) {
+      try {
+        stompBatchPublisher.addToBatch(destination, objectMapper.readTree(payload));
+      } catch (Exception e) {
+        log.warn("Relayed event for {} is not JSON, not batched: {}", destination, e.getMessage());
+      }
+    }
+  }
+
+  private Map<String, List<String>> readHeaders(String headers) {
+    if (headers == null) {
+      return Collections.emptyMap();
+    }
+    try {
+      return objectMapper.readValue(headers, HEADERS_TYPE);
+    } catch (Exception e) {
+      return Collections.emptyMap();
+    }
+  }
+
+  private byte[] toBytes(Object payload) {
+    if (payload instanceof byte[] bytes) {
+      return bytes;
+    }
+    if (payload instanceof String text) {
+      return text.getBytes(StandardCharsets.UTF_8);
+    }
+    return null;
+  }
+}
@@ -0,0 +1,188 @@
+package com.xiojuandawt.blood4life.services;
+
+import com.xiojuandawt.blood4life.dto.KeysetPageDTO;
+import jakarta.persistence.criteria.Path;
+import jakarta.persistence.criteria.Predicate;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+// Keyset ("seek") pagination helpers shared by the donor and hospital
+// listings. Rows are ordered by a text column with the id as tie-breaker,
+// and the cursor holds both values of the last row served, so every page
+// is an index range scan instead of an ever-growing OFFSET.
+final class KeysetPages {
+
+  static final int MAX_LIMIT = 200;
+
+  // Distinct filter combinations whose totals are kept
+  private static final int MAX_CACHED_TOTALS = 256;
+
+  private KeysetPages() {
+  }
+
+  // Position of the last row served: its id and sort key (null when the row
+  // had no value in the sort column)
+  record Cursor(Integer id, String key) {
+  }
+
+  /**
+   * One page of a listing: the filtered rows after the cursor in (sort, id)
+   * order, the cursor of the next page (null on the last one) and the number
+   * of filtered rows.
+   *
+   * @param sortKeys value of the cursor key for each supported sort field
+   * @param idOf id of a row, the cursor tie-breaker
+   * @param totalKey key of the cached total, or null to count afresh
+   */
+  static <T, D> KeysetPageDTO<D> page(JpaSpecificationExecutor<T> repository, Specification<T> filters,
+      String sort, boolean descending, String cursor, int limit,
+      Map<String, Function<T, String>> sortKeys, Function<T, Integer> idOf,
+      String totalKey, Totals totals, Function<T, D> toDto) {
+    Function<T, String> sortKey = sortKeys.get(sort);
+    if (sortKey == null) {
+      throw new IllegalArgumentException("Unsupported sort field: " + sort);
+    }
+    int pageSize = clampLimit(limit);
+    // Validated up front: thrown from inside the query it would surface as a
+    // persistence error
+    Cursor after = decode(cursor);
+
+    // One row more than the page tells whether there is a next page
+    List<T> rows = repository.findBy(
+        filters.and(seek(sort, descending, after)),
+        query -> query.limit(pageSize + 1).all());
+
+    String nextCursor = null;
+    if (rows.size() > pageSize) {
+      rows = rows.subList(0, pageSize);
+      T last = rows.get(pageSize - 1);
+      nextCursor = encode(idOf.apply(last), sortKey.apply(last));
+    }
+
+    List<D> items = new ArrayList<>();
+    for (T row : rows) {
+      items.add(toDto.apply(row));
+    }
+
+    long total = totalKey != null
+        ? totals.get(totalKey, () -> repository.count(filters))
+        : repository.count(filters);
+
+    return new KeysetPageDTO<>(items, nextCursor, total);
+  }
+
+  // Orders by the bare sort column and id, so the (column, id) index serves
+  // both the ORDER BY and the seek, and keeps only the rows after the cursor;
+  // sortField "id" orders by id alone. NULLs sort lowest, as MySQL does:
+  // first when ascending, last when descending.
+  static <T> Specification<T> seek(String sortField, boolean descending, Cursor after) {
+    return (root, query, cb) -> {
+      Path<Integer> id = root.get("id");
+      Path<String> key = "id".equals(sortField) ? null : root.get(sortField);
+      if (key == null) {
+        query.orderBy(descending ? cb.desc(id) : cb.asc(id));
+      } else {
+        query.orderBy(descending
+            ? List.of(cb.desc(key), cb.desc(id))
+            : List.of(cb.asc(key), cb.asc(id)));
+      }
+
+      if (after == null) {
+        return null;
+      }
+      Predicate afterId = descending ? cb.lessThan(id, after.id()) : cb.greaterThan(id, after.id());
+      if (key == null) {
+        return afterId;
+      }
+      if (after.key() == null) {
+        // Rest of the NULL run, then (ascending) every non-NULL key
+        Predicate nullRun = cb.and(cb.isNull(key), afterId);
+        return descending ? nullRun : cb.or(nullRun, cb.isNotNull(key));
+      }
+      // Comparisons are never true for NULL keys, which come before the
+      // cursor when ascending and after every key when descending
+      Predicate afterKey = descending ? cb.lessThan(key, after.key()) : cb.greaterThan(key, after.key());
+      Predicate sameKey = cb.and(cb.equal(key, after.key()), afterId);
+      return descending ? cb.or(afterKey, sameKey, cb.isNull(key)) : cb.or(afterKey, sameKey);
+    };
+  }
+
+  // Case-insensitive prefix match on any of the fields (the columns use a
+  // case-insensitive collation, so the index is still usable)
+  static <T> Specification<T> prefix(String text, String... fields) {
+    if (text == null || text.isBlank()) {
+      return null;
+    }
+    String pattern = text.trim().replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_") + "%";
+    return (root, query, cb) -> {
+      List<Predicate> any = new ArrayList<>();
+      for (String field : fields) {
+        any.add(cb.like(root.get(field), pattern, '\\'));
+      }
+      return cb.or(any.toArray(new Predicate[0]));
+    };
+  }
+
+  static <T> Specification<T> equal(String field, Object value) {
+    if (value == null || (value instanceof String text && text.isBlank())) {
+      return null;
+    }
+    return (root, query, cb) -> cb.equal(root.get(field), value);
+  }
+
+  // "id:key", or just "id" when the key is null
+  static String encode(Integer id, String key) {
+    String raw = key != null ? id + ":" + key : String.valueOf(id);
+    return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+  }
+
+  // Called before the query is built, so a malformed cursor
+  // is an IllegalArgumentException (400) and not a persistence error
+  static Cursor decode(String cursor) {
+    if (cursor == null || cursor.isBlank()) {
+      return null;
+    }
+    try {
+      String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+      int colon = raw.indexOf(':');
+      if (colon < 0) {
+        return new Cursor(Integer.valueOf(raw), null);
+      }
+      return new Cursor(Integer.valueOf(raw.substring(0, colon)), raw.substring(colon + 1));
+    } catch (RuntimeException e) {
+      throw new IllegalArgumentException("Invalid cursor");
+    }
+  }
+
+  static int clampLimit(int limit) {
+    return Math.max(1, Math.min(limit, MAX_LIMIT));
+  }
+
+  // Totals per filter combination, only recounted after a write bumped the
+  // resource version (which is part of the key)
+  static class Totals {
+    private final Map<String, Long> totals = new ConcurrentHashMap<>();
+
+    long get(String key, Supplier<Long> count) {
+      Long cached = totals.get(key);
+      if (cached != null) {
+        return cached;
+      }
+      if (totals.size() >= MAX_CACHED_TOTALS) {
+        totals.clear();
+      }
+      long total = count.get();
+      totals.put(key, total);
+      return total;
+    }
+  }
+}
@@ -1,5 +1,6 @@
 package com.xiojuandawt.blood4life.services;
 
+import com.xiojuandawt.blood4life.config.WebSocketAuthInterceptor;
 import com.xiojuandawt.blood4life.entities.BloodDonor;
 import com.xiojuandawt.blood4life.entities.Hospital;
 import com.xiojuandawt.blood4life.entities.Notification;
@@ -17,6 +18,8 @@ import java.util.Optional;
 @Service
 public class NotificationServiceImpl implements NotificationService {
 
+    private static final String NOTIFICATIONS_QUEUE = "/queue/notifications";
+
     @Autowired
     private NotificationRepository notificationRepository;
 
@@ -89,7 +92,9 @@ public class NotificationServiceImpl implements NotificationService {
         notification.setDateNotification(LocalDateTime.now());
         notification.setRead(false);
         Notification saved = notificationRepository.save(notification);
-        messagingTemplate.convertAndSend("/topic/notifications/donor/" + receiver.getId(), saved);
+        // Delivered only to the donor's own sessions ("/user/queue/notifications")
+        messagingTemplate.convertAndSendToUser(
+                WebSocketAuthInterceptor.userName("bloodDonor", receiver.getId()), NOTIFICATIONS_QUEUE, saved);
         return saved;
     }
 
@@ -102,7 +107,8 @@ public class NotificationServiceImpl implements NotificationService {
         notification.setDateNotification(LocalDateTime.now());
         notification.setRead(false);
         Notification saved = notificationRepository.save(notification);
-        messagingTemplate.convertAndSend("/topic/notifications/hospital/" + receiver.getId(), saved);
+        messagingTemplate.convertAndSendToUser(
+                WebSocketAuthInterceptor.userName("hospital", receiver.getId()), NOTIFICATIONS_QUEUE, saved);
         return saved;
     }
 }
@@ -0,0 +1,62 @@
+package com.xiojuandawt.blood4life.services;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+// Body of a PATCH request: only the fields present are applied and a null
+// value clears the field. Together with @DynamicUpdate on the entity, the
+// UPDATE then sets just the columns whose value really changed.
+public final class PatchFields {
+
+  private static final String VERSION = "version";
+
+  private final Map<String, Object> fields;
+  private final ObjectMapper objectMapper;
+
+  // Fields not in allowed (id, password, image...) are refused, not ignored
+  public PatchFields(Map<String, Object> fields, Set<String> allowed, ObjectMapper objectMapper) {
+    for (String field : fields.keySet()) {
+      if (!VERSION.equals(field) && !allowed.contains(field)) {
+        throw new IllegalArgumentException("Field cannot be updated: " + field);
+      }
+    }
+    this.fields = fields;
+    this.objectMapper = objectMapper;
+  }
+
+  // Version the client edited, null when it sent none
+  public Long version() {
+    return this.fields.get(VERSION) != null ? this.convert(VERSION, Long.class) : null;
+  }
+
+  public boolean has(String field) {
+    return this.fields.containsKey(field);
+  }
+
+  // For a column that can't be null
+  public <T> void apply(String field, Class<T> type, Consumer<T> setter) {
+    if (this.has(field)) {
+      if (this.fields.get(field) == null) {
+        throw new IllegalArgumentException("Field cannot be null: " + field);
+      }
+      setter.accept(this.convert(field, type));
+    }
+  }
+
+  public <T> void applyNullable(String field, Class<T> type, Consumer<T> setter) {
+    if (this.has(field)) {
+      setter.accept(this.fields.get(field) == null ? null : this.convert(field, type));
+    }
+  }
+
+  public <T> T convert(String field, Class<T> type) {
+    try {
+      return this.objectMapper.convertValue(this.fields.get(field), type);
+    } catch (IllegalArgumentException e) {
+      throw new IllegalArgumentException("Invalid value for " + field);
+    }
+  }
+}
@@ -0,0 +1,277 @@
+package com.xiojuandawt.blood4life.services;
+
+import com.xiojuandawt.blood4life.entities.BloodDonor;
+import com.xiojuandawt.blood4life.entities.Hospital;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.text.Normalizer;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+
+// Bloom filters of the emails, DNIs and CIFs already registered, so a
+// registration with new values (the common case) skips the lookups for
+// existing accounts. A filter never misses a value it was given but may
+// report one it wasn't: "maybe" is confirmed against the database, "no" is
+// trusted. Values registered through another instance reach this one at the
+// next rebuild; until then the unique indexes (V38) reject them, so the
+// database stays the source of truth. Only used for registration: a login
+// must never be refused on the filter's word.
+@Service
+public class RegistrationFilterService {
+
+  private static final Logger log = LoggerFactory.getLogger(RegistrationFilterService.class);
+
+  public enum Key {
+    DONOR_EMAIL("donorEmail"), DONOR_DNI("donorDni"), HOSPITAL_EMAIL("hospitalEmail"), HOSPITAL_CIF("hospitalCif");
+
+    private final String name;
+
+    Key(String name) {
+      this.name = name;
+    }
+  }
+
+  @Autowired
+  private JdbcTemplate jdbcTemplate;
+
+  // Target false-positive rate at the sized capacity
+  @Value("${registration-filter.false-positive-rate:0.01}")
+  private double falsePositiveRate;
+
+  // Values each filter is sized for, at least; the filters are sized for
+  // twice the rows found so they stay accurate between rebuilds
+  @Value("${registration-filter.min-capacity:10000}")
+  private int minCapacity;
+
+  private final Map<Key, Counters> counters = new EnumMap<>(Key.class);
+
+  // Null until the first load: everything is "maybe" until then
+  private volatile Map<Key, BloomFilter> filters;
+
+  // Filters being rebuilt, which also receive the values saved meanwhile
+  private volatile Map<Key, BloomFilter> rebuilding;
+
+  public RegistrationFilterService() {
+    for (Key key : Key.values()) {
+      counters.put(key, new Counters());
+    }
+  }
+
+  @EventListener(ApplicationReadyEvent.class)
+  public void seed() {
+    this.rebuild();
+  }
+
+  // Also drops deleted values, which a Bloom filter can't remove
+  @Scheduled(
+      initialDelayString = "${registration-filter.rebuild-interval-ms:3600000}",
+      fixedDelayString = "${registration-filter.rebuild-interval-ms:3600000}")
+  public synchronized void rebuild() {
+    try {
+      long donors = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM blood_donor", Long.class);
+      long hospitals = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM hospital", Long.class);
+      Map<Key, BloomFilter> next = new EnumMap<>(Key.class);
+      next.put(Key.DONOR_EMAIL, this.newFilter(donors));
+      next.put(Key.DONOR_DNI, this.newFilter(donors));
+      next.put(Key.HOSPITAL_EMAIL, this.newFilter(hospitals));
+      next.put(Key.HOSPITAL_CIF, this.newFilter(hospitals));
+      rebuilding = next;
+
+      jdbcTemplate.query("SELECT email, dni FROM blood_donor", rs -> {
+        next.get(Key.DONOR_EMAIL).put(normalize(rs.getString(1)));
+        next.get(Key.DONOR_DNI).put(normalize(rs.getString(2)));
+      });
+      jdbcTemplate.query("SELECT email, cif FROM hospital", rs -> {
+        next.get(Key.HOSPITAL_EMAIL).put(normalize(rs.getString(1)));
+        next.get(Key.HOSPITAL_CIF).put(normalize(rs.getString(2)));
+      });
+
+      filters = next;
+      log.info("Registration filters loaded: {} donors, {} hospitals", donors, hospitals);
+    } catch (Exception e) {
+      log.error("Error loading registration filters: {}", e.getMessage());
+    } finally {
+      rebuilding = null;
+    }
+  }
+
+  // Whether the value is registered: answered by the filter when it is
+  // definitely new, by the lookup otherwise
+  public boolean exists(Key key, String value, Predicate<String> lookup) {
+    Counters keyCounters = counters.get(key);
+    Map<Key, BloomFilter> current = filters;
+    if (current != null && !current.get(key).mightContain(normalize(value))) {
+      keyCounters.definitelyNew.increment();
+      return false;
+    }
+    boolean exists = lookup.test(value);
+    if (current != null) {
+      (exists ? keyCounters.confirmed : keyCounters.falsePositives).increment();
+    }
+    return exists;
+  }
+
+  // Added right away: if the transaction rolls back the value is only a
+  // false positive until the next rebuild
+  public void donorSaved(BloodDonor donor) {
+    this.donorSaved(donor.getEmail(), donor.getDni());
+  }
+
+  // Donors inserted in bulk, without an entity
+  public void donorSaved(String email, String dni) {
+    this.add(Key.DONOR_EMAIL, email);
+    this.add(Key.DONOR_DNI, dni);
+  }
+
+  public void hospitalSaved(Hospital hospital) {
+    this.add(Key.HOSPITAL_EMAIL, hospital.getEmail());
+    this.add(Key.HOSPITAL_CIF, hospital.getCif());
+  }
+
+  public Map<String, Object> getStats() {
+    Map<Key, BloomFilter> current = filters;
+    Map<String, Object> stats = new LinkedHashMap<>();
+    stats.put("loaded", current != null);
+    for (Key key : Key.values()) {
+      Counters keyCounters = counters.get(key);
+      long definitelyNew = keyCounters.definitelyNew.sum();
+      long falsePositives = keyCounters.falsePositives.sum();
+      Map<String, Object> keyStats = new LinkedHashMap<>();
+      keyStats.put("definitelyNew", definitelyNew);
+      keyStats.put("confirmedExisting", keyCounters.confirmed.sum());
+      keyStats.put("falsePositives", falsePositives);
+      // Share of the new values the filter could not rule out
+      keyStats.put("falsePositiveRate",
+          definitelyNew + falsePositives > 0 ? (double) falsePositives / (definitelyNew + falsePositives) : 0.0);
+      if (current != null) {
+        BloomFilter filter = current.get(key);
+        keyStats.put("bits", filter.bits);
+        keyStats.put("hashes", filter.hashes);
+        keyStats.put("values", filter.values.sum());
+        keyStats.put("expectedFalsePositiveRate", filter.expectedFalsePositiveRate());
+      }
+      stats.put(key.name, keyStats);
+    }
+    return stats;
+  }
+
+  private void add(Key key, String value) {
+    if (value == null) {
+      return;
+    }
+    String normalized = normalize(value);
+    Map<Key, BloomFilter> current = filters;
+    if (current != null) {
+      current.get(key).put(normalized);
+    }
+    Map<Key, BloomFilter> next = rebuilding;
+    if (next != null) {
+      next.get(key).put(normalized);
+    }
+  }
+
+  private BloomFilter newFilter(long rows) {
+    return new BloomFilter(Math.max(minCapacity, rows * 2), falsePositiveRate);
+  }
+
+  // Case- and accent-insensitive like the column collation, so values the
+  // database considers equal are also equal here
+  private static String normalize(String value) {
+    if (value == null) {
+      return "";
+    }
+    String decomposed = Normalizer.normalize(value.trim(), Normalizer.Form.NFD);
+    return decomposed.replaceAll("\\p{M}", "").toLowerCase(Locale.ROOT);
+  }
+
+  private static class Counters {
+    private final LongAdder definitelyNew = new LongAdder();
+    private final LongAdder confirmed = new LongAdder();
+    private final LongAdder falsePositives = new LongAdder();
+  }
+
+  // Lock-free: bits are only ever set, with compare-and-set on 64-bit words
+  private static class BloomFilter {
+    private final long bits;
+    private final int hashes;
+    private final AtomicLongArray words;
+    private final LongAdder values = new LongAdder();
+
+    private BloomFilter(long capacity, double falsePositiveRate) {
+      double ln2 = Math.log(2);
+      this.bits = Math.max(64, (long) Math.ceil(-capacity * Math.log(falsePositiveRate) / (ln2 * ln2)));
+      this.hashes = Math.max(1, (int) Math.round((double) bits / capacity * ln2));
+      this.words = new AtomicLongArray((int) ((bits + 63) / 64));
+    }
+
+    private void put(String value) {
+      long hash1 = hash(value);
+      long hash2 = mix(hash1) | 1;
+      for (int i = 0; i < hashes; i++) {
+        long bit = Long.remainderUnsigned(hash1 + i * hash2, bits);
+        int word = (int) (bit >>> 6);
+        long mask = 1L << bit;
+        long current = words.get(word);
+        while ((current & mask) == 0 && !words.compareAndSet(word, current, current | mask)) {
+          current = words.get(word);
+        }
+      }
+      values.increment();
+    }
+
+    private boolean mightContain(String value) {
+      long hash1 = hash(value);
+      long hash2 = mix(hash1) | 1;
+      for (int i = 0; i < hashes; i++) {
+        long bit = Long.remainderUnsigned(hash1 + i * hash2, bits);
+        if ((words.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    // From the share of bits set: (set / bits) ^ hashes
+    private double expectedFalsePositiveRate() {
+      long set = 0;
+      for (int i = 0; i < words.length(); i++) {
+        set += Long.bitCount(words.get(i));
+      }
+      return Math.pow((double) set / bits, hashes);
+    }
+
+    // 64-bit FNV-1a over the UTF-8 bytes
+    private static long hash(String value) {
+      long hash = 0xcbf29ce484222325L;
+      for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+        hash ^= b & 0xff;
+        hash *= 0x100000001b3L;
+      }
+      return mix(hash);
+    }
+
+    // MurmurHash3 finalizer, spreads the bits of the FNV hash
+    private static long mix(long hash) {
+      hash ^= hash >>> 33;
+      hash *= 0xff51afd7ed558ccdL;
+      hash ^= hash >>> 33;
+      hash *= 0xc4ceb9fe1a85ec53L;
+      hash ^= hash >>> 33;
+      return hash;
+    }
+  }
+}
@@ -0,0 +1,40 @@
+package com.xiojuandawt.blood4life.services;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Incremental changes to an in-memory structure made while a reload reads
+// the database. The reload cannot tell which of them its read already saw,
+// so they are applied again to the reloaded state right after it is swapped
+// in; every change must be idempotent (a put or remove by id).
+final class ReloadBuffer {
+
+  // Null while no reload is running
+  private List<Runnable> changes;
+
+  // Before the reload reads the database
+  synchronized void start() {
+    changes = new ArrayList<>();
+  }
+
+  // Applies a change to the current state and keeps it for the running reload
+  synchronized void apply(Runnable change) {
+    change.run();
+    if (changes != null) {
+      changes.add(change);
+    }
+  }
+
+  // Right after the reloaded state is swapped in, under the same lock as apply()
+  synchronized void replay() {
+    if (changes != null) {
+      changes.forEach(Runnable::run);
+    }
+    changes = null;
+  }
+
+  // The reload failed and the current state already has every change
+  synchronized void discard() {
+    changes = null;
+  }
+}
@@ -0,0 +1,103 @@
+package com.xiojuandawt.blood4life.services;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Service;
+
+import java.security.SecureRandom;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Supplier;
+
+// Version counters behind the ETags of the list endpoints. Every write bumps
+// the counters of the resources it touches once its transaction commits, and
+// a request whose If-None-Match still matches gets a 304 before any query
+// runs or any body is serialized.
+// Counters live in this JVM: the random boot id keeps a tag issued by a
+// previous run (or by another node) from ever matching.
+@Service
+public class ResourceVersionService {
+
+  public enum Resource {
+    BLOOD_DONORS, HOSPITALS, CAMPAIGNS, APPOINTMENTS
+  }
+
+  // Clients may store the response but must revalidate it on every use
+  private static final CacheControl CACHE_CONTROL = CacheControl.noCache().cachePrivate();
+
+  private final String bootId = Long.toHexString(new SecureRandom().nextLong());
+  private final AtomicLongArray versions = new AtomicLongArray(Resource.values().length);
+
+  // With a read replica, list bodies may be read before the replica has
+  // applied the last write; no tag is handed out until it has had time to
+  private final long replicaLagMs;
+
+  private volatile long lastBump;
+
+  public ResourceVersionService(
+      @Value("${replica.datasource.url:}") String replicaUrl,
+      @Value("${replica.sticky-seconds:5}") int stickySeconds) {
+    this.replicaLagMs = replicaUrl.isBlank() ? 0 : stickySeconds * 1000L;
+  }
+
+  // Call after the in-memory caches have been updated for the same write, so
+  // a new tag is never handed out together with stale data
+  public void bump(Resource... resources) {
+    AfterCommit.run(() -> {
+      for (Resource resource : resources) {
+        versions.incrementAndGet(resource.ordinal());
+      }
+      lastBump = System.currentTimeMillis();
+    });
+  }
+
+  public long version(Resource resource) {
+    return versions.get(resource.ordinal());
+  }
+
+  // Whether data read now, possibly from the replica, reflects every bump so
+  // far and may be cached under the current versions
+  public boolean isSettled() {
+    return replicaLagMs == 0 || System.currentTimeMillis() - lastBump >= replicaLagMs;
+  }
+
+  // Strong ETag over the given resources; scope tells apart responses of the
+  // same endpoint that depend on the caller (e.g. a hospital's own counts)
+  public String etag(String scope, Resource... resources) {
+    StringBuilder tag = new StringBuilder("\"").append(bootId).append('-').append(scope);
+    for (Resource resource : resources) {
+      tag.append('-').append(versions.get(resource.ordinal()));
+    }
+    return tag.append('"').toString();
+  }
+
+  // 304 when If-None-Match matches the current tag, otherwise 200 with the
+  // body, which is only built in that case
+  public <T> ResponseEntity<T> conditional(String ifNoneMatch, String etag, Supplier<T> body) {
+    if (this.matches(ifNoneMatch, etag)) {
+      return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).cacheControl(CACHE_CONTROL).build();
+    }
+    if (!this.isSettled()) {
+      return ResponseEntity.ok().cacheControl(CACHE_CONTROL).body(body.get());
+    }
+    return ResponseEntity.ok().eTag(etag).cacheControl(CACHE_CONTROL).body(body.get());
+  }
+
+  private boolean matches(String ifNoneMatch, String etag) {
+    if (ifNoneMatch == null) {
+      return false;
+    }
+    for (String candidate : ifNoneMatch.split(",")) {
+      String tag = candidate.trim();
+      // If-None-Match uses the weak comparison
+      if (tag.startsWith("W/")) {
+        tag = tag.substring(2);
+      }
+      if (tag.equals("*") || tag.equals(etag)) {
+        return true;
+      }
+    }
+    return false;
+  }
+}
@@ -0,0 +1,352 @@
+package com.xiojuandawt.blood4life.services;
+
+import com.xiojuandawt.blood4life.entities.BloodDonor;
+import com.xiojuandawt.blood4life.entities.Hospital;
+import com.xiojuandawt.blood4life.repositories.BloodDonorRepository;
+import com.xiojuandawt.blood4life.repositories.HospitalRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// In-memory prefix index for the typeahead search: donors by DNI, email and
+// name, hospitals by name, CIF and postal code. Every token (a whole field
+// and each word of it, lower-cased and without accents) maps to a sorted
+// array of ids in a TreeMap, so a prefix is a sub-map range scan.
+// Seeded at startup, kept current by the donor and hospital services and
+// periodically reconciled.
+@Service
+public class SearchIndexService {
+
+  private static final Logger log = LoggerFactory.getLogger(SearchIndexService.class);
+
+  public enum Kind {
+    BLOOD_DONOR("bloodDonor"), HOSPITAL("hospital");
+
+    private final String type;
+
+    Kind(String type) {
+      this.type = type;
+    }
+
+    public String getType() {
+      return type;
+    }
+  }
+
+  @Autowired
+  private BloodDonorRepository bloodDonorRepository;
+
+  @Autowired
+  private HospitalRepository hospitalRepository;
+
+  @Autowired
+  private ResourceVersionService resourceVersionService;
+
+  private final Index donors = new Index();
+  private final Index hospitals = new Index();
+
+  private final ReloadBuffer changesDuringReload = new ReloadBuffer();
+
+  @EventListener(ApplicationReadyEvent.class)
+  public void seed() {
+    this.reload();
+  }
+
+  @Scheduled(
+      initialDelayString = "${search.index.reconcile-interval-ms:900000}",
+      fixedDelayString = "${search.index.reconcile-interval-ms:900000}")
+  public void reconcile() {
+    this.reload();
+  }
+
+  public void donorSaved(BloodDonor donor) {
+    Integer id = donor.getId();
+    Entry entry = this.donorEntry(id, donor.getDni(), donor.getFirstName(), donor.getLastName(), donor.getEmail());
+    AfterCommit.run(() -> changesDuringReload.apply(() -> donors.put(id, entry)));
+  }
+
+  public void donorDeleted(Integer id) {
+    AfterCommit.run(() -> changesDuringReload.apply(() -> donors.remove(id)));
+  }
+
+  public void hospitalSaved(Hospital hospital) {
+    Integer id = hospital.getId();
+    Entry entry = this.hospitalEntry(id, hospital.getName(), hospital.getCif(), hospital.getPostalCode());
+    AfterCommit.run(() -> changesDuringReload.apply(() -> hospitals.put(id, entry)));
+  }
+
+  public void hospitalDeleted(Integer id) {
+    AfterCommit.run(() -> changesDuringReload.apply(() -> hospitals.remove(id)));
+  }
+
+  // Entries matching every word of the query as a token prefix, in token
+  // order ("juan per" finds Juan Pérez)
+  public List<Map<String, Object>> typeahead(Kind kind, String query, int limit) {
+    String[] terms = normalize(query).trim().split("\\s+");
+    if (terms.length == 0 || terms[0].isEmpty()) {
+      return List.of();
+    }
+    Index index = kind == Kind.BLOOD_DONOR ? donors : hospitals;
+
+    List<Map<String, Object>> results = new ArrayList<>();
+    for (Entry entry : index.search(terms, limit)) {
+      Map<String, Object> item = new LinkedHashMap<>();
+      item.put("type", kind.getType());
+      item.put("id", entry.id);
+      item.put("label", entry.label);
+      item.put("detail", entry.detail);
+      results.add(item);
+    }
+    return results;
+  }
+
+  // Changes committed while the queries run are applied again afterwards
+  private void reload() {
+    try {
+      changesDuringReload.start();
+      List<Object[]> donorRows = bloodDonorRepository.findSearchFacts();
+      List<Object[]> hospitalRows = hospitalRepository.findSearchFacts();
+
+      Map<Integer, Entry> donorEntries = new HashMap<>();
+      for (Object[] row : donorRows) {
+        Integer id = (Integer) row[0];
+        donorEntries.put(id, this.donorEntry(id, (String) row[1], (String) row[2], (String) row[3], (String) row[4]));
+      }
+      Map<Integer, Entry> hospitalEntries = new HashMap<>();
+      for (Object[] row : hospitalRows) {
+        Integer id = (Integer) row[0];
+        hospitalEntries.put(id, this.hospitalEntry(id, (String) row[1], (String) row[2], (String) row[3]));
+      }
+
+      // Rows changed outside this node; cached listings are stale too
+      if (donors.replaceAll(donorEntries)) {
+        resourceVersionService.bump(ResourceVersionService.Resource.BLOOD_DONORS);
+      }
+      if (hospitals.replaceAll(hospitalEntries)) {
+        resourceVersionService.bump(ResourceVersionService.Resource.HOSPITALS);
+      }
+      changesDuringReload.replay();
+      log.info("Search index loaded: {} donors, {} hospitals", donorEntries.size(), hospitalEntries.size());
+    } catch (Exception e) {
+      changesDuringReload.discard();
+      log.error("Error loading search index: {}", e.getMessage());
+    }
+  }
+
+  private Entry donorEntry(Integer id, String dni, String firstName, String lastName, String email) {
+    String label = String.join(" ", nonNull(firstName), nonNull(lastName)).trim();
+    String detail = String.join(" · ", nonNull(dni), nonNull(email));
+    return new Entry(id, label, detail, tokens(dni, firstName, lastName, email));
+  }
+
+  private Entry hospitalEntry(Integer id, String name, String cif, String postalCode) {
+    String detail = String.join(" · ", nonNull(cif), nonNull(postalCode));
+    return new Entry(id, nonNull(name), detail, tokens(name, cif, postalCode));
+  }
+
+  private static String nonNull(String value) {
+    return value != null ? value : "";
+  }
+
+  // Each field as a whole plus each of its words
+  private static Set<String> tokens(String... fields) {
+    Set<String> tokens = new LinkedHashSet<>();
+    for (String field : fields) {
+      if (field == null || field.isBlank()) {
+        continue;
+      }
+      String normalized = normalize(field).trim();
+      tokens.add(normalized.replaceAll("\\s+", " "));
+      for (String word : normalized.split("\\s+")) {
+        if (!word.isEmpty()) {
+          tokens.add(word);
+        }
+      }
+    }
+    return tokens;
+  }
+
+  private static String normalize(String text) {
+    if (text == null) {
+      return "";
+    }
+    return Normalizer.normalize(text, Normalizer.Form.NFD).replaceAll("\\p{M}", "").toLowerCase();
+  }
+
+  private static class Entry {
+    private final int id;
+    private final String label;
+    private final String detail;
+    private final Set<String> tokens;
+
+    private Entry(int id, String label, String detail, Set<String> tokens) {
+      this.id = id;
+      this.label = label;
+      this.detail = detail;
+      this.tokens = tokens;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof Entry other)) {
+        return false;
+      }
+      return id == other.id && label.equals(other.label) && detail.equals(other.detail)
+          && tokens.equals(other.tokens);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(id, label, detail);
+    }
+  }
+
+  private static class Index {
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private TreeMap<String, int[]> tokens = new TreeMap<>();
+    private Map<Integer, Entry> entries = new HashMap<>();
+
+    void put(int id, Entry entry) {
+      lock.writeLock().lock();
+      try {
+        this.removeLocked(id);
+        entries.put(id, entry);
+        for (String token : entry.tokens) {
+          int[] ids = tokens.getOrDefault(token, new int[0]);
+          int position = Arrays.binarySearch(ids, id);
+          if (position < 0) {
+            int insertAt = -position - 1;
+            int[] grown = new int[ids.length + 1];
+            System.arraycopy(ids, 0, grown, 0, insertAt);
+            grown[insertAt] = id;
+            System.arraycopy(ids, insertAt, grown, insertAt + 1, ids.length - insertAt);
+            tokens.put(token, grown);
+          }
+        }
+      } finally {
+        lock.writeLock().unlock();
+      }
+    }
+
+    void remove(int id) {
+      lock.writeLock().lock();
+      try {
+        this.removeLocked(id);
+      } finally {
+        lock.writeLock().unlock();
+      }
+    }
+
+    // Builds the new token map aside and swaps it in; true when the entries
+    // differ from the ones replaced (changes not yet replayed included)
+    boolean replaceAll(Map<Integer, Entry> newEntries) {
+      Map<String, List<Integer>> grouped = new HashMap<>();
+      for (Entry entry : newEntries.values()) {
+        for (String token : entry.tokens) {
+          grouped.computeIfAbsent(token, t -> new ArrayList<>()).add(entry.id);
+        }
+      }
+      TreeMap<String, int[]> newTokens = new TreeMap<>();
+      grouped.forEach((token, ids) -> newTokens.put(token, ids.stream().mapToInt(Integer::intValue).sorted().toArray()));
+
+      lock.writeLock().lock();
+      try {
+        boolean changed = !entries.equals(newEntries);
+        tokens = newTokens;
+        entries = newEntries;
+        return changed;
+      } finally {
+        lock.writeLock().unlock();
+      }
+    }
+
+    List<Entry> search(String[] terms, int limit) {
+      lock.readLock().lock();
+      try {
+        // The first term drives the order; the others only filter
+        List<Set<Integer>> others = new ArrayList<>();
+        for (int i = 1; i < terms.length; i++) {
+          others.add(this.idsWithPrefix(terms[i]));
+        }
+
+        Set<Integer> seen = new LinkedHashSet<>();
+        for (int[] ids : this.prefixRange(terms[0]).values()) {
+          for (int id : ids) {
+            if (others.stream().allMatch(set -> set.contains(id))) {
+              seen.add(id);
+              if (seen.size() >= limit) {
+                return this.entriesOf(seen);
+              }
+            }
+          }
+        }
+        return this.entriesOf(seen);
+      } finally {
+        lock.readLock().unlock();
+      }
+    }
+
+    private Set<Integer> idsWithPrefix(String prefix) {
+      Set<Integer> ids = new HashSet<>();
+      for (int[] tokenIds : this.prefixRange(prefix).values()) {
+        for (int id : tokenIds) {
+          ids.add(id);
+        }
+      }
+      return ids;
+    }
+
+    private Map<String, int[]> prefixRange(String prefix) {
+      return tokens.subMap(prefix, true, prefix + Character.MAX_VALUE, false);
+    }
+
+    private List<Entry> entriesOf(Set<Integer> ids) {
+      List<Entry> result = new ArrayList<>(ids.size());
+      for (Integer id : ids) {
+        result.add(entries.get(id));
+      }
+      return result;
+    }
+
+    private void removeLocked(int id) {
+      Entry previous = entries.remove(id);
+      if (previous == null) {
+        return;
+      }
+      for (String token : previous.tokens) {
+        int[] ids = tokens.get(token);
+        int position = ids != null ? Arrays.binarySearch(ids, id) : -1;
+        if (position < 0) {
+          continue;
+        }
+        if (ids.length == 1) {
+          tokens.remove(token);
+        } else {
+          int[] shrunk = new int[ids.length - 1];
+          System.arraycopy(ids, 0, shrunk, 0, position);
+          System.arraycopy(ids, position + 1, shrunk, position, ids.length - position - 1);
+          tokens.put(token, shrunk);
+        }
+      }
+    }
+  }
+}
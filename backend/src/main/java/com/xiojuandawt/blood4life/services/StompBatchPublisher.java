@@ -0,0 +1,240 @@
+package com.xiojuandawt.blood4life.services;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.util.AntPathMatcher;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+import org.springframework.web.socket.messaging.SessionSubscribeEvent;
+import org.springframework.web.socket.messaging.SessionUnsubscribeEvent;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// Batching layer in front of SimpMessagingTemplate for high-frequency
+// topics. Every event is still sent on its own to its destination. For a
+// batched destination it is also gathered until no new event arrives for the
+// batch window, the oldest one reaches the latency cap or the batch is full,
+// and then sent as a single JSON array frame with the header "x-batch: true"
+// to the destination plus "/batch". Batching is opt-in per subscription:
+// clients that want array frames subscribe to /topic/.../batch instead, and
+// batches are only built while this node has such a subscriber. Batch frames
+// are never relayed between nodes; every node batches the events it publishes
+// and the ones relayed from its peers for its own subscribers.
+@Service
+public class StompBatchPublisher {
+
+  public static final String BATCH_HEADER = "x-batch";
+
+  public static final String BATCH_SUFFIX = "/batch";
+
+  private final AntPathMatcher pathMatcher = new AntPathMatcher();
+
+  @Autowired
+  private SimpMessagingTemplate messagingTemplate;
+
+  @Value("${websocket.batching.enabled:true}")
+  private boolean enabled;
+
+  @Value("#{'${websocket.batching.destinations:/topic/blood-donors,/topic/hospitals,/topic/campaigns,/topic/admin/appointments,/topic/hospital/*/appointments}'.split(',')}")
+  private List<String> destinations;
+
+  @Value("${websocket.batching.window-ms:50}")
+  private long windowMs;
+
+  @Value("${websocket.batching.max-latency-ms:250}")
+  private long maxLatencyMs;
+
+  // Per-destination latency caps, e.g. {'/topic/campaigns': 100}
+  @Value("#{${websocket.batching.destination-max-latency-ms:{:}}}")
+  private Map<String, Long> destinationMaxLatencyMs;
+
+  @Value("${websocket.batching.max-batch-size:100}")
+  private int maxBatchSize;
+
+  private final Map<String, Batch> batches = new ConcurrentHashMap<>();
+
+  // Subscriptions to "/batch" destinations, by WebSocket session id and
+  // subscription id, and how many there are per destination
+  private final Map<String, Map<String, String>> batchSubscriptions = new HashMap<>();
+
+  private final Map<String, Integer> batchSubscriberCounts = new ConcurrentHashMap<>();
+
+  private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+    Thread thread = new Thread(runnable, "stomp-batch-publisher");
+    thread.setDaemon(true);
+    return thread;
+  });
+
+  public void publish(String destination, Object payload) {
+    messagingTemplate.convertAndSend(destination, payload);
+    this.addToBatch(destination, payload);
+  }
+
+  // Also called for events relayed from other nodes, which were already
+  // delivered one by one on the destination
+  void addToBatch(String destination, Object payload) {
+    if (!this.isBatching(destination)) {
+      return;
+    }
+
+    List<Object> full = null;
+    boolean schedule = false;
+    synchronized (batches) {
+      Batch batch = batches.computeIfAbsent(destination, d -> new Batch());
+      long now = System.nanoTime();
+      if (batch.events.isEmpty()) {
+        batch.firstAt = now;
+        schedule = true;
+      }
+      batch.lastAt = now;
+      batch.events.add(payload);
+      if (batch.events.size() >= maxBatchSize) {
+        full = batch.drain();
+      }
+    }
+
+    if (full != null) {
+      this.send(destination, full);
+    } else if (schedule) {
+      scheduler.schedule(() -> this.check(destination), windowMs, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  private void check(String destination) {
+    List<Object> events = null;
+    long delayNanos = 0;
+    synchronized (batches) {
+      Batch batch = batches.get(destination);
+      if (batch == null || batch.events.isEmpty()) {
+        // Already sent because it reached the max batch size
+        return;
+      }
+      long now = System.nanoTime();
+      long quietUntil = batch.lastAt + TimeUnit.MILLISECONDS.toNanos(windowMs);
+      long capUntil = batch.firstAt + TimeUnit.MILLISECONDS.toNanos(this.maxLatencyFor(destination));
+      long due = Math.min(quietUntil, capUntil);
+      if (now >= due) {
+        events = batch.drain();
+      } else {
+        delayNanos = due - now;
+      }
+    }
+
+    if (events != null) {
+      this.send(destination, events);
+    } else {
+      scheduler.schedule(() -> this.check(destination), delayNanos, TimeUnit.NANOSECONDS);
+    }
+  }
+
+  private void send(String destination, List<Object> events) {
+    messagingTemplate.convertAndSend(destination + BATCH_SUFFIX, events, Map.of(BATCH_HEADER, "true"));
+  }
+
+  @EventListener
+  public void onSubscribe(SessionSubscribeEvent event) {
+    SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.wrap(event.getMessage());
+    String destination = accessor.getDestination();
+    if (destination == null || !destination.endsWith(BATCH_SUFFIX)) {
+      return;
+    }
+    synchronized (batchSubscriptions) {
+      String previous = batchSubscriptions
+          .computeIfAbsent(accessor.getSessionId(), id -> new HashMap<>())
+          .put(accessor.getSubscriptionId(), destination);
+      if (previous != null) {
+        this.removeSubscriber(previous);
+      }
+      batchSubscriberCounts.merge(destination, 1, Integer::sum);
+    }
+  }
+
+  @EventListener
+  public void onUnsubscribe(SessionUnsubscribeEvent event) {
+    SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.wrap(event.getMessage());
+    synchronized (batchSubscriptions) {
+      Map<String, String> subscriptions = batchSubscriptions.get(accessor.getSessionId());
+      if (subscriptions == null) {
+        return;
+      }
+      String destination = subscriptions.remove(accessor.getSubscriptionId());
+      if (destination != null) {
+        this.removeSubscriber(destination);
+      }
+      if (subscriptions.isEmpty()) {
+        batchSubscriptions.remove(accessor.getSessionId());
+      }
+    }
+  }
+
+  @EventListener
+  public void onDisconnect(SessionDisconnectEvent event) {
+    synchronized (batchSubscriptions) {
+      Map<String, String> subscriptions = batchSubscriptions.remove(event.getSessionId());
+      if (subscriptions != null) {
+        subscriptions.values().forEach(this::removeSubscriber);
+      }
+    }
+  }
+
+  private void removeSubscriber(String destination) {
+    batchSubscriberCounts.computeIfPresent(destination, (d, count) -> count > 1 ? count - 1 : null);
+  }
+
+  // Whether events on the destination currently go into batches
+  boolean isBatching(String destination) {
+    return enabled
+        && batchSubscriberCounts.containsKey(destination + BATCH_SUFFIX)
+        && this.isBatched(destination);
+  }
+
+  private boolean isBatched(String destination) {
+    for (String pattern : destinations) {
+      if (pathMatcher.match(pattern.trim(), destination)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private long maxLatencyFor(String destination) {
+    Long cap = destinationMaxLatencyMs.get(destination);
+    return cap != null ? cap : maxLatencyMs;
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    scheduler.shutdown();
+    // Don't lose events still waiting for their window
+    synchronized (batches) {
+      batches.forEach((destination, batch) -> {
+        if (!batch.events.isEmpty()) {
+          this.send(destination, batch.drain());
+        }
+      });
+    }
+  }
+
+  private static class Batch {
+    private List<Object> events = new ArrayList<>();
+    private long firstAt;
+    private long lastAt;
+
+    private List<Object> drain() {
+      List<Object> drained = events;
+      events = new ArrayList<>();
+      return drained;
+    }
+  }
+}
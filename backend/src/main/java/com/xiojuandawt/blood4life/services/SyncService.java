@@ -0,0 +1,221 @@
+package com.xiojuandawt.blood4life.services;
+
+import com.xiojuandawt.blood4life.dto.BloodDonorDTO;
+import com.xiojuandawt.blood4life.dto.CampaignDTO;
+import com.xiojuandawt.blood4life.dto.HospitalDTO;
+import com.xiojuandawt.blood4life.dto.SyncDTO;
+import com.xiojuandawt.blood4life.entities.Campaign;
+import com.xiojuandawt.blood4life.exception.SyncTokenExpiredException;
+import com.xiojuandawt.blood4life.repositories.CampaignRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+// Delta sync over the change_log table (V36), which triggers fill with one
+// row per insert, update or delete of a donor, hospital or campaign. A
+// client keeps the token of its last sync and gets back only the rows that
+// changed since, so a refresh costs as much as the churn, not the dataset.
+// Sequence numbers are handed out when a change is written but become
+// visible when its transaction commits, possibly out of order, so tokens
+// trail the newest changes by the settle window: the latest changes are
+// sent again on the next sync (upserts are idempotent) rather than missed.
+@Service
+public class SyncService {
+
+  private static final Logger log = LoggerFactory.getLogger(SyncService.class);
+
+  public enum Entity {
+    BLOOD_DONOR("bloodDonor"), HOSPITAL("hospital"), CAMPAIGN("campaign");
+
+    private final String type;
+
+    Entity(String type) {
+      this.type = type;
+    }
+
+    public String getType() {
+      return type;
+    }
+
+    public static Optional<Entity> fromType(String type) {
+      return Arrays.stream(values()).filter(entity -> entity.type.equals(type)).findFirst();
+    }
+  }
+
+  @Autowired
+  private JdbcTemplate jdbcTemplate;
+
+  @Autowired
+  private NamedParameterJdbcTemplate namedParameterJdbcTemplate;
+
+  @Autowired
+  private BloodDonorService bloodDonorService;
+
+  @Autowired
+  private HospitalService hospitalService;
+
+  @Autowired
+  private CampaignService campaignService;
+
+  @Autowired
+  private CampaignRepository campaignRepository;
+
+  // Changes read per call; hasMore tells the client to call again
+  @Value("${sync.max-changes:1000}")
+  private int maxChanges;
+
+  // Longer than any transaction writing donors, hospitals or campaigns
+  @Value("${sync.settle-seconds:30}")
+  private int settleSeconds;
+
+  @Value("${sync.retention-days:7}")
+  private int retentionDays;
+
+  // Starting point for a client that has just loaded the full lists
+  public String currentToken() {
+    return String.valueOf(this.settledThrough(0));
+  }
+
+  // Always on the primary: the settle window is judged by the wall clock, so
+  // on a lagging replica a low seq not yet replicated could be skipped for
+  // good once later ones look settled. Read-write, so the read-only lookups
+  // of the rows join it instead of going to the replica.
+  @Transactional
+  public SyncDTO changesSince(long since, Set<Entity> entities) {
+    Long prunedThrough = jdbcTemplate.queryForObject(
+        "SELECT pruned_through FROM change_log_state WHERE id = 1", Long.class);
+    if (prunedThrough != null && since < prunedThrough) {
+      throw new SyncTokenExpiredException("Sync token expired, reload the full lists");
+    }
+
+    MapSqlParameterSource params = new MapSqlParameterSource()
+        .addValue("since", since)
+        .addValue("entities", entities.stream().map(Entity::getType).toList())
+        .addValue("limit", maxChanges);
+    long[] lastSeq = { since };
+    int[] count = { 0 };
+    // Per changed row, whether its last change is a delete (in order of first change)
+    Map<Entity, Map<Integer, Boolean>> lastChanges = new EnumMap<>(Entity.class);
+    namedParameterJdbcTemplate.query("""
+        SELECT seq, entity, entity_id, operation FROM change_log
+        WHERE seq > :since AND entity IN (:entities)
+        ORDER BY seq
+        LIMIT :limit
+        """, params, rs -> {
+      lastSeq[0] = rs.getLong("seq");
+      count[0]++;
+      Optional<Entity> entity = Entity.fromType(rs.getString("entity"));
+      if (entity.isPresent()) {
+        lastChanges.computeIfAbsent(entity.get(), e -> new LinkedHashMap<>())
+            .put(rs.getInt("entity_id"), "D".equals(rs.getString("operation")));
+      }
+    });
+
+    // A full page only means "call again" when the token moves past all of
+    // it; otherwise the next call would read the same page, and the client
+    // would loop until the settle window passes
+    long settled = this.settledThrough(since);
+    boolean full = count[0] >= maxChanges;
+    boolean hasMore = full && settled >= lastSeq[0];
+    long token = full ? Math.min(settled, lastSeq[0]) : settled;
+
+    Map<String, SyncDTO.EntityChanges> changes = new LinkedHashMap<>();
+    lastChanges.forEach((entity, rows) -> changes.put(entity.getType(), this.entityChanges(entity, rows)));
+    return new SyncDTO(String.valueOf(Math.max(token, since)), hasMore, changes);
+  }
+
+  // Deletes the changes older than the retention period; clients whose token
+  // is older than that have to reload the full lists
+  @Scheduled(
+      initialDelayString = "${sync.prune-interval-ms:3600000}",
+      fixedDelayString = "${sync.prune-interval-ms:3600000}")
+  public void prune() {
+    try {
+      Long through = jdbcTemplate.queryForObject(
+          "SELECT MAX(seq) FROM change_log WHERE changed_at < NOW(3) - INTERVAL ? DAY", Long.class, retentionDays);
+      if (through == null) {
+        return;
+      }
+      // Raised first, so a token is refused before its changes disappear
+      jdbcTemplate.update(
+          "UPDATE change_log_state SET pruned_through = GREATEST(pruned_through, ?) WHERE id = 1", through);
+      int total = 0;
+      int deleted;
+      do {
+        deleted = jdbcTemplate.update("DELETE FROM change_log WHERE seq <= ? LIMIT 10000", through);
+        total += deleted;
+      } while (deleted > 0);
+      if (total > 0) {
+        log.info("Change log pruned through {}: {} changes deleted", through, total);
+      }
+    } catch (Exception e) {
+      log.error("Error pruning the change log: {}", e.getMessage());
+    }
+  }
+
+  // Highest sequence number whose changes, and all before it, are older than
+  // the settle window
+  private long settledThrough(long since) {
+    Long firstUnsettled = jdbcTemplate.queryForObject(
+        "SELECT MIN(seq) FROM change_log WHERE seq > ? AND changed_at >= NOW(3) - INTERVAL ? SECOND",
+        Long.class, since, settleSeconds);
+    if (firstUnsettled != null) {
+      return Math.max(since, firstUnsettled - 1);
+    }
+    Long last = jdbcTemplate.queryForObject("SELECT MAX(seq) FROM change_log", Long.class);
+    return Math.max(since, last != null ? last : 0);
+  }
+
+  // Current state of the rows last inserted or updated; a row deleted since
+  // the change was logged is reported as deleted
+  private SyncDTO.EntityChanges entityChanges(Entity entity, Map<Integer, Boolean> rows) {
+    List<Integer> upsertIds = new ArrayList<>();
+    List<Integer> deleted = new ArrayList<>();
+    rows.forEach((id, isDelete) -> (isDelete ? deleted : upsertIds).add(id));
+
+    List<Object> upserted = new ArrayList<>();
+    List<Integer> found = new ArrayList<>();
+    if (!upsertIds.isEmpty()) {
+      switch (entity) {
+        case BLOOD_DONOR -> {
+          for (BloodDonorDTO dto : bloodDonorService.findAllById(upsertIds)) {
+            upserted.add(dto);
+            found.add(dto.getId());
+          }
+        }
+        case HOSPITAL -> {
+          for (HospitalDTO dto : hospitalService.findAllById(upsertIds)) {
+            upserted.add(dto);
+            found.add(dto.getId());
+          }
+        }
+        case CAMPAIGN -> {
+          for (Campaign campaign : campaignRepository.findAllById(upsertIds)) {
+            CampaignDTO dto = campaignService.parseEntityToDTO(campaign);
+            upserted.add(dto);
+            found.add(dto.getId());
+          }
+        }
+      }
+    }
+    upsertIds.removeAll(found);
+    deleted.addAll(upsertIds);
+    return new SyncDTO.EntityChanges(upserted, deleted);
+  }
+}
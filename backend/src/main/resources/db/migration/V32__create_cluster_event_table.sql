@@ -0,0 +1,12 @@
+CREATE TABLE cluster_event
+(
+  id           BIGINT PRIMARY KEY AUTO_INCREMENT,
+  node_id      VARCHAR(64)  NOT NULL,
+  destination  VARCHAR(255) NOT NULL,
+  content_type VARCHAR(100),
+  headers      TEXT,
+  payload      MEDIUMBLOB   NOT NULL,
+  created_at   TIMESTAMP(3) NOT NULL DEFAULT CURRENT_TIMESTAMP(3)
+);
+
+CREATE INDEX idx_cluster_event_created_at ON cluster_event (created_at);
@@ -0,0 +1,23 @@
+-- Appointments pre-aggregated per day, hospital, campaign and donor blood type
+CREATE TABLE donation_daily_rollup
+(
+  day             DATE        NOT NULL,
+  hospital_id     INT         NOT NULL,
+  campaign_id     INT         NOT NULL,
+  blood_type      VARCHAR(3)  NOT NULL DEFAULT '',
+  completed_count INT         NOT NULL DEFAULT 0,
+  cancelled_count INT         NOT NULL DEFAULT 0,
+  scheduled_count INT         NOT NULL DEFAULT 0,
+  PRIMARY KEY (day, hospital_id, campaign_id, blood_type)
+);
+
+CREATE INDEX idx_donation_daily_rollup_hospital_day ON donation_daily_rollup (hospital_id, day);
+
+-- Progress of the month-by-month backfill, so it resumes after a restart
+CREATE TABLE rollup_backfill_state
+(
+  job_name   VARCHAR(64) PRIMARY KEY,
+  next_month DATE,
+  done       BOOLEAN     NOT NULL DEFAULT false,
+  updated_at TIMESTAMP   DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP
+);
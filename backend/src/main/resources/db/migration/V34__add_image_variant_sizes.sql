@@ -0,0 +1,3 @@
+-- Sizes of the downscaled JPEG variants stored next to each image
+ALTER TABLE image
+  ADD COLUMN variant_sizes VARCHAR(64) NULL;
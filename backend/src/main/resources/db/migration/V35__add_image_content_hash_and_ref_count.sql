@@ -0,0 +1,47 @@
+-- Content-addressed images: one row and one file per distinct content
+ALTER TABLE image
+  ADD COLUMN content_hash CHAR(64) NULL,
+  ADD COLUMN ref_count    INT       NOT NULL DEFAULT 0,
+  ADD COLUMN last_used_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+  ADD CONSTRAINT uk_image_content_hash UNIQUE (content_hash);
+
+UPDATE image i
+SET ref_count = (SELECT COUNT(*) FROM blood_donor d WHERE d.image_id = i.id)
+              + (SELECT COUNT(*) FROM hospital h WHERE h.image_id = i.id);
+
+-- The log tables referenced image without ON DELETE, which would keep
+-- unreferenced images from ever being deleted. Their (generated) foreign
+-- key names are looked up and replaced with SET NULL ones.
+SET @fk = (SELECT CONSTRAINT_NAME
+           FROM information_schema.KEY_COLUMN_USAGE
+           WHERE TABLE_SCHEMA = DATABASE()
+             AND TABLE_NAME = 'blood_donor_log'
+             AND COLUMN_NAME = 'image_id'
+             AND REFERENCED_TABLE_NAME = 'image'
+           LIMIT 1);
+SET @sql = CONCAT('ALTER TABLE blood_donor_log DROP FOREIGN KEY ', @fk);
+PREPARE stmt FROM @sql;
+EXECUTE stmt;
+DEALLOCATE PREPARE stmt;
+
+ALTER TABLE blood_donor_log
+  ADD CONSTRAINT fk_blood_donor_log_image
+    FOREIGN KEY (image_id) REFERENCES image (id)
+      ON DELETE SET NULL;
+
+SET @fk = (SELECT CONSTRAINT_NAME
+           FROM information_schema.KEY_COLUMN_USAGE
+           WHERE TABLE_SCHEMA = DATABASE()
+             AND TABLE_NAME = 'hospital_log'
+             AND COLUMN_NAME = 'image_id'
+             AND REFERENCED_TABLE_NAME = 'image'
+           LIMIT 1);
+SET @sql = CONCAT('ALTER TABLE hospital_log DROP FOREIGN KEY ', @fk);
+PREPARE stmt FROM @sql;
+EXECUTE stmt;
+DEALLOCATE PREPARE stmt;
+
+ALTER TABLE hospital_log
+  ADD CONSTRAINT fk_hospital_log_image
+    FOREIGN KEY (image_id) REFERENCES image (id)
+      ON DELETE SET NULL;
@@ -0,0 +1,115 @@
+-- Change sequence behind the delta sync API (/api/sync): one row per insert,
+-- update ('U') or delete ('D') of a donor, hospital or campaign, written by
+-- triggers so bulk SQL writes are captured too
+CREATE TABLE change_log
+(
+  seq        BIGINT PRIMARY KEY AUTO_INCREMENT,
+  entity     VARCHAR(32)  NOT NULL,
+  entity_id  INT          NOT NULL,
+  operation  CHAR(1)      NOT NULL,
+  changed_at TIMESTAMP(3) NOT NULL DEFAULT CURRENT_TIMESTAMP(3)
+);
+
+CREATE INDEX idx_change_log_changed_at ON change_log (changed_at);
+
+-- Tokens at or below pruned_through can no longer be served
+CREATE TABLE change_log_state
+(
+  id             INT PRIMARY KEY,
+  pruned_through BIGINT NOT NULL
+);
+
+INSERT INTO change_log_state (id, pruned_through) VALUES (1, 0);
+
+-- Baseline of the existing rows, so a client can also start from since=0
+INSERT INTO change_log (entity, entity_id, operation)
+SELECT 'bloodDonor', id, 'U' FROM blood_donor ORDER BY id;
+
+INSERT INTO change_log (entity, entity_id, operation)
+SELECT 'hospital', id, 'U' FROM hospital ORDER BY id;
+
+INSERT INTO change_log (entity, entity_id, operation)
+SELECT 'campaign', id, 'U' FROM campaign ORDER BY id;
+
+-- Run after the blood_donor_log/hospital_log triggers of V25
+DELIMITER $$
+
+CREATE TRIGGER blood_donor_change_after_insert
+AFTER INSERT ON blood_donor
+FOR EACH ROW
+BEGIN
+    INSERT INTO change_log (entity, entity_id, operation) VALUES ('bloodDonor', NEW.id, 'U');
+END$$
+
+CREATE TRIGGER blood_donor_change_after_update
+AFTER UPDATE ON blood_donor
+FOR EACH ROW
+BEGIN
+    INSERT INTO change_log (entity, entity_id, operation) VALUES ('bloodDonor', NEW.id, 'U');
+END$$
+
+CREATE TRIGGER blood_donor_change_after_delete
+AFTER DELETE ON blood_donor
+FOR EACH ROW
+BEGIN
+    INSERT INTO change_log (entity, entity_id, operation) VALUES ('bloodDonor', OLD.id, 'D');
+END$$
+
+CREATE TRIGGER hospital_change_after_insert
+AFTER INSERT ON hospital
+FOR EACH ROW
+BEGIN
+    INSERT INTO change_log (entity, entity_id, operation) VALUES ('hospital', NEW.id, 'U');
+END$$
+
+CREATE TRIGGER hospital_change_after_update
+AFTER UPDATE ON hospital
+FOR EACH ROW
+BEGIN
+    INSERT INTO change_log (entity, entity_id, operation) VALUES ('hospital', NEW.id, 'U');
+END$$
+
+CREATE TRIGGER hospital_change_after_delete
+AFTER DELETE ON hospital
+FOR EACH ROW
+BEGIN
+    INSERT INTO change_log (entity, entity_id, operation) VALUES ('hospital', OLD.id, 'D');
+END$$
+
+CREATE TRIGGER campaign_change_after_insert
+AFTER INSERT ON campaign
+FOR EACH ROW
+BEGIN
+    INSERT INTO change_log (entity, entity_id, operation) VALUES ('campaign', NEW.id, 'U');
+END$$
+
+CREATE TRIGGER campaign_change_after_update
+AFTER UPDATE ON campaign
+FOR EACH ROW
+BEGIN
+    INSERT INTO change_log (entity, entity_id, operation) VALUES ('campaign', NEW.id, 'U');
+END$$
+
+CREATE TRIGGER campaign_change_after_delete
+AFTER DELETE ON campaign
+FOR EACH ROW
+BEGIN
+    INSERT INTO change_log (entity, entity_id, operation) VALUES ('campaign', OLD.id, 'D');
+END$$
+
+-- A campaign whose blood types change may not be updated itself
+CREATE TRIGGER blood_type_campaign_change_after_insert
+AFTER INSERT ON blood_type_campaign
+FOR EACH ROW
+BEGIN
+    INSERT INTO change_log (entity, entity_id, operation) VALUES ('campaign', NEW.campaign, 'U');
+END$$
+
+CREATE TRIGGER blood_type_campaign_change_after_delete
+AFTER DELETE ON blood_type_campaign
+FOR EACH ROW
+BEGIN
+    INSERT INTO change_log (entity, entity_id, operation) VALUES ('campaign', OLD.campaign, 'U');
+END$$
+
+DELIMITER ;
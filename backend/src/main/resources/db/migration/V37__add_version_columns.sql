@@ -0,0 +1,5 @@
+-- Optimistic locking: every update checks and increments the row version
+ALTER TABLE blood_donor ADD COLUMN version BIGINT NOT NULL DEFAULT 0;
+ALTER TABLE hospital ADD COLUMN version BIGINT NOT NULL DEFAULT 0;
+ALTER TABLE campaign ADD COLUMN version BIGINT NOT NULL DEFAULT 0;
+ALTER TABLE appointment ADD COLUMN version BIGINT NOT NULL DEFAULT 0;
@@ -0,0 +1,57 @@
+-- Email, DNI and CIF must be unique: registration relies on the constraint
+-- rather than on a prior SELECT. V1 and V2 declared them UNIQUE, but not every
+-- database went through those scripts, so each index is only added when no
+-- unique index on that column alone exists yet. Existing duplicates make
+-- this migration fail and have to be resolved by hand first.
+
+SET @has = (SELECT COUNT(*)
+            FROM (SELECT INDEX_NAME
+                  FROM information_schema.STATISTICS
+                  WHERE TABLE_SCHEMA = DATABASE()
+                    AND TABLE_NAME = 'blood_donor'
+                    AND NON_UNIQUE = 0
+                  GROUP BY INDEX_NAME
+                  HAVING COUNT(*) = 1 AND MAX(COLUMN_NAME) = 'email') u);
+SET @sql = IF(@has = 0, 'ALTER TABLE blood_donor ADD CONSTRAINT uk_blood_donor_email UNIQUE (email)', 'DO 0');
+PREPARE stmt FROM @sql;
+EXECUTE stmt;
+DEALLOCATE PREPARE stmt;
+
+SET @has = (SELECT COUNT(*)
+            FROM (SELECT INDEX_NAME
+                  FROM information_schema.STATISTICS
+                  WHERE TABLE_SCHEMA = DATABASE()
+                    AND TABLE_NAME = 'blood_donor'
+                    AND NON_UNIQUE = 0
+                  GROUP BY INDEX_NAME
+                  HAVING COUNT(*) = 1 AND MAX(COLUMN_NAME) = 'dni') u);
+SET @sql = IF(@has = 0, 'ALTER TABLE blood_donor ADD CONSTRAINT uk_blood_donor_dni UNIQUE (dni)', 'DO 0');
+PREPARE stmt FROM @sql;
+EXECUTE stmt;
+DEALLOCATE PREPARE stmt;
+
+SET @has = (SELECT COUNT(*)
+            FROM (SELECT INDEX_NAME
+                  FROM information_schema.STATISTICS
+                  WHERE TABLE_SCHEMA = DATABASE()
+                    AND TABLE_NAME = 'hospital'
+                    AND NON_UNIQUE = 0
+                  GROUP BY INDEX_NAME
+                  HAVING COUNT(*) = 1 AND MAX(COLUMN_NAME) = 'email') u);
+SET @sql = IF(@has = 0, 'ALTER TABLE hospital ADD CONSTRAINT uk_hospital_email UNIQUE (email)', 'DO 0');
+PREPARE stmt FROM @sql;
+EXECUTE stmt;
+DEALLOCATE PREPARE stmt;
+
+SET @has = (SELECT COUNT(*)
+            FROM (SELECT INDEX_NAME
+                  FROM information_schema.STATISTICS
+                  WHERE TABLE_SCHEMA = DATABASE()
+                    AND TABLE_NAME = 'hospital'
+                    AND NON_UNIQUE = 0
+                  GROUP BY INDEX_NAME
+                  HAVING COUNT(*) = 1 AND MAX(COLUMN_NAME) = 'cif') u);
+SET @sql = IF(@has = 0, 'ALTER TABLE hospital ADD CONSTRAINT uk_hospital_cif UNIQUE (cif)', 'DO 0');
+PREPARE stmt FROM @sql;
+EXECUTE stmt;
+DEALLOCATE PREPARE stmt;
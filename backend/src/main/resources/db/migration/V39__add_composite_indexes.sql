@@ -0,0 +1,24 @@
+-- Composite indexes for the hot appointment and notification queries. Each
+-- starts with the foreign key column, so it also serves the foreign key and
+-- the single-column index MySQL created for it is dropped automatically.
+
+-- Next appointments of a hospital (campaign, then date and hour) and the
+-- appointments of a hospital on a given day
+CREATE INDEX idx_appointment_campaign_date_hour
+    ON appointment (campaign_id, date_appointment, hour_appointment);
+
+-- Completed donations of a hospital in a month, answered from the index alone
+CREATE INDEX idx_appointment_campaign_status_date
+    ON appointment (campaign_id, appointment_status_id, date_appointment);
+
+-- Donations of a donor by status, answered from the index alone
+CREATE INDEX idx_appointment_donor_status
+    ON appointment (blood_donor_id, appointment_status_id);
+
+-- Unread count and newest-first lists of a donor's or a hospital's
+-- notifications, without a sort for the unread ones
+CREATE INDEX idx_notification_donor_read_created
+    ON notification (blood_donor_id, is_read, created_at);
+
+CREATE INDEX idx_notification_hospital_read_created
+    ON notification (hospital_id, is_read, created_at);
@@ -0,0 +1,10 @@
+-- (sort column, id) indexes for the keyset-paginated listings, so each page
+-- is a range scan of the index in order instead of a filesort. Email, DNI
+-- and CIF are covered by their unique indexes (V38), which InnoDB extends
+-- with the primary key.
+
+CREATE INDEX idx_blood_donor_last_name_id ON blood_donor (last_name, id);
+CREATE INDEX idx_blood_donor_first_name_id ON blood_donor (first_name, id);
+
+CREATE INDEX idx_hospital_name_id ON hospital (name, id);
+CREATE INDEX idx_hospital_postal_code_id ON hospital (postal_code, id);
@@ -0,0 +1,186 @@
+package com.xiojuandawt.blood4life.config;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.servlet.http.Cookie;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.orm.jpa.EntityManagerHolder;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Two in-memory databases stand for the primary and the replica; each one
+// answers "SELECT name FROM node" with its own name
+@DataJpaTest(properties = {
+    "spring.flyway.enabled=false",
+    "spring.jpa.hibernate.ddl-auto=create-drop",
+    "spring.jpa.database-platform=org.hibernate.dialect.H2Dialect",
+    "spring.datasource.url=" + ReadReplicaRoutingTest.PRIMARY_URL,
+    "spring.datasource.driver-class-name=org.h2.Driver",
+    "spring.datasource.username=sa",
+    "spring.datasource.password=",
+    "replica.datasource.url=" + ReadReplicaRoutingTest.REPLICA_URL
+})
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import(DataSourceConfig.class)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class ReadReplicaRoutingTest {
+
+  static final String PRIMARY_URL = "jdbc:h2:mem:routing-primary;DB_CLOSE_DELAY=-1";
+  static final String REPLICA_URL = "jdbc:h2:mem:routing-replica;DB_CLOSE_DELAY=-1";
+
+  @Autowired
+  private PlatformTransactionManager transactionManager;
+
+  @Autowired
+  private EntityManagerFactory entityManagerFactory;
+
+  @Autowired
+  private EntityManager entityManager;
+
+  @Autowired
+  private ReadReplicaDataSource readReplicaDataSource;
+
+  @BeforeEach
+  void createNodes() throws SQLException {
+    createNode(PRIMARY_URL, "primary");
+    createNode(REPLICA_URL, "replica");
+  }
+
+  @Test
+  void readOnlyTransactionsReadFromTheReplica() {
+    assertEquals("replica", this.nodeIn(true));
+    assertEquals("primary", this.nodeIn(false));
+    assertTrue((Long) readReplicaDataSource.getStats().get("replicaReads") > 0);
+  }
+
+  @Test
+  void stickyRequestsReadFromThePrimary() {
+    ReadReplicaDataSource.stickToPrimary();
+    try {
+      assertEquals("primary", this.nodeIn(true));
+    } finally {
+      ReadReplicaDataSource.clearSticky();
+    }
+    assertEquals("replica", this.nodeIn(true));
+  }
+
+  // Read-only methods called from a read-write transaction join it
+  @Test
+  void readOnlyWorkInsideAReadWriteTransactionStaysOnThePrimary() {
+    TransactionTemplate outer = new TransactionTemplate(transactionManager);
+    assertEquals("primary", outer.execute(status -> this.nodeIn(true)));
+  }
+
+  // Open session in view: one EntityManager for both transactions of the request
+  @Test
+  void writeAfterReadInTheSameSessionGoesToThePrimary() {
+    EntityManager em = entityManagerFactory.createEntityManager();
+    TransactionSynchronizationManager.bindResource(entityManagerFactory, new EntityManagerHolder(em));
+    try {
+      assertEquals("replica", this.nodeIn(true));
+      assertEquals("primary", this.nodeIn(false));
+    } finally {
+      TransactionSynchronizationManager.unbindResource(entityManagerFactory);
+      em.close();
+    }
+  }
+
+  @Test
+  void unreachableReplicaFallsBackToThePrimary() throws SQLException {
+    JdbcDataSource primary = new JdbcDataSource();
+    primary.setURL(PRIMARY_URL);
+    primary.setUser("sa");
+    JdbcDataSource missing = new JdbcDataSource();
+    missing.setURL("jdbc:h2:mem:routing-missing;IFEXISTS=TRUE");
+    ReadReplicaDataSource fallback = new ReadReplicaDataSource(primary, missing, 60000);
+
+    TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+    try {
+      for (int i = 0; i < 2; i++) {
+        try (Connection connection = fallback.getConnection()) {
+          assertEquals("primary", nodeOf(connection));
+        }
+      }
+    } finally {
+      TransactionSynchronizationManager.setCurrentTransactionReadOnly(false);
+    }
+    // The second read skipped the replica instead of trying it again
+    assertEquals(1L, fallback.getStats().get("replicaFailures"));
+    assertEquals(2L, fallback.getStats().get("fallbackReads"));
+    assertEquals(false, fallback.getStats().get("replicaAvailable"));
+  }
+
+  @Test
+  void writesMakeTheClientStickToThePrimary() throws Exception {
+    ReadReplicaStickinessFilter filter = new ReadReplicaStickinessFilter();
+    ReflectionTestUtils.setField(filter, "stickySeconds", 5);
+    AtomicBoolean sticky = new AtomicBoolean();
+
+    MockHttpServletRequest post = new MockHttpServletRequest("POST", "/api/hospital/campaign");
+    MockHttpServletResponse response = new MockHttpServletResponse();
+    filter.doFilter(post, response, (req, res) -> sticky.set(ReadReplicaDataSource.isSticky()));
+    assertTrue(sticky.get());
+    assertFalse(ReadReplicaDataSource.isSticky());
+    Cookie cookie = response.getCookie(ReadReplicaStickinessFilter.COOKIE);
+    assertNotNull(cookie);
+
+    MockHttpServletRequest followUp = new MockHttpServletRequest("GET", "/api/campaign");
+    followUp.setCookies(cookie);
+    filter.doFilter(followUp, new MockHttpServletResponse(),
+        (req, res) -> sticky.set(ReadReplicaDataSource.isSticky()));
+    assertTrue(sticky.get());
+
+    MockHttpServletRequest other = new MockHttpServletRequest("GET", "/api/campaign");
+    filter.doFilter(other, new MockHttpServletResponse(),
+        (req, res) -> sticky.set(ReadReplicaDataSource.isSticky()));
+    assertFalse(sticky.get());
+  }
+
+  private String nodeIn(boolean readOnly) {
+    TransactionTemplate template = new TransactionTemplate(transactionManager);
+    template.setReadOnly(readOnly);
+    return template.execute(status ->
+        (String) entityManager.createNativeQuery("SELECT name FROM node").getSingleResult());
+  }
+
+  private static void createNode(String url, String name) throws SQLException {
+    try (Connection connection = DriverManager.getConnection(url, "sa", "");
+         Statement statement = connection.createStatement()) {
+      statement.execute("CREATE TABLE IF NOT EXISTS node (name VARCHAR(20))");
+      statement.execute("DELETE FROM node");
+      statement.execute("INSERT INTO node VALUES ('" + name + "')");
+    }
+  }
+
+  private static String nodeOf(Connection connection) throws SQLException {
+    try (Statement statement = connection.createStatement();
+         ResultSet rs = statement.executeQuery("SELECT name FROM node")) {
+      rs.next();
+      return rs.getString(1);
+    }
+  }
+}
@@ -0,0 +1,176 @@
+package com.xiojuandawt.blood4life.controllers;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.xiojuandawt.blood4life.entities.Campaign;
+import com.xiojuandawt.blood4life.entities.Hospital;
+import com.xiojuandawt.blood4life.repositories.BloodTypeRepository;
+import com.xiojuandawt.blood4life.repositories.CampaignRepository;
+import com.xiojuandawt.blood4life.repositories.HospitalRepository;
+import com.xiojuandawt.blood4life.services.CampaignServiceImpl;
+import com.xiojuandawt.blood4life.services.DashboardStatsService;
+import com.xiojuandawt.blood4life.services.ResourceVersionService;
+import com.xiojuandawt.blood4life.services.StompBatchPublisher;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+// Parallel PUT /api/hospital/campaign/{id} with the same version through the
+// real service, on an in-memory database: the loser gets a 409 carrying the
+// winner's campaign
+@DataJpaTest(properties = {
+    "spring.flyway.enabled=false",
+    "spring.jpa.hibernate.ddl-auto=create-drop",
+    "spring.jpa.database-platform=org.hibernate.dialect.H2Dialect"
+})
+@Import({CampaignServiceImpl.class, ResourceVersionService.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class CampaignConflictTest {
+
+  @Autowired
+  private CampaignServiceImpl campaignService;
+
+  @Autowired
+  private ResourceVersionService resourceVersionService;
+
+  @Autowired
+  private CampaignRepository campaignRepository;
+
+  @Autowired
+  private HospitalRepository hospitalRepository;
+
+  // Both writers stop here, after reading and checking the version and
+  // before their flush
+  @MockitoBean
+  private BloodTypeRepository bloodTypeRepository;
+
+  @MockitoBean
+  private DashboardStatsService dashboardStatsService;
+
+  @MockitoBean
+  private StompBatchPublisher stompBatchPublisher;
+
+  @MockitoBean
+  private ObjectMapper objectMapper;
+
+  private final ObjectMapper json = new ObjectMapper();
+
+  private MockMvc mockMvc;
+
+  private Hospital hospital;
+
+  private Integer id;
+
+  @BeforeEach
+  void setUp() {
+    CampaignController controller = new CampaignController();
+    ReflectionTestUtils.setField(controller, "campaignService", campaignService);
+    ReflectionTestUtils.setField(controller, "resourceVersionService", resourceVersionService);
+    ReflectionTestUtils.setField(controller, "stompBatchPublisher", stompBatchPublisher);
+    mockMvc = MockMvcBuilders.standaloneSetup(controller).build();
+
+    hospital = new Hospital();
+    hospital.setName("Hospital");
+    hospital.setEmail("hospital-" + System.nanoTime() + "@example.com");
+    hospital = hospitalRepository.save(hospital);
+
+    Campaign campaign = new Campaign();
+    campaign.setHospital(hospital);
+    campaign.setName("Campaign");
+    campaign.setStartDate(LocalDate.now());
+    campaign.setEndDate(LocalDate.now().plusDays(7));
+    campaign.setRequiredDonorQuantity(10);
+    campaign.setRequiredBloodType("A+");
+    id = campaignRepository.save(campaign).getId();
+  }
+
+  @Test
+  void secondWriterOfTheSameVersionGetsTheWinnersCampaign() throws Exception {
+    CyclicBarrier bothChecked = new CyclicBarrier(2);
+    when(bloodTypeRepository.findAll()).thenAnswer(invocation -> {
+      bothChecked.await(30, TimeUnit.SECONDS);
+      return List.of();
+    });
+
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    try {
+      List<Future<MockHttpServletResponse>> writers = new ArrayList<>();
+      for (int i = 0; i < 2; i++) {
+        MockHttpServletRequestBuilder request = this.update("Edited by writer " + i, 0L);
+        writers.add(executor.submit(() -> mockMvc.perform(request).andReturn().getResponse()));
+      }
+
+      MockHttpServletResponse winner = null;
+      MockHttpServletResponse loser = null;
+      for (Future<MockHttpServletResponse> writer : writers) {
+        MockHttpServletResponse response = writer.get(30, TimeUnit.SECONDS);
+        if (response.getStatus() == 200) {
+          winner = response;
+        } else {
+          assertEquals(409, response.getStatus());
+          loser = response;
+        }
+      }
+
+      JsonNode won = json.readTree(winner.getContentAsString());
+      JsonNode current = json.readTree(loser.getContentAsString());
+      assertEquals(id, current.get("id").asInt());
+      assertEquals(won.get("name").asText(), current.get("name").asText());
+      assertEquals(1, current.get("version").asLong());
+      assertEquals(won.get("name").asText(), campaignRepository.findById(id).orElseThrow().getName());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  void staleVersionIsAConflictWithTheCurrentCampaign() throws Exception {
+    when(bloodTypeRepository.findAll()).thenReturn(List.of());
+    mockMvc.perform(this.update("First", 0L)).andExpect(status().isOk());
+
+    mockMvc.perform(this.update("Second", 0L))
+        .andExpect(status().isConflict())
+        .andExpect(jsonPath("$.id").value(id))
+        .andExpect(jsonPath("$.name").value("First"))
+        .andExpect(jsonPath("$.version").value(1));
+  }
+
+  private MockHttpServletRequestBuilder update(String name, Long version) {
+    return put("/api/hospital/campaign/" + id)
+        .principal(new UsernamePasswordAuthenticationToken(hospital, null, List.of()))
+        .param("name", name)
+        .param("description", "Description")
+        .param("startDate", LocalDate.now().toString())
+        .param("endDate", LocalDate.now().plusDays(7).toString())
+        .param("location", "Location")
+        .param("requiredDonorQuantity", "10")
+        .param("requiredBloodTypes", "A+")
+        .param("version", String.valueOf(version));
+  }
+}
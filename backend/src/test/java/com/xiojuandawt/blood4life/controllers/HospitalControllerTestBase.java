@@ -0,0 +1,75 @@
+package com.xiojuandawt.blood4life.controllers;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.xiojuandawt.blood4life.entities.Hospital;
+import com.xiojuandawt.blood4life.repositories.HospitalRepository;
+import com.xiojuandawt.blood4life.services.DashboardStatsService;
+import com.xiojuandawt.blood4life.services.HospitalServiceImpl;
+import com.xiojuandawt.blood4life.services.ImageService;
+import com.xiojuandawt.blood4life.services.RegistrationFilterService;
+import com.xiojuandawt.blood4life.services.ResourceVersionService;
+import com.xiojuandawt.blood4life.services.SearchIndexService;
+import org.junit.jupiter.api.BeforeEach;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+// HospitalController over the real service and repository, on an in-memory
+// database; the other hooks of the service are mocked
+@DataJpaTest(properties = {
+    "spring.flyway.enabled=false",
+    "spring.jpa.hibernate.ddl-auto=create-drop",
+    "spring.jpa.database-platform=org.hibernate.dialect.H2Dialect"
+})
+@Import({HospitalServiceImpl.class, ResourceVersionService.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+abstract class HospitalControllerTestBase {
+
+  @Autowired
+  protected HospitalServiceImpl hospitalService;
+
+  @Autowired
+  protected ResourceVersionService resourceVersionService;
+
+  @Autowired
+  protected HospitalRepository hospitalRepository;
+
+  @MockitoBean
+  private ImageService imageService;
+
+  @MockitoBean
+  private DashboardStatsService dashboardStatsService;
+
+  @MockitoBean
+  private SearchIndexService searchIndexService;
+
+  @MockitoBean
+  private RegistrationFilterService registrationFilterService;
+
+  @MockitoBean
+  private ObjectMapper objectMapper;
+
+  protected MockMvc mockMvc;
+
+  @BeforeEach
+  void setUpController() {
+    HospitalController controller = new HospitalController();
+    ReflectionTestUtils.setField(controller, "hospitalService", hospitalService);
+    ReflectionTestUtils.setField(controller, "resourceVersionService", resourceVersionService);
+    mockMvc = MockMvcBuilders.standaloneSetup(controller).build();
+  }
+
+  protected Hospital saveHospital(String postalCode) {
+    Hospital hospital = new Hospital();
+    hospital.setName("Hospital");
+    hospital.setEmail("hospital-" + System.nanoTime() + "@example.com");
+    hospital.setPostalCode(postalCode);
+    return hospitalRepository.save(hospital);
+  }
+}
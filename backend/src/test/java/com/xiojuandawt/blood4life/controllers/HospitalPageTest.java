@@ -0,0 +1,81 @@
+package com.xiojuandawt.blood4life.controllers;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.xiojuandawt.blood4life.entities.Hospital;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+// GET /api/hospital/page through the real service and repository, on an
+// in-memory database
+class HospitalPageTest extends HospitalControllerTestBase {
+
+  private final ObjectMapper json = new ObjectMapper();
+
+  @BeforeEach
+  void setUp() {
+    hospitalRepository.deleteAll();
+    // Two postal codes shared by several rows, and two rows without one
+    for (String postalCode : new String[] {"46002", null, "46001", "46002", null, "46001", "46003"}) {
+      this.saveHospital(postalCode);
+    }
+  }
+
+  @Test
+  void garbageCursorIsABadRequest() throws Exception {
+    mockMvc.perform(get("/api/hospital/page").param("cursor", "not a cursor!"))
+        .andExpect(status().isBadRequest())
+        .andExpect(jsonPath("$.error").value("Invalid cursor"));
+
+    // Valid base64, but no numeric id inside
+    String noId = Base64.getUrlEncoder().encodeToString("abc:46001".getBytes(StandardCharsets.UTF_8));
+    mockMvc.perform(get("/api/hospital/page").param("sort", "postalCode").param("cursor", noId))
+        .andExpect(status().isBadRequest())
+        .andExpect(jsonPath("$.error").value("Invalid cursor"));
+  }
+
+  @Test
+  void pagesCoverEveryRowOnceAcrossNullKeys() throws Exception {
+    for (String direction : new String[] {"asc", "desc"}) {
+      List<Hospital> expected = new ArrayList<>(hospitalRepository.findAll());
+      // NULLs lowest, then the id as tie-breaker
+      expected.sort((a, b) -> {
+        int byKey = a.getPostalCode() == null
+            ? (b.getPostalCode() == null ? 0 : -1)
+            : (b.getPostalCode() == null ? 1 : a.getPostalCode().compareTo(b.getPostalCode()));
+        return byKey != 0 ? byKey : Integer.compare(a.getId(), b.getId());
+      });
+      if (direction.equals("desc")) {
+        Collections.reverse(expected);
+      }
+
+      List<Integer> served = new ArrayList<>();
+      String cursor = null;
+      do {
+        var request = get("/api/hospital/page").param("sort", "postalCode")
+            .param("direction", direction).param("limit", "2");
+        if (cursor != null) {
+          request.param("cursor", cursor);
+        }
+        String body = mockMvc.perform(request).andExpect(status().isOk())
+            .andReturn().getResponse().getContentAsString();
+        JsonNode page = json.readTree(body);
+        page.get("items").forEach(item -> served.add(item.get("id").asInt()));
+        cursor = page.get("nextCursor").isNull() ? null : page.get("nextCursor").asText();
+      } while (cursor != null);
+
+      assertEquals(expected.stream().map(Hospital::getId).toList(), served, direction);
+    }
+  }
+}
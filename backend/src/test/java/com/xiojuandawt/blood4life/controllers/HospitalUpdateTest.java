@@ -0,0 +1,79 @@
+package com.xiojuandawt.blood4life.controllers;
+
+import com.xiojuandawt.blood4life.entities.Hospital;
+import com.xiojuandawt.blood4life.exception.ConcurrentUpdateException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+// Versioned full updates of a hospital (PUT /api/hospital and
+// HospitalServiceImpl.update) against an in-memory database
+class HospitalUpdateTest extends HospitalControllerTestBase {
+
+  private Integer id;
+
+  @BeforeEach
+  void setUp() {
+    id = this.saveHospital(null).getId();
+  }
+
+  @Test
+  void currentVersionIsAccepted() throws Exception {
+    mockMvc.perform(this.update("Renamed", 0L))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.name").value("Renamed"))
+        .andExpect(jsonPath("$.version").value(1));
+  }
+
+  @Test
+  void staleVersionIsAConflictWithTheCurrentState() throws Exception {
+    mockMvc.perform(this.update("First", 0L)).andExpect(status().isOk());
+
+    mockMvc.perform(this.update("Second", 0L))
+        .andExpect(status().isConflict())
+        .andExpect(jsonPath("$.id").value(id))
+        .andExpect(jsonPath("$.name").value("First"))
+        .andExpect(jsonPath("$.version").value(1));
+    assertEquals("First", hospitalRepository.findById(id).orElseThrow().getName());
+  }
+
+  @Test
+  void deletedRowIsNotFound() throws Exception {
+    hospitalRepository.deleteById(id);
+
+    mockMvc.perform(this.update("Renamed", 0L)).andExpect(status().isNotFound());
+  }
+
+  // The caller read the row, someone else updated it, then the caller saves
+  // without a version: the version it read still applies
+  @Test
+  void writeCommittedAfterTheCallersReadIsNotOverwritten() {
+    Hospital readByCaller = hospitalService.findById(id).orElseThrow();
+
+    Hospital other = hospitalService.findById(id).orElseThrow();
+    other.setName("Other writer");
+    hospitalService.update(other, null);
+
+    readByCaller.setName("Caller");
+    assertThrows(ConcurrentUpdateException.class, () -> hospitalService.update(readByCaller, null));
+    assertEquals("Other writer", hospitalRepository.findById(id).orElseThrow().getName());
+  }
+
+  private MockHttpServletRequestBuilder update(String name, Long version) {
+    return put("/api/hospital")
+        .param("id", String.valueOf(id))
+        .param("cif", "B" + id)
+        .param("name", name)
+        .param("address", "Address")
+        .param("postalCode", "46001")
+        .param("email", "hospital-" + id + "@example.com")
+        .param("phoneNumber", "600000000")
+        .param("version", String.valueOf(version));
+  }
+}
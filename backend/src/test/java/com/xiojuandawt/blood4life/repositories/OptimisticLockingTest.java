@@ -0,0 +1,146 @@
+package com.xiojuandawt.blood4life.repositories;
+
+import com.xiojuandawt.blood4life.entities.Campaign;
+import com.xiojuandawt.blood4life.entities.Hospital;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Parallel writers against the @Version column, on an in-memory database
+@DataJpaTest(properties = {
+    "spring.flyway.enabled=false",
+    "spring.jpa.hibernate.ddl-auto=create-drop",
+    "spring.jpa.database-platform=org.hibernate.dialect.H2Dialect"
+})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class OptimisticLockingTest {
+
+  @Autowired
+  private CampaignRepository campaignRepository;
+
+  @Autowired
+  private HospitalRepository hospitalRepository;
+
+  @Autowired
+  private PlatformTransactionManager transactionManager;
+
+  private TransactionTemplate transactionTemplate;
+
+  private Integer campaignId;
+
+  @BeforeEach
+  void setUp() {
+    transactionTemplate = new TransactionTemplate(transactionManager);
+    Hospital hospital = new Hospital();
+    hospital.setName("Hospital");
+    hospital.setEmail("hospital-" + System.nanoTime() + "@example.com");
+    hospital = hospitalRepository.save(hospital);
+
+    Campaign campaign = new Campaign();
+    campaign.setHospital(hospital);
+    campaign.setName("Campaign");
+    campaign.setStartDate(LocalDate.now());
+    campaign.setEndDate(LocalDate.now().plusDays(7));
+    campaign.setRequiredDonorQuantity(0);
+    campaign.setRequiredBloodType("A+");
+    campaignId = campaignRepository.save(campaign).getId();
+  }
+
+  @Test
+  void secondWriterOfTheSameVersionIsRejected() throws Exception {
+    CyclicBarrier bothRead = new CyclicBarrier(2);
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    try {
+      List<Future<?>> writers = new ArrayList<>();
+      for (int i = 0; i < 2; i++) {
+        String name = "Edited by writer " + i;
+        writers.add(executor.submit(() -> transactionTemplate.executeWithoutResult(status -> {
+          Campaign campaign = campaignRepository.findById(campaignId).orElseThrow();
+          await(bothRead);
+          campaign.setName(name);
+        })));
+      }
+
+      int failed = 0;
+      for (Future<?> writer : writers) {
+        try {
+          writer.get(30, TimeUnit.SECONDS);
+        } catch (java.util.concurrent.ExecutionException e) {
+          assertInstanceOf(ObjectOptimisticLockingFailureException.class, e.getCause());
+          failed++;
+        }
+      }
+      assertEquals(1, failed);
+      assertEquals(1L, campaignRepository.findById(campaignId).orElseThrow().getVersion());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  void retriedIncrementsAreNotLost() throws Exception {
+    int writers = 8;
+    int incrementsPerWriter = 10;
+    ExecutorService executor = Executors.newFixedThreadPool(writers);
+    try {
+      List<Future<?>> futures = new ArrayList<>();
+      for (int i = 0; i < writers; i++) {
+        futures.add(executor.submit(() -> {
+          for (int j = 0; j < incrementsPerWriter; j++) {
+            this.incrementWithRetry();
+          }
+        }));
+      }
+      for (Future<?> future : futures) {
+        future.get(60, TimeUnit.SECONDS);
+      }
+
+      Campaign campaign = campaignRepository.findById(campaignId).orElseThrow();
+      assertEquals(writers * incrementsPerWriter, campaign.getRequiredDonorQuantity());
+      assertTrue(campaign.getVersion() >= writers * incrementsPerWriter);
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private void incrementWithRetry() {
+    while (true) {
+      try {
+        transactionTemplate.executeWithoutResult(status -> {
+          Campaign campaign = campaignRepository.findById(campaignId).orElseThrow();
+          campaign.setRequiredDonorQuantity(campaign.getRequiredDonorQuantity() + 1);
+        });
+        return;
+      } catch (ObjectOptimisticLockingFailureException e) {
+        // Someone else got there first: read again and retry
+      }
+    }
+  }
+
+  private static void await(CyclicBarrier barrier) {
+    try {
+      barrier.await(30, TimeUnit.SECONDS);
+    } catch (Exception e) {
+      throw new IllegalStateException(e);
+    }
+  }
+}
@@ -0,0 +1,369 @@
+package com.xiojuandawt.blood4life.repositories;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfEnvironmentVariable;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+// Query-plan regression suite: runs every @Query of the repositories (and the
+// hot derived queries) against a migrated and seeded MySQL schema, EXPLAINs
+// the SQL Hibernate sent with the same parameters, and fails when a table is
+// read with a full table or full index scan.
+// It is a manual check, skipped by a plain "mvn test": it needs a disposable
+// MySQL database, which it migrates, seeds and cleans up afterwards:
+//   EXPLAIN_DB_URL=jdbc:mysql://localhost:3306/blood4life_explain \
+//   EXPLAIN_DB_USERNAME=root EXPLAIN_DB_PASSWORD=... mvn test -Dtest=QueryPlanTest
+@DataJpaTest(properties = {
+    "spring.datasource.url=${EXPLAIN_DB_URL}",
+    "spring.datasource.username=${EXPLAIN_DB_USERNAME:root}",
+    "spring.datasource.password=${EXPLAIN_DB_PASSWORD:}",
+    "spring.flyway.enabled=true"
+})
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@EnabledIfEnvironmentVariable(named = "EXPLAIN_DB_URL", matches = ".+")
+class QueryPlanTest {
+
+  private static final int DONORS = 5000;
+  private static final int HOSPITALS = 50;
+  private static final int CAMPAIGNS_PER_HOSPITAL = 10;
+  private static final int APPOINTMENTS = 50000;
+  private static final int NOTIFICATIONS = 50000;
+
+  // Queries that read every row by design, to seed in-memory statistics,
+  // search indexes and counters
+  private static final Set<String> FULL_SCANS_BY_DESIGN = Set.of(
+      "AppointmentRepository.findCubeFacts",
+      "BloodDonorRepository.findDonorStatsFacts",
+      "BloodDonorRepository.findSearchFacts",
+      "CampaignRepository.findCampaignHospitalIds",
+      "HospitalRepository.findAllIds",
+      "HospitalRepository.findSearchFacts");
+
+  // Lookup tables of a few rows, which MySQL rightly reads whole
+  private static final Set<String> LOOKUP_TABLES = Set.of("appointment_status", "blood_type");
+
+  @Autowired
+  private ApplicationContext applicationContext;
+
+  @Autowired
+  private DataSource dataSource;
+
+  @Autowired
+  private BloodDonorRepository bloodDonorRepository;
+
+  @Autowired
+  private HospitalRepository hospitalRepository;
+
+  private JdbcTemplate jdbcTemplate;
+
+  @TestConfiguration
+  static class RecordingDataSourceConfig {
+    @Bean
+    static BeanPostProcessor recordingDataSource() {
+      return new BeanPostProcessor() {
+        @Override
+        public Object postProcessAfterInitialization(Object bean, String beanName) {
+          return bean instanceof DataSource dataSource ? StatementRecorder.wrap(dataSource) : bean;
+        }
+      };
+    }
+  }
+
+  @BeforeEach
+  void seed() {
+    jdbcTemplate = new JdbcTemplate(dataSource);
+    Integer seeded = jdbcTemplate.queryForObject(
+        "SELECT COUNT(*) FROM blood_donor WHERE dni LIKE 'PLAN%'", Integer.class);
+    if (seeded != null && seeded >= DONORS) {
+      return;
+    }
+
+    List<Object[]> donors = new ArrayList<>();
+    for (int i = 0; i < DONORS; i++) {
+      donors.add(new Object[] { "PLAN" + i, "Donor", "Plan " + i, i % 2 == 0 ? "Masculino" : "Femenino",
+          i % 8 + 1, "plan" + i + "@example.com", "x" });
+    }
+    jdbcTemplate.batchUpdate("INSERT INTO blood_donor (dni, first_name, last_name, gender, blood_type_id, "
+        + "email, password) VALUES (?, ?, ?, ?, ?, ?, ?)", donors);
+
+    List<Object[]> hospitals = new ArrayList<>();
+    for (int i = 0; i < HOSPITALS; i++) {
+      hospitals.add(new Object[] { "PLANH" + i, "Hospital " + i, "plan-hospital" + i + "@example.com", "x" });
+    }
+    jdbcTemplate.batchUpdate("INSERT INTO hospital (cif, name, email, password) VALUES (?, ?, ?, ?)", hospitals);
+
+    List<Integer> hospitalIds = jdbcTemplate.queryForList(
+        "SELECT id FROM hospital WHERE cif LIKE 'PLANH%'", Integer.class);
+    List<Object[]> campaigns = new ArrayList<>();
+    for (Integer hospitalId : hospitalIds) {
+      for (int i = 0; i < CAMPAIGNS_PER_HOSPITAL; i++) {
+        campaigns.add(new Object[] { hospitalId, "Campaign " + i, Date.valueOf(LocalDate.now().minusDays(60)),
+            Date.valueOf(LocalDate.now().plusDays(60)), 10, "A+" });
+      }
+    }
+    jdbcTemplate.batchUpdate("INSERT INTO campaign (hospital_id, name, start_date, end_date, "
+        + "required_donor_quantity, required_blood_type) VALUES (?, ?, ?, ?, ?, ?)", campaigns);
+
+    List<Integer> donorIds = jdbcTemplate.queryForList(
+        "SELECT id FROM blood_donor WHERE dni LIKE 'PLAN%'", Integer.class);
+    List<Integer> campaignIds = jdbcTemplate.queryForList(
+        "SELECT c.id FROM campaign c JOIN hospital h ON h.id = c.hospital_id WHERE h.cif LIKE 'PLANH%'",
+        Integer.class);
+    List<Object[]> appointments = new ArrayList<>();
+    for (int i = 0; i < APPOINTMENTS; i++) {
+      appointments.add(new Object[] { i % 5 + 1, donorIds.get(i % donorIds.size()),
+          campaignIds.get(i % campaignIds.size()), Date.valueOf(LocalDate.now().plusDays(i % 120 - 60)),
+          Time.valueOf(LocalTime.of(8 + i % 10, 0)) });
+    }
+    jdbcTemplate.batchUpdate("INSERT INTO appointment (appointment_status_id, blood_donor_id, campaign_id, "
+        + "date_appointment, hour_appointment) VALUES (?, ?, ?, ?, ?)", appointments);
+
+    List<Object[]> notifications = new ArrayList<>();
+    for (int i = 0; i < NOTIFICATIONS; i++) {
+      boolean toDonor = i % 2 == 0;
+      notifications.add(new Object[] { toDonor ? donorIds.get(i % donorIds.size()) : null,
+          toDonor ? null : hospitalIds.get(i % hospitalIds.size()), "Message " + i, i % 3 == 0,
+          Timestamp.valueOf(LocalDate.now().atStartOfDay().minusMinutes(i)) });
+    }
+    jdbcTemplate.batchUpdate("INSERT INTO notification (blood_donor_id, hospital_id, message, is_read, "
+        + "created_at) VALUES (?, ?, ?, ?, ?)", notifications);
+
+    jdbcTemplate.execute("ANALYZE TABLE blood_donor, hospital, campaign, appointment, notification");
+  }
+
+  // Removes the seeded rows, including those the audit and change log
+  // triggers wrote for them
+  @AfterEach
+  void cleanUp() {
+    List<Integer> donorIds = jdbcTemplate.queryForList(
+        "SELECT id FROM blood_donor WHERE dni LIKE 'PLAN%'", Integer.class);
+    List<Integer> hospitalIds = jdbcTemplate.queryForList(
+        "SELECT id FROM hospital WHERE cif LIKE 'PLANH%'", Integer.class);
+    List<Integer> campaignIds = jdbcTemplate.queryForList(
+        "SELECT c.id FROM campaign c JOIN hospital h ON h.id = c.hospital_id WHERE h.cif LIKE 'PLANH%'",
+        Integer.class);
+
+    jdbcTemplate.update("DELETE n FROM notification n LEFT JOIN blood_donor d ON d.id = n.blood_donor_id "
+        + "LEFT JOIN hospital h ON h.id = n.hospital_id WHERE d.dni LIKE 'PLAN%' OR h.cif LIKE 'PLANH%'");
+    jdbcTemplate.update("DELETE a FROM appointment a JOIN blood_donor d ON d.id = a.blood_donor_id "
+        + "WHERE d.dni LIKE 'PLAN%'");
+    jdbcTemplate.update("DELETE c FROM campaign c JOIN hospital h ON h.id = c.hospital_id WHERE h.cif LIKE 'PLANH%'");
+    jdbcTemplate.update("DELETE FROM hospital WHERE cif LIKE 'PLANH%'");
+    jdbcTemplate.update("DELETE FROM blood_donor WHERE dni LIKE 'PLAN%'");
+    jdbcTemplate.update("DELETE FROM blood_donor_log WHERE dni LIKE 'PLAN%'");
+    jdbcTemplate.update("DELETE FROM hospital_log WHERE cif LIKE 'PLANH%'");
+    this.deleteChanges("bloodDonor", donorIds);
+    this.deleteChanges("hospital", hospitalIds);
+    this.deleteChanges("campaign", campaignIds);
+  }
+
+  private void deleteChanges(String entity, List<Integer> ids) {
+    List<Object[]> rows = ids.stream().map(id -> new Object[] { entity, id }).toList();
+    jdbcTemplate.batchUpdate("DELETE FROM change_log WHERE entity = ? AND entity_id = ?", rows);
+  }
+
+  @Test
+  void queriesUseIndexes() throws Exception {
+    Integer donorId = jdbcTemplate.queryForObject(
+        "SELECT MIN(id) FROM blood_donor WHERE dni LIKE 'PLAN%'", Integer.class);
+    Integer hospitalId = jdbcTemplate.queryForObject(
+        "SELECT MIN(id) FROM hospital WHERE cif LIKE 'PLANH%'", Integer.class);
+    LocalDate today = LocalDate.now();
+
+    // Arguments of each query checked, by repository and method
+    Map<String, Object[]> cases = new LinkedHashMap<>();
+    cases.put("AppointmentRepository.findNextAppointments",
+        new Object[] { hospitalId, today, LocalTime.NOON, PageRequest.of(0, 5) });
+    cases.put("AppointmentRepository.findByCampaignHospitalIdAndDateAppointment",
+        new Object[] { hospitalId, today });
+    cases.put("AppointmentRepository.countByBloodDonorIdAndAppointmentStatusId",
+        new Object[] { donorId, 3 });
+    cases.put("NotificationRepository.findByReceivedOrderByDateNotificationDesc",
+        new Object[] { bloodDonorRepository.findById(donorId).orElseThrow() });
+    cases.put("NotificationRepository.countUnreadByReceived",
+        new Object[] { bloodDonorRepository.findById(donorId).orElseThrow() });
+    cases.put("NotificationRepository.findUnreadByReceivedOrderByDateNotificationDesc",
+        new Object[] { bloodDonorRepository.findById(donorId).orElseThrow() });
+    cases.put("NotificationRepository.findByReceivedHospitalOrderByDateNotificationDesc",
+        new Object[] { hospitalRepository.findById(hospitalId).orElseThrow() });
+    cases.put("NotificationRepository.countUnreadByReceivedHospital",
+        new Object[] { hospitalRepository.findById(hospitalId).orElseThrow() });
+    cases.put("NotificationRepository.findUnreadByReceivedHospitalOrderByDateNotificationDesc",
+        new Object[] { hospitalRepository.findById(hospitalId).orElseThrow() });
+
+    // Every @Query must be covered, so a new one can't skip the check
+    Map<String, Method> methods = new TreeMap<>();
+    for (Class<?> repository : List.of(AppointmentRepository.class, BloodDonorRepository.class,
+        CampaignRepository.class, HospitalRepository.class, NotificationRepository.class)) {
+      for (Method method : repository.getDeclaredMethods()) {
+        String name = repository.getSimpleName() + "." + method.getName();
+        if (method.isAnnotationPresent(Query.class) || cases.containsKey(name)) {
+          methods.put(name, method);
+        }
+      }
+    }
+
+    List<String> failures = new ArrayList<>();
+    for (Map.Entry<String, Method> entry : methods.entrySet()) {
+      String name = entry.getKey();
+      if (FULL_SCANS_BY_DESIGN.contains(name)) {
+        continue;
+      }
+      Object[] args = cases.get(name);
+      if (args == null) {
+        failures.add(name + ": no arguments in the test cases");
+        continue;
+      }
+      Method method = entry.getValue();
+      Object repository = applicationContext.getBean(method.getDeclaringClass());
+      List<StatementRecorder.Statement> statements = StatementRecorder.record(() -> {
+        try {
+          method.invoke(repository, args);
+        } catch (IllegalAccessException | InvocationTargetException e) {
+          throw new IllegalStateException(name, e);
+        }
+      });
+      assertTrue(!statements.isEmpty(), name + " sent no SQL");
+      for (StatementRecorder.Statement statement : statements) {
+        for (String scan : this.fullScans(statement)) {
+          failures.add(name + ": " + scan + "\n    " + statement.sql());
+        }
+      }
+    }
+    if (!failures.isEmpty()) {
+      fail("Queries reading whole tables:\n  " + String.join("\n  ", failures));
+    }
+  }
+
+  // Tables of the plan read with type ALL (table scan) or index (index scan)
+  private List<String> fullScans(StatementRecorder.Statement statement) {
+    return jdbcTemplate.query("EXPLAIN " + statement.sql(), ps -> statement.bind(ps), (rs, rowNum) -> {
+      String table = rs.getString("table");
+      String type = rs.getString("type");
+      boolean fullScan = "ALL".equals(type) || "index".equals(type);
+      if (!fullScan || table == null || table.startsWith("<") || LOOKUP_TABLES.contains(table)) {
+        return null;
+      }
+      return type + " scan of " + table + " (possible keys: " + rs.getString("possible_keys") + ")";
+    }).stream().filter(scan -> scan != null).toList();
+  }
+
+  // Records the prepared statements executed on the current thread, with the
+  // setter calls that bound their parameters, so they can be EXPLAINed as sent
+  static final class StatementRecorder {
+
+    record Statement(String sql, List<Object[]> bindings) {
+      // Replays the setXxx(index, value) calls on another statement
+      void bind(PreparedStatement ps) throws java.sql.SQLException {
+        for (Object[] binding : bindings) {
+          Method setter = (Method) binding[0];
+          try {
+            setter.invoke(ps, (Object[]) binding[1]);
+          } catch (IllegalAccessException | InvocationTargetException e) {
+            throw new java.sql.SQLException(e);
+          }
+        }
+      }
+    }
+
+    private static final ThreadLocal<List<Statement>> RECORDING = new ThreadLocal<>();
+
+    static List<Statement> record(Runnable action) {
+      List<Statement> statements = new ArrayList<>();
+      RECORDING.set(statements);
+      try {
+        action.run();
+      } finally {
+        RECORDING.remove();
+      }
+      return statements;
+    }
+
+    static DataSource wrap(DataSource target) {
+      return proxy(DataSource.class, target, (method, args) -> {
+        Object result = invoke(method, target, args);
+        return result instanceof Connection connection ? wrap(connection) : result;
+      });
+    }
+
+    private static Connection wrap(Connection target) {
+      return proxy(Connection.class, target, (method, args) -> {
+        Object result = invoke(method, target, args);
+        if (result instanceof PreparedStatement statement && method.getName().equals("prepareStatement")) {
+          return wrap(statement, (String) args[0]);
+        }
+        return result;
+      });
+    }
+
+    private static PreparedStatement wrap(PreparedStatement target, String sql) {
+      List<Object[]> bindings = new ArrayList<>();
+      return proxy(PreparedStatement.class, target, (method, args) -> {
+        String name = method.getName();
+        if (name.startsWith("set") && args != null && args.length >= 2 && args[0] instanceof Integer) {
+          bindings.add(new Object[] { method, args.clone() });
+        } else if (name.equals("clearParameters")) {
+          bindings.clear();
+        } else if (name.startsWith("execute") && (args == null || args.length == 0)) {
+          List<Statement> statements = RECORDING.get();
+          if (statements != null) {
+            statements.add(new Statement(sql, List.copyOf(bindings)));
+          }
+        }
+        return invoke(method, target, args);
+      });
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(Class<T> type, T target, Handler handler) {
+      return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] { type },
+          (proxy, method, args) -> handler.handle(method, args));
+    }
+
+    private static Object invoke(Method method, Object target, Object[] args) throws Throwable {
+      try {
+        return method.invoke(target, args);
+      } catch (InvocationTargetException e) {
+        throw e.getCause();
+      }
+    }
+
+    private interface Handler {
+      Object handle(Method method, Object[] args) throws Throwable;
+    }
+  }
+}
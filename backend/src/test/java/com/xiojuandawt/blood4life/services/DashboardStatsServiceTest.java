@@ -0,0 +1,93 @@
+package com.xiojuandawt.blood4life.services;
+
+import com.xiojuandawt.blood4life.entities.BloodDonor;
+import com.xiojuandawt.blood4life.repositories.BloodDonorRepository;
+import com.xiojuandawt.blood4life.repositories.CampaignRepository;
+import com.xiojuandawt.blood4life.repositories.HospitalRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+// Reloads of the in-memory dashboard statistics against mocked repositories
+class DashboardStatsServiceTest {
+
+  private final BloodDonorRepository bloodDonorRepository = mock(BloodDonorRepository.class);
+  private final HospitalRepository hospitalRepository = mock(HospitalRepository.class);
+  private final CampaignRepository campaignRepository = mock(CampaignRepository.class);
+
+  private final ResourceVersionService resourceVersionService = new ResourceVersionService("", 5);
+
+  private DashboardStatsService dashboardStatsService;
+
+  @BeforeEach
+  void setUp() {
+    dashboardStatsService = new DashboardStatsService();
+    ReflectionTestUtils.setField(dashboardStatsService, "bloodDonorRepository", bloodDonorRepository);
+    ReflectionTestUtils.setField(dashboardStatsService, "hospitalRepository", hospitalRepository);
+    ReflectionTestUtils.setField(dashboardStatsService, "campaignRepository", campaignRepository);
+    ReflectionTestUtils.setField(dashboardStatsService, "resourceVersionService", resourceVersionService);
+    when(hospitalRepository.findAllIds()).thenReturn(List.of());
+    when(campaignRepository.findCampaignHospitalIds()).thenReturn(List.of());
+  }
+
+  // A donor registered after the donor query ran but before the new
+  // statistics were swapped in is not lost
+  @Test
+  void changesDuringAReloadSurviveIt() {
+    when(bloodDonorRepository.findDonorStatsFacts()).thenReturn(List.<Object[]>of(new Object[]{1, "Femenino", "A+"}));
+    when(hospitalRepository.findAllIds()).thenAnswer(invocation -> {
+      dashboardStatsService.donorSaved(this.donor(2, "Masculino"));
+      dashboardStatsService.donorDeleted(1);
+      return List.of();
+    });
+
+    dashboardStatsService.reconcile();
+
+    assertEquals(1, dashboardStatsService.getSnapshot().getTotalDonors());
+    assertEquals(List.of("Masculino"), dashboardStatsService.getSnapshot().getGenderLabels());
+  }
+
+  @Test
+  void changesAfterAReloadAreNotReplayedByTheNextOne() {
+    when(bloodDonorRepository.findDonorStatsFacts()).thenReturn(List.of());
+    dashboardStatsService.reconcile();
+    dashboardStatsService.donorSaved(this.donor(1, "Femenino"));
+
+    // The next read no longer has the donor: it was deleted elsewhere
+    dashboardStatsService.reconcile();
+
+    assertEquals(0, dashboardStatsService.getSnapshot().getTotalDonors());
+  }
+
+  // A client holding the stats ETag must not keep getting 304 after a
+  // reconcile corrected the numbers
+  @Test
+  void driftFoundByAReloadChangesTheVersion() {
+    when(bloodDonorRepository.findDonorStatsFacts()).thenReturn(List.<Object[]>of(new Object[]{1, "Femenino", "A+"}));
+    dashboardStatsService.reconcile();
+    long seeded = resourceVersionService.version(ResourceVersionService.Resource.BLOOD_DONORS);
+
+    dashboardStatsService.reconcile();
+    assertEquals(seeded, resourceVersionService.version(ResourceVersionService.Resource.BLOOD_DONORS));
+
+    // Changed in the database behind this node's back
+    when(bloodDonorRepository.findDonorStatsFacts()).thenReturn(List.<Object[]>of(new Object[]{1, "Femenino", "0-"}));
+    dashboardStatsService.reconcile();
+    assertNotEquals(seeded, resourceVersionService.version(ResourceVersionService.Resource.BLOOD_DONORS));
+    assertEquals(0, resourceVersionService.version(ResourceVersionService.Resource.HOSPITALS));
+  }
+
+  private BloodDonor donor(int id, String gender) {
+    BloodDonor donor = new BloodDonor();
+    donor.setId(id);
+    donor.setGender(gender);
+    return donor;
+  }
+}
@@ -0,0 +1,114 @@
+package com.xiojuandawt.blood4life.services;
+
+import com.xiojuandawt.blood4life.entities.Appointment;
+import com.xiojuandawt.blood4life.entities.AppointmentStatus;
+import com.xiojuandawt.blood4life.entities.Campaign;
+import com.xiojuandawt.blood4life.entities.Hospital;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.contains;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+// Live rollup changes made inside a transaction, against a mocked JdbcTemplate
+class DonationRollupServiceTest {
+
+  private final JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+  private final PlatformTransactionManager transactionManager = mock(PlatformTransactionManager.class);
+
+  private DonationRollupService donationRollupService;
+
+  @BeforeEach
+  void setUp() {
+    donationRollupService = new DonationRollupService();
+    ReflectionTestUtils.setField(donationRollupService, "jdbcTemplate", jdbcTemplate);
+    ReflectionTestUtils.setField(donationRollupService, "transactionTemplate",
+        new TransactionTemplate(transactionManager));
+    when(transactionManager.getTransaction(any())).thenReturn(mock(TransactionStatus.class));
+    when(jdbcTemplate.queryForList(contains("appointment_status"), eq(String.class), anyInt()))
+        .thenReturn(List.of("COMPLETED"));
+
+    TransactionSynchronizationManager.initSynchronization();
+  }
+
+  @AfterEach
+  void tearDown() {
+    TransactionSynchronizationManager.clearSynchronization();
+  }
+
+  @Test
+  void rolledBackWriteLeavesTheRollupUntouched() {
+    donationRollupService.appointmentChanged(null, donationRollupService.cellOf(this.appointment()));
+
+    this.complete(TransactionSynchronization.STATUS_ROLLED_BACK);
+
+    verify(jdbcTemplate, never()).update(contains("donation_daily_rollup"), any(Object[].class));
+  }
+
+  @Test
+  void committedWriteIsAppliedAfterTheCommit() {
+    donationRollupService.appointmentChanged(null, donationRollupService.cellOf(this.appointment()));
+    verify(jdbcTemplate, never()).update(contains("donation_daily_rollup"), any(Object[].class));
+
+    TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+    this.complete(TransactionSynchronization.STATUS_COMMITTED);
+
+    verify(jdbcTemplate, times(1)).update(contains("donation_daily_rollup"), any(Object[].class));
+  }
+
+  // A donor changed from A+ to 0-: their appointments leave the A+ rows and
+  // join the 0- rows, once the donor update commits
+  @Test
+  void bloodTypeChangeMovesTheDonorsAppointments() {
+    when(jdbcTemplate.queryForList(contains("DISTINCT date_appointment"), eq(LocalDate.class), eq(7)))
+        .thenReturn(List.of(LocalDate.of(2026, 10, 1)));
+
+    donationRollupService.donorBloodTypeChanged(7, "A+", "0-");
+    verify(jdbcTemplate, never()).update(contains("donation_daily_rollup"), any(Object[].class));
+
+    TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+    this.complete(TransactionSynchronization.STATUS_COMMITTED);
+
+    verify(jdbcTemplate).update(contains("a.blood_donor_id = ?"), eq("A+"), eq(-1), any(), eq(-1), any(), eq(-1),
+        any(), any(), eq(7));
+    verify(jdbcTemplate).update(contains("a.blood_donor_id = ?"), eq("0-"), eq(1), any(), eq(1), any(), eq(1),
+        any(), any(), eq(7));
+  }
+
+  private void complete(int status) {
+    TransactionSynchronizationManager.getSynchronizations().forEach(sync -> sync.afterCompletion(status));
+  }
+
+  private Appointment appointment() {
+    Hospital hospital = new Hospital();
+    hospital.setId(1);
+    Campaign campaign = new Campaign();
+    campaign.setId(2);
+    campaign.setHospital(hospital);
+    AppointmentStatus status = new AppointmentStatus();
+    status.setId(3);
+    Appointment appointment = new Appointment();
+    appointment.setCampaign(campaign);
+    appointment.setAppointmentStatus(status);
+    appointment.setDateAppointment(LocalDate.of(2026, 10, 1));
+    return appointment;
+  }
+}
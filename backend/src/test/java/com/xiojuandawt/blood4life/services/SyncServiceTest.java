@@ -0,0 +1,115 @@
+package com.xiojuandawt.blood4life.services;
+
+import com.xiojuandawt.blood4life.dto.SyncDTO;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.sql.ResultSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.contains;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+// Paging of changesSince against a stubbed change log of seqs 1..100, where
+// everything from firstUnsettled on is still inside the settle window
+class SyncServiceTest {
+
+  private static final int MAX_CHANGES = 10;
+
+  private final JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+  private final NamedParameterJdbcTemplate namedParameterJdbcTemplate = mock(NamedParameterJdbcTemplate.class);
+  private final BloodDonorService bloodDonorService = mock(BloodDonorService.class);
+
+  private SyncService syncService;
+
+  @BeforeEach
+  void setUp() throws Exception {
+    syncService = new SyncService();
+    ReflectionTestUtils.setField(syncService, "jdbcTemplate", jdbcTemplate);
+    ReflectionTestUtils.setField(syncService, "namedParameterJdbcTemplate", namedParameterJdbcTemplate);
+    ReflectionTestUtils.setField(syncService, "bloodDonorService", bloodDonorService);
+    ReflectionTestUtils.setField(syncService, "maxChanges", MAX_CHANGES);
+    ReflectionTestUtils.setField(syncService, "settleSeconds", 30);
+
+    when(jdbcTemplate.queryForObject(contains("pruned_through"), eq(Long.class))).thenReturn(0L);
+    when(bloodDonorService.findAllById(any())).thenReturn(List.of());
+
+    // SELECT ... WHERE seq > :since ORDER BY seq LIMIT :limit
+    doAnswer(invocation -> {
+      SqlParameterSource params = invocation.getArgument(1);
+      RowCallbackHandler handler = invocation.getArgument(2);
+      long since = (Long) params.getValue("since");
+      int limit = (Integer) params.getValue("limit");
+      for (long seq = since + 1; seq <= Math.min(100, since + limit); seq++) {
+        ResultSet rs = mock(ResultSet.class);
+        when(rs.getLong("seq")).thenReturn(seq);
+        when(rs.getString("entity")).thenReturn("bloodDonor");
+        when(rs.getInt("entity_id")).thenReturn((int) seq);
+        when(rs.getString("operation")).thenReturn("U");
+        handler.processRow(rs);
+      }
+      return null;
+    }).when(namedParameterJdbcTemplate).query(anyString(), any(SqlParameterSource.class), any(RowCallbackHandler.class));
+  }
+
+  // Right after a bulk change every seq is still unsettled: the page is full
+  // but the token cannot move, so the client must not be told to call again
+  @Test
+  void fullPageThatCannotAdvanceIsNotHasMore() {
+    this.firstUnsettled(1L);
+
+    SyncDTO sync = syncService.changesSince(0, Set.of(SyncService.Entity.BLOOD_DONOR));
+
+    assertEquals("0", sync.getToken());
+    assertFalse(sync.isHasMore());
+  }
+
+  @Test
+  void fullPageThatIsPartlySettledAdvancesWithoutHasMore() {
+    this.firstUnsettled(6L);
+
+    SyncDTO sync = syncService.changesSince(0, Set.of(SyncService.Entity.BLOOD_DONOR));
+
+    assertEquals("5", sync.getToken());
+    assertFalse(sync.isHasMore());
+  }
+
+  @Test
+  void settledPagesAreReadUntilTheEnd() {
+    this.firstUnsettled(null);
+
+    long since = 0;
+    int calls = 0;
+    SyncDTO sync;
+    do {
+      sync = syncService.changesSince(since, Set.of(SyncService.Entity.BLOOD_DONOR));
+      assertTrue(Long.parseLong(sync.getToken()) > since || !sync.isHasMore());
+      since = Long.parseLong(sync.getToken());
+      calls++;
+    } while (sync.isHasMore() && calls < 100);
+
+    assertEquals(100, since);
+    assertEquals(11, calls);
+  }
+
+  private void firstUnsettled(Long seq) {
+    when(jdbcTemplate.queryForObject(contains("MIN(seq)"), eq(Long.class), anyLong(), anyInt())).thenReturn(seq);
+    when(jdbcTemplate.queryForObject(contains("MAX(seq)"), eq(Long.class))).thenReturn(100L);
+  }
+}
@@ -39,7 +39,7 @@ const ViewDonorModal: React.FC<ViewDonorModalProps> = ({ isOpen, donor, onClose
     };
 
     const imageUrl = donor.imageName
-        ? `/images/${donor.imageName}`
+        ? `/images/${donor.imageName}?size=256`
         : null;
 
     const { shouldRender, isVisible } = useModalAnimation(isOpen);
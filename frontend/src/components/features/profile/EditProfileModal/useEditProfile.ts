@@ -16,13 +16,17 @@ export const useEditProfile = (onClose: () => void) => {
     const imageUpload = useImageUpload(user);
     const passwordChange = usePasswordChange(userType);
 
+    const fillForm = (profile: any) => {
+        setFormData({
+            ...profile,
+            bloodTypeId: profile.bloodType?.id || '',
+        });
+    };
+
     // Pre-fill form
     useEffect(() => {
         if (user && userType) {
-            setFormData({
-                ...user,
-                bloodTypeId: user.bloodType?.id || '',
-            });
+            fillForm(user);
         }
     }, [user, userType]);
 
@@ -112,6 +116,12 @@ export const useEditProfile = (onClose: () => void) => {
                 formDataToSend.append('image', imageUpload.imageFile);
             }
 
+            // Versión del perfil que se está editando: si otra sesión lo ha
+            // guardado antes, el servidor responde 409 con el perfil actual
+            if (userType !== 'admin' && formData.version != null) {
+                formDataToSend.append('version', formData.version.toString());
+            }
+
             const endpoint = userType === 'bloodDonor'
                 ? `/bloodDonor/${user?.id}`
                 : userType === 'hospital'
@@ -154,6 +164,14 @@ export const useEditProfile = (onClose: () => void) => {
             }, 1000);
         } catch (error: any) {
             console.error('Update error:', error);
+            if (error.response?.status === 409 && error.response.data?.id) {
+                fillForm(error.response.data);
+                setMessage({
+                    type: 'error',
+                    text: 'El perfil se ha modificado desde otra sesión. Se muestran los datos actuales; revísalos y vuelve a guardar.'
+                });
+                return;
+            }
             setMessage({
                 type: 'error',
                 text: error.response?.data?.error || 'Error al actualizar el perfil'
@@ -65,7 +65,7 @@ function Header() {
                 >
                   {user?.imageName ? (
                     <img
-                      src={`/images/${user.imageName}`}
+                      src={`/images/${user.imageName}?size=64`}
                       alt="Foto de perfil del usuario"
                       className="w-full h-full object-cover"
                       onError={(e) => {
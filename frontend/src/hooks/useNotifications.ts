@@ -83,12 +83,9 @@ export const useNotifications = () => {
             // Setup WebSocket subscription ONLY if connected
             let unsubscribe: (() => void) | undefined;
             if (isConnected && user?.id) {
-                // Adjust mapping based on UserType from AuthContext
-                // Typically: 'hospital' or 'donante'/'bloodDonor'. 
-                // Using 'donor' in path for bloodDonors to match backend logic
-                const topic = userType === 'hospital'
-                    ? `/topic/notifications/hospital/${user.id}`
-                    : `/topic/notifications/donor/${user.id}`;
+                // Per-user destination: the backend resolves it to the sessions of the
+                // user authenticated on STOMP CONNECT (donor or hospital)
+                const topic = '/user/queue/notifications';
 
                 console.log('🔔 Suscribiéndose a notificaciones:', topic);
                 try {
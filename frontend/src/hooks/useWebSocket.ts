@@ -59,8 +59,13 @@ export const useWebSocket = () => {
         return websocketService.subscribe(destination, callback);
     }, []);
 
+    const subscribeBatch = useCallback((destination: string, callback: (events: any[]) => void) => {
+        return websocketService.subscribeBatch(destination, callback);
+    }, []);
+
     return {
         isConnected,
         subscribe,
+        subscribeBatch,
     };
 };
@@ -30,56 +30,39 @@ export const useAdminWebSocket = ({
     refreshData
 }: UseAdminWebSocketProps) => {
     const { t } = useTranslation();
-    const { subscribe } = useWebSocket();
+    const { subscribe, subscribeBatch } = useWebSocket();
 
     useEffect(() => {
         if (!isConnected) return;
 
         try {
+            // Donantes, hospitales e inscripciones llegan agrupados (topic
+            // "/batch"): una ráfaga de eventos es una sola actualización de la
+            // lista, un solo refresco de estadísticas y un solo aviso
+
             // Suscribirnos a nuevos registros de donantes
-            const donorSubscription = subscribe('/topic/blood-donors', (message) => {
-                const newDonor = JSON.parse(message.body);
-                setDonors(prev => {
-                    // Evitar duplicados
-                    if (prev.some(d => d.id === newDonor.id)) {
-                        return prev.map(d => d.id === newDonor.id ? newDonor : d);
-                    }
-                    return [...prev, newDonor];
-                });
+            const donorSubscription = subscribeBatch('/topic/blood-donors', (newDonors) => {
+                setDonors(prev => mergeById(prev, newDonors, false));
                 refreshData(); // Refresh stats chart
                 toast.success(t('dashboard.admin.toasts.newDonor'));
             });
 
             // Suscribirnos a nuevos registros de hospitales
-            const hospitalSubscription = subscribe('/topic/hospitals', (message) => {
-                const newHospital = JSON.parse(message.body);
-                setHospitals(prev => {
-                    // Evitar duplicados
-                    if (prev.some(h => h.id === newHospital.id)) {
-                        return prev.map(h => h.id === newHospital.id ? newHospital : h);
-                    }
-                    return [...prev, newHospital];
-                });
+            const hospitalSubscription = subscribeBatch('/topic/hospitals', (newHospitals) => {
+                setHospitals(prev => mergeById(prev, newHospitals, false));
                 refreshData(); // Refresh stats
                 toast.success(t('dashboard.admin.toasts.newHospital'));
             });
 
-            // Suscribirnos a nuevas inscripciones (appointments)
-            const appointmentSubscription = subscribe('/topic/appointments', (message) => {
-                const newApp = JSON.parse(message.body);
-                setAppointments(prev => {
-                    if (prev.some(a => a.id === newApp.id)) {
-                        return prev.map(a => a.id === newApp.id ? newApp : a);
-                    }
-                    return [newApp, ...prev];
-                });
+            // Suscribirnos a todas las inscripciones (appointments); solo admins
+            const appointmentSubscription = subscribeBatch('/topic/admin/appointments', (newApps) => {
+                setAppointments(prev => mergeById(prev, newApps, true));
                 refreshData(); // Refresh stats
                 toast.info(t('dashboard.admin.toasts.newAppointment'));
             });
 
             // Suscribirnos a nuevas campañas
-            const campaignSubscription = subscribe('/topic/campaigns', (message) => {
-                const newCampaign = JSON.parse(message.body);
+            const campaignSubscription = subscribe('/topic/campaigns', (newCampaign) => {
                 setCampaigns(prev => {
                     if (prev.some(c => c.id === newCampaign.id)) {
                         return prev.map(c => c.id === newCampaign.id ? newCampaign : c);
@@ -101,5 +84,15 @@ export const useAdminWebSocket = ({
             console.warn('WebSocket subscription error (will retry):', error);
             // No hacer nada - el componente seguirá funcionando sin WebSocket
         }
-    }, [isConnected, subscribe, donors, hospitals, appointments, campaigns, refreshData]);
+    }, [isConnected, subscribe, subscribeBatch, donors, hospitals, appointments, campaigns, refreshData]);
+};
+
+// Reemplaza los elementos ya presentes (evitando duplicados) y añade los
+// nuevos al final, o al principio si prepend
+const mergeById = <T extends { id: number }>(prev: T[], incoming: T[], prepend: boolean): T[] => {
+    const latest = new Map<number, T>();
+    incoming.forEach(item => latest.set(item.id, item));
+    const merged = prev.map(item => latest.get(item.id) ?? item);
+    const added = [...latest.values()].filter(item => !prev.some(p => p.id === item.id));
+    return prepend ? [...added.reverse(), ...merged] : [...merged, ...added];
 };
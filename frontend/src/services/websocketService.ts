@@ -75,6 +75,18 @@ class WebSocketService {
         };
     }
 
+    // Subscribes to the batched variant of a topic ("<destination>/batch"):
+    // the server groups bursts of events into one frame with the header
+    // "x-batch: true" and an array body, delivered here as one call
+    subscribeBatch(
+        destination: string,
+        callback: (events: any[]) => void
+    ): () => void {
+        return this.subscribe(`${destination}/batch`, (events: any) => {
+            callback(Array.isArray(events) ? events : [events]);
+        });
+    }
+
     disconnect(): void {
         if (this.client) {
             this.client.deactivate();
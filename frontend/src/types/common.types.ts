@@ -38,6 +38,9 @@ export interface UserProfile {
     cif?: string;
     address?: string;
     postalCode?: string;
+
+    /** Versión del perfil leído; se reenvía al guardar para detectar ediciones simultáneas */
+    version?: number;
 }
 
 // ========================================